@@ -0,0 +1,97 @@
+package io.logz.jmx2logzio;
+
+import com.google.common.base.Splitter;
+import io.logz.jmx2logzio.configuration.ConfigReloader;
+import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Changes the reloadable settings of the running agent over JMX, registered as {@link #OBJECT_NAME}
+ */
+public class AgentControl implements AgentControlMBean {
+    public static final String OBJECT_NAME = "io.logz.jmx2logzio:type=AgentControl";
+
+    private final ConfigReloader reloader;
+
+    public AgentControl(ConfigReloader reloader) {
+        this.reloader = reloader;
+    }
+
+    @Override
+    public String getWhiteListRegex() {
+        return reloader.getConfiguration().getWhiteListPattern().pattern();
+    }
+
+    @Override
+    public void setWhiteListRegex(String whiteListRegex) {
+        Pattern.compile(whiteListRegex);
+        reloader.update(Jmx2LogzioJolokia.WHITE_LIST_REGEX, whiteListRegex);
+    }
+
+    @Override
+    public String getBlackListRegex() {
+        return reloader.getConfiguration().getBlackListPattern().pattern();
+    }
+
+    @Override
+    public void setBlackListRegex(String blackListRegex) {
+        Pattern.compile(blackListRegex);
+        reloader.update(Jmx2LogzioJolokia.BLACK_LIST_REGEX, blackListRegex);
+    }
+
+    @Override
+    public int getPollingIntervalInSeconds() {
+        return reloader.getConfiguration().getMetricsPollingIntervalInSeconds();
+    }
+
+    @Override
+    public void setPollingIntervalInSeconds(int pollingIntervalInSeconds) {
+        if (pollingIntervalInSeconds <= 0) {
+            throw new IllegalArgumentException("polling interval must be positive");
+        }
+        reloader.update(Jmx2LogzioJolokia.METRICS_POLLING_INTERVAL, pollingIntervalInSeconds);
+    }
+
+    @Override
+    public String getExtraDimensions() {
+        return reloader.getConfiguration().getExtraDimensions().stream()
+                .filter(dimension -> !dimension.getKey().equals(Jmx2LogzioConfiguration.JMX2LOGZIO_AGENT_VERSION_DIMENSION))
+                .map(dimension -> dimension.getKey() + "=" + dimension.getValue())
+                .collect(Collectors.joining(":", "{", "}"));
+    }
+
+    @Override
+    public void setExtraDimensions(String extraDimensions) {
+        Map<String, String> dimensions = parseExtraDimensions(extraDimensions);
+        // The agent reads the dimensions as a string, the Jolokia poller's config file as an object
+        if (reloader.getConfiguration().getMetricClientType() == Jmx2LogzioConfiguration.MetricClientType.MBEAN_PLATFORM) {
+            reloader.update(Jmx2LogzioJolokia.EXTRA_DIMENSIONS, extraDimensions);
+        } else {
+            reloader.update(Jmx2LogzioJolokia.EXTRA_DIMENSIONS, dimensions);
+        }
+    }
+
+    @Override
+    public void reload() {
+        reloader.reload();
+    }
+
+    private static Map<String, String> parseExtraDimensions(String extraDimensions) {
+        if (extraDimensions == null || !extraDimensions.startsWith("{") || !extraDimensions.endsWith("}")) {
+            throw new IllegalArgumentException("extra dimensions must be in the form of {key=value:key=value...}");
+        }
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        for (String dimension : Splitter.on(':').omitEmptyStrings().split(extraDimensions.substring(1, extraDimensions.length() - 1))) {
+            String[] keyValue = dimension.split("=", 2);
+            if (keyValue.length < 2 || keyValue[0].isEmpty() || keyValue[1].isEmpty()) {
+                throw new IllegalArgumentException("malformed extra dimension " + dimension + ", expected key=value");
+            }
+            dimensions.put(keyValue[0], keyValue[1]);
+        }
+        return dimensions;
+    }
+}
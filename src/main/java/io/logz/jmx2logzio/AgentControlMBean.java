@@ -0,0 +1,32 @@
+package io.logz.jmx2logzio;
+
+/**
+ * Management interface of the running agent. Setting an attribute applies it at the next polling cycle,
+ * an invalid value is rejected with an IllegalArgumentException and the running configuration is kept.
+ */
+public interface AgentControlMBean {
+
+    String getWhiteListRegex();
+
+    void setWhiteListRegex(String whiteListRegex);
+
+    String getBlackListRegex();
+
+    void setBlackListRegex(String blackListRegex);
+
+    int getPollingIntervalInSeconds();
+
+    void setPollingIntervalInSeconds(int pollingIntervalInSeconds);
+
+    /**
+     * @return the extra dimensions in the form of {key=value:key=value...}
+     */
+    String getExtraDimensions();
+
+    void setExtraDimensions(String extraDimensions);
+
+    /**
+     * Read the configuration again from the config file, or from the agent's configuration resources
+     */
+    void reload();
+}
@@ -1,37 +1,88 @@
 package io.logz.jmx2logzio;
 
+import io.logz.jmx2logzio.Utils.AgentExecutors;
 import io.logz.jmx2logzio.Utils.HangupInterceptor;
+import io.logz.jmx2logzio.Utils.LocalJvmDiscovery;
 import io.logz.jmx2logzio.Utils.MetricsPipeline;
+import io.logz.jmx2logzio.Utils.PollingPhase;
+import io.logz.jmx2logzio.Utils.SerialTask;
+import io.logz.jmx2logzio.Utils.ShutdownReport;
 import io.logz.jmx2logzio.Utils.Shutdownable;
+import io.logz.jmx2logzio.clients.HsperfdataClient;
 import io.logz.jmx2logzio.clients.JavaAgentClient;
 import io.logz.jmx2logzio.clients.JolokiaClient;
+import io.logz.jmx2logzio.configuration.ConfigReloader;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
 import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.MBeanClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import static io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration.MetricClientType.ATTACH;
+import static io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration.MetricClientType.HSPERFDATA;
 import static io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration.MetricClientType.JOLOKIA;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 public class Jmx2Logzio implements Shutdownable {
+    private static final String POLL_TASK_NAME = "poll";
+    private static final String DISCOVERY_TASK_NAME = "discovery";
     private final Logger logger = LoggerFactory.getLogger(Jmx2Logzio.class);
 
     private final Jmx2LogzioConfiguration conf;
     private final ScheduledExecutorService taskScheduler;
     private final MBeanClient client;
+    private final ConfigReloader reloader;
+    private MetricsPipeline pipeline;
+    private LocalJvmDiscovery discovery;
+    private ScheduledFuture<?> pollingTask;
+    private ScheduledFuture<?> discoveryTask;
+    private ScheduledFuture<?> reloadTask;
+    private int pollingIntervalInSeconds;
+    private ObjectName controlObjectName;
 
     public Jmx2Logzio(Jmx2LogzioConfiguration conf) {
+        this(conf, null);
+    }
+
+    /**
+     * @param conf the configuration to start with
+     * @param reloader source of reloaded configurations, or null if the configuration can't change at runtime
+     */
+    public Jmx2Logzio(Jmx2LogzioConfiguration conf, ConfigReloader reloader) {
         this.conf = conf;
-        this.taskScheduler = newSingleThreadScheduledExecutor();
-        this.client = conf.getMetricClientType() == JOLOKIA ? new JolokiaClient(conf.getJolokiaFullUrl()) : new JavaAgentClient();
-        List<Dimension> extraDimensions = conf.getExtraDimensions();
-        client.setExtraDimensions(extraDimensions);
-        String clientString = conf.getMetricClientType() == JOLOKIA ? "Jolokia agent URL: " + conf.getJolokiaFullUrl() : "Mbean client";
+        this.reloader = reloader;
+        AgentExecutors.configure(conf.getAgentThreads(), conf.isVirtualThreadsEnabled());
+        this.taskScheduler = AgentExecutors.getScheduler();
+        String clientString;
+        if (conf.getMetricClientType() == JOLOKIA) {
+            this.client = new JolokiaClient(conf.getJolokiaFullUrl(), conf.getJolokiaPatternReads());
+            clientString = "Jolokia agent URL: " + conf.getJolokiaFullUrl();
+        } else if (conf.getMetricClientType() == HSPERFDATA) {
+            File perfDataFile = HsperfdataClient.getPerfDataFile(conf.getHsperfdataDirectory(), conf.getHsperfdataPid());
+            this.client = new HsperfdataClient(perfDataFile);
+            clientString = "hsperfdata file: " + perfDataFile;
+        } else if (conf.getMetricClientType() == ATTACH) {
+            // Each discovered JVM gets its own client
+            this.client = null;
+            clientString = "local JVMs matching " + conf.getAttachDisplayNamePattern().pattern();
+        } else {
+            this.client = new JavaAgentClient();
+            clientString = "Mbean client";
+        }
+        if (client != null) {
+            List<Dimension> extraDimensions = conf.getExtraDimensions();
+            client.setExtraDimensions(extraDimensions);
+        }
         logger.info("Running with {}", clientString);
     }
 
@@ -39,38 +90,147 @@ public class Jmx2Logzio implements Shutdownable {
      * Run a schedule task which collects both JVM and custom metrics and sends them to logz.io
      */
     public void run() {
-        logger.info("java sender: url = {}, token = {}", conf.getSenderParams().getUrl(), conf.getSenderParams().getToken().isEmpty() ? "" : "***************************" + conf.getSenderParams().getToken().substring(conf.getSenderParams().getToken().length()-4));
+        if (conf.getSinkTypes().contains(Jmx2LogzioConfiguration.MetricSinkType.LOGZIO)) {
+            logger.info("java sender: url = {}, token = {}", conf.getSenderParams().getUrl(), conf.getSenderParams().getToken().isEmpty() ? "" : "***************************" + conf.getSenderParams().getToken().substring(conf.getSenderParams().getToken().length()-4));
+        }
+        logger.info("writing metrics to sinks: {}", conf.getSinkTypes());
         enableHangupSupport();
-        MetricsPipeline pipeline = new MetricsPipeline(conf, client);
-        long initialDelay = calcDurationInSecondsUntilNextPollingIntervalStartTime();
-        taskScheduler.scheduleAtFixedRate(pipeline::pollAndSend, initialDelay, conf.getMetricsPollingIntervalInSeconds(), TimeUnit.SECONDS);
+        if (conf.getMetricClientType() == ATTACH) {
+            startDiscovery();
+        } else {
+            pipeline = new MetricsPipeline(conf, client);
+            schedulePolling(conf.getMetricsPollingIntervalInSeconds());
+        }
+        // Without the Attach API there's neither a pipeline nor a discovery to apply a reload to
+        if (reloader != null && (pipeline != null || discovery != null)) {
+            enableReload();
+        }
+    }
+
+    /**
+     * Apply a reloaded configuration: the pipeline swaps its settings at the start of the next cycle, and a changed
+     * polling interval is rescheduled from the scheduler's thread, so it never runs in the middle of a cycle
+     * @param newConf the reloaded configuration
+     */
+    public void reconfigure(Jmx2LogzioConfiguration newConf) {
+        logger.info("Configuration reloaded, only the bean filters, extra dimensions, attribute rules and polling interval are applied without a restart");
+        if (discovery != null) {
+            discovery.reconfigure(newConf);
+            return;
+        }
+        pipeline.reconfigure(newConf);
+        int newInterval = newConf.getMetricsPollingIntervalInSeconds();
+        taskScheduler.execute(() -> {
+            if (newInterval != pollingIntervalInSeconds) {
+                pollingTask.cancel(false);
+                schedulePolling(newInterval);
+            }
+        });
+    }
+
+    private void startDiscovery() {
+        try {
+            discovery = new LocalJvmDiscovery(conf);
+        } catch (NoClassDefFoundError e) {
+            // Up to Java 8, the Attach API is only on the classpath if the JDK's lib/tools.jar is added to it
+            logger.error("The Attach API isn't available, run jmx2logzio on a JDK with its lib/tools.jar on the classpath: {}", e.getMessage());
+            return;
+        }
+        // Attaching and connecting block, so discovery runs on the blocking executor, off the polls' scheduler thread
+        int interval = conf.getAttachDiscoveryIntervalInSeconds();
+        SerialTask discoverTask = new SerialTask(DISCOVERY_TASK_NAME, AgentExecutors.getBlockingExecutor(), this::discoverSafely);
+        discoveryTask = taskScheduler.scheduleWithFixedDelay(discoverTask::request, 0, interval, TimeUnit.SECONDS);
+    }
+
+    private void discoverSafely() {
+        try {
+            discovery.discover();
+        } catch (Throwable t) {
+            // not throwing out since the scheduler will stop in any exception
+            logger.error("Failed discovering local JVMs: {}", t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Poll at this instance's phase of every interval, see {@link PollingPhase}. Jolokia polls block on HTTP, so they
+     * run on the blocking executor, one poll at a time.
+     */
+    private void schedulePolling(int intervalInSeconds) {
+        pollingIntervalInSeconds = intervalInSeconds;
+        String instanceKey = conf.getServiceName() + "@" + conf.getServiceHost();
+        long initialDelay = PollingPhase.getInitialDelayMs(instanceKey, intervalInSeconds, conf.getPhaseJitterPercent(), System.currentTimeMillis());
+        Executor pollExecutor = conf.getMetricClientType() == JOLOKIA ? AgentExecutors.getBlockingExecutor() : taskScheduler;
+        SerialTask pollTask = new SerialTask(POLL_TASK_NAME, pollExecutor, pipeline::pollAndSend);
+        pollingTask = taskScheduler.scheduleAtFixedRate(pollTask::request, initialDelay, TimeUnit.SECONDS.toMillis(intervalInSeconds), TimeUnit.MILLISECONDS);
+        logger.info("Polling every {} seconds, {}ms into each interval", intervalInSeconds,
+                PollingPhase.getPhaseOffsetMs(instanceKey, intervalInSeconds, conf.getPhaseJitterPercent()));
     }
 
-    private long calcDurationInSecondsUntilNextPollingIntervalStartTime() {
-        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
-        return conf.getMetricsPollingIntervalInSeconds() - (now % conf.getMetricsPollingIntervalInSeconds()) + 1;
+    private void enableReload() {
+        reloader.setListener(this::reconfigure);
+        if (reloader.getWatchedFile() != null && conf.getConfigReloadIntervalInSeconds() > 0) {
+            int interval = conf.getConfigReloadIntervalInSeconds();
+            reloadTask = taskScheduler.scheduleWithFixedDelay(reloader::checkWatchedFile, interval, interval, TimeUnit.SECONDS);
+            logger.info("Watching config file {} for changes", reloader.getWatchedFile());
+        }
+        if (conf.isControlMBeanEnabled()) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                controlObjectName = new ObjectName(AgentControl.OBJECT_NAME);
+                server.registerMBean(new AgentControl(reloader), controlObjectName);
+            } catch (JMException e) {
+                logger.warn("Failed registering the agent control MBean {}: {}", AgentControl.OBJECT_NAME, e.getMessage());
+                controlObjectName = null;
+            }
+        }
     }
 
+    /**
+     * Stop scheduling and let the running tasks finish, poll the last, partial window, then write what was collected
+     * and shut the sinks down, which send or spool what's queued. It all runs within the shutdown deadline, and ends
+     * with a report of what was sent, spooled and dropped.
+     */
     @Override
     public void shutdown() {
         logger.debug("Requesting metrics poller to stop");
-        try {
-            taskScheduler.shutdown();
-            if (!taskScheduler.awaitTermination(20, TimeUnit.SECONDS)) {
-                taskScheduler.shutdownNow();
+        ShutdownReport report = new ShutdownReport(conf.getShutdownTimeoutInSeconds());
+        for (ScheduledFuture<?> task : new ScheduledFuture<?>[]{pollingTask, discoveryTask, reloadTask}) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+        // A hung poll or write mustn't take the time left for the final poll and flush
+        AgentExecutors.shutdown(report.getRemainingNanos() / 2, TimeUnit.NANOSECONDS);
+        if (conf.isShutdownFinalPoll()) {
+            if (pipeline != null) {
+                report.runWithin(POLL_TASK_NAME, () -> pipeline.pollFinal(report));
+            }
+            if (discovery != null) {
+                // The discovery's lock may be held by an attach or JMX connect, which the executors' shutdown doesn't interrupt
+                report.runWithin(DISCOVERY_TASK_NAME + "-poll", () -> discovery.pollFinal(report));
+            }
+        }
+        if (pipeline != null) {
+            pipeline.shutdown(report);
+        }
+        if (discovery != null) {
+            report.runWithin(DISCOVERY_TASK_NAME + "-shutdown", () -> discovery.shutdown(report));
+        }
+        if (controlObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(controlObjectName);
+            } catch (JMException e) {
+                logger.debug("Failed unregistering the agent control MBean: {}", e.getMessage());
             }
-        } catch (InterruptedException e) {
-            logger.warn("final request was interrupted: " + e.getMessage(), e);
-        } catch (SecurityException ex) {
-            logger.error("can't submit final request: " + ex.getMessage(), ex);
         }
 
+        report.log();
         logger.info("Shutting down...");
     }
 
     /**
      * Enables the hangup support. Gracefully stops by calling shutdown() on a
-     * Hangup signal.
+     * Hangup signal. This is the agent's only shutdown hook, the pipeline and the sinks are shut down from it.
      */
     private void enableHangupSupport() {
         HangupInterceptor interceptor = new HangupInterceptor(this);
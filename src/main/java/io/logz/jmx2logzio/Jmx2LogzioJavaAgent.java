@@ -2,6 +2,7 @@ package io.logz.jmx2logzio;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import io.logz.jmx2logzio.configuration.ConfigReloader;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
 import io.logz.jmx2logzio.exceptions.IllegalConfiguration;
 import org.slf4j.Logger;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import java.lang.instrument.Instrumentation;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class Jmx2LogzioJavaAgent {
 
@@ -21,6 +23,7 @@ public class Jmx2LogzioJavaAgent {
     private static final String SERVICE_NAME = "SERVICE_NAME";
     private static final String SERVICE_HOST = "SERVICE_HOST";
     private static final String POLLING_INTERVAL_IN_SEC = "POLLING_INTERVAL_IN_SEC";
+    private static final String PHASE_JITTER_PERCENT = "PHASE_JITTER_PERCENT";
     private static final String FROM_DISK = "FROM_DISK";
     private static final String IN_MEMORY_QUEUE_CAPACITY = "IN_MEMORY_QUEUE_CAPACITY";
     private static final String LOGS_COUNT_LIMIT = "LOGS_COUNT_LIMIT";
@@ -28,21 +31,111 @@ public class Jmx2LogzioJavaAgent {
     private static final String FILE_SYSTEM_SPACE_LIMIT = "FILE_SYSTEM_SPACE_LIMIT";
     private static final String CLEAN_SENT_METRICS_INTERVAL = "CLEAN_SENT_METRICS_INTERVAL";
     private static final String EXTRA_DIMENSIONS = "EXTRA_DIMENSIONS";
+    private static final String MAX_BATCH_SIZE_IN_BYTES = "MAX_BATCH_SIZE_IN_BYTES";
+    private static final String QUEUE_TYPE = "QUEUE_TYPE";
+    private static final String DIMENSION_ENCODING = "DIMENSION_ENCODING";
+    private static final String COMPRESSION_CODEC = "COMPRESSION_CODEC";
+    private static final String COMPRESSION_LEVEL = "COMPRESSION_LEVEL";
+    private static final String COMPRESSION_MAX_CPU_MS_PER_CYCLE = "COMPRESSION_MAX_CPU_MS_PER_CYCLE";
+    private static final String PRIORITY_LANES = "PRIORITY_LANES";
+    private static final String DEFAULT_LANE_WEIGHT = "DEFAULT_LANE_WEIGHT";
+    private static final String DEFAULT_LANE_MAX_BYTES_PER_SEC = "DEFAULT_LANE_MAX_BYTES_PER_SEC";
+    private static final String SPOOL_SEGMENT_SIZE_IN_BYTES = "SPOOL_SEGMENT_SIZE_IN_BYTES";
+    private static final String SPOOL_MAX_SEGMENTS = "SPOOL_MAX_SEGMENTS";
+    private static final String OFF_HEAP_QUEUE_CAPACITY = "OFF_HEAP_QUEUE_CAPACITY";
+    private static final String OFF_HEAP_OVERFLOW_POLICY = "OFF_HEAP_OVERFLOW_POLICY";
+    private static final String OFF_HEAP_BLOCK_TIMEOUT_MS = "OFF_HEAP_BLOCK_TIMEOUT_MS";
+    private static final String SINKS = "SINKS";
+    private static final String FILE_SINK_PATH = "FILE_SINK_PATH";
+    private static final String FILE_SINK_MAX_FILE_SIZE_IN_BYTES = "FILE_SINK_MAX_FILE_SIZE_IN_BYTES";
+    private static final String FILE_SINK_MAX_FILES = "FILE_SINK_MAX_FILES";
+    private static final String FILE_SINK_DIMENSION_ENCODING = "FILE_SINK_DIMENSION_ENCODING";
+    private static final String PROMETHEUS_SINK_HOST = "PROMETHEUS_SINK_HOST";
+    private static final String PROMETHEUS_SINK_PORT = "PROMETHEUS_SINK_PORT";
+    private static final String OTLP_SINK_URL = "OTLP_SINK_URL";
+    private static final String OTLP_SINK_TOKEN = "OTLP_SINK_TOKEN";
+    private static final String OTLP_SINK_SUM_METRICS = "OTLP_SINK_SUM_METRICS";
+    private static final String TSDB_SINK_MAX_BYTES = "TSDB_SINK_MAX_BYTES";
+    private static final String TSDB_SINK_BLOCK_POINTS = "TSDB_SINK_BLOCK_POINTS";
+    private static final String STARTUP_DELAY_IN_SEC = "STARTUP_DELAY_IN_SEC";
+    private static final String DISCOVERY_SNAPSHOT = "DISCOVERY_SNAPSHOT";
+    private static final String ATTRIBUTE_RULES = "ATTRIBUTE_RULES";
+    private static final String QUARANTINE_FAILURE_THRESHOLD = "QUARANTINE_FAILURE_THRESHOLD";
+    private static final String QUARANTINE_LATENCY_THRESHOLD_MS = "QUARANTINE_LATENCY_THRESHOLD_MS";
+    private static final String QUARANTINE_MAX_BACKOFF_IN_SEC = "QUARANTINE_MAX_BACKOFF_IN_SEC";
+    private static final String THREADS = "THREADS";
+    private static final String VIRTUAL_THREADS = "VIRTUAL_THREADS";
+    private static final String SHUTDOWN_TIMEOUT_IN_SEC = "SHUTDOWN_TIMEOUT_IN_SEC";
+    private static final String SHUTDOWN_FINAL_POLL = "SHUTDOWN_FINAL_POLL";
+    private static final String GOVERNOR_ENABLED = "GOVERNOR_ENABLED";
+    private static final String GOVERNOR_MAX_CPU_PERCENT = "GOVERNOR_MAX_CPU_PERCENT";
+    private static final String GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE = "GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE";
+    private static final String GOVERNOR_MAX_HEAP_USED_PERCENT = "GOVERNOR_MAX_HEAP_USED_PERCENT";
+    private static final String CARDINALITY_MAX_SERIES_PER_PATTERN = "CARDINALITY_MAX_SERIES_PER_PATTERN";
+    private static final String CARDINALITY_MAX_SERIES_PER_DOMAIN = "CARDINALITY_MAX_SERIES_PER_DOMAIN";
+    private static final String CARDINALITY_TOP_K = "CARDINALITY_TOP_K";
+    private static final String CARDINALITY_RANK_METRIC = "CARDINALITY_RANK_METRIC";
+    private static final String CONTROL_MBEAN = "CONTROL_MBEAN";
     private static final Logger logger = LoggerFactory.getLogger(Jmx2LogzioJavaAgent.class);
     private static final String JAVA_AGENT_CONFIGURATION_FILE = "javaagent.conf";
     private static final int SPLIT_KEY_VALUE_COUNT_LIMIT = 2;
     private static final int INDEX_OF_KEY = 0;
     private static final int INDEX_OF_VALUE = 1;
+    private static final String INIT_THREAD_NAME = "jmx2logzio-init";
 
+    /**
+     * Entry point when the agent is loaded on JVM startup (-javaagent)
+     * @param agentArgument Argument String in the form of key=value,key=value...
+     * @param instrument JVM instrumentation instance (unused)
+     */
     public static void premain(String agentArgument, Instrumentation instrument) {
         logger.debug("Loading with agentArgument: {}", agentArgument);
+        startAgent(agentArgument);
+    }
+
+    /**
+     * Entry point when the agent is attached to an already running JVM (Attach API)
+     * @param agentArgument Argument String in the form of key=value,key=value...
+     * @param instrument JVM instrumentation instance (unused)
+     */
+    public static void agentmain(String agentArgument, Instrumentation instrument) {
+        logger.debug("Attaching with agentArgument: {}", agentArgument);
+        startAgent(agentArgument);
+    }
+
+    /**
+     * Validate the configuration on the caller's thread, and defer building the clients, the sender and its queue
+     * to a background daemon thread, so the agent stays out of the application's startup path
+     * @param agentArgument Argument String received as a parameter
+     */
+    private static void startAgent(String agentArgument) {
         Config finalConfig = getIntegratedConfiguration(agentArgument);
-        Jmx2LogzioConfiguration jmx2LogzioConfiguration = new Jmx2LogzioConfiguration(finalConfig);
-        Jmx2Logzio main = new Jmx2Logzio(jmx2LogzioConfiguration);
-        logger.info("Initiated new java agent based Jmx2Logzio instance");
+        // Reloading reads the arguments again with the current system properties and configuration resources
+        ConfigReloader reloader = new ConfigReloader(finalConfig, () -> {
+            ConfigFactory.invalidateCaches();
+            return getIntegratedConfiguration(agentArgument);
+        }, null);
 
+        Thread initThread = new Thread(() -> initAgent(reloader), INIT_THREAD_NAME);
+        initThread.setDaemon(true);
+        initThread.setPriority(Thread.MIN_PRIORITY);
+        initThread.start();
+    }
+
+    private static void initAgent(ConfigReloader reloader) {
         try {
+            Jmx2LogzioConfiguration jmx2LogzioConfiguration = reloader.getConfiguration();
+            int startupDelay = jmx2LogzioConfiguration.getStartupDelayInSeconds();
+            if (startupDelay > 0) {
+                logger.debug("Delaying jmx2logzio initialization by {} seconds", startupDelay);
+                TimeUnit.SECONDS.sleep(startupDelay);
+            }
+            Jmx2Logzio main = new Jmx2Logzio(jmx2LogzioConfiguration, reloader);
+            logger.info("Initiated new java agent based Jmx2Logzio instance");
             main.run();
+        } catch (InterruptedException e) {
+            logger.warn("jmx2logzio initialization was interrupted, agent will not start");
+            Thread.currentThread().interrupt();
         } catch (Throwable e) {
             logger.error("Stopping jmx2logzio Java Agent due to unexpected exception: " + e.getMessage(), e);
         }
@@ -59,7 +152,9 @@ public class Jmx2LogzioJavaAgent {
         if (configurationMap.get(getArgumentConfigurationRepresentation(SERVICE_NAME)) == null) {
             throw new IllegalConfiguration("SERVICE_NAME must be one of the arguments");
         }
-        if (configurationMap.get(getArgumentConfigurationRepresentation(LOGZIO_TOKEN)) == null) {
+        String sinks = configurationMap.get(getArgumentConfigurationRepresentation(SINKS));
+        boolean logzioSink = sinks == null || sinks.toLowerCase().contains(Jmx2LogzioConfiguration.MetricSinkType.LOGZIO.getConfigValue());
+        if (logzioSink && configurationMap.get(getArgumentConfigurationRepresentation(LOGZIO_TOKEN)) == null) {
             throw new IllegalConfiguration("LOGZIO_TOKEN must be one of the arguments");
         }
 
@@ -116,6 +211,8 @@ public class Jmx2LogzioJavaAgent {
                 return Jmx2LogzioJolokia.SERVICE_HOST;
             case POLLING_INTERVAL_IN_SEC:
                 return Jmx2LogzioJolokia.METRICS_POLLING_INTERVAL;
+            case PHASE_JITTER_PERCENT:
+                return Jmx2LogzioJolokia.PHASE_JITTER_PERCENT;
             case FROM_DISK:
                 return Jmx2LogzioJolokia.FROM_DISK;
             case IN_MEMORY_QUEUE_CAPACITY:
@@ -128,6 +225,96 @@ public class Jmx2LogzioJavaAgent {
                 return Jmx2LogzioJolokia.FILE_SYSTEM_SPACE_LIMIT;
             case CLEAN_SENT_METRICS_INTERVAL:
                 return Jmx2LogzioJolokia.CLEAN_SENT_METRICS_INTERVAL;
+            case MAX_BATCH_SIZE_IN_BYTES:
+                return Jmx2LogzioJolokia.MAX_BATCH_SIZE;
+            case QUEUE_TYPE:
+                return Jmx2LogzioJolokia.QUEUE_TYPE;
+            case DIMENSION_ENCODING:
+                return Jmx2LogzioJolokia.DIMENSION_ENCODING;
+            case COMPRESSION_CODEC:
+                return Jmx2LogzioJolokia.COMPRESSION_CODEC;
+            case COMPRESSION_LEVEL:
+                return Jmx2LogzioJolokia.COMPRESSION_LEVEL;
+            case COMPRESSION_MAX_CPU_MS_PER_CYCLE:
+                return Jmx2LogzioJolokia.COMPRESSION_MAX_CPU_MS_PER_CYCLE;
+            case PRIORITY_LANES:
+                return Jmx2LogzioJolokia.PRIORITY_LANES;
+            case DEFAULT_LANE_WEIGHT:
+                return Jmx2LogzioJolokia.DEFAULT_LANE_WEIGHT;
+            case DEFAULT_LANE_MAX_BYTES_PER_SEC:
+                return Jmx2LogzioJolokia.DEFAULT_LANE_MAX_BYTES_PER_SECOND;
+            case SPOOL_SEGMENT_SIZE_IN_BYTES:
+                return Jmx2LogzioJolokia.SPOOL_SEGMENT_SIZE;
+            case SPOOL_MAX_SEGMENTS:
+                return Jmx2LogzioJolokia.SPOOL_MAX_SEGMENTS;
+            case OFF_HEAP_QUEUE_CAPACITY:
+                return Jmx2LogzioJolokia.OFF_HEAP_CAPACITY;
+            case OFF_HEAP_OVERFLOW_POLICY:
+                return Jmx2LogzioJolokia.OFF_HEAP_OVERFLOW_POLICY;
+            case OFF_HEAP_BLOCK_TIMEOUT_MS:
+                return Jmx2LogzioJolokia.OFF_HEAP_BLOCK_TIMEOUT;
+            case SINKS:
+                return Jmx2LogzioJolokia.SINKS;
+            case FILE_SINK_PATH:
+                return Jmx2LogzioJolokia.FILE_SINK_PATH;
+            case FILE_SINK_MAX_FILE_SIZE_IN_BYTES:
+                return Jmx2LogzioJolokia.FILE_SINK_MAX_FILE_SIZE;
+            case FILE_SINK_MAX_FILES:
+                return Jmx2LogzioJolokia.FILE_SINK_MAX_FILES;
+            case FILE_SINK_DIMENSION_ENCODING:
+                return Jmx2LogzioJolokia.FILE_SINK_DIMENSION_ENCODING;
+            case PROMETHEUS_SINK_HOST:
+                return Jmx2LogzioJolokia.PROMETHEUS_SINK_HOST;
+            case PROMETHEUS_SINK_PORT:
+                return Jmx2LogzioJolokia.PROMETHEUS_SINK_PORT;
+            case OTLP_SINK_URL:
+                return Jmx2LogzioJolokia.OTLP_SINK_URL;
+            case OTLP_SINK_TOKEN:
+                return Jmx2LogzioJolokia.OTLP_SINK_TOKEN;
+            case OTLP_SINK_SUM_METRICS:
+                return Jmx2LogzioJolokia.OTLP_SINK_SUM_METRICS;
+            case TSDB_SINK_MAX_BYTES:
+                return Jmx2LogzioJolokia.TSDB_SINK_MAX_BYTES;
+            case TSDB_SINK_BLOCK_POINTS:
+                return Jmx2LogzioJolokia.TSDB_SINK_BLOCK_POINTS;
+            case STARTUP_DELAY_IN_SEC:
+                return Jmx2LogzioJolokia.STARTUP_DELAY;
+            case ATTRIBUTE_RULES:
+                return Jmx2LogzioJolokia.ATTRIBUTE_RULES;
+            case DISCOVERY_SNAPSHOT:
+                return Jmx2LogzioJolokia.DISCOVERY_SNAPSHOT;
+            case QUARANTINE_FAILURE_THRESHOLD:
+                return Jmx2LogzioJolokia.QUARANTINE_FAILURE_THRESHOLD;
+            case QUARANTINE_LATENCY_THRESHOLD_MS:
+                return Jmx2LogzioJolokia.QUARANTINE_LATENCY_THRESHOLD;
+            case QUARANTINE_MAX_BACKOFF_IN_SEC:
+                return Jmx2LogzioJolokia.QUARANTINE_MAX_BACKOFF;
+            case THREADS:
+                return Jmx2LogzioJolokia.AGENT_THREADS;
+            case VIRTUAL_THREADS:
+                return Jmx2LogzioJolokia.VIRTUAL_THREADS;
+            case SHUTDOWN_TIMEOUT_IN_SEC:
+                return Jmx2LogzioJolokia.SHUTDOWN_TIMEOUT;
+            case SHUTDOWN_FINAL_POLL:
+                return Jmx2LogzioJolokia.SHUTDOWN_FINAL_POLL;
+            case GOVERNOR_ENABLED:
+                return Jmx2LogzioJolokia.GOVERNOR_ENABLED;
+            case GOVERNOR_MAX_CPU_PERCENT:
+                return Jmx2LogzioJolokia.GOVERNOR_MAX_CPU_PERCENT;
+            case GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE:
+                return Jmx2LogzioJolokia.GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE;
+            case GOVERNOR_MAX_HEAP_USED_PERCENT:
+                return Jmx2LogzioJolokia.GOVERNOR_MAX_HEAP_USED_PERCENT;
+            case CARDINALITY_MAX_SERIES_PER_PATTERN:
+                return Jmx2LogzioJolokia.CARDINALITY_MAX_SERIES_PER_PATTERN;
+            case CARDINALITY_MAX_SERIES_PER_DOMAIN:
+                return Jmx2LogzioJolokia.CARDINALITY_MAX_SERIES_PER_DOMAIN;
+            case CARDINALITY_TOP_K:
+                return Jmx2LogzioJolokia.CARDINALITY_TOP_K;
+            case CARDINALITY_RANK_METRIC:
+                return Jmx2LogzioJolokia.CARDINALITY_RANK_METRIC;
+            case CONTROL_MBEAN:
+                return Jmx2LogzioJolokia.CONTROL_MBEAN;
             default:
                 throw new IllegalConfiguration("Unknown configuration option: " + key);
         }
@@ -1,8 +1,8 @@
 package io.logz.jmx2logzio;
 
-import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
-import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.Utils.AgentExecutors;
+import io.logz.jmx2logzio.configuration.ConfigReloader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +16,40 @@ public class Jmx2LogzioJolokia {
     public static final String SERVICE_NAME = "service.name";
     public static final String SERVICE_HOST = "service.host";
     public static final String METRICS_POLLING_INTERVAL = "service.poller.metrics-polling-interval-in-seconds";
+    public static final String PHASE_JITTER_PERCENT = "service.poller.phase-jitter-percent";
+    public static final String ATTRIBUTE_RULES = "service.poller.attribute-rules";
+    public static final String DISCOVERY_SNAPSHOT = "service.poller.discovery-snapshot";
+    public static final String QUARANTINE_FAILURE_THRESHOLD = "service.poller.quarantine.failure-threshold";
+    public static final String QUARANTINE_LATENCY_THRESHOLD = "service.poller.quarantine.latency-threshold-in-ms";
+    public static final String QUARANTINE_MAX_BACKOFF = "service.poller.quarantine.max-backoff-in-seconds";
+    public static final String AGENT_THREADS = "service.threads";
+    public static final String VIRTUAL_THREADS = "service.virtual-threads";
+    public static final String SHUTDOWN_TIMEOUT = "service.shutdown.timeout-in-seconds";
+    public static final String SHUTDOWN_FINAL_POLL = "service.shutdown.final-poll";
+    public static final String GOVERNOR_ENABLED = "service.poller.governor.enabled";
+    public static final String GOVERNOR_MAX_CPU_PERCENT = "service.poller.governor.max-cpu-percent";
+    public static final String GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE = "service.poller.governor.max-allocated-bytes-per-cycle";
+    public static final String GOVERNOR_MAX_HEAP_USED_PERCENT = "service.poller.governor.max-heap-used-percent";
+    public static final String CARDINALITY_MAX_SERIES_PER_PATTERN = "service.poller.cardinality.max-series-per-pattern";
+    public static final String CARDINALITY_MAX_SERIES_PER_DOMAIN = "service.poller.cardinality.max-series-per-domain";
+    public static final String CARDINALITY_TOP_K = "service.poller.cardinality.top-k";
+    public static final String CARDINALITY_RANK_METRIC = "service.poller.cardinality.rank-metric";
+    public static final String STARTUP_DELAY = "service.startup-delay-in-seconds";
+    public static final String CONTROL_MBEAN = "service.control-mbean";
+    public static final String CONFIG_RELOAD_INTERVAL = "service.config-reload-interval-in-seconds";
     public static final String EXTRA_DIMENSIONS = "extra-dimensions";
+    public static final String SINKS = "sinks";
+    public static final String FILE_SINK_PATH = "file-sink.path";
+    public static final String FILE_SINK_MAX_FILE_SIZE = "file-sink.max-file-size-in-bytes";
+    public static final String FILE_SINK_MAX_FILES = "file-sink.max-files";
+    public static final String FILE_SINK_DIMENSION_ENCODING = "file-sink.dimension-encoding";
+    public static final String PROMETHEUS_SINK_HOST = "prometheus-sink.host";
+    public static final String PROMETHEUS_SINK_PORT = "prometheus-sink.port";
+    public static final String OTLP_SINK_URL = "otlp-sink.url";
+    public static final String OTLP_SINK_TOKEN = "otlp-sink.token";
+    public static final String OTLP_SINK_SUM_METRICS = "otlp-sink.sum-metrics";
+    public static final String TSDB_SINK_MAX_BYTES = "tsdb-sink.max-bytes";
+    public static final String TSDB_SINK_BLOCK_POINTS = "tsdb-sink.block-points";
     public static final String LISTENER_URL = "logzio-java-sender.url";
     public static final String LOGZIO_TOKEN = "logzio-java-sender.token";
     public static final String FROM_DISK = "logzio-java-sender.from-disk";
@@ -24,28 +57,47 @@ public class Jmx2LogzioJolokia {
     public static final String LOGS_COUNT_LIMIT = "logzio-java-sender.log-count-limit";
     public static final String DISK_SPACE_CHECK_INTERVAL = "logzio-java-sender.disk-space-checks-interval";
     public static final String FILE_SYSTEM_SPACE_LIMIT = "logzio-java-sender.file-system-full-percent-threshold";
+    public static final String MAX_BATCH_SIZE = "logzio-java-sender.max-batch-size-in-bytes";
+    public static final String QUEUE_TYPE = "logzio-java-sender.queue-type";
+    public static final String DIMENSION_ENCODING = "logzio-java-sender.dimension-encoding";
+    public static final String COMPRESSION_CODEC = "logzio-java-sender.compression.codec";
+    public static final String COMPRESSION_LEVEL = "logzio-java-sender.compression.level";
+    public static final String COMPRESSION_MAX_CPU_MS_PER_CYCLE = "logzio-java-sender.compression.max-cpu-ms-per-cycle";
+    public static final String PRIORITY_LANES = "logzio-java-sender.priority-lanes";
+    public static final String DEFAULT_LANE_WEIGHT = "logzio-java-sender.default-lane.weight";
+    public static final String DEFAULT_LANE_MAX_BYTES_PER_SECOND = "logzio-java-sender.default-lane.max-bytes-per-second";
+    public static final String SPOOL_SEGMENT_SIZE = "logzio-java-sender.spool.segment-size-in-bytes";
+    public static final String SPOOL_MAX_SEGMENTS = "logzio-java-sender.spool.max-segments";
+    public static final String OFF_HEAP_CAPACITY = "logzio-java-sender.off-heap.capacity-in-bytes";
+    public static final String OFF_HEAP_OVERFLOW_POLICY = "logzio-java-sender.off-heap.overflow-policy";
+    public static final String OFF_HEAP_BLOCK_TIMEOUT = "logzio-java-sender.off-heap.block-timeout-in-ms";
     public static final String CLEAN_SENT_METRICS_INTERVAL = "logzio-java-sender.clean-sent-metrics-interval";
     private static final int CONFIG_FILE_INDEX = 0;
 
     public static void main(String[] args) {
         logger.debug("Starting Jmx2Logzio");
 
-        Config config;
+        ConfigReloader reloader;
         if (args.length > 0) {
             String configFilePath = args[CONFIG_FILE_INDEX];
-           if ((new File(configFilePath)).exists()) {
+            File configFile = new File(configFilePath);
+           if (configFile.exists()) {
                logger.info("Loading from config file: {}", configFilePath);
-               config = ConfigFactory.parseFile(new File(configFilePath));
+               reloader = new ConfigReloader(ConfigFactory.parseFile(configFile), () -> ConfigFactory.parseFile(configFile), configFile);
            } else {
                logger.error("config filename {} supplied but couldn't be found.", configFilePath);
                return;
            }
         } else {
-            config = ConfigFactory.load();
+            reloader = new ConfigReloader(ConfigFactory.load(), () -> {
+                ConfigFactory.invalidateCaches();
+                return ConfigFactory.load();
+            }, null);
         }
 
-        Jmx2LogzioConfiguration jmx2LogzioConfiguration = new Jmx2LogzioConfiguration(config);
-        Jmx2Logzio main = new Jmx2Logzio(jmx2LogzioConfiguration);
+        // Nothing else keeps the standalone poller's JVM running
+        AgentExecutors.setDaemon(false);
+        Jmx2Logzio main = new Jmx2Logzio(reloader.getConfiguration(), reloader);
         logger.info("Starting jmx2Logzio using Jolokia-based poller");
         main.run();
     }
@@ -1,13 +1,18 @@
 package io.logz.jmx2logzio;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
+import java.util.Objects;
 
 public class MetricBean {
 
     private String name;
     private List<String> attributes;
 
-    public MetricBean(String name, List<String> attributes) {
+    @JsonCreator
+    public MetricBean(@JsonProperty("name") String name, @JsonProperty("attributes") List<String> attributes) {
         this.name = name;
         this.attributes = attributes;
     }
@@ -28,4 +33,16 @@ public class MetricBean {
         this.attributes = attributes;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MetricBean that = (MetricBean) o;
+        return Objects.equals(name, that.name) && Objects.equals(attributes, that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, attributes);
+    }
 }
@@ -0,0 +1,157 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The agent's threads. All of the agent's periodic tasks, pipeline stages and sinks share one scheduler with a fixed
+ * number of daemon, low priority threads named jmx2logzio-N, no matter how many JVMs are polled or sinks are
+ * configured. Blocking I/O, such as Jolokia and remote JMX polls and the sinks' writes, can run on virtual threads
+ * instead when the JDK has them (Java 21 and later), otherwise it runs on the shared scheduler too.
+ */
+public final class AgentExecutors {
+    public static final int DEFAULT_THREADS = 2;
+    public static final String THREADS_METRIC_TYPE = "AgentThreads";
+    private static final String THREAD_NAME_FORMAT = OverheadGovernor.AGENT_THREAD_PREFIX + "%d";
+    private static final String VIRTUAL_THREAD_NAME_PREFIX = OverheadGovernor.AGENT_THREAD_PREFIX + "io-";
+    private static final Logger logger = LoggerFactory.getLogger(AgentExecutors.class);
+
+    private static int threads = DEFAULT_THREADS;
+    private static boolean virtualThreadsEnabled = false;
+    private static boolean daemon = true;
+    private static ScheduledThreadPoolExecutor scheduler;
+    private static ExecutorService virtualThreads;
+
+    private AgentExecutors() {
+    }
+
+    /**
+     * Set up the executors, before any of the agent's tasks is started
+     * @param threadCount number of the shared scheduler's threads
+     * @param useVirtualThreads whether blocking I/O runs on virtual threads, if the JDK has them
+     */
+    public static synchronized void configure(int threadCount, boolean useVirtualThreads) {
+        if (scheduler != null && (threadCount != threads || useVirtualThreads != virtualThreadsEnabled)) {
+            logger.warn("The agent's executors were already started, keeping {} threads", threads);
+            return;
+        }
+        threads = threadCount;
+        virtualThreadsEnabled = useVirtualThreads;
+    }
+
+    /**
+     * The standalone poller has no application to keep its JVM running, so its threads do
+     * @param daemonThreads whether the shared scheduler's threads are daemon threads
+     */
+    public static synchronized void setDaemon(boolean daemonThreads) {
+        daemon = daemonThreads;
+    }
+
+    /**
+     * @return the shared scheduler, started on first use. Its owners cancel their tasks rather than shut it down.
+     */
+    public static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat(THREAD_NAME_FORMAT)
+                    .setDaemon(daemon)
+                    .setPriority(Thread.MIN_PRIORITY)
+                    .build();
+            scheduler = new ScheduledThreadPoolExecutor(threads, threadFactory);
+            scheduler.setRemoveOnCancelPolicy(true);
+            if (virtualThreadsEnabled) {
+                virtualThreads = newVirtualThreadPerTaskExecutor();
+            }
+            logger.info("Running the agent's tasks on {} shared threads{}", threads,
+                    virtualThreads != null ? ", and blocking I/O on virtual threads" : "");
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return the executor for tasks that block on I/O: virtual threads if enabled and available, otherwise the
+     * shared scheduler
+     */
+    public static synchronized Executor getBlockingExecutor() {
+        ScheduledExecutorService sharedScheduler = getScheduler();
+        return virtualThreads != null ? virtualThreads : sharedScheduler;
+    }
+
+    /**
+     * @return the shared threads, the tasks running and waiting on them, and whether virtual threads are used
+     */
+    public static synchronized Map<String, Number> getCounters() {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("threads", scheduler == null ? 0 : scheduler.getPoolSize());
+        counters.put("activeTasks", scheduler == null ? 0 : scheduler.getActiveCount());
+        counters.put("queuedTasks", scheduler == null ? 0 : scheduler.getQueue().size());
+        counters.put("virtualThreads", virtualThreads != null ? 1 : 0);
+        return counters;
+    }
+
+    /**
+     * Stop accepting tasks and wait for the running ones. The executors are started again on next use.
+     * @param timeout the maximum time to wait
+     * @param unit the timeout's unit
+     */
+    public static void shutdown(long timeout, TimeUnit unit) {
+        ScheduledThreadPoolExecutor stoppedScheduler;
+        ExecutorService stoppedVirtualThreads;
+        synchronized (AgentExecutors.class) {
+            stoppedScheduler = scheduler;
+            stoppedVirtualThreads = virtualThreads;
+            scheduler = null;
+            virtualThreads = null;
+        }
+        if (stoppedScheduler == null) {
+            return;
+        }
+        // Periodic tasks which weren't cancelled by their owners don't run again
+        stoppedScheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        stoppedScheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        stoppedScheduler.shutdown();
+        if (stoppedVirtualThreads != null) {
+            stoppedVirtualThreads.shutdown();
+        }
+        try {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            if (!stoppedScheduler.awaitTermination(timeout, unit)) {
+                stoppedScheduler.shutdownNow();
+            }
+            if (stoppedVirtualThreads != null && !stoppedVirtualThreads.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                stoppedVirtualThreads.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Java 8 has no virtual threads, so they're created through reflection when the running JDK has them
+     * @return a virtual thread per task executor, or null if the JDK has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, VIRTUAL_THREAD_NAME_PREFIX, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("Virtual threads aren't available on Java {}, running blocking I/O on the shared threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
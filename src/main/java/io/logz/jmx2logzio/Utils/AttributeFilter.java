@@ -0,0 +1,210 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.objects.AttributeRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compiled attribute include/exclude rules. Rules are matched once per bean name and cached, and are used to drop
+ * attributes before they are read, and flattened metric keys before they are sent.
+ * A glob matching a key also matches all keys under it, e.g. HeapMemoryUsage matches HeapMemoryUsage.used
+ */
+public class AttributeFilter {
+    private static final int MAX_CACHED_BEANS = 10000;
+    private static final char KEY_SEPARATOR = '.';
+    private static final char JOLOKIA_PATH_SEPARATOR = '/';
+
+    private final List<CompiledRule> rules;
+    private final Map<String, BeanAttributes> beanAttributesCache = new ConcurrentHashMap<>();
+
+    public AttributeFilter(List<AttributeRule> rules) {
+        this.rules = rules.stream().map(CompiledRule::new).collect(Collectors.toList());
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Drop the attributes which none of the bean's keys can be sent for, and beans left with no attributes
+     * @param beans filtered beans
+     * @return beans with only the attributes that should be read
+     */
+    public List<MetricBean> apply(List<MetricBean> beans) {
+        if (rules.isEmpty()) {
+            return beans;
+        }
+        List<MetricBean> result = new ArrayList<>(beans.size());
+        for (MetricBean bean : beans) {
+            BeanAttributes beanAttributes = forBean(bean.getName());
+            if (beanAttributes.isAll()) {
+                result.add(bean);
+                continue;
+            }
+            List<String> attributes = bean.getAttributes().stream()
+                    .filter(beanAttributes::isAttributeNeeded)
+                    .collect(Collectors.toList());
+            if (!attributes.isEmpty()) {
+                result.add(new MetricBean(bean.getName(), attributes));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param beanName the bean's object name
+     * @return the combined rules of all the globs matching the bean
+     */
+    public BeanAttributes forBean(String beanName) {
+        BeanAttributes beanAttributes = beanAttributesCache.get(beanName);
+        if (beanAttributes == null) {
+            if (beanAttributesCache.size() >= MAX_CACHED_BEANS) {
+                beanAttributesCache.clear();
+            }
+            beanAttributes = compileForBean(beanName);
+            beanAttributesCache.put(beanName, beanAttributes);
+        }
+        return beanAttributes;
+    }
+
+    private BeanAttributes compileForBean(String beanName) {
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            if (rule.beanPattern.matcher(beanName).matches()) {
+                includes.addAll(rule.rule.getIncludes());
+                excludes.addAll(rule.rule.getExcludes());
+            }
+        }
+        return new BeanAttributes(includes, excludes);
+    }
+
+    private static boolean matchesKeyOrParent(Pattern pattern, String key) {
+        String current = key;
+        while (true) {
+            if (pattern.matcher(current).matches()) {
+                return true;
+            }
+            int lastSeparator = current.lastIndexOf(KEY_SEPARATOR);
+            if (lastSeparator < 0) {
+                return false;
+            }
+            current = current.substring(0, lastSeparator);
+        }
+    }
+
+    public static class BeanAttributes {
+        private final List<String> includeGlobs;
+        private final List<Pattern> includes;
+        private final List<Pattern> includeAttributes;
+        private final List<Pattern> excludes;
+
+        private BeanAttributes(List<String> includeGlobs, List<String> excludeGlobs) {
+            this.includeGlobs = includeGlobs;
+            this.includes = includeGlobs.stream().map(MetricsUtils::globToPattern).collect(Collectors.toList());
+            this.includeAttributes = includeGlobs.stream().map(BeanAttributes::attributePattern).collect(Collectors.toList());
+            this.excludes = excludeGlobs.stream().map(MetricsUtils::globToPattern).collect(Collectors.toList());
+        }
+
+        public boolean isAll() {
+            return includes.isEmpty() && excludes.isEmpty();
+        }
+
+        /**
+         * @param attribute an attribute name
+         * @return false if none of the attribute's flattened keys can be included
+         */
+        public boolean isAttributeNeeded(String attribute) {
+            if (!includes.isEmpty() && includeAttributes.stream().noneMatch(pattern -> pattern.matcher(attribute).matches())) {
+                return false;
+            }
+            return excludes.stream().noneMatch(pattern -> pattern.matcher(attribute).matches());
+        }
+
+        /**
+         * @param key a flattened metric key, e.g. HeapMemoryUsage.used
+         * @return true if the key should be sent
+         */
+        public boolean isKeyIncluded(String key) {
+            if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> matchesKeyOrParent(pattern, key))) {
+                return false;
+            }
+            return excludes.stream().noneMatch(pattern -> matchesKeyOrParent(pattern, key));
+        }
+
+        /**
+         * Translate the include globs to Jolokia attribute and inner path pairs, which is only possible when
+         * all of them are concrete key paths and there are no excludes
+         * @param attributes the bean's attributes
+         * @return a list of {attribute, path} pairs (path may be null), or null if reading by path is not possible
+         */
+        public List<String[]> getJolokiaPaths(List<String> attributes) {
+            if (includeGlobs.isEmpty() || !excludes.isEmpty() || includeGlobs.stream().anyMatch(MetricsUtils::isGlob)) {
+                return null;
+            }
+            List<String[]> paths = new ArrayList<>();
+            for (String include : includeGlobs) {
+                int separator = include.indexOf(KEY_SEPARATOR);
+                String attribute = separator < 0 ? include : include.substring(0, separator);
+                String path = separator < 0 ? null : include.substring(separator + 1).replace(KEY_SEPARATOR, JOLOKIA_PATH_SEPARATOR);
+                if (attributes.contains(attribute)) {
+                    paths.add(new String[]{attribute, path});
+                }
+            }
+            return Collections.unmodifiableList(paths);
+        }
+
+        /**
+         * The attribute names of the include globs, which are only known when none of them is a glob up to its
+         * first separator and there are no excludes
+         * @return the attribute names, or null if all of the attributes have to be read
+         */
+        public List<String> getAttributeNames() {
+            if (includeGlobs.isEmpty() || !excludes.isEmpty()) {
+                return null;
+            }
+            List<String> attributes = new ArrayList<>();
+            for (String include : includeGlobs) {
+                int separator = include.indexOf(KEY_SEPARATOR);
+                String attribute = separator < 0 ? include : include.substring(0, separator);
+                if (MetricsUtils.isGlob(attribute)) {
+                    return null;
+                }
+                if (!attributes.contains(attribute)) {
+                    attributes.add(attribute);
+                }
+            }
+            return Collections.unmodifiableList(attributes);
+        }
+
+        /**
+         * The part of an include glob which applies to the attribute name, i.e. up to the first separator, or up to
+         * and including the first * if it comes before the separator (since it can match the separator too)
+         */
+        private static Pattern attributePattern(String includeGlob) {
+            int separator = includeGlob.indexOf(KEY_SEPARATOR);
+            int star = includeGlob.indexOf('*');
+            if (star >= 0 && (separator < 0 || star < separator)) {
+                return MetricsUtils.globToPattern(includeGlob.substring(0, star + 1));
+            }
+            return MetricsUtils.globToPattern(separator < 0 ? includeGlob : includeGlob.substring(0, separator));
+        }
+    }
+
+    private static class CompiledRule {
+        private final AttributeRule rule;
+        private final Pattern beanPattern;
+
+        private CompiledRule(AttributeRule rule) {
+            this.rule = rule;
+            this.beanPattern = MetricsUtils.globToPattern(rule.getBeanGlob());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks read failures and latency per bean. A bean which fails (or is slower than the latency threshold) too many
+ * times in a row is left out of the following polls, with an exponentially growing backoff. Once its backoff is over,
+ * the bean is read again; a success releases it and a failure quarantines it again for twice as long. The state of a
+ * bean which is missing from the polls for a while, as dynamic beans are once unregistered, is dropped.
+ */
+public class BeanQuarantine {
+    public static final String QUARANTINE_METRIC_TYPE = "BeanQuarantine";
+    private static final String SELF_METRICS_DOMAIN = "jmx2logzio";
+    private static final int MAX_BACKOFF_EXPONENT = 30;
+    static final int STALE_STATE_POLLS = 10;
+    private final Logger logger = LoggerFactory.getLogger(BeanQuarantine.class);
+
+    private final int failureThreshold;
+    private final long latencyThresholdMs;
+    private long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final LongSupplier clock;
+    private final Map<String, BeanState> beanStates = new HashMap<>();
+
+    private long failedReadsTotal = 0;
+    private long slowReadsTotal = 0;
+    private long quarantinesTotal = 0;
+    private long polls = 0;
+
+    public BeanQuarantine(int failureThreshold, long latencyThresholdMs, long baseBackoffMs, long maxBackoffMs) {
+        this(failureThreshold, latencyThresholdMs, baseBackoffMs, maxBackoffMs, System::currentTimeMillis);
+    }
+
+    BeanQuarantine(int failureThreshold, long latencyThresholdMs, long baseBackoffMs, long maxBackoffMs, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Remove quarantined beans whose backoff is not over yet, and drop the states of beans which were missing from the
+     * last {@value #STALE_STATE_POLLS} polls
+     * @param beans beans about to be polled
+     * @return the beans that should be read in this poll
+     */
+    public synchronized List<MetricBean> filterAvailable(List<MetricBean> beans) {
+        if (beanStates.isEmpty()) {
+            return beans;
+        }
+        polls++;
+        long now = clock.getAsLong();
+        List<MetricBean> available = beans.stream()
+                .filter(bean -> {
+                    BeanState state = beanStates.get(bean.getName());
+                    if (state == null) {
+                        return true;
+                    }
+                    state.lastSeenPoll = polls;
+                    return state.quarantinedUntil <= now;
+                })
+                .collect(Collectors.toList());
+        beanStates.values().removeIf(state -> polls - state.lastSeenPoll >= STALE_STATE_POLLS);
+        return available;
+    }
+
+    /**
+     * Record a successful read of a bean
+     * @param beanName the bean's object name
+     * @param latencyMs time it took to read the bean's attributes, or -1 if unknown
+     */
+    public synchronized void recordSuccess(String beanName, long latencyMs) {
+        if (latencyMs > latencyThresholdMs) {
+            slowReadsTotal++;
+            strike(beanName, "read took " + latencyMs + "ms");
+            return;
+        }
+        BeanState state = beanStates.remove(beanName);
+        if (state != null && state.quarantineCount > 0) {
+            logger.info("MBean {} responded again and was released from quarantine", beanName);
+        }
+    }
+
+    /**
+     * Record a failed read of a bean
+     * @param beanName the bean's object name
+     * @param reason failure description for the log
+     */
+    public synchronized void recordFailure(String beanName, String reason) {
+        failedReadsTotal++;
+        strike(beanName, reason);
+    }
+
+    private void strike(String beanName, String reason) {
+        BeanState state = beanStates.computeIfAbsent(beanName, name -> new BeanState(polls));
+        state.consecutiveStrikes++;
+        // A bean coming back from quarantine has no more chances
+        if (state.quarantineCount > 0 || state.consecutiveStrikes >= failureThreshold) {
+            int exponent = Math.min(state.quarantineCount, MAX_BACKOFF_EXPONENT);
+            long backoffMs = Math.min(baseBackoffMs << exponent, Math.max(baseBackoffMs, maxBackoffMs));
+            state.quarantineCount++;
+            state.quarantinedUntil = clock.getAsLong() + backoffMs;
+            quarantinesTotal++;
+            logger.warn("MBean {} was quarantined for {} seconds after {} consecutive failed or slow reads (last: {})",
+                    beanName, backoffMs / 1000, state.consecutiveStrikes, reason);
+        }
+    }
+
+    /**
+     * @param baseBackoffMs the first backoff of a bean, the polling interval, for the quarantines that follow
+     */
+    public synchronized void setBaseBackoffMs(long baseBackoffMs) {
+        this.baseBackoffMs = baseBackoffMs;
+    }
+
+    public synchronized int getQuarantinedCount() {
+        long now = clock.getAsLong();
+        return (int) beanStates.values().stream().filter(state -> state.quarantinedUntil > now).count();
+    }
+
+    /**
+     * Build a self-monitoring metric document with the quarantine counters
+     * @param timestamp the metric time
+     * @param extraDimensions dimensions added to all collected metrics
+     * @return a metric with the current quarantine counters
+     */
+    public synchronized Metric getCountersMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        Map<String, Number> counters = new HashMap<>();
+        counters.put("quarantinedBeans", getQuarantinedCount());
+        counters.put("quarantinesTotal", quarantinesTotal);
+        counters.put("failedReadsTotal", failedReadsTotal);
+        counters.put("slowReadsTotal", slowReadsTotal);
+
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, SELF_METRICS_DOMAIN));
+        dimensions.add(new Dimension("type", QUARANTINE_METRIC_TYPE));
+        dimensions.addAll(extraDimensions);
+        return new Metric(counters, timestamp, dimensions);
+    }
+
+    synchronized int getTrackedCount() {
+        return beanStates.size();
+    }
+
+    private static class BeanState {
+        private int consecutiveStrikes = 0;
+        private int quarantineCount = 0;
+        private long quarantinedUntil = 0;
+        private long lastSeenPoll;
+
+        private BeanState(long lastSeenPoll) {
+            this.lastSeenPoll = lastSeenPoll;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.logz.jmx2logzio.Utils;
+
+import java.util.Map;
+
+/**
+ * A queue of newline delimited metric blocks which are shipped to the listener by {@link io.logz.jmx2logzio.clients.BlockQueueSender}
+ * and only removed once the listener acknowledged them
+ */
+public interface BlockQueue {
+
+    /**
+     * @param block a block to queue
+     * @return false if the block was dropped since the queue is full
+     */
+    boolean enqueue(byte[] block);
+
+    /**
+     * @return the oldest block which was not acknowledged yet, or null if there is none
+     */
+    byte[] peek();
+
+    /**
+     * Remove the block returned by the last {@link #peek()}
+     */
+    void ack();
+
+    /**
+     * Persist queued blocks, if the queue is persistent
+     */
+    void flush();
+
+    void close();
+
+    /**
+     * @return the queue's fill and drop counters, sent as a self metric
+     */
+    Map<String, Number> getCounters();
+}
@@ -0,0 +1,223 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Guards against dynamic MBeans (per connection, per partition, per session...) blowing up the number of series.
+ * Distinct dimension sets are counted per domain and per key pattern (domain, type and the other key names) with
+ * HyperLogLog sketches over a sliding window of polling cycles, so beans which churn between cycles are counted too.
+ * When a pattern or its domain is over its limit, only the top-K series of the pattern by the rank metric are kept.
+ */
+public class CardinalityLimiter {
+    public static final String OVERFLOW_METRIC_TYPE = "CardinalityOverflow";
+    private static final String SELF_METRICS_DOMAIN = "jmx2logzio";
+    private static final String TYPE_DIMENSION = "type";
+    private static final String OTHER_GROUP = "~other";
+    private static final int SKETCH_PRECISION = 8;
+    private static final int MAX_TRACKED_GROUPS = 4096;
+    private static final int WINDOW_CYCLES = 10;
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+    private final Logger logger = LoggerFactory.getLogger(CardinalityLimiter.class);
+
+    private final int maxSeriesPerPattern;
+    private final int maxSeriesPerDomain;
+    private final int topK;
+    private final String rankMetric;
+    private final Map<String, SeriesGroup> patternGroups = new HashMap<>();
+    private final Map<String, SeriesGroup> domainGroups = new HashMap<>();
+    private final Set<String> reportedPatterns = new HashSet<>();
+
+    private long cycle = 0;
+    private int lastDroppedSeries = 0;
+    private int lastLimitedPatterns = 0;
+    private long droppedSeriesTotal = 0;
+
+    /**
+     * @param maxSeriesPerPattern distinct series of a single key pattern above which the pattern is limited
+     * @param maxSeriesPerDomain distinct series of a single domain above which all of the domain's patterns are limited
+     * @param topK number of series kept for a limited pattern
+     * @param rankMetric name of the metric used to rank series, series without it are ranked last
+     */
+    public CardinalityLimiter(int maxSeriesPerPattern, int maxSeriesPerDomain, int topK, String rankMetric) {
+        this.maxSeriesPerPattern = maxSeriesPerPattern;
+        this.maxSeriesPerDomain = maxSeriesPerDomain;
+        this.topK = topK;
+        this.rankMetric = rankMetric;
+    }
+
+    /**
+     * Count the series of a polling cycle and drop the ones over the limits
+     * @param metrics the metrics of one polling cycle
+     * @return the metrics to send, in their original order
+     */
+    public List<Metric> limit(List<Metric> metrics) {
+        if (++cycle % WINDOW_CYCLES == 0) {
+            rotateWindow();
+        }
+
+        Map<String, List<Metric>> metricsByPattern = new LinkedHashMap<>();
+        Map<String, String> patternToDomain = new HashMap<>();
+        IdentityHashMap<Metric, String> seriesKeys = new IdentityHashMap<>();
+        for (Metric metric : metrics) {
+            String domain = getDimensionValue(metric, Metric.DOMAIN_NAME);
+            String pattern = getKeyPattern(metric, domain);
+            String seriesKey = getSeriesKey(metric);
+            long seriesHash = hashFunction.hashString(seriesKey, StandardCharsets.UTF_8).asLong();
+            getGroup(patternGroups, pattern).offer(seriesHash);
+            getGroup(domainGroups, domain).offer(seriesHash);
+
+            seriesKeys.put(metric, seriesKey);
+            patternToDomain.put(pattern, domain);
+            metricsByPattern.computeIfAbsent(pattern, key -> new ArrayList<>()).add(metric);
+        }
+
+        Set<Metric> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        int limitedPatterns = 0;
+        for (Map.Entry<String, List<Metric>> entry : metricsByPattern.entrySet()) {
+            List<Metric> patternMetrics = entry.getValue();
+            if (patternMetrics.size() <= topK || !isOverLimit(entry.getKey(), patternToDomain.get(entry.getKey()), patternMetrics.size())) {
+                continue;
+            }
+            limitedPatterns++;
+            patternMetrics.stream()
+                    .sorted(Comparator.comparingDouble(this::getRank).reversed().thenComparing(seriesKeys::get))
+                    .skip(topK)
+                    .forEach(dropped::add);
+            if (reportedPatterns.size() < MAX_TRACKED_GROUPS && reportedPatterns.add(entry.getKey())) {
+                logger.warn("Series of {} are over the cardinality limit, keeping only the top {} by {}", entry.getKey(), topK, rankMetric);
+            }
+        }
+
+        lastDroppedSeries = dropped.size();
+        lastLimitedPatterns = limitedPatterns;
+        droppedSeriesTotal += dropped.size();
+        if (dropped.isEmpty()) {
+            return metrics;
+        }
+        return metrics.stream().filter(metric -> !dropped.contains(metric)).collect(Collectors.toList());
+    }
+
+    /**
+     * Build a single overflow counter document for the last cycle
+     * @param timestamp the metric time
+     * @param extraDimensions dimensions added to all collected metrics
+     * @return the overflow metric, or null if nothing was dropped in the last cycle
+     */
+    public Metric getOverflowMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        if (lastDroppedSeries == 0) {
+            return null;
+        }
+        Map<String, Number> counters = new HashMap<>();
+        counters.put("droppedSeries", lastDroppedSeries);
+        counters.put("limitedPatterns", lastLimitedPatterns);
+        counters.put("droppedSeriesTotal", droppedSeriesTotal);
+
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, SELF_METRICS_DOMAIN));
+        dimensions.add(new Dimension(TYPE_DIMENSION, OVERFLOW_METRIC_TYPE));
+        dimensions.addAll(extraDimensions);
+        return new Metric(counters, timestamp, dimensions);
+    }
+
+    private boolean isOverLimit(String pattern, String domain, int cycleSeries) {
+        return cycleSeries > maxSeriesPerPattern
+                || getTrackedGroup(patternGroups, pattern).estimate() > maxSeriesPerPattern
+                || getTrackedGroup(domainGroups, domain).estimate() > maxSeriesPerDomain;
+    }
+
+    private double getRank(Metric metric) {
+        Number rank = metric.getMetricMap().get(rankMetric);
+        return rank == null ? Double.NEGATIVE_INFINITY : rank.doubleValue();
+    }
+
+    private SeriesGroup getGroup(Map<String, SeriesGroup> groups, String key) {
+        // Keep memory bounded even if the patterns themselves leak
+        String groupKey = groups.containsKey(key) || groups.size() < MAX_TRACKED_GROUPS ? key : OTHER_GROUP;
+        SeriesGroup group = groups.computeIfAbsent(groupKey, k -> new SeriesGroup());
+        group.lastSeenCycle = cycle;
+        return group;
+    }
+
+    private SeriesGroup getTrackedGroup(Map<String, SeriesGroup> groups, String key) {
+        SeriesGroup group = groups.get(key);
+        return group != null ? group : groups.get(OTHER_GROUP);
+    }
+
+    private void rotateWindow() {
+        rotateGroups(patternGroups);
+        rotateGroups(domainGroups);
+    }
+
+    private void rotateGroups(Map<String, SeriesGroup> groups) {
+        groups.values().removeIf(group -> cycle - group.lastSeenCycle > 2 * WINDOW_CYCLES);
+        groups.values().forEach(SeriesGroup::rotate);
+    }
+
+    private String getKeyPattern(Metric metric, String domain) {
+        Set<String> keys = new TreeSet<>();
+        for (Dimension dimension : metric.getDimensions()) {
+            if (!dimension.getKey().equals(Metric.DOMAIN_NAME) && !dimension.getKey().equals(TYPE_DIMENSION)) {
+                keys.add(dimension.getKey());
+            }
+        }
+        return domain + ":" + TYPE_DIMENSION + "=" + getDimensionValue(metric, TYPE_DIMENSION) + "," + String.join(",", keys);
+    }
+
+    private String getSeriesKey(Metric metric) {
+        StringBuilder sb = new StringBuilder();
+        for (Dimension dimension : metric.getDimensions()) {
+            sb.append(dimension.getKey()).append('=').append(dimension.getValue()).append(',');
+        }
+        return sb.toString();
+    }
+
+    private String getDimensionValue(Metric metric, String key) {
+        for (Dimension dimension : metric.getDimensions()) {
+            if (dimension.getKey().equals(key)) {
+                return dimension.getValue();
+            }
+        }
+        return "";
+    }
+
+    private static class SeriesGroup {
+        private HyperLogLog current = new HyperLogLog(SKETCH_PRECISION);
+        private HyperLogLog previous = new HyperLogLog(SKETCH_PRECISION);
+        private long lastSeenCycle;
+
+        private void offer(long hash) {
+            current.offer(hash);
+        }
+
+        private long estimate() {
+            return current.estimateUnion(previous);
+        }
+
+        private void rotate() {
+            HyperLogLog oldest = previous;
+            previous = current;
+            oldest.clear();
+            current = oldest;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Expands a block written by {@link MetricsBatcher} with dictionary encoding back into self contained documents,
+ * each with its full dimensions. Documents without dictionary fields are passed through, so inline blocks decode
+ * to themselves. A reference always follows its definition in the same block, so concatenated blocks (such as the
+ * file sink's files) decode as a whole as well.
+ */
+public class DimensionDictionaryDecoder {
+    private static final byte DOCUMENTS_SEPARATOR = '\n';
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param block newline delimited JSON documents, as written by the batcher
+     * @return the same documents, newline delimited, with the dimension references replaced by the dimensions
+     * @throws IOException if a document isn't valid JSON or refers to dimensions not defined earlier in the block
+     */
+    public static byte[] decode(byte[] block) throws IOException {
+        Map<Integer, JsonNode> dimensionsById = new HashMap<>();
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(block.length * 2);
+        for (String document : new String(block, StandardCharsets.UTF_8).split("\n")) {
+            if (document.isEmpty()) {
+                continue;
+            }
+            if (decoded.size() > 0) {
+                decoded.write(DOCUMENTS_SEPARATOR);
+            }
+            decoded.write(mapper.writeValueAsBytes(expand(mapper.readTree(document), dimensionsById)));
+        }
+        return decoded.toByteArray();
+    }
+
+    private static JsonNode expand(JsonNode document, Map<Integer, JsonNode> dimensionsById) throws IOException {
+        if (!document.has(MetricsBatcher.DIMENSIONS_ID_FIELD) && !document.has(MetricsBatcher.DIMENSIONS_REF_FIELD)) {
+            return document;
+        }
+        if (document.has(MetricsBatcher.DIMENSIONS_ID_FIELD)) {
+            dimensionsById.put(document.get(MetricsBatcher.DIMENSIONS_ID_FIELD).asInt(), document.get(MetricsBatcher.DIMENSIONS_FIELD));
+        }
+        // Rebuild the document so the dimensions keep their place between the timestamp and the metrics
+        ObjectNode expanded = mapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = document.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getKey().equals(MetricsBatcher.DIMENSIONS_ID_FIELD)) {
+                continue;
+            }
+            if (field.getKey().equals(MetricsBatcher.DIMENSIONS_REF_FIELD)) {
+                JsonNode dimensions = dimensionsById.get(field.getValue().asInt());
+                if (dimensions == null) {
+                    throw new IOException("Document refers to undefined dimensions " + field.getValue().asInt());
+                }
+                expanded.set(MetricsBatcher.DIMENSIONS_FIELD, dimensions);
+            } else {
+                expanded.set(field.getKey(), field.getValue());
+            }
+        }
+        return expanded;
+    }
+}
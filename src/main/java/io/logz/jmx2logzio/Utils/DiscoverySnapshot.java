@@ -0,0 +1,121 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.logz.jmx2logzio.MetricBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the filtered bean list (bean names and their attributes) so a restarted agent can run its first poll
+ * without rediscovering every MBean. The snapshot is bound to the filters it was created with, and is ignored
+ * if they were changed since.
+ */
+public class DiscoverySnapshot {
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final Logger logger = LoggerFactory.getLogger(DiscoverySnapshot.class);
+
+    private final File snapshotFile;
+    private final String filtersKey;
+    private List<MetricBean> persistedBeans;
+    private boolean loaded = false;
+
+    /**
+     * @param snapshotFile file to persist the snapshot to
+     * @param filtersKey a string describing the client and filters the beans were discovered with
+     */
+    public DiscoverySnapshot(File snapshotFile, String filtersKey) {
+        this.snapshotFile = snapshotFile;
+        this.filtersKey = filtersKey;
+    }
+
+    /**
+     * Load the persisted beans on the first call only, later calls return null so the caller rediscovers
+     * @return the persisted filtered beans, or null if there is no valid snapshot or it was already taken
+     */
+    public List<MetricBean> takeWarmBeans() {
+        if (loaded) {
+            return null;
+        }
+        loaded = true;
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        try {
+            SnapshotContent content = mapper.readValue(snapshotFile, SnapshotContent.class);
+            if (content.getVersion() != SNAPSHOT_VERSION || !filtersKey.equals(content.getFilters()) || content.getBeans() == null) {
+                logger.debug("Ignoring discovery snapshot {}, it was created with a different configuration", snapshotFile);
+                return null;
+            }
+            persistedBeans = content.getBeans();
+            logger.debug("Loaded {} beans from discovery snapshot {}", persistedBeans.size(), snapshotFile);
+            return new ArrayList<>(persistedBeans);
+        } catch (IOException e) {
+            logger.warn("Failed reading discovery snapshot {}: {}", snapshotFile, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Persist the freshly discovered filtered beans, if they differ from the persisted ones
+     * @param filteredBeans beans after white/black list filtering
+     */
+    public void update(List<MetricBean> filteredBeans) {
+        loaded = true;
+        if (filteredBeans.equals(persistedBeans)) {
+            return;
+        }
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            File parent = snapshotFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("could not create directory " + parent);
+            }
+            mapper.writeValue(tempFile, new SnapshotContent(SNAPSHOT_VERSION, filtersKey, filteredBeans));
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            persistedBeans = new ArrayList<>(filteredBeans);
+            logger.debug("Saved {} beans to discovery snapshot {}", filteredBeans.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Failed writing discovery snapshot {}: {}", snapshotFile, e.getMessage(), e);
+        }
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public static class SnapshotContent {
+        private final int version;
+        private final String filters;
+        private final List<MetricBean> beans;
+
+        @JsonCreator
+        public SnapshotContent(@JsonProperty("version") int version, @JsonProperty("filters") String filters,
+                               @JsonProperty("beans") List<MetricBean> beans) {
+            this.version = version;
+            this.filters = filters;
+            this.beans = beans;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getFilters() {
+            return filters;
+        }
+
+        public List<MetricBean> getBeans() {
+            return beans;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.logz.jmx2logzio.Utils;
+
+import java.util.Arrays;
+
+/**
+ * A minimal HyperLogLog distinct counter over 64 bit hashes, with a fixed memory of 2^precision bytes.
+ */
+public class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param hash a well distributed 64 bit hash of the counted item
+     */
+    public void offer(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Estimate the distinct count of this counter merged with another one, without modifying either
+     * @param other a counter with the same precision, or null
+     * @return estimated number of distinct items offered to both counters
+     */
+    public long estimateUnion(HyperLogLog other) {
+        int m = registers.length;
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (int i = 0; i < m; i++) {
+            int register = other == null ? registers[i] : Math.max(registers[i], other.registers[i]);
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeroRegisters > 0) {
+            // Small range correction (linear counting)
+            estimate = m * Math.log((double) m / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    public long estimate() {
+        return estimateUnion(null);
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+import io.logz.jmx2logzio.clients.JavaAgentClient;
+import io.logz.jmx2logzio.clients.MetricSinkFactory;
+import io.logz.jmx2logzio.clients.SinkRunner;
+import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.objects.Dimension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Polls all the local JVMs whose display name (main class or jar, and arguments) matches a regex. JVMs are listed
+ * with the Attach API, and each new one gets its local management agent started and is polled over a cached JMX
+ * connection by its own pipeline and schedule, at its own phase of the interval, writing to sinks shared by all JVMs. A JVM's service name is derived
+ * from its main class or jar, and its process id is added as the pid dimension. JVMs which exited are dropped on the
+ * next discovery. A JVM which couldn't be attached to is tried again on a later discovery, with an exponentially
+ * growing backoff.
+ */
+public class LocalJvmDiscovery implements Shutdownable {
+    public static final String POLLER_ATTACH = "service.poller.attach";
+    public static final String ATTACH_DISPLAY_NAME_REGEX = "service.poller.attach.display-name-regex";
+    public static final String ATTACH_DISCOVERY_INTERVAL = "service.poller.attach.discovery-interval-in-seconds";
+
+    private static final String PID_DIMENSION = "pid";
+    private static final String POLL_TASK_NAME_PREFIX = "poll-";
+    private static final int MAX_ATTACH_BACKOFF_EXPONENT = 30;
+    private static final long MAX_ATTACH_BACKOFF_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int ATTACH_TIMEOUT_IN_SECONDS = 10;
+    private static final String ATTACH_THREAD_PREFIX = OverheadGovernor.AGENT_THREAD_PREFIX + "attach-";
+    private final Logger logger = LoggerFactory.getLogger(LocalJvmDiscovery.class);
+
+    private final Pattern displayNamePattern;
+    private final String ownPid;
+    private final List<SinkRunner> sinks;
+    private final Map<String, AttachedJvm> attachedJvms = new HashMap<>();
+    private final Map<String, FailedAttach> failedAttaches = new HashMap<>();
+    private Jmx2LogzioConfiguration conf;
+    private boolean shutDown = false;
+
+    public LocalJvmDiscovery(Jmx2LogzioConfiguration conf) {
+        this.conf = conf;
+        this.displayNamePattern = conf.getAttachDisplayNamePattern();
+        this.ownPid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        this.sinks = MetricSinkFactory.createSinks(conf);
+    }
+
+    /**
+     * Attach to the local JVMs listed since the last discovery, and stop polling the ones which exited. The attaches
+     * run outside of the discovery's lock, so a JVM which is slow to attach to doesn't hold up the attached JVMs.
+     */
+    public void discover() {
+        List<VirtualMachineDescriptor> descriptors = VirtualMachine.list();
+        List<VirtualMachineDescriptor> newJvms = new ArrayList<>();
+        synchronized (this) {
+            if (shutDown) {
+                return;
+            }
+            Set<String> listed = new HashSet<>();
+            for (VirtualMachineDescriptor descriptor : descriptors) {
+                if (descriptor.id().equals(ownPid) || !displayNamePattern.matcher(descriptor.displayName()).find()) {
+                    continue;
+                }
+                listed.add(descriptor.id());
+                FailedAttach failedAttach = failedAttaches.get(descriptor.id());
+                if (!attachedJvms.containsKey(descriptor.id()) && (failedAttach == null || failedAttach.retryAt <= System.currentTimeMillis())) {
+                    newJvms.add(descriptor);
+                }
+            }
+            Iterator<Map.Entry<String, AttachedJvm>> attached = attachedJvms.entrySet().iterator();
+            while (attached.hasNext()) {
+                Map.Entry<String, AttachedJvm> jvm = attached.next();
+                if (!listed.contains(jvm.getKey())) {
+                    logger.info("JVM {} ({}) exited, no longer polling it", jvm.getKey(), jvm.getValue().serviceName);
+                    jvm.getValue().close(new ShutdownReport(ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS));
+                    attached.remove();
+                }
+            }
+            failedAttaches.keySet().retainAll(listed);
+        }
+        newJvms.forEach(this::attach);
+    }
+
+    /**
+     * Apply a reloaded configuration to the pipelines of the attached JVMs, and to the ones attached later
+     * @param newConf the reloaded configuration
+     */
+    public synchronized void reconfigure(Jmx2LogzioConfiguration newConf) {
+        boolean intervalChanged = newConf.getMetricsPollingIntervalInSeconds() != conf.getMetricsPollingIntervalInSeconds();
+        conf = newConf;
+        for (AttachedJvm jvm : attachedJvms.values()) {
+            jvm.pipeline.reconfigure(newConf);
+            if (intervalChanged) {
+                jvm.pollingTask.cancel(false);
+                jvm.pollingTask = schedule(jvm.pipeline, jvm.instanceKey);
+            }
+        }
+    }
+
+    /**
+     * @return the process ids of the JVMs being polled
+     */
+    public synchronized Set<String> getAttachedPids() {
+        return new HashSet<>(attachedJvms.keySet());
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown(new ShutdownReport(ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS));
+    }
+
+    /**
+     * Stop polling the attached JVMs, write what their pipelines collected, and shut the shared sinks down
+     */
+    @Override
+    public synchronized void shutdown(ShutdownReport report) {
+        shutDown = true;
+        attachedJvms.values().forEach(jvm -> jvm.close(report));
+        attachedJvms.clear();
+        sinks.forEach(sink -> sink.shutdown(report));
+    }
+
+    /**
+     * Collect the last, partial polling window of each attached JVM, until the shutdown's deadline
+     * @param report the shutdown's deadline and tally
+     */
+    public synchronized void pollFinal(ShutdownReport report) {
+        for (AttachedJvm jvm : attachedJvms.values()) {
+            report.runWithin(POLL_TASK_NAME_PREFIX + jvm.instanceKey, () -> jvm.pipeline.pollFinal(report));
+        }
+    }
+
+    /**
+     * Attach to a JVM and connect to it, then start polling it. Neither the attach nor the JMX connect has a timeout of
+     * its own, so they run on their own thread, which is abandoned if it doesn't connect in time.
+     */
+    private void attach(VirtualMachineDescriptor descriptor) {
+        CompletableFuture<JMXConnector> connecting = CompletableFuture.supplyAsync(() -> connect(descriptor), task -> {
+            Thread thread = new Thread(task, ATTACH_THREAD_PREFIX + descriptor.id());
+            thread.setDaemon(true);
+            thread.start();
+        });
+        JMXConnector connector;
+        try {
+            connector = connecting.get(ATTACH_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // A connection the abandoned attach still opens is closed
+            connecting.thenAccept(this::closeQuietly);
+            recordFailedAttach(descriptor, "timed out after " + ATTACH_TIMEOUT_IN_SECONDS + " seconds");
+            return;
+        } catch (ExecutionException e) {
+            recordFailedAttach(descriptor, e.getCause().getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connecting.thenAccept(this::closeQuietly);
+            return;
+        }
+        publish(descriptor, connector);
+    }
+
+    private synchronized void publish(VirtualMachineDescriptor descriptor, JMXConnector connector) {
+        if (shutDown) {
+            closeQuietly(connector);
+            return;
+        }
+        String serviceName = getServiceName(descriptor.id(), descriptor.displayName());
+        try {
+            Dimension pidDimension = new Dimension(PID_DIMENSION, descriptor.id());
+            JavaAgentClient client = new JavaAgentClient(connector.getMBeanServerConnection()) {
+                @Override
+                public void setExtraDimensions(List<Dimension> extraDimensions) {
+                    List<Dimension> dimensions = new ArrayList<>(extraDimensions);
+                    dimensions.add(pidDimension);
+                    super.setExtraDimensions(dimensions);
+                }
+            };
+            client.setExtraDimensions(conf.getExtraDimensions());
+            MetricsPipeline pipeline = new MetricsPipeline(conf, client, sinks, serviceName);
+            String instanceKey = serviceName + "@" + conf.getServiceHost() + "/" + descriptor.id();
+            attachedJvms.put(descriptor.id(), new AttachedJvm(serviceName, instanceKey, connector, pipeline, schedule(pipeline, instanceKey)));
+            failedAttaches.remove(descriptor.id());
+            logger.info("Polling JVM {} ({})", descriptor.id(), serviceName);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(connector);
+            recordFailedAttach(descriptor, e.getMessage());
+        }
+    }
+
+    private static JMXConnector connect(VirtualMachineDescriptor descriptor) {
+        try {
+            String connectorAddress;
+            VirtualMachine vm = VirtualMachine.attach(descriptor);
+            try {
+                connectorAddress = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+            return JMXConnectorFactory.connect(new JMXServiceURL(connectorAddress));
+        } catch (AttachNotSupportedException | IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Usually a JVM of another user, or one started with -XX:+DisableAttachMechanism, but it may also be a JVM which is
+     * still starting up, so it's tried again later
+     */
+    private synchronized void recordFailedAttach(VirtualMachineDescriptor descriptor, String reason) {
+        FailedAttach failedAttach = failedAttaches.computeIfAbsent(descriptor.id(), pid -> new FailedAttach());
+        failedAttach.failures++;
+        long backoffMs = getAttachBackoffMs(failedAttach.failures, conf.getAttachDiscoveryIntervalInSeconds());
+        failedAttach.retryAt = System.currentTimeMillis() + backoffMs;
+        logger.warn("Failed attaching to JVM {} ({}) {} times, trying again in {} seconds: {}", descriptor.id(),
+                descriptor.displayName(), failedAttach.failures, backoffMs / 1000, reason);
+    }
+
+    /**
+     * @param failures the number of failed attaches to a JVM in a row
+     * @param discoveryIntervalInSeconds the interval of listing the local JVMs
+     * @return the time to wait before attaching again, which starts at the discovery interval and doubles with every
+     * failure, up to an hour
+     */
+    static long getAttachBackoffMs(int failures, int discoveryIntervalInSeconds) {
+        long intervalMs = TimeUnit.SECONDS.toMillis(discoveryIntervalInSeconds);
+        int exponent = Math.min(failures - 1, MAX_ATTACH_BACKOFF_EXPONENT);
+        return Math.max(intervalMs, Math.min(intervalMs << exponent, MAX_ATTACH_BACKOFF_MS));
+    }
+
+    /**
+     * Remote JMX polls block on I/O, so they run on the blocking executor, one poll of a JVM at a time
+     */
+    private ScheduledFuture<?> schedule(MetricsPipeline pipeline, String instanceKey) {
+        int interval = conf.getMetricsPollingIntervalInSeconds();
+        long initialDelay = PollingPhase.getInitialDelayMs(instanceKey, interval, conf.getPhaseJitterPercent(), System.currentTimeMillis());
+        SerialTask pollTask = new SerialTask(POLL_TASK_NAME_PREFIX + instanceKey, AgentExecutors.getBlockingExecutor(), pipeline::pollAndSend);
+        return AgentExecutors.getScheduler().scheduleAtFixedRate(pollTask::request, initialDelay, TimeUnit.SECONDS.toMillis(interval), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param pid the JVM's process id
+     * @param displayName the JVM's main class or jar, followed by its arguments
+     * @return the simple name of the JVM's main class or jar, or its process id if it has no display name
+     */
+    static String getServiceName(String pid, String displayName) {
+        String mainClassOrJar = displayName.trim().split("\\s+")[0];
+        if (mainClassOrJar.isEmpty()) {
+            return PID_DIMENSION + "-" + pid;
+        }
+        if (mainClassOrJar.endsWith(".jar")) {
+            String jarName = mainClassOrJar.substring(mainClassOrJar.lastIndexOf('/') + 1);
+            return jarName.substring(0, jarName.length() - ".jar".length());
+        }
+        return mainClassOrJar.substring(mainClassOrJar.lastIndexOf('.') + 1);
+    }
+
+    private void closeQuietly(JMXConnector connector) {
+        if (connector != null) {
+            try {
+                connector.close();
+            } catch (IOException e) {
+                logger.debug("Failed closing JMX connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class FailedAttach {
+        private int failures = 0;
+        private long retryAt;
+    }
+
+    private class AttachedJvm {
+        private final String serviceName;
+        private final String instanceKey;
+        private final JMXConnector connector;
+        private final MetricsPipeline pipeline;
+        private ScheduledFuture<?> pollingTask;
+
+        private AttachedJvm(String serviceName, String instanceKey, JMXConnector connector, MetricsPipeline pipeline, ScheduledFuture<?> pollingTask) {
+            this.serviceName = serviceName;
+            this.instanceKey = instanceKey;
+            this.connector = connector;
+            this.pipeline = pipeline;
+            this.pollingTask = pollingTask;
+        }
+
+        /**
+         * @param report the deadline and tally the pipeline's flush is counted in
+         */
+        private void close(ShutdownReport report) {
+            pollingTask.cancel(false);
+            pipeline.shutdown(report);
+            closeQuietly(connector);
+        }
+    }
+}
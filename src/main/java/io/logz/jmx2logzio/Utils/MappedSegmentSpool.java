@@ -0,0 +1,345 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A crash safe block queue over a fixed number of preallocated, memory mapped segment files.
+ * Blocks are appended as records of {length, crc, payload}, where the crc also covers the segment's sequence number,
+ * so records left over from a recycled segment's previous use are never mistaken for new ones.
+ * The read position is checkpointed to a separate cursor file whenever a block is acknowledged, and fully read
+ * segments are recycled for writing, so the spool never grows past segmentSize * maxSegments.
+ * After a crash, unacknowledged blocks are read again from the checkpoint, so a block may be sent twice but not lost.
+ */
+public class MappedSegmentSpool implements BlockQueue {
+    private static final long SEGMENT_MAGIC = 0x6a6d78326c6f6731L;
+    private static final int SEGMENT_HEADER_SIZE = Long.BYTES * 2;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int CURSOR_SIZE = Long.BYTES + Integer.BYTES * 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String CURSOR_FILE = "cursor.dat";
+    private final Logger logger = LoggerFactory.getLogger(MappedSegmentSpool.class);
+
+    private final File spoolDir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> activeSegments = new ArrayDeque<>();
+    private final Deque<File> freeFiles = new ArrayDeque<>();
+    private final MappedByteBuffer cursor;
+    private final CRC32 crc = new CRC32();
+    private final byte[] sequenceBytes = new byte[Long.BYTES];
+
+    private int segmentFilesCount;
+    private long nextSequence = 0;
+    private int readPosition = SEGMENT_HEADER_SIZE;
+    private int peekedRecordSize = 0;
+    private int writePosition;
+    private long droppedBlocks = 0;
+    private boolean full = false;
+
+    /**
+     * Open the spool in the given directory, recovering any unacknowledged blocks
+     * @param spoolDir directory of the segment files and the cursor
+     * @param segmentSize size of each segment file in bytes, which is also the maximum size of a single block
+     * @param maxSegments maximum number of segment files
+     */
+    public MappedSegmentSpool(File spoolDir, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE || maxSegments < 2) {
+            throw new IllegalArgumentException("spool needs at least 2 segments which can hold a record");
+        }
+        this.spoolDir = spoolDir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        if (!spoolDir.exists() && !spoolDir.mkdirs()) {
+            throw new IOException("Failed creating spool directory " + spoolDir);
+        }
+        this.cursor = map(new File(spoolDir, CURSOR_FILE), CURSOR_SIZE);
+        recover();
+    }
+
+    /**
+     * @param spoolDir a directory
+     * @return true if a spool was opened in the directory before
+     */
+    public static boolean exists(File spoolDir) {
+        return new File(spoolDir, CURSOR_FILE).isFile();
+    }
+
+    @Override
+    public synchronized boolean enqueue(byte[] block) {
+        int recordSize = RECORD_HEADER_SIZE + block.length;
+        if (recordSize > segmentSize - SEGMENT_HEADER_SIZE) {
+            logger.warn("Dropping a block of {} bytes which is larger than the spool segment size", block.length);
+            droppedBlocks++;
+            return false;
+        }
+        Segment writeSegment = activeSegments.peekLast();
+        if (writeSegment == null || writePosition + recordSize > segmentSize) {
+            writeSegment = rollSegment();
+            if (writeSegment == null) {
+                droppedBlocks++;
+                return false;
+            }
+        }
+        MappedByteBuffer buffer = writeSegment.getBuffer();
+        buffer.putInt(writePosition + Integer.BYTES, checksum(writeSegment.sequence, block, 0, block.length));
+        buffer.position(writePosition + RECORD_HEADER_SIZE);
+        buffer.put(block);
+        buffer.putInt(writePosition, block.length);
+        writePosition += recordSize;
+        if (writePosition + Integer.BYTES <= segmentSize) {
+            buffer.putInt(writePosition, 0);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized byte[] peek() {
+        while (true) {
+            Segment readSegment = activeSegments.peekFirst();
+            if (readSegment == null) {
+                return null;
+            }
+            byte[] block = readRecord(readSegment, readPosition);
+            if (block != null) {
+                peekedRecordSize = RECORD_HEADER_SIZE + block.length;
+                return block;
+            }
+            if (readSegment == activeSegments.peekLast()) {
+                return null;
+            }
+            // The writer moved on, so this segment was fully read
+            activeSegments.pollFirst();
+            readSegment.unmap();
+            freeFiles.add(readSegment.file);
+            readPosition = SEGMENT_HEADER_SIZE;
+            checkpoint(activeSegments.peekFirst().sequence, readPosition);
+        }
+    }
+
+    @Override
+    public synchronized void ack() {
+        Segment readSegment = activeSegments.peekFirst();
+        if (readSegment == null || peekedRecordSize == 0) {
+            return;
+        }
+        readPosition += peekedRecordSize;
+        peekedRecordSize = 0;
+        checkpoint(readSegment.sequence, readPosition);
+    }
+
+    @Override
+    public synchronized void flush() {
+        Segment writeSegment = activeSegments.peekLast();
+        if (writeSegment != null && writeSegment.buffer != null) {
+            writeSegment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        activeSegments.forEach(Segment::unmap);
+    }
+
+    public synchronized long getDroppedBlocks() {
+        return droppedBlocks;
+    }
+
+    @Override
+    public synchronized Map<String, Number> getCounters() {
+        Map<String, Number> counters = new HashMap<>();
+        counters.put("queuedSegments", activeSegments.size());
+        counters.put("maxSegments", maxSegments);
+        counters.put("droppedNewestTotal", droppedBlocks);
+        return counters;
+    }
+
+    private Segment rollSegment() {
+        File file = freeFiles.poll();
+        if (file == null) {
+            if (segmentFilesCount >= maxSegments) {
+                if (!full) {
+                    logger.warn("Spool {} is full, dropping new blocks until the listener catches up", spoolDir);
+                    full = true;
+                }
+                return null;
+            }
+            file = newSegmentFile();
+            segmentFilesCount++;
+        }
+        Segment previous = activeSegments.peekLast();
+        if (previous != null && previous != activeSegments.peekFirst() && previous.buffer != null) {
+            previous.buffer.force();
+            previous.unmap();
+        }
+        full = false;
+        Segment segment = new Segment(file, nextSequence++);
+        MappedByteBuffer buffer = segment.getBuffer();
+        buffer.putLong(0, SEGMENT_MAGIC);
+        buffer.putLong(Long.BYTES, segment.sequence);
+        buffer.putInt(SEGMENT_HEADER_SIZE, 0);
+        activeSegments.addLast(segment);
+        writePosition = SEGMENT_HEADER_SIZE;
+        if (activeSegments.size() == 1) {
+            readPosition = SEGMENT_HEADER_SIZE;
+            checkpoint(segment.sequence, readPosition);
+        }
+        return segment;
+    }
+
+    private byte[] readRecord(Segment segment, int position) {
+        if (position + RECORD_HEADER_SIZE > segmentSize) {
+            return null;
+        }
+        MappedByteBuffer buffer = segment.getBuffer();
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > segmentSize - position - RECORD_HEADER_SIZE) {
+            return null;
+        }
+        byte[] block = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(block);
+        if (checksum(segment.sequence, block, 0, length) != buffer.getInt(position + Integer.BYTES)) {
+            return null;
+        }
+        return block;
+    }
+
+    private void checkpoint(long sequence, int position) {
+        cursor.putLong(0, sequence);
+        cursor.putInt(Long.BYTES, position);
+        cursor.putInt(Long.BYTES + Integer.BYTES, cursorChecksum(sequence, position));
+        cursor.force();
+    }
+
+    private void recover() throws IOException {
+        long cursorSequence = cursor.getLong(0);
+        int cursorPosition = cursor.getInt(Long.BYTES);
+        if (cursor.getInt(Long.BYTES + Integer.BYTES) != cursorChecksum(cursorSequence, cursorPosition)) {
+            cursorSequence = -1;
+            cursorPosition = SEGMENT_HEADER_SIZE;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        File[] files = spoolDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        for (File file : files == null ? new File[0] : files) {
+            if (file.length() != segmentSize) {
+                // Created with a different segment size, or never fully preallocated
+                if (!file.delete()) {
+                    throw new IOException("Failed deleting spool segment " + file);
+                }
+                continue;
+            }
+            segmentFilesCount++;
+            Segment segment = new Segment(file, -1);
+            MappedByteBuffer buffer = segment.getBuffer();
+            if (buffer.getLong(0) == SEGMENT_MAGIC && buffer.getLong(Long.BYTES) >= cursorSequence) {
+                segment.sequence = buffer.getLong(Long.BYTES);
+                segments.add(segment);
+                nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            } else {
+                if (buffer.getLong(0) == SEGMENT_MAGIC) {
+                    nextSequence = Math.max(nextSequence, buffer.getLong(Long.BYTES) + 1);
+                }
+                freeFiles.add(file);
+            }
+            segment.unmap();
+        }
+
+        segments.sort(Comparator.comparingLong(segment -> segment.sequence));
+        activeSegments.addAll(segments);
+        if (segments.isEmpty()) {
+            return;
+        }
+        readPosition = segments.get(0).sequence == cursorSequence ? cursorPosition : SEGMENT_HEADER_SIZE;
+        Segment writeSegment = activeSegments.peekLast();
+        writePosition = SEGMENT_HEADER_SIZE;
+        byte[] block;
+        while ((block = readRecord(writeSegment, writePosition)) != null) {
+            writePosition += RECORD_HEADER_SIZE + block.length;
+        }
+        logger.info("Recovered spool {} with {} segments to send", spoolDir, segments.size());
+    }
+
+    private File newSegmentFile() {
+        for (int index = 0; ; index++) {
+            File file = new File(spoolDir, SEGMENT_PREFIX + index + SEGMENT_SUFFIX);
+            if (!file.exists()) {
+                return file;
+            }
+        }
+    }
+
+    private int checksum(long sequence, byte[] block, int offset, int length) {
+        crc.reset();
+        ByteBuffer.wrap(sequenceBytes).putLong(0, sequence);
+        crc.update(sequenceBytes);
+        crc.update(block, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private int cursorChecksum(long sequence, int position) {
+        crc.reset();
+        ByteBuffer.wrap(sequenceBytes).putLong(0, sequence);
+        crc.update(sequenceBytes);
+        crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, position).array());
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private class Segment {
+        private final File file;
+        private long sequence;
+        private MappedByteBuffer buffer;
+
+        private Segment(File file, long sequence) {
+            this.file = file;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Only the segments being read and written are kept mapped, the others are mapped again when reached
+         */
+        private MappedByteBuffer getBuffer() {
+            if (buffer == null) {
+                try {
+                    buffer = map(file, segmentSize);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed mapping spool segment " + file, e);
+                }
+            }
+            return buffer;
+        }
+
+        private void unmap() {
+            // The mapping itself is released when the buffer is garbage collected
+            buffer = null;
+        }
+    }
+}
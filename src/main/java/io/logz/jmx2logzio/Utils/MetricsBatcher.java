@@ -0,0 +1,168 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.logz.jmx2logzio.objects.Metric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Joins the metric documents of a polling cycle into newline delimited blocks of up to a maximum size, so each block
+ * is queued (and persisted, when using the disk queue) as a single entry instead of one entry per document.
+ * Documents are serialized straight into reused buffers, so the only allocation per block is the block itself.
+ * With dictionary encoding, the first document of a block with a given set of dimensions carries them along with an
+ * id, and the block's later documents with the same dimensions only carry the id (see {@link DimensionDictionaryDecoder}).
+ * Each block has its own dictionary, so blocks can still be sent, dropped or decoded independently of each other.
+ * Not thread safe, each writer should have its own batcher.
+ */
+public class MetricsBatcher {
+    public static final String TIMESTAMP_FIELD = "@timestamp";
+    public static final String DIMENSIONS_FIELD = "dim";
+    public static final String METRICS_FIELD = "metrics";
+    public static final String DIMENSIONS_ID_FIELD = "dimId";
+    public static final String DIMENSIONS_REF_FIELD = "dimRef";
+    private static final byte DOCUMENTS_SEPARATOR = '\n';
+    private static final int INITIAL_DOCUMENT_BUFFER_SIZE = 4 * 1024;
+
+    private final ObjectMapper mapper;
+    private final int maxBatchSizeInBytes;
+    private final DimensionEncoding dimensionEncoding;
+    private final ReusableBuffer documentBuffer = new ReusableBuffer(INITIAL_DOCUMENT_BUFFER_SIZE);
+    private final ReusableBuffer blockBuffer;
+    private final Map<Map<String, Object>, Integer> dimensionIds = new HashMap<>();
+
+    public enum DimensionEncoding {
+        INLINE("inline"),
+        DICTIONARY("dictionary");
+
+        private final String configValue;
+
+        DimensionEncoding(String configValue) {
+            this.configValue = configValue;
+        }
+
+        public String getConfigValue() {
+            return configValue;
+        }
+
+        /**
+         * @param configValue the dimension encoding as written in the configuration
+         * @return the matching dimension encoding, or null if there is none
+         */
+        public static DimensionEncoding fromConfigValue(String configValue) {
+            for (DimensionEncoding encoding : values()) {
+                if (encoding.configValue.equalsIgnoreCase(configValue)) {
+                    return encoding;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param maxBatchSizeInBytes maximum size of a block, a single document larger than that is written as its own block
+     */
+    public MetricsBatcher(int maxBatchSizeInBytes) {
+        this(maxBatchSizeInBytes, DimensionEncoding.INLINE);
+    }
+
+    /**
+     * @param maxBatchSizeInBytes maximum size of a block, a single document larger than that is written as its own block
+     * @param dimensionEncoding whether each document carries its dimensions or refers to the block's dictionary
+     */
+    public MetricsBatcher(int maxBatchSizeInBytes, DimensionEncoding dimensionEncoding) {
+        this.maxBatchSizeInBytes = maxBatchSizeInBytes;
+        this.dimensionEncoding = dimensionEncoding;
+        this.blockBuffer = new ReusableBuffer(Math.min(maxBatchSizeInBytes, 64 * 1024));
+        this.mapper = new ObjectMapper();
+        this.mapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Serialize metrics and pass them on as size bounded blocks
+     * @param metrics the metrics to serialize
+     * @param blockConsumer receives each completed block of newline delimited JSON documents
+     * @return the number of blocks written
+     */
+    public int write(List<Metric> metrics, Consumer<byte[]> blockConsumer) {
+        int blocks = 0;
+        blockBuffer.reset();
+        dimensionIds.clear();
+        for (Metric metric : metrics) {
+            serialize(metric);
+            int separatorSize = blockBuffer.size() > 0 ? 1 : 0;
+            if (blockBuffer.size() > 0 && blockBuffer.size() + separatorSize + documentBuffer.size() > maxBatchSizeInBytes) {
+                blockConsumer.accept(blockBuffer.copy());
+                blocks++;
+                blockBuffer.reset();
+                if (dimensionEncoding == DimensionEncoding.DICTIONARY) {
+                    // The new block starts a new dictionary, so the document must define its dimensions again
+                    dimensionIds.clear();
+                    serialize(metric);
+                }
+            }
+            if (blockBuffer.size() > 0) {
+                blockBuffer.write(DOCUMENTS_SEPARATOR);
+            }
+            blockBuffer.write(documentBuffer.buffer(), 0, documentBuffer.size());
+        }
+        if (blockBuffer.size() > 0) {
+            blockConsumer.accept(blockBuffer.copy());
+            blocks++;
+            blockBuffer.reset();
+        }
+        return blocks;
+    }
+
+    private void serialize(Metric metric) {
+        documentBuffer.reset();
+        try {
+            if (dimensionEncoding == DimensionEncoding.DICTIONARY) {
+                serializeWithDictionary(metric);
+            } else {
+                mapper.writeValue(documentBuffer, metric);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void serializeWithDictionary(Metric metric) throws IOException {
+        Map<String, Object> dimensions = metric.getDimensionsMap();
+        Integer id = dimensionIds.get(dimensions);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(documentBuffer)) {
+            generator.writeStartObject();
+            generator.writeStringField(TIMESTAMP_FIELD, metric.getTimestamp());
+            if (id == null) {
+                id = dimensionIds.size();
+                dimensionIds.put(dimensions, id);
+                generator.writeNumberField(DIMENSIONS_ID_FIELD, id);
+                generator.writeObjectField(DIMENSIONS_FIELD, dimensions);
+            } else {
+                generator.writeNumberField(DIMENSIONS_REF_FIELD, id);
+            }
+            generator.writeObjectField(METRICS_FIELD, metric.getMetricMap());
+            generator.writeEndObject();
+        }
+    }
+
+    private static class ReusableBuffer extends ByteArrayOutputStream {
+        private ReusableBuffer(int size) {
+            super(size);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+
+        private byte[] copy() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+}
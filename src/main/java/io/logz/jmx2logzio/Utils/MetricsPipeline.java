@@ -2,11 +2,15 @@ package io.logz.jmx2logzio.Utils;
 
 import com.google.common.base.Stopwatch;
 import io.logz.jmx2logzio.MetricBean;
-import io.logz.jmx2logzio.clients.ListenerWriter;
+import io.logz.jmx2logzio.bootstrap.AgentFootprint;
+import io.logz.jmx2logzio.clients.MetricSinkFactory;
+import io.logz.jmx2logzio.clients.SinkRunner;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.objects.AttributeRule;
 import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.MBeanClient;
 import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,32 +18,97 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-
-public class MetricsPipeline {
+/**
+ * Polls the metrics and writes them to the sinks in three stages, each a task of its own on the agent's shared
+ * executors (see {@link AgentExecutors}): the polling task collects a cycle from the MBeans, the process task limits,
+ * stamps and prefixes it, and each sink's runner serializes and writes it. Stages are joined by bounded queues, so
+ * collecting the next cycle overlaps with the output of the previous one, and a slow output doesn't delay the polls.
+ * When the process stage is behind by more than its queue holds, the collected cycle is dropped. A reloaded
+ * configuration is applied between cycles, see {@link #reconfigure}.
+ * When polling the JVM the agent runs in, an {@link OverheadGovernor} keeps the agent's own cost within its budget.
+ */
+public class MetricsPipeline implements Shutdownable {
+    public static final String PIPELINE_METRIC_TYPE = "Pipeline";
+    public static final String FOOTPRINT_METRIC_TYPE = "AgentFootprint";
+    private static final String SELF_METRICS_DOMAIN = "jmx2logzio";
+    private static final int QUEUED_CYCLES = 2;
+    private static final String PROCESS_TASK_NAME = "process";
     private static final DateTimeFormatter timestampFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneId.of("UTC"));
     private final Logger logger = LoggerFactory.getLogger(MetricsPipeline.class);
-    private final Pattern beansWhiteListPattern;
-    private final Pattern beansBlackListPattern;
+    private Pattern beansWhiteListPattern;
+    private Pattern beansBlackListPattern;
     private final List<Dimension> metricsPrefix;
-    private final int pollingIntervalSeconds;
-    private final ListenerWriter listenerClient;
+    private int pollingIntervalSeconds;
+    private final List<SinkRunner> sinks;
+    // Whether the sinks are this pipeline's own, or shared with other pipelines and shut down by their creator
+    private final boolean ownSinks;
     private final MBeanClient client;
+    private DiscoverySnapshot discoverySnapshot;
+    private final BeanQuarantine beanQuarantine;
+    private final CardinalityLimiter cardinalityLimiter;
+    private final OverheadGovernor governor;
+    private AttributeFilter attributeFilter;
+    private String attributeRulesKey;
+    private List<Dimension> extraDimensions;
+    private final AtomicReference<Jmx2LogzioConfiguration> pendingConf = new AtomicReference<>();
+    private final BlockingQueue<CollectedCycle> collectedCycles = new ArrayBlockingQueue<>(QUEUED_CYCLES);
+    private final SerialTask processTask;
+    private final Object processLock = new Object();
+    private volatile long lastCollectTimeMs = 0;
+    private long lastProcessTimeMs = 0;
+    private final AtomicLong droppedCycles = new AtomicLong();
 
     public MetricsPipeline(Jmx2LogzioConfiguration conf, MBeanClient client) {
+        this(conf, client, MetricSinkFactory.createSinks(conf), true, conf.getServiceName(), conf.isDiscoverySnapshotEnabled(), createGovernor(conf));
+    }
+
+    /**
+     * A pipeline of one of several polled JVMs, writing to sinks shared with the other JVMs' pipelines
+     * @param conf the configuration
+     * @param client the JVM's client
+     * @param sinks the shared sinks' runners
+     * @param serviceName the JVM's service name, sent as the serviceName dimension
+     */
+    public MetricsPipeline(Jmx2LogzioConfiguration conf, MBeanClient client, List<SinkRunner> sinks, String serviceName) {
+        // The discovery snapshot file describes a single JVM, so it isn't used
+        this(conf, client, sinks, false, serviceName, false, null);
+    }
+
+    private MetricsPipeline(Jmx2LogzioConfiguration conf, MBeanClient client, List<SinkRunner> sinks, boolean ownSinks, String serviceName,
+                            boolean discoverySnapshotEnabled, OverheadGovernor governor) {
         metricsPrefix = new ArrayList<>();
-        listenerClient = new ListenerWriter(conf.getSenderParams());
+        this.sinks = sinks;
+        this.ownSinks = ownSinks;
         this.client = client;
         this.pollingIntervalSeconds = conf.getMetricsPollingIntervalInSeconds();
         this.beansWhiteListPattern = conf.getWhiteListPattern();
         this.beansBlackListPattern = conf.getBlackListPattern();
-        listenerClient.start();
+        this.extraDimensions = conf.getExtraDimensions();
+        this.beanQuarantine = new BeanQuarantine(conf.getQuarantineFailureThreshold(), conf.getQuarantineLatencyThresholdInMs(),
+                TimeUnit.SECONDS.toMillis(pollingIntervalSeconds), TimeUnit.SECONDS.toMillis(conf.getQuarantineMaxBackoffInSeconds()));
+        client.setBeanQuarantine(beanQuarantine);
+        this.attributeFilter = new AttributeFilter(conf.getAttributeRules());
+        this.attributeRulesKey = getAttributeRulesKey(conf.getAttributeRules());
+        client.setAttributeFilter(attributeFilter);
+        client.setBeanFilter(this::isBeanIncluded);
+        this.cardinalityLimiter = new CardinalityLimiter(conf.getCardinalityMaxSeriesPerPattern(), conf.getCardinalityMaxSeriesPerDomain(),
+                conf.getCardinalityTopK(), conf.getCardinalityRankMetric());
+        this.governor = governor;
+        // A client reading bean patterns doesn't discover beans, so there's nothing to snapshot
+        this.discoverySnapshot = discoverySnapshotEnabled && !client.readsBeanPatterns() ?
+                new DiscoverySnapshot(conf.getSenderParams().getDiscoverySnapshotFile(), getFiltersKey(conf)) : null;
 
-        String serviceName = conf.getServiceName();
         String serviceHost = conf.getServiceHost();
 
         if (serviceName != null && !serviceName.isEmpty()) {
@@ -51,57 +120,261 @@ public class MetricsPipeline {
             Dimension serviceHostMap = new Dimension(Metric.SERVICE_HOST, MetricsUtils.sanitizeMetricName(serviceHost, false));
             metricsPrefix.add(serviceHostMap);
         }
+        this.processTask = new SerialTask(PROCESS_TASK_NAME, AgentExecutors.getScheduler(), this::processCollected);
+    }
+
+    /**
+     * The governor only applies to the agent's own JVM, whose CPU and heap it shares with the application. Beans in the
+     * priority lanes' domains are the governor's priority beans.
+     */
+    private static OverheadGovernor createGovernor(Jmx2LogzioConfiguration conf) {
+        if (conf.getMetricClientType() != Jmx2LogzioConfiguration.MetricClientType.MBEAN_PLATFORM || !conf.isGovernorEnabled()) {
+            return null;
+        }
+        List<String> priorityDomains = conf.getSenderParams().getPriorityLanes().stream()
+                .flatMap(lane -> lane.getDomains().stream())
+                .collect(Collectors.toList());
+        return new OverheadGovernor(conf.getGovernorMaxCpuPercent(), conf.getGovernorMaxAllocatedBytesPerCycle(),
+                conf.getGovernorMaxHeapUsedPercent(), priorityDomains);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown(new ShutdownReport(ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS));
+    }
+
+    /**
+     * Process the cycles which were already collected, and shut the sinks down if they're this pipeline's own
+     */
+    @Override
+    public void shutdown(ShutdownReport report) {
+        processCollected();
+        if (ownSinks) {
+            sinks.forEach(sink -> sink.shutdown(report));
+        }
+    }
+
+    /**
+     * Collect the last, partial polling window on shutdown, so a restart doesn't leave a hole in the graphs. The
+     * cycle is processed by {@link #shutdown(ShutdownReport)}.
+     * @param report the shutdown's tally, which the collected metrics are added to
+     */
+    public void pollFinal(ShutdownReport report) {
+        try {
+            applyPendingConfiguration();
+            CollectedCycle cycle = collect();
+            if (cycle == null || cycle.metrics.isEmpty()) {
+                return;
+            }
+            if (collectedCycles.offer(cycle)) {
+                report.addFinalPollMetrics(cycle.metrics.size());
+            } else {
+                report.addDroppedCycles(1);
+            }
+        } catch (Throwable t) {
+            logger.error("Failed the final poll: {}", t.getMessage(), t);
+        }
+    }
 
+    /**
+     * Apply the reloadable settings of a new configuration at the start of the next collected cycle
+     * @param conf the reloaded configuration, only its filters, extra dimensions, attribute rules and polling interval are used
+     */
+    public void reconfigure(Jmx2LogzioConfiguration conf) {
+        pendingConf.set(conf);
+    }
+
+    /**
+     * Swap the settings which changed in the pending configuration, so a cycle is always collected and processed
+     * with a single consistent set of settings
+     */
+    private void applyPendingConfiguration() {
+        Jmx2LogzioConfiguration conf = pendingConf.getAndSet(null);
+        if (conf == null) {
+            return;
+        }
+        if (!conf.getWhiteListPattern().pattern().equals(beansWhiteListPattern.pattern()) ||
+                !conf.getBlackListPattern().pattern().equals(beansBlackListPattern.pattern())) {
+            beansWhiteListPattern = conf.getWhiteListPattern();
+            beansBlackListPattern = conf.getBlackListPattern();
+            // The persisted beans were filtered with the old lists, a snapshot with the new filters key replaces them
+            if (discoverySnapshot != null) {
+                discoverySnapshot = new DiscoverySnapshot(discoverySnapshot.getSnapshotFile(), getFiltersKey(conf));
+            }
+            logger.info("Bean filters reloaded, white list: {}, black list: {}", beansWhiteListPattern.pattern(), beansBlackListPattern.pattern());
+        }
+        if (!getDimensionsKey(conf.getExtraDimensions()).equals(getDimensionsKey(extraDimensions))) {
+            extraDimensions = conf.getExtraDimensions();
+            client.setExtraDimensions(extraDimensions);
+            logger.info("Extra dimensions reloaded: {}", getDimensionsKey(extraDimensions));
+        }
+        String rulesKey = getAttributeRulesKey(conf.getAttributeRules());
+        if (!rulesKey.equals(attributeRulesKey)) {
+            attributeFilter = new AttributeFilter(conf.getAttributeRules());
+            attributeRulesKey = rulesKey;
+            client.setAttributeFilter(attributeFilter);
+            logger.info("Attribute rules reloaded: {} rules", conf.getAttributeRules().size());
+        }
+        if (conf.getMetricsPollingIntervalInSeconds() != pollingIntervalSeconds) {
+            pollingIntervalSeconds = conf.getMetricsPollingIntervalInSeconds();
+            beanQuarantine.setBaseBackoffMs(TimeUnit.SECONDS.toMillis(pollingIntervalSeconds));
+            logger.info("Polling interval reloaded: {} seconds", pollingIntervalSeconds);
+        }
     }
 
-    private List<Metric> poll() {
+    /**
+     * Collect stage: read the metrics of the current polling window from the MBeans
+     */
+    private CollectedCycle collect() {
         try {
             Instant pollingWindowStart = getPollingWindowStart();
             Stopwatch sw = Stopwatch.createStarted();
-            List<MetricBean> beans = client.getBeans();
-            if (beans.isEmpty()) {
-                return null;
-            }
-            List<MetricBean> filteredBeans = getFilteredBeans(beans);
+            List<MetricBean> filteredBeans = discoverySnapshot != null ? discoverySnapshot.takeWarmBeans() : null;
+            if (client.readsBeanPatterns()) {
+                // The patterns are expanded, and their beans filtered, by the client on read
+                filteredBeans = client.getBeans();
+            } else if (filteredBeans != null) {
+                filteredBeans = client.retainRegistered(filteredBeans);
+                logger.debug("Using {} metric beans from discovery snapshot. Time = {}ms, for {}", filteredBeans.size(),
+                        sw.stop().elapsed(TimeUnit.MILLISECONDS),
+                        timestampFormatter.format(pollingWindowStart));
+            } else {
+                List<MetricBean> beans = client.getBeans();
+                if (beans.isEmpty()) {
+                    return null;
+                }
+                filteredBeans = getFilteredBeans(beans);
+                if (discoverySnapshot != null) {
+                    discoverySnapshot.update(filteredBeans);
+                }
 
-            logger.debug("Found {} metric beans and after filtering list work with {} . Time = {}ms, for {}", beans.size(), filteredBeans.size(),
-                    sw.stop().elapsed(TimeUnit.MILLISECONDS),
-                    timestampFormatter.format(pollingWindowStart));
+                logger.debug("Found {} metric beans and after filtering list work with {} . Time = {}ms, for {}", beans.size(), filteredBeans.size(),
+                        sw.stop().elapsed(TimeUnit.MILLISECONDS),
+                        timestampFormatter.format(pollingWindowStart));
+            }
 
             sw.reset().start();
+            if (!client.readsBeanPatterns()) {
+                filteredBeans = attributeFilter.apply(filteredBeans);
+            }
+            filteredBeans = beanQuarantine.filterAvailable(filteredBeans);
+            if (governor != null) {
+                filteredBeans = governor.filterBeans(filteredBeans);
+            }
             List<Metric> metrics = client.getMetrics(filteredBeans);
             logger.debug("metrics fetched. Time: {} ms; Metrics: {}", sw.stop().elapsed(TimeUnit.MILLISECONDS), metrics.size());
-            if (logger.isTraceEnabled()) printToFile(metrics);
-            return changeTimeTo(pollingWindowStart, metrics);
+            // The quarantine is updated by the client, so its counters are read on the collecting thread
+            Metric quarantineMetric = beanQuarantine.getCountersMetric(pollingWindowStart, extraDimensions);
+            return new CollectedCycle(pollingWindowStart, metrics, quarantineMetric, extraDimensions);
         } catch (MBeanClient.MBeanClientPollingFailure e) {
             logger.error("Failed polling metrics from client ({}): {}", client.getClass().toString(), e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * Process stage: limit the cardinality, add the self metrics, stamp the polling window and prefix the cycle,
+     * then hand it to the sinks' runners
+     */
+    private void process(CollectedCycle cycle) {
+        Stopwatch sw = Stopwatch.createStarted();
+        Instant pollingWindowStart = cycle.pollingWindowStart;
+        List<Dimension> extraDimensions = cycle.extraDimensions;
+        List<Metric> metrics = cardinalityLimiter.limit(cycle.metrics);
+        Metric overflowMetric = cardinalityLimiter.getOverflowMetric(pollingWindowStart, extraDimensions);
+        if (overflowMetric != null) {
+            metrics.add(overflowMetric);
+        }
+        metrics.add(cycle.quarantineMetric);
+        for (MetricSink sink : sinks) {
+            Metric sinkMetric = sink.getCountersMetric(pollingWindowStart, extraDimensions);
+            if (sinkMetric != null) {
+                metrics.add(sinkMetric);
+            }
+        }
+        metrics.add(getPipelineMetric(pollingWindowStart, extraDimensions));
+        if (governor != null) {
+            metrics.add(getSelfMetric(OverheadGovernor.GOVERNOR_METRIC_TYPE, governor.getCounters(), pollingWindowStart, extraDimensions));
+        }
+        metrics.add(getSelfMetric(AgentExecutors.THREADS_METRIC_TYPE, AgentExecutors.getCounters(), pollingWindowStart, extraDimensions));
+        Map<String, Long> footprint = AgentFootprint.getCounters();
+        if (!footprint.isEmpty()) {
+            metrics.add(getSelfMetric(FOOTPRINT_METRIC_TYPE, new LinkedHashMap<>(footprint), pollingWindowStart, extraDimensions));
+        }
+        if (logger.isTraceEnabled()) printToFile(metrics);
+        metrics = changeTimeTo(pollingWindowStart, metrics);
+        addPrefix(metrics);
+        writeToSinks(metrics);
+        lastProcessTimeMs = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+        logger.debug("metrics written to {} sinks. Time: {} ms", sinks.size(), lastProcessTimeMs);
+    }
+
+    /**
+     * Build a document of the previous cycle's stage times, and each stage's queue fill and drops
+     */
+    private Metric getPipelineMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("collectTimeMs", lastCollectTimeMs);
+        counters.put("processTimeMs", lastProcessTimeMs);
+        counters.put("queuedCycles", collectedCycles.size());
+        counters.put("droppedCyclesTotal", droppedCycles.get());
+        for (SinkRunner sink : sinks) {
+            sink.getStageCounters().forEach((key, value) -> counters.put(sink.getName() + "." + key, value));
+        }
+        return getSelfMetric(PIPELINE_METRIC_TYPE, counters, timestamp, extraDimensions);
+    }
+
+    private Metric getSelfMetric(String type, Map<String, Number> counters, Instant timestamp, List<Dimension> extraDimensions) {
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, SELF_METRICS_DOMAIN));
+        dimensions.add(new Dimension("type", type));
+        dimensions.addAll(extraDimensions);
+        return new Metric(counters, timestamp, dimensions);
+    }
+
     public List<MetricBean> getFilteredBeans(List<MetricBean> beans) {
-        List<MetricBean> filteredBeans = beans.stream()
-                .filter(bean -> beansWhiteListPattern.matcher(bean.getName()).find())
+        return beans.stream()
+                .filter(bean -> isBeanIncluded(bean.getName()))
                 .collect(Collectors.toList());
-        filteredBeans.removeAll(beans.stream()
-                .filter((bean -> beansBlackListPattern.matcher(bean.getName()).find()))
-                .collect(Collectors.toList()));
-        return filteredBeans;
     }
 
+    private boolean isBeanIncluded(String beanName) {
+        return beansWhiteListPattern.matcher(beanName).find() && !beansBlackListPattern.matcher(beanName).find();
+    }
+
+    private String getFiltersKey(Jmx2LogzioConfiguration conf) {
+        return conf.getMetricClientType() + "|" + conf.getJolokiaFullUrl() + "|" + beansWhiteListPattern.pattern() + "|" + beansBlackListPattern.pattern();
+    }
+
+    private static String getDimensionsKey(List<Dimension> dimensions) {
+        return dimensions.stream().map(dimension -> dimension.getKey() + "=" + dimension.getValue()).collect(Collectors.joining(","));
+    }
+
+    private static String getAttributeRulesKey(List<AttributeRule> rules) {
+        return rules.stream().map(rule -> rule.getBeanGlob() + "=>" + rule.getIncludes() + "!" + rule.getExcludes()).collect(Collectors.joining("|"));
+    }
+
+    /**
+     * Collect a cycle and queue it for the process stage, dropping it if the process stage's queue is full
+     */
     public void pollAndSend() {
 
         try {
+            applyPendingConfiguration();
+            if (governor != null && !governor.startCycle()) {
+                logger.debug("skipping the polling cycle, the overhead governor is backing off");
+                return;
+            }
             logger.debug("polling metrics");
-            List<Metric> metrics = poll();
-
-            if (metrics == null || metrics.isEmpty()) return;
-            addPrefix(metrics);
             Stopwatch sw = Stopwatch.createStarted();
-            sendToListener(metrics);
-            logger.debug("metrics sent to listener. Time: {} ms",
-                    sw.stop().elapsed(TimeUnit.MILLISECONDS));
+            CollectedCycle cycle = collect();
+            lastCollectTimeMs = sw.stop().elapsed(TimeUnit.MILLISECONDS);
 
+            if (cycle == null || cycle.metrics.isEmpty()) return;
+            if (!collectedCycles.offer(cycle) && droppedCycles.getAndIncrement() % 100 == 0) {
+                logger.warn("Writing metrics is falling behind polling, dropped {} polling cycles so far", droppedCycles.get());
+            }
+            processTask.request();
         } catch (Throwable t) {
             logger.error("Unexpected error occured while polling and sending. Error = {}", t.getMessage(), t);
             // not throwing out since the scheduler will stop in any exception
@@ -110,6 +383,26 @@ public class MetricsPipeline {
 
     }
 
+    /**
+     * Process the collected cycles, oldest first. Runs on the process task, and on shutdown.
+     */
+    private void processCollected() {
+        synchronized (processLock) {
+            CollectedCycle cycle;
+            while ((cycle = collectedCycles.poll()) != null) {
+                processSafely(cycle);
+            }
+        }
+    }
+
+    private void processSafely(CollectedCycle cycle) {
+        try {
+            process(cycle);
+        } catch (Throwable t) {
+            logger.error("Unexpected error occured while processing {} metrics. Error = {}", cycle.metrics.size(), t.getMessage(), t);
+        }
+    }
+
     private Instant getPollingWindowStart() {
         long now = System.currentTimeMillis();
         long pollingIntervalMs = TimeUnit.SECONDS.toMillis(pollingIntervalSeconds);
@@ -132,8 +425,24 @@ public class MetricsPipeline {
         metrics.forEach(metric -> metric.addDimensionsToStart(metricsPrefix));
     }
 
-    private void sendToListener(List<Metric> metrics) {
-        listenerClient.writeMetrics(metrics);
+    private void writeToSinks(List<Metric> metrics) {
+        for (MetricSink sink : sinks) {
+            sink.writeMetrics(metrics);
+        }
+    }
+
+    private static class CollectedCycle {
+        private final Instant pollingWindowStart;
+        private final List<Metric> metrics;
+        private final Metric quarantineMetric;
+        private final List<Dimension> extraDimensions;
+
+        private CollectedCycle(Instant pollingWindowStart, List<Metric> metrics, Metric quarantineMetric, List<Dimension> extraDimensions) {
+            this.pollingWindowStart = pollingWindowStart;
+            this.metrics = metrics;
+            this.quarantineMetric = quarantineMetric;
+            this.extraDimensions = extraDimensions;
+        }
     }
 
 }
@@ -1,5 +1,7 @@
 package io.logz.jmx2logzio.Utils;
 
+import java.util.regex.Pattern;
+
 public class MetricsUtils {
     public static String sanitizeMetricName(String s, boolean keepDot) {
         StringBuilder sb = new StringBuilder(s.length());
@@ -27,4 +29,34 @@ public class MetricsUtils {
     public static String sanitizeMetricName(String s) {
         return MetricsUtils.sanitizeMetricName(s, true);
     }
+
+    /**
+     * Compile a glob, where * matches any sequence of characters and ? matches a single character
+     * @param glob the glob string
+     * @return a pattern matching the whole input against the glob
+     */
+    public static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public static boolean isGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0;
+    }
 }
@@ -0,0 +1,207 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded block queue in a single direct buffer, so queued metrics don't add to the monitored application's heap.
+ * Blocks are stored back to back as {length, payload} records which wrap around the end of the buffer, and the
+ * capacity is exact: a block is accepted only if its record fits in the bytes not used by queued records.
+ * When a block doesn't fit, the overflow policy decides whether the oldest blocks are dropped, the new block is dropped,
+ * or the writer waits for the sender to free space up to a timeout (and then drops the new block).
+ */
+public class OffHeapRingBuffer implements BlockQueue {
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES;
+    private final Logger logger = LoggerFactory.getLogger(OffHeapRingBuffer.class);
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition spaceFreed = lock.newCondition();
+    private final byte[] headerBytes = new byte[RECORD_HEADER_SIZE];
+
+    private int head = 0;
+    private int tail = 0;
+    private int usedBytes = 0;
+    private int queuedBlocks = 0;
+    // Index of the block at the head, so an ack never removes a block other than the one peeked
+    private long headIndex = 0;
+    private long peekedIndex = -1;
+    private long enqueuedTotal = 0;
+    private long droppedOldestTotal = 0;
+    private long droppedNewestTotal = 0;
+
+    /**
+     * @param capacityInBytes size of the direct buffer, including a 4 byte header per block
+     * @param overflowPolicy what to do with a block which doesn't fit
+     * @param blockTimeoutInMs maximum time to wait for free space with the BLOCK policy
+     */
+    public OffHeapRingBuffer(int capacityInBytes, OverflowPolicy overflowPolicy, long blockTimeoutInMs) {
+        this.buffer = ByteBuffer.allocateDirect(capacityInBytes);
+        this.capacity = capacityInBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutInMs);
+    }
+
+    @Override
+    public boolean enqueue(byte[] block) {
+        int recordSize = RECORD_HEADER_SIZE + block.length;
+        lock.lock();
+        try {
+            if (recordSize > capacity || !makeRoom(recordSize)) {
+                if (droppedNewestTotal++ == 0) {
+                    logger.warn("Off-heap queue is full, dropping new blocks ({} policy)", overflowPolicy.getConfigValue());
+                }
+                return false;
+            }
+            write(tail, intToBytes(block.length), RECORD_HEADER_SIZE);
+            write((tail + RECORD_HEADER_SIZE) % capacity, block, block.length);
+            tail = (tail + recordSize) % capacity;
+            usedBytes += recordSize;
+            queuedBlocks++;
+            enqueuedTotal++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] peek() {
+        lock.lock();
+        try {
+            if (queuedBlocks == 0) {
+                return null;
+            }
+            byte[] block = new byte[headLength()];
+            read((head + RECORD_HEADER_SIZE) % capacity, block);
+            peekedIndex = headIndex;
+            return block;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void ack() {
+        lock.lock();
+        try {
+            // The peeked block may have already been dropped to make room for newer ones
+            if (queuedBlocks > 0 && peekedIndex == headIndex) {
+                removeHead();
+            }
+            peekedIndex = -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Map<String, Number> getCounters() {
+        lock.lock();
+        try {
+            Map<String, Number> counters = new HashMap<>();
+            counters.put("queuedBlocks", queuedBlocks);
+            counters.put("usedBytes", usedBytes);
+            counters.put("capacityBytes", capacity);
+            counters.put("enqueuedBlocksTotal", enqueuedTotal);
+            counters.put("droppedOldestTotal", droppedOldestTotal);
+            counters.put("droppedNewestTotal", droppedNewestTotal);
+            return counters;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free space for a record according to the overflow policy, must be called holding the lock
+     * @return false if the new block should be dropped
+     */
+    private boolean makeRoom(int recordSize) {
+        if (capacity - usedBytes >= recordSize) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (capacity - usedBytes < recordSize) {
+                    removeHead();
+                    droppedOldestTotal++;
+                }
+                return true;
+            case BLOCK:
+                long remainingNanos = blockTimeoutNanos;
+                try {
+                    while (capacity - usedBytes < recordSize) {
+                        if (remainingNanos <= 0) {
+                            return false;
+                        }
+                        remainingNanos = spaceFreed.awaitNanos(remainingNanos);
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case DROP_NEWEST:
+            default:
+                return false;
+        }
+    }
+
+    private void removeHead() {
+        int recordSize = RECORD_HEADER_SIZE + headLength();
+        head = (head + recordSize) % capacity;
+        usedBytes -= recordSize;
+        queuedBlocks--;
+        headIndex++;
+        spaceFreed.signalAll();
+    }
+
+    private int headLength() {
+        read(head, headerBytes);
+        return ByteBuffer.wrap(headerBytes).getInt();
+    }
+
+    private byte[] intToBytes(int value) {
+        ByteBuffer.wrap(headerBytes).putInt(0, value);
+        return headerBytes;
+    }
+
+    private void write(int position, byte[] source, int length) {
+        int firstPart = Math.min(length, capacity - position);
+        buffer.position(position);
+        buffer.put(source, 0, firstPart);
+        if (firstPart < length) {
+            buffer.position(0);
+            buffer.put(source, firstPart, length - firstPart);
+        }
+    }
+
+    private void read(int position, byte[] destination) {
+        int firstPart = Math.min(destination.length, capacity - position);
+        buffer.position(position);
+        buffer.get(destination, 0, firstPart);
+        if (firstPart < destination.length) {
+            buffer.position(0);
+            buffer.get(destination, firstPart, destination.length - firstPart);
+        }
+    }
+}
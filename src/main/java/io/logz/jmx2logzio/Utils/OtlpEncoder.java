@@ -0,0 +1,210 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Encodes a polling cycle as a single OTLP ExportMetricsServiceRequest (opentelemetry-proto metrics v1).
+ * Service, host and extra dimensions become resource attributes, a metric is named after its bean's domain, type
+ * and metric key, and the bean's other dimensions become data point attributes. Metrics whose key matches one of the
+ * sum globs are encoded as cumulative monotonic sums, all others as gauges.
+ */
+public class OtlpEncoder {
+    private static final String SCOPE_NAME = "jmx2logzio";
+    private static final String TYPE_DIMENSION = "type";
+    private static final int AGGREGATION_TEMPORALITY_CUMULATIVE = 2;
+    private static final Map<String, String> RESOURCE_ATTRIBUTE_NAMES = new HashMap<>();
+
+    static {
+        RESOURCE_ATTRIBUTE_NAMES.put(Metric.SERVICE_NAME, "service.name");
+        RESOURCE_ATTRIBUTE_NAMES.put(Metric.SERVICE_HOST, "host.name");
+    }
+
+    // ExportMetricsServiceRequest
+    private static final int REQUEST_RESOURCE_METRICS = 1;
+    // ResourceMetrics
+    private static final int RESOURCE_METRICS_RESOURCE = 1;
+    private static final int RESOURCE_METRICS_SCOPE_METRICS = 2;
+    // Resource
+    private static final int RESOURCE_ATTRIBUTES = 1;
+    // ScopeMetrics
+    private static final int SCOPE_METRICS_SCOPE = 1;
+    private static final int SCOPE_METRICS_METRICS = 2;
+    // InstrumentationScope
+    private static final int SCOPE_NAME_FIELD = 1;
+    // Metric
+    private static final int METRIC_NAME = 1;
+    private static final int METRIC_GAUGE = 5;
+    private static final int METRIC_SUM = 7;
+    // Gauge and Sum
+    private static final int DATA_POINTS = 1;
+    private static final int SUM_AGGREGATION_TEMPORALITY = 2;
+    private static final int SUM_IS_MONOTONIC = 3;
+    // NumberDataPoint
+    private static final int POINT_START_TIME = 2;
+    private static final int POINT_TIME = 3;
+    private static final int POINT_AS_DOUBLE = 4;
+    private static final int POINT_AS_INT = 6;
+    private static final int POINT_ATTRIBUTES = 7;
+    // KeyValue and AnyValue
+    private static final int KEY_VALUE_KEY = 1;
+    private static final int KEY_VALUE_VALUE = 2;
+    private static final int ANY_VALUE_STRING = 1;
+
+    private final Set<String> resourceKeys;
+    private final List<Pattern> sumPatterns;
+    private final long startTimeUnixNano;
+    private String lastTimestamp;
+    private long lastTimeUnixNano;
+
+    /**
+     * @param resourceKeys dimension keys which describe the monitored process rather than a bean
+     * @param sumGlobs globs of metric keys which are cumulative counters
+     * @param startTime start of the counting window of the cumulative sums
+     */
+    public OtlpEncoder(Set<String> resourceKeys, List<String> sumGlobs, Instant startTime) {
+        this.resourceKeys = resourceKeys;
+        this.sumPatterns = sumGlobs.stream().map(MetricsUtils::globToPattern).collect(Collectors.toList());
+        this.startTimeUnixNano = toUnixNano(startTime);
+    }
+
+    /**
+     * @param metrics the metrics of one polling cycle
+     * @return a serialized ExportMetricsServiceRequest
+     */
+    public byte[] encode(List<Metric> metrics) {
+        Map<List<Dimension>, Map<String, MetricGroup>> resources = new LinkedHashMap<>();
+        Map<String, List<Dimension>> resourcesByKey = new HashMap<>();
+        for (Metric metric : metrics) {
+            List<Dimension> resourceAttributes = new ArrayList<>();
+            List<Dimension> pointAttributes = new ArrayList<>();
+            String domain = null;
+            String type = null;
+            for (Dimension dimension : metric.getDimensions()) {
+                if (domain == null && dimension.getKey().equals(Metric.DOMAIN_NAME)) {
+                    domain = dimension.getValue();
+                } else if (type == null && dimension.getKey().equals(TYPE_DIMENSION)) {
+                    type = dimension.getValue();
+                } else if (resourceKeys.contains(dimension.getKey())) {
+                    resourceAttributes.add(new Dimension(RESOURCE_ATTRIBUTE_NAMES.getOrDefault(dimension.getKey(), dimension.getKey()), dimension.getValue()));
+                } else {
+                    pointAttributes.add(dimension);
+                }
+            }
+            // Metrics of a cycle almost always share the same resource, so group them by an identical list
+            List<Dimension> resource = resourcesByKey.computeIfAbsent(getKey(resourceAttributes), key -> resourceAttributes);
+            Map<String, MetricGroup> metricGroups = resources.computeIfAbsent(resource, key -> new LinkedHashMap<>());
+
+            long timeUnixNano = getTimeUnixNano(metric.getTimestamp());
+            String prefix = (domain == null ? "" : domain + ".") + (type == null ? "" : type + ".");
+            for (Map.Entry<String, Number> entry : metric.getMetricMap().entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                MetricGroup group = metricGroups.computeIfAbsent(prefix + entry.getKey(), name -> new MetricGroup(isSum(entry.getKey())));
+                group.points.writeMessage(DATA_POINTS, encodePoint(pointAttributes, timeUnixNano, entry.getValue(), group.sum));
+            }
+        }
+
+        ProtobufWriter request = new ProtobufWriter(4096);
+        for (Map.Entry<List<Dimension>, Map<String, MetricGroup>> resource : resources.entrySet()) {
+            ProtobufWriter scopeMetrics = new ProtobufWriter(4096)
+                    .writeMessage(SCOPE_METRICS_SCOPE, new ProtobufWriter().writeString(SCOPE_NAME_FIELD, SCOPE_NAME));
+            for (Map.Entry<String, MetricGroup> metricGroup : resource.getValue().entrySet()) {
+                scopeMetrics.writeMessage(SCOPE_METRICS_METRICS, encodeMetric(metricGroup.getKey(), metricGroup.getValue()));
+            }
+            ProtobufWriter resourceMessage = new ProtobufWriter();
+            for (Dimension attribute : resource.getKey()) {
+                resourceMessage.writeMessage(RESOURCE_ATTRIBUTES, encodeAttribute(attribute));
+            }
+            request.writeMessage(REQUEST_RESOURCE_METRICS, new ProtobufWriter(scopeMetrics.size() + resourceMessage.size() + 16)
+                    .writeMessage(RESOURCE_METRICS_RESOURCE, resourceMessage)
+                    .writeMessage(RESOURCE_METRICS_SCOPE_METRICS, scopeMetrics));
+        }
+        return request.toByteArray();
+    }
+
+    private ProtobufWriter encodeMetric(String name, MetricGroup group) {
+        ProtobufWriter metric = new ProtobufWriter(group.points.size() + name.length() + 16).writeString(METRIC_NAME, name);
+        if (group.sum) {
+            group.points.writeVarint(SUM_AGGREGATION_TEMPORALITY, AGGREGATION_TEMPORALITY_CUMULATIVE);
+            group.points.writeBool(SUM_IS_MONOTONIC, true);
+            return metric.writeMessage(METRIC_SUM, group.points);
+        }
+        return metric.writeMessage(METRIC_GAUGE, group.points);
+    }
+
+    private ProtobufWriter encodePoint(List<Dimension> attributes, long timeUnixNano, Number value, boolean sum) {
+        ProtobufWriter point = new ProtobufWriter();
+        if (sum) {
+            point.writeFixed64(POINT_START_TIME, startTimeUnixNano);
+        }
+        point.writeFixed64(POINT_TIME, timeUnixNano);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            point.writeFixed64(POINT_AS_INT, value.longValue());
+        } else {
+            point.writeDouble(POINT_AS_DOUBLE, value.doubleValue());
+        }
+        for (Dimension attribute : attributes) {
+            point.writeMessage(POINT_ATTRIBUTES, encodeAttribute(attribute));
+        }
+        return point;
+    }
+
+    private ProtobufWriter encodeAttribute(Dimension attribute) {
+        return new ProtobufWriter()
+                .writeString(KEY_VALUE_KEY, attribute.getKey())
+                .writeMessage(KEY_VALUE_VALUE, new ProtobufWriter().writeString(ANY_VALUE_STRING, attribute.getValue() == null ? "" : attribute.getValue()));
+    }
+
+    private boolean isSum(String key) {
+        for (Pattern pattern : sumPatterns) {
+            if (pattern.matcher(key).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getTimeUnixNano(String timestamp) {
+        // All metrics of a cycle share the same timestamp
+        if (!timestamp.equals(lastTimestamp)) {
+            lastTimeUnixNano = toUnixNano(ZonedDateTime.parse(timestamp, Metric.timestampFormatter).toInstant());
+            lastTimestamp = timestamp;
+        }
+        return lastTimeUnixNano;
+    }
+
+    private static String getKey(List<Dimension> attributes) {
+        StringBuilder sb = new StringBuilder();
+        for (Dimension attribute : attributes) {
+            sb.append(attribute.getKey()).append('=').append(attribute.getValue()).append(',');
+        }
+        return sb.toString();
+    }
+
+    private static long toUnixNano(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+
+    private static class MetricGroup {
+        private final boolean sum;
+        private final ProtobufWriter points = new ProtobufWriter(256);
+
+        private MetricGroup(boolean sum) {
+            this.sum = sum;
+        }
+    }
+}
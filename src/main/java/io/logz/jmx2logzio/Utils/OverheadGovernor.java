@@ -0,0 +1,295 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the agent's own cost inside the host JVM within a budget. At the start of every polling cycle it measures the
+ * CPU time and heap allocations of the agent's threads since the previous cycle, and when they're over budget it
+ * degrades the polling one level at a time: low priority beans are polled every 2nd cycle, then every 4th cycle, then
+ * every other cycle is skipped altogether. Once the usage is below half of the budget, it recovers a level per cycle.
+ * While the host's heap is nearly full after garbage collection, only the priority beans are polled until it recovers,
+ * so the agent doesn't add to the pressure but still reports the GC and memory metrics of the incident.
+ */
+public class OverheadGovernor {
+    public static final String GOVERNOR_METRIC_TYPE = "OverheadGovernor";
+    public static final String AGENT_THREAD_PREFIX = "jmx2logzio-";
+    public static final int MAX_LEVEL = 3;
+    private final Logger logger = LoggerFactory.getLogger(OverheadGovernor.class);
+
+    private final double maxCpuPercent;
+    private final long maxAllocatedBytesPerCycle;
+    private final int maxHeapUsedPercent;
+    private final List<Pattern> priorityDomainPatterns;
+    private final UsageSampler sampler;
+    private final LongSupplier clock;
+    private final int processors;
+
+    private int level = 0;
+    private long cycle = 0;
+    private long lastSampleNanos = -1;
+    private long lastCpuNanos;
+    private long lastAllocatedBytes;
+    private double cpuPercent = 0;
+    private long allocatedBytesPerCycle = 0;
+    private int heapUsedPercent = 0;
+    private boolean heapBackoff = false;
+    private long skippedCyclesTotal = 0;
+    private long heapBackoffCyclesTotal = 0;
+    private long deferredBeansTotal = 0;
+
+    /**
+     * Measures the agent's usage of the JVM it runs in
+     */
+    public interface UsageSampler {
+        /**
+         * @return the total CPU time of the agent's threads, in nanoseconds
+         */
+        long getAgentCpuNanos();
+
+        /**
+         * @return the total bytes allocated by the agent's threads, or -1 if the JVM doesn't measure allocations
+         */
+        long getAgentAllocatedBytes();
+
+        /**
+         * @return the percentage of the heap used
+         */
+        int getHeapUsedPercent();
+    }
+
+    /**
+     * @param maxCpuPercent the agent's CPU budget, as a percentage of the CPU time of all the JVM's processors
+     * @param maxAllocatedBytesPerCycle the agent's heap allocation budget per polling cycle
+     * @param maxHeapUsedPercent heap usage after garbage collection above which only the priority beans are polled
+     * @param priorityDomains globs of the bean domains which are polled on every cycle unless cycles are skipped
+     */
+    public OverheadGovernor(double maxCpuPercent, long maxAllocatedBytesPerCycle, int maxHeapUsedPercent, List<String> priorityDomains) {
+        this(maxCpuPercent, maxAllocatedBytesPerCycle, maxHeapUsedPercent, priorityDomains, new AgentThreadsSampler(),
+                System::nanoTime, Runtime.getRuntime().availableProcessors());
+    }
+
+    OverheadGovernor(double maxCpuPercent, long maxAllocatedBytesPerCycle, int maxHeapUsedPercent, List<String> priorityDomains,
+                     UsageSampler sampler, LongSupplier clock, int processors) {
+        this.maxCpuPercent = maxCpuPercent;
+        this.maxAllocatedBytesPerCycle = maxAllocatedBytesPerCycle;
+        this.maxHeapUsedPercent = maxHeapUsedPercent;
+        this.priorityDomainPatterns = priorityDomains.stream().map(MetricsUtils::globToPattern).collect(Collectors.toList());
+        this.sampler = sampler;
+        this.clock = clock;
+        this.processors = processors;
+    }
+
+    /**
+     * Measure the agent's usage since the previous cycle and adjust the level
+     * @return false if this cycle should be skipped
+     */
+    public synchronized boolean startCycle() {
+        cycle++;
+        long now = clock.getAsLong();
+        long cpuNanos = sampler.getAgentCpuNanos();
+        long allocatedBytes = sampler.getAgentAllocatedBytes();
+        heapUsedPercent = sampler.getHeapUsedPercent();
+        if (lastSampleNanos >= 0 && now > lastSampleNanos) {
+            cpuPercent = 100.0 * (cpuNanos - lastCpuNanos) / ((now - lastSampleNanos) * (double) processors);
+            allocatedBytesPerCycle = allocatedBytes < 0 ? -1 : allocatedBytes - lastAllocatedBytes;
+            adjustLevel();
+        }
+        lastSampleNanos = now;
+        lastCpuNanos = cpuNanos;
+        lastAllocatedBytes = allocatedBytes;
+
+        heapBackoff = heapUsedPercent > maxHeapUsedPercent;
+        if (heapBackoff && heapBackoffCyclesTotal++ % 100 == 0) {
+            logger.warn("The heap is {}% used after garbage collection, polling only the priority beans until it's below {}%", heapUsedPercent, maxHeapUsedPercent);
+        }
+        // The polled cycles are the even ones, so low priority beans are still polled every 4th cycle
+        if (level == MAX_LEVEL && cycle % 2 != 0) {
+            skippedCyclesTotal++;
+            return false;
+        }
+        return true;
+    }
+
+    private void adjustLevel() {
+        boolean overBudget = cpuPercent > maxCpuPercent || allocatedBytesPerCycle > maxAllocatedBytesPerCycle;
+        boolean underHalfBudget = cpuPercent < maxCpuPercent / 2 && allocatedBytesPerCycle < maxAllocatedBytesPerCycle / 2;
+        if (overBudget && level < MAX_LEVEL) {
+            level++;
+            logger.warn("The agent used {}% CPU and allocated {} bytes in the last cycle, over its budget of {}% and {} bytes, degrading polling to level {}",
+                    String.format("%.3f", cpuPercent), allocatedBytesPerCycle, maxCpuPercent, maxAllocatedBytesPerCycle, level);
+        } else if (underHalfBudget && level > 0) {
+            level--;
+            logger.info("The agent's usage is back under its budget, polling at level {}", level);
+        }
+    }
+
+    /**
+     * Leave the low priority beans out of this cycle if they're polled less often at the current level, or while the
+     * heap is nearly full
+     * @param beans beans about to be polled
+     * @return the beans that should be read in this cycle
+     */
+    public synchronized List<MetricBean> filterBeans(List<MetricBean> beans) {
+        int everyCycles = level == 0 ? 1 : level == 1 ? 2 : 4;
+        if (!heapBackoff && cycle % everyCycles == 0) {
+            return beans;
+        }
+        List<MetricBean> polledBeans = beans.stream().filter(this::isPriority).collect(Collectors.toList());
+        deferredBeansTotal += beans.size() - polledBeans.size();
+        return polledBeans;
+    }
+
+    private boolean isPriority(MetricBean bean) {
+        int domainEnd = bean.getName().indexOf(':');
+        String domain = domainEnd < 0 ? bean.getName() : bean.getName().substring(0, domainEnd);
+        return priorityDomainPatterns.stream().anyMatch(pattern -> pattern.matcher(domain).matches());
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the level, the last cycle's measured usage, and the skipped cycles and deferred beans so far
+     */
+    public synchronized Map<String, Number> getCounters() {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("level", level);
+        counters.put("cpuPercent", cpuPercent);
+        counters.put("allocatedBytesPerCycle", allocatedBytesPerCycle);
+        counters.put("heapUsedPercent", heapUsedPercent);
+        counters.put("skippedCyclesTotal", skippedCyclesTotal);
+        counters.put("heapBackoffCyclesTotal", heapBackoffCyclesTotal);
+        counters.put("deferredBeansTotal", deferredBeansTotal);
+        return counters;
+    }
+
+    /**
+     * Samples the threads named with the agent's prefix. A thread's usage is accumulated between samples, so usage
+     * isn't lost or counted twice as threads start and end.
+     */
+    static class AgentThreadsSampler implements UsageSampler {
+        // Tenured Gen, PS Old Gen, CMS Old Gen, G1 Old Gen
+        private static final Pattern OLD_GENERATION_POOL_PATTERN = Pattern.compile("Old Gen|Tenured");
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final boolean cpuTimeSupported = threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+        private final boolean allocationsSupported = isAllocationsSupported(threads);
+        private final Map<Long, Long> lastCpuNanosByThread = new HashMap<>();
+        private final Map<Long, Long> lastAllocatedBytesByThread = new HashMap<>();
+        private long cpuNanos = 0;
+        private long allocatedBytes = 0;
+
+        @Override
+        public long getAgentCpuNanos() {
+            sample();
+            return cpuNanos;
+        }
+
+        @Override
+        public long getAgentAllocatedBytes() {
+            // Sampled along with the CPU time
+            return allocationsSupported ? allocatedBytes : -1;
+        }
+
+        private void sample() {
+            Map<Long, Long> cpuNanosByThread = new HashMap<>();
+            Map<Long, Long> allocatedBytesByThread = new HashMap<>();
+            for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+                if (info == null || !info.getThreadName().startsWith(AGENT_THREAD_PREFIX)) {
+                    continue;
+                }
+                long id = info.getThreadId();
+                if (cpuTimeSupported) {
+                    long threadCpuNanos = threads.getThreadCpuTime(id);
+                    if (threadCpuNanos >= 0) {
+                        cpuNanos += threadCpuNanos - lastCpuNanosByThread.getOrDefault(id, 0L);
+                        cpuNanosByThread.put(id, threadCpuNanos);
+                    }
+                }
+                if (allocationsSupported) {
+                    long threadAllocatedBytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(id);
+                    if (threadAllocatedBytes >= 0) {
+                        allocatedBytes += threadAllocatedBytes - lastAllocatedBytesByThread.getOrDefault(id, 0L);
+                        allocatedBytesByThread.put(id, threadAllocatedBytes);
+                    }
+                }
+            }
+            // Ended threads are forgotten
+            lastCpuNanosByThread.keySet().retainAll(cpuNanosByThread.keySet());
+            lastCpuNanosByThread.putAll(cpuNanosByThread);
+            lastAllocatedBytesByThread.keySet().retainAll(allocatedBytesByThread.keySet());
+            lastAllocatedBytesByThread.putAll(allocatedBytesByThread);
+        }
+
+        /**
+         * @return the heap used right after the last collection, which is what the application can't free, or the
+         * current heap usage if the JVM doesn't report it
+         */
+        @Override
+        public int getHeapUsedPercent() {
+            Map<String, MemoryUsage> collectionUsages = new LinkedHashMap<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getType() == MemoryType.HEAP && pool.isValid() ? pool.getCollectionUsage() : null;
+                if (usage != null) {
+                    collectionUsages.put(pool.getName(), usage);
+                }
+            }
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            int percent = getHeapUsedPercent(collectionUsages, heap.getMax());
+            if (percent >= 0) {
+                return percent;
+            }
+            return heap.getMax() > 0 ? (int) (heap.getUsed() * 100 / heap.getMax()) : 0;
+        }
+
+        /**
+         * A survivor space is routinely full right after a collection, so only the old generation's pool is measured,
+         * or the heap as a whole with collectors which have a single pool (such as ZGC and Shenandoah)
+         * @param collectionUsages the heap pools' usages after their last collection, by pool name
+         * @param heapMax the heap's max size, or -1 if undefined, in which case the pools' max sizes are summed
+         * @return the percent used after the last collection, or -1 if unknown
+         */
+        static int getHeapUsedPercent(Map<String, MemoryUsage> collectionUsages, long heapMax) {
+            for (Map.Entry<String, MemoryUsage> pool : collectionUsages.entrySet()) {
+                if (OLD_GENERATION_POOL_PATTERN.matcher(pool.getKey()).find()) {
+                    MemoryUsage usage = pool.getValue();
+                    return usage.getMax() > 0 ? (int) (usage.getUsed() * 100 / usage.getMax()) : -1;
+                }
+            }
+            long used = 0;
+            long poolsMax = 0;
+            for (MemoryUsage usage : collectionUsages.values()) {
+                used += usage.getUsed();
+                poolsMax = usage.getMax() > 0 && poolsMax >= 0 ? poolsMax + usage.getMax() : -1;
+            }
+            long max = heapMax > 0 ? heapMax : poolsMax;
+            return !collectionUsages.isEmpty() && max > 0 ? (int) Math.min(100, used * 100 / max) : -1;
+        }
+
+        private static boolean isAllocationsSupported(ThreadMXBean threads) {
+            try {
+                return threads instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+            } catch (NoClassDefFoundError e) {
+                return false;
+            }
+        }
+    }
+}
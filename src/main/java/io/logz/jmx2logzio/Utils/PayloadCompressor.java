@@ -0,0 +1,219 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the requests to the listener with a configured codec and level. In adaptive mode, the level is chosen
+ * every few polling cycles from what the current and neighbouring levels were measured to cost and save: it's lowered
+ * when compressing takes more than the CPU budget per cycle, or when the level barely compresses better than the one
+ * below it, and it's raised while there's CPU to spare and the level above wasn't found too slow or not worth it.
+ */
+public class PayloadCompressor {
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 9;
+    public static final int DEFAULT_LEVEL = 6;
+    public static final String ADAPTIVE_LEVEL = "adaptive";
+    private static final int ADAPT_EVERY_CYCLES = 5;
+    // A level has to shrink the payload by at least this fraction more than the level below it to be worth its CPU
+    private static final double MIN_RATIO_GAIN = 0.02;
+    private final Logger logger = LoggerFactory.getLogger(PayloadCompressor.class);
+
+    private final Codec codec;
+    private final boolean adaptive;
+    private final long maxCpuNanosPerCycle;
+    private final LongSupplier cpuClock;
+    private int level;
+    // Measured output to input ratio and CPU time per cycle of each level, 0 until the level was used
+    private final double[] ratioByLevel = new double[MAX_LEVEL + 1];
+    private final long[] cpuNanosPerCycleByLevel = new long[MAX_LEVEL + 1];
+    private int windowCycles = 0;
+    private long windowCpuNanos = 0;
+    private long windowInputBytes = 0;
+    private long windowOutputBytes = 0;
+    private long totalInputBytes = 0;
+    private long totalOutputBytes = 0;
+    private long totalCpuNanos = 0;
+
+    public enum Codec {
+        NONE("none", null),
+        GZIP("gzip", "gzip"),
+        // zlib wrapped deflate, as HTTP's deflate content encoding is defined
+        DEFLATE("deflate", "deflate");
+
+        private final String configValue;
+        private final String contentEncoding;
+
+        Codec(String configValue, String contentEncoding) {
+            this.configValue = configValue;
+            this.contentEncoding = contentEncoding;
+        }
+
+        public String getConfigValue() {
+            return configValue;
+        }
+
+        /**
+         * @return the request's Content-Encoding header, or null if the body isn't compressed
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        /**
+         * @param configValue the codec as written in the configuration
+         * @return the matching codec, or null if there is none
+         */
+        public static Codec fromConfigValue(String configValue) {
+            for (Codec codec : values()) {
+                if (codec.configValue.equalsIgnoreCase(configValue)) {
+                    return codec;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param codec the compression codec
+     * @param level the compression level, or the level to start from in adaptive mode
+     * @param adaptive whether the level is chosen from the measured compression ratio and CPU time
+     * @param maxCpuMsPerCycle in adaptive mode, the CPU time compressing a polling cycle's requests may take
+     */
+    public PayloadCompressor(Codec codec, int level, boolean adaptive, int maxCpuMsPerCycle) {
+        this(codec, level, adaptive, maxCpuMsPerCycle, getThreadCpuClock());
+    }
+
+    PayloadCompressor(Codec codec, int level, boolean adaptive, int maxCpuMsPerCycle, LongSupplier cpuClock) {
+        this.codec = codec;
+        this.level = level;
+        this.adaptive = adaptive;
+        this.maxCpuNanosPerCycle = TimeUnit.MILLISECONDS.toNanos(maxCpuMsPerCycle);
+        this.cpuClock = cpuClock;
+    }
+
+    /**
+     * @param payload a request's body
+     * @return the compressed body, or the same body if the codec is none
+     * @throws IOException if compressing failed
+     */
+    public synchronized byte[] compress(byte[] payload) throws IOException {
+        if (codec == Codec.NONE) {
+            return payload;
+        }
+        long start = cpuClock.getAsLong();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4 + 64);
+        try (OutputStream out = openStream(compressed)) {
+            out.write(payload);
+        }
+        long cpuNanos = cpuClock.getAsLong() - start;
+        windowCpuNanos += cpuNanos;
+        windowInputBytes += payload.length;
+        windowOutputBytes += compressed.size();
+        totalCpuNanos += cpuNanos;
+        totalInputBytes += payload.length;
+        totalOutputBytes += compressed.size();
+        return compressed.toByteArray();
+    }
+
+    private OutputStream openStream(ByteArrayOutputStream compressed) throws IOException {
+        int streamLevel = level;
+        if (codec == Codec.GZIP) {
+            return new GZIPOutputStream(compressed) {
+                {
+                    def.setLevel(streamLevel);
+                }
+            };
+        }
+        Deflater deflater = new Deflater(streamLevel);
+        return new DeflaterOutputStream(compressed, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Count a polling cycle written to the queues, and choose the level once enough cycles were compressed
+     */
+    public synchronized void onCycle() {
+        if (!adaptive || codec == Codec.NONE || ++windowCycles < ADAPT_EVERY_CYCLES || windowInputBytes == 0) {
+            return;
+        }
+        double ratio = (double) windowOutputBytes / windowInputBytes;
+        long cpuNanosPerCycle = windowCpuNanos / windowCycles;
+        ratioByLevel[level] = ratio;
+        cpuNanosPerCycleByLevel[level] = cpuNanosPerCycle;
+        windowCycles = 0;
+        windowCpuNanos = 0;
+        windowInputBytes = 0;
+        windowOutputBytes = 0;
+
+        int newLevel = level;
+        if (level > MIN_LEVEL && (cpuNanosPerCycle > maxCpuNanosPerCycle || !isWorthIt(level - 1, level))) {
+            newLevel = level - 1;
+        } else if (level < MAX_LEVEL && cpuNanosPerCycle < maxCpuNanosPerCycle / 2
+                && cpuNanosPerCycleByLevel[level + 1] <= maxCpuNanosPerCycle && isWorthIt(level, level + 1)) {
+            newLevel = level + 1;
+        }
+        if (newLevel != level) {
+            logger.debug("Compression level {} -> {}: ratio {}, CPU {}ms per cycle", level, newLevel,
+                    String.format("%.3f", ratio), TimeUnit.NANOSECONDS.toMillis(cpuNanosPerCycle));
+            level = newLevel;
+        }
+    }
+
+    /**
+     * @return whether the higher level compressed sufficiently better than the lower one, or either wasn't measured yet
+     */
+    private boolean isWorthIt(int lowerLevel, int higherLevel) {
+        double lowerRatio = ratioByLevel[lowerLevel];
+        double higherRatio = ratioByLevel[higherLevel];
+        return lowerRatio == 0 || higherRatio == 0 || lowerRatio - higherRatio >= MIN_RATIO_GAIN * lowerRatio;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the current level, the overall output to input ratio and the total CPU time spent compressing
+     */
+    public synchronized Map<String, Number> getCounters() {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("compression.level", codec == Codec.NONE ? 0 : level);
+        counters.put("compression.ratio", totalInputBytes == 0 ? 1.0 : (double) totalOutputBytes / totalInputBytes);
+        counters.put("compression.cpuTimeMs", TimeUnit.NANOSECONDS.toMillis(totalCpuNanos));
+        return counters;
+    }
+
+    private static LongSupplier getThreadCpuClock() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()) {
+            return threads::getCurrentThreadCpuTime;
+        }
+        return System::nanoTime;
+    }
+}
@@ -0,0 +1,53 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the polls of a fleet of instances over the polling interval, so they don't all hit their JVMs and the
+ * listener at the same second. Each instance polls at a fixed phase of every interval, derived from a hash of its
+ * service and host, so it's the same across restarts. The phase stays inside the interval, so a cycle is still stamped
+ * with the interval's aligned start (see MetricsPipeline) and window based dashboards aren't affected.
+ */
+public class PollingPhase {
+    private static final long MAX_WINDOW_MARGIN_MS = 1000;
+
+    private PollingPhase() {
+    }
+
+    /**
+     * @param instanceKey identifies the instance in the fleet, e.g. its service and host
+     * @param intervalInSeconds the polling interval
+     * @param jitterPercent the percentage of the interval the phases of the fleet are spread over
+     * @return the time from the start of each interval until the instance polls, in milliseconds
+     */
+    public static long getPhaseOffsetMs(String instanceKey, int intervalInSeconds, int jitterPercent) {
+        long intervalMs = TimeUnit.SECONDS.toMillis(intervalInSeconds);
+        // Polls start a little after their interval started, and end before the next interval starts
+        long marginMs = Math.min(MAX_WINDOW_MARGIN_MS, intervalMs / 4);
+        long maxJitterMs = Math.min(intervalMs * jitterPercent / 100, intervalMs - 2 * marginMs);
+        if (maxJitterMs <= 0) {
+            return marginMs;
+        }
+        long hash = Hashing.murmur3_128().hashString(instanceKey, StandardCharsets.UTF_8).asLong();
+        return marginMs + Math.floorMod(hash, maxJitterMs);
+    }
+
+    /**
+     * @param instanceKey identifies the instance in the fleet, e.g. its service and host
+     * @param intervalInSeconds the polling interval
+     * @param jitterPercent the percentage of the interval the phases of the fleet are spread over
+     * @param nowMs the current time
+     * @return the time until the instance's next poll, in milliseconds
+     */
+    public static long getInitialDelayMs(String instanceKey, int intervalInSeconds, int jitterPercent, long nowMs) {
+        long intervalMs = TimeUnit.SECONDS.toMillis(intervalInSeconds);
+        long nextPollMs = nowMs - (nowMs % intervalMs) + getPhaseOffsetMs(instanceKey, intervalInSeconds, jitterPercent);
+        if (nextPollMs <= nowMs) {
+            nextPollMs += intervalMs;
+        }
+        return nextPollMs - nowMs;
+    }
+}
@@ -0,0 +1,107 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders metrics in the Prometheus text exposition format. A sample is named after its bean's domain, type and
+ * metric key (e.g. java_lang_Memory_HeapMemoryUsage_used), and the bean's other dimensions become its labels.
+ */
+public class PrometheusFormatter {
+    private static final String TYPE_DIMENSION = "type";
+
+    /**
+     * @param metrics the metrics of one polling cycle
+     * @return the rendered exposition, with the samples of each metric name grouped under a single TYPE line
+     */
+    public static byte[] render(List<Metric> metrics) {
+        Map<String, List<String>> samplesByName = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            String domain = null;
+            String type = null;
+            StringBuilder labels = new StringBuilder();
+            for (Dimension dimension : metric.getDimensions()) {
+                if (domain == null && dimension.getKey().equals(Metric.DOMAIN_NAME)) {
+                    domain = dimension.getValue();
+                } else if (type == null && dimension.getKey().equals(TYPE_DIMENSION)) {
+                    type = dimension.getValue();
+                } else {
+                    labels.append(labels.length() == 0 ? "{" : ",")
+                            .append(sanitize(dimension.getKey(), false))
+                            .append("=\"").append(escapeLabelValue(dimension.getValue())).append('"');
+                }
+            }
+            if (labels.length() > 0) {
+                labels.append('}');
+            }
+            String prefix = (domain == null ? "" : domain + "_") + (type == null ? "" : type + "_");
+            for (Map.Entry<String, Number> entry : metric.getMetricMap().entrySet()) {
+                String name = sanitize(prefix + entry.getKey(), true);
+                samplesByName.computeIfAbsent(name, key -> new ArrayList<>())
+                        .add(name + labels + " " + formatValue(entry.getValue()));
+            }
+        }
+
+        StringBuilder exposition = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : samplesByName.entrySet()) {
+            exposition.append("# TYPE ").append(entry.getKey()).append(" untyped\n");
+            for (String sample : entry.getValue()) {
+                exposition.append(sample).append('\n');
+            }
+        }
+        return exposition.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sanitize(String name, boolean allowColon) {
+        StringBuilder sb = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (allowColon && c == ':')
+                    || (i > 0 && c >= '0' && c <= '9');
+            if (!valid && i == 0 && c >= '0' && c <= '9') {
+                sb.append('_').append(c);
+            } else {
+                sb.append(valid ? c : '_');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String escapeLabelValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String formatValue(Number value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value.toString();
+        }
+        double doubleValue = value.doubleValue();
+        if (Double.isNaN(doubleValue)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(doubleValue)) {
+            return doubleValue > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(doubleValue);
+    }
+}
@@ -0,0 +1,94 @@
+package io.logz.jmx2logzio.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal protocol buffers encoder for the few field types jmx2logzio writes. Nested messages are encoded
+ * into their own writer and then written as a length delimited field of the parent.
+ */
+public class ProtobufWriter {
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private final Buffer buffer;
+
+    public ProtobufWriter() {
+        this(64);
+    }
+
+    public ProtobufWriter(int initialSize) {
+        this.buffer = new Buffer(initialSize);
+    }
+
+    public ProtobufWriter writeString(int field, String value) {
+        return writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ProtobufWriter writeBytes(int field, byte[] value) {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(value.length);
+        buffer.write(value, 0, value.length);
+        return this;
+    }
+
+    public ProtobufWriter writeMessage(int field, ProtobufWriter message) {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(message.buffer.size());
+        buffer.write(message.buffer.array(), 0, message.buffer.size());
+        return this;
+    }
+
+    public ProtobufWriter writeVarint(int field, long value) {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeVarint(value);
+        return this;
+    }
+
+    public ProtobufWriter writeBool(int field, boolean value) {
+        return writeVarint(field, value ? 1 : 0);
+    }
+
+    public ProtobufWriter writeFixed64(int field, long value) {
+        writeTag(field, WIRE_TYPE_FIXED64);
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+        return this;
+    }
+
+    public ProtobufWriter writeDouble(int field, double value) {
+        return writeFixed64(field, Double.doubleToRawLongBits(value));
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeVarint(((long) field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.write((int) value);
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        private Buffer(int size) {
+            super(size);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task on a shared executor, one run at a time. Requests made while the task runs are coalesced into a single
+ * additional run, so a task which drains a queue never misses an item and never occupies more than one thread.
+ */
+public class SerialTask {
+    private final Logger logger = LoggerFactory.getLogger(SerialTask.class);
+
+    private final String name;
+    private final Executor executor;
+    private final Runnable task;
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+
+    /**
+     * @param name the task's name, for logging
+     * @param executor the executor the task runs on
+     * @param task the task, which shouldn't throw
+     */
+    public SerialTask(String name, Executor executor, Runnable task) {
+        this.name = name;
+        this.executor = executor;
+        this.task = task;
+    }
+
+    /**
+     * Run the task, or run it once more after its current run
+     */
+    public void request() {
+        if (pendingRequests.getAndIncrement() != 0) {
+            return;
+        }
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            // The executor is shutting down, whoever shuts the task's owner down runs it one last time
+            pendingRequests.set(0);
+            logger.debug("Task {} wasn't run, its executor is shut down", name);
+        }
+    }
+
+    private void run() {
+        int requests = pendingRequests.get();
+        while (requests > 0) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Task {} failed: {}", name, e.getMessage(), e);
+            }
+            requests = pendingRequests.addAndGet(-requests);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of a shutdown, and what its steps sent, spooled and dropped. The final poll, the pipelines' and
+ * sinks' flushes and the listener queue's drain each check the remaining time, and the whole shutdown is logged as a
+ * single report at the end.
+ */
+public class ShutdownReport {
+    public static final int DEFAULT_TIMEOUT_IN_SECONDS = 20;
+    private static final String STEP_THREAD_PREFIX = OverheadGovernor.AGENT_THREAD_PREFIX + "shutdown-";
+    private final Logger logger = LoggerFactory.getLogger(ShutdownReport.class);
+
+    private final long startNanos;
+    private final long timeoutNanos;
+    private final List<String> timedOutSteps = new ArrayList<>();
+    private long finalPollMetrics = 0;
+    private long writtenCycles = 0;
+    private long droppedCycles = 0;
+    private long sentBlocks = 0;
+    private long spooledBlocks = 0;
+    private long droppedBlocks = 0;
+
+    /**
+     * @param timeoutInSeconds time the whole shutdown may take
+     */
+    public ShutdownReport(int timeoutInSeconds) {
+        this.startNanos = System.nanoTime();
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+    }
+
+    public long getRemainingNanos() {
+        return Math.max(0, timeoutNanos - (System.nanoTime() - startNanos));
+    }
+
+    public boolean isExpired() {
+        return getRemainingNanos() == 0;
+    }
+
+    /**
+     * Run a step which may block, such as a poll or an HTTP request, on a daemon thread and wait for it until the
+     * deadline. A step that's still running at the deadline is left behind and reported as timed out.
+     * @param step the step's name, for the report
+     * @param task the step
+     * @return true if the step finished in time
+     */
+    public boolean runWithin(String step, Runnable task) {
+        if (isExpired()) {
+            addTimedOutStep(step);
+            return false;
+        }
+        Thread thread = new Thread(task, STEP_THREAD_PREFIX + step);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            TimeUnit.NANOSECONDS.timedJoin(thread, getRemainingNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            addTimedOutStep(step);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void addTimedOutStep(String step) {
+        timedOutSteps.add(step);
+    }
+
+    public synchronized void addFinalPollMetrics(int metrics) {
+        finalPollMetrics += metrics;
+    }
+
+    public synchronized void addWrittenCycles(int cycles) {
+        writtenCycles += cycles;
+    }
+
+    public synchronized void addDroppedCycles(int cycles) {
+        droppedCycles += cycles;
+    }
+
+    public synchronized void addSentBlocks(long blocks) {
+        sentBlocks += blocks;
+    }
+
+    public synchronized void addSpooledBlocks(long blocks) {
+        spooledBlocks += blocks;
+    }
+
+    public synchronized void addDroppedBlocks(long blocks) {
+        droppedBlocks += blocks;
+    }
+
+    /**
+     * @return what the shutdown sent, spooled and dropped so far
+     */
+    public synchronized Map<String, Number> getCounters() {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        counters.put("finalPollMetrics", finalPollMetrics);
+        counters.put("writtenCycles", writtenCycles);
+        counters.put("droppedCycles", droppedCycles);
+        counters.put("sentBlocks", sentBlocks);
+        counters.put("spooledBlocks", spooledBlocks);
+        counters.put("droppedBlocks", droppedBlocks);
+        return counters;
+    }
+
+    public synchronized List<String> getTimedOutSteps() {
+        return new ArrayList<>(timedOutSteps);
+    }
+
+    /**
+     * Log the report, as a warning if anything was dropped or didn't finish in time
+     */
+    public synchronized void log() {
+        Map<String, Number> counters = getCounters();
+        if (droppedCycles > 0 || droppedBlocks > 0 || !timedOutSteps.isEmpty()) {
+            logger.warn("Shutdown report: {}, timed out: {}", counters, timedOutSteps);
+        } else {
+            logger.info("Shutdown report: {}", counters);
+        }
+    }
+}
@@ -2,4 +2,12 @@ package io.logz.jmx2logzio.Utils;
 
 public interface Shutdownable {
     void shutdown();
+
+    /**
+     * Shut down within the report's deadline, and add what was sent, spooled or dropped to it
+     * @param report the deadline and the tally of the agent's shutdown
+     */
+    default void shutdown(ShutdownReport report) {
+        shutdown();
+    }
 }
@@ -0,0 +1,211 @@
+package io.logz.jmx2logzio.Utils;
+
+import java.util.Arrays;
+
+/**
+ * A block of one series' points, compressed as in Facebook's Gorilla: each timestamp is stored as the difference
+ * between its delta and the previous delta, and each value as its XOR with the previous value, both in variable length
+ * bit fields. Points polled at a fixed interval cost a single bit per timestamp, an unchanged value a single bit, and
+ * a slowly changing value the few bits that changed.
+ */
+public class TimeSeriesBlock {
+    private static final int INITIAL_SIZE_IN_BYTES = 64;
+    private static final int NO_WINDOW = -1;
+
+    private byte[] bytes = new byte[INITIAL_SIZE_IN_BYTES];
+    private int bitCount = 0;
+    private int points = 0;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeadingZeros = NO_WINDOW;
+    private int lastTrailingZeros;
+
+    /**
+     * Receives the points of a block, in order
+     */
+    public interface PointConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    /**
+     * @param timestamp the point's time, in milliseconds, not before the block's last point
+     * @param value the point's value
+     * @return false if the point can't be added to this block, because it's out of order or too far from the last point
+     */
+    public boolean append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (points == 0) {
+            writeBits(timestamp, Long.SIZE);
+            writeBits(valueBits, Long.SIZE);
+            firstTimestamp = timestamp;
+        } else {
+            long delta = timestamp - lastTimestamp;
+            long deltaOfDelta = delta - lastDelta;
+            if (delta < 0 || deltaOfDelta < Integer.MIN_VALUE || deltaOfDelta > Integer.MAX_VALUE) {
+                return false;
+            }
+            writeDeltaOfDelta(deltaOfDelta);
+            writeValue(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        points++;
+        return true;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0b0, 1);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta + 63, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta + 255, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta + 2047, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, Integer.SIZE);
+        }
+    }
+
+    /**
+     * The changed bits are written within the previous value's window of meaningful bits when they fit in it,
+     * otherwise with a new window
+     */
+    private void writeValue(long xor) {
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        // The leading zeros count is written in 5 bits
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+        if (lastLeadingZeros != NO_WINDOW && leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> lastTrailingZeros, Long.SIZE - lastLeadingZeros - lastTrailingZeros);
+        } else {
+            int meaningfulBits = Long.SIZE - leadingZeros - trailingZeros;
+            writeBits(0b11, 2);
+            writeBits(leadingZeros, 5);
+            writeBits(meaningfulBits - 1, 6);
+            writeBits(xor >>> trailingZeros, meaningfulBits);
+            lastLeadingZeros = leadingZeros;
+            lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    /**
+     * Write the low bits of a value, most significant first
+     */
+    private void writeBits(long value, int count) {
+        if (bitCount + count > bytes.length * 8L) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, (bitCount + count) / 8 + 1));
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if (((value >>> i) & 1) != 0) {
+                bytes[bitCount >>> 3] |= (byte) (0x80 >>> (bitCount & 7));
+            }
+            bitCount++;
+        }
+    }
+
+    /**
+     * Decode the block's points, including the ones appended since it was last read
+     * @param consumer receives each point, in order
+     */
+    public void forEach(PointConsumer consumer) {
+        if (points == 0) {
+            return;
+        }
+        BitReader reader = new BitReader(bytes);
+        long timestamp = reader.read(Long.SIZE);
+        long valueBits = reader.read(Long.SIZE);
+        consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        long delta = 0;
+        int leadingZeros = 0;
+        int trailingZeros = 0;
+        for (int i = 1; i < points; i++) {
+            delta += readDeltaOfDelta(reader);
+            timestamp += delta;
+            if (reader.read(1) != 0) {
+                if (reader.read(1) != 0) {
+                    leadingZeros = (int) reader.read(5);
+                    int meaningfulBits = (int) reader.read(6) + 1;
+                    trailingZeros = Long.SIZE - leadingZeros - meaningfulBits;
+                }
+                valueBits ^= reader.read(Long.SIZE - leadingZeros - trailingZeros) << trailingZeros;
+            }
+            consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (reader.read(1) == 0) {
+            return 0;
+        }
+        if (reader.read(1) == 0) {
+            return reader.read(7) - 63;
+        }
+        if (reader.read(1) == 0) {
+            return reader.read(9) - 255;
+        }
+        if (reader.read(1) == 0) {
+            return reader.read(12) - 2047;
+        }
+        return (int) reader.read(Integer.SIZE);
+    }
+
+    /**
+     * Release the unused part of the buffer, once no more points are appended
+     */
+    public void seal() {
+        bytes = Arrays.copyOf(bytes, getSizeInBytes());
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public int getSizeInBytes() {
+        return (bitCount + 7) / 8;
+    }
+
+    /**
+     * @return the size of the buffer, which an open block grows ahead of its points
+     */
+    public int getCapacityInBytes() {
+        return bytes.length;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    private static class BitReader {
+        private final byte[] bytes;
+        private int position = 0;
+
+        private BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long read(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 1) | ((bytes[position >>> 3] >>> (7 - (position & 7))) & 1);
+                position++;
+            }
+            return value;
+        }
+    }
+}
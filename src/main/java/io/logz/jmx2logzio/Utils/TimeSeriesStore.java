@@ -0,0 +1,255 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the recent values of every series (a metric key of a set of dimensions) in compressed {@link TimeSeriesBlock}s,
+ * within a memory budget. A series' block is sealed once it holds the configured number of points, and when the store
+ * is over its budget the oldest sealed blocks of all series are evicted first, like a ring buffer. The budget counts
+ * an estimate of the heap the store takes: the blocks' buffers, which open blocks grow ahead of their points, and the
+ * objects, strings and collection entries kept per series and per block, besides the compressed points themselves.
+ * The metrics of a time range can be rebuilt from the store, for example to backfill an outage.
+ */
+public class TimeSeriesStore {
+    // Estimated heap of the objects kept per series: the series with its lists and open block object, its map entry,
+    // and the headers of its key strings
+    static final int SERIES_OVERHEAD_BYTES = 256;
+    // Estimated heap of a dimension kept by a series, besides its strings' characters
+    static final int DIMENSION_OVERHEAD_BYTES = 96;
+    // Estimated heap of a sealed block besides its buffer: the block objects, the buffer's header and its deque and list slots
+    static final int SEALED_BLOCK_OVERHEAD_BYTES = 112;
+    private final long maxBytes;
+    private final int pointsPerBlock;
+    private final Map<String, Series> seriesByKey = new HashMap<>();
+    // Sealed blocks of all series, oldest first
+    private final Deque<SealedBlock> sealedBlocks = new ArrayDeque<>();
+    private long storedBytes = 0;
+    private long payloadBytes = 0;
+    private long storedPoints = 0;
+    private long evictedBlocksTotal = 0;
+    private long evictedPointsTotal = 0;
+
+    /**
+     * @param maxBytes budget of the estimated heap the store takes
+     * @param pointsPerBlock number of points after which a series' block is sealed
+     */
+    public TimeSeriesStore(long maxBytes, int pointsPerBlock) {
+        this.maxBytes = maxBytes;
+        this.pointsPerBlock = pointsPerBlock;
+    }
+
+    /**
+     * @param metrics metrics of a polling cycle, each value is added to the series of its key and dimensions
+     */
+    public synchronized void append(List<Metric> metrics) {
+        // The metrics of a cycle share their timestamp, so it's parsed once
+        String lastTimestamp = null;
+        long timestamp = 0;
+        for (Metric metric : metrics) {
+            if (!metric.getTimestamp().equals(lastTimestamp)) {
+                lastTimestamp = metric.getTimestamp();
+                timestamp = Instant.from(Metric.timestampFormatter.parse(lastTimestamp)).toEpochMilli();
+            }
+            String dimensionsKey = getDimensionsKey(metric.getDimensions());
+            for (Map.Entry<String, Number> value : metric.getMetricMap().entrySet()) {
+                if (value.getValue() == null) {
+                    continue;
+                }
+                Series series = seriesByKey.computeIfAbsent(getSeriesKey(dimensionsKey, value.getKey()), key -> {
+                    Series newSeries = new Series(metric.getDimensions(), dimensionsKey, value.getKey());
+                    storedBytes += newSeries.overheadBytes + newSeries.openBlock.getCapacityInBytes();
+                    return newSeries;
+                });
+                append(series, timestamp, value.getValue().doubleValue());
+            }
+        }
+        evictOverBudget();
+    }
+
+    private void append(Series series, long timestamp, double value) {
+        int sizeBefore = series.openBlock.getSizeInBytes();
+        int capacityBefore = series.openBlock.getCapacityInBytes();
+        if (!series.openBlock.append(timestamp, value)) {
+            seal(series);
+            sizeBefore = 0;
+            capacityBefore = series.openBlock.getCapacityInBytes();
+            series.openBlock.append(timestamp, value);
+        }
+        payloadBytes += series.openBlock.getSizeInBytes() - sizeBefore;
+        storedBytes += series.openBlock.getCapacityInBytes() - capacityBefore;
+        storedPoints++;
+        if (series.openBlock.getPoints() >= pointsPerBlock) {
+            seal(series);
+        }
+    }
+
+    private void seal(Series series) {
+        TimeSeriesBlock block = series.openBlock;
+        if (block.getPoints() == 0) {
+            return;
+        }
+        storedBytes -= block.getCapacityInBytes();
+        block.seal();
+        storedBytes += block.getCapacityInBytes() + SEALED_BLOCK_OVERHEAD_BYTES;
+        SealedBlock sealedBlock = new SealedBlock(series, block);
+        series.sealedBlocks.add(sealedBlock);
+        sealedBlocks.add(sealedBlock);
+        series.openBlock = new TimeSeriesBlock();
+        storedBytes += series.openBlock.getCapacityInBytes();
+    }
+
+    /**
+     * Evict the oldest sealed blocks until the store is within its budget. When the open blocks alone are over the
+     * budget, they're sealed so they can be evicted as well.
+     */
+    private void evictOverBudget() {
+        while (storedBytes > maxBytes) {
+            if (sealedBlocks.isEmpty()) {
+                seriesByKey.values().forEach(this::seal);
+                if (sealedBlocks.isEmpty()) {
+                    return;
+                }
+            }
+            SealedBlock evicted = sealedBlocks.poll();
+            evicted.series.sealedBlocks.remove(0);
+            storedBytes -= evicted.block.getCapacityInBytes() + SEALED_BLOCK_OVERHEAD_BYTES;
+            payloadBytes -= evicted.block.getSizeInBytes();
+            storedPoints -= evicted.block.getPoints();
+            evictedBlocksTotal++;
+            evictedPointsTotal += evicted.block.getPoints();
+            if (evicted.series.sealedBlocks.isEmpty() && evicted.series.openBlock.getPoints() == 0) {
+                seriesByKey.remove(getSeriesKey(evicted.series.dimensionsKey, evicted.series.metricKey));
+                storedBytes -= evicted.series.overheadBytes + evicted.series.openBlock.getCapacityInBytes();
+            }
+        }
+    }
+
+    /**
+     * Rebuild the metrics of a time range, one metric per set of dimensions and timestamp, ordered by timestamp
+     * @param fromMillis start of the range, inclusive
+     * @param toMillis end of the range, inclusive
+     * @return the rebuilt metrics
+     */
+    public synchronized List<Metric> query(long fromMillis, long toMillis) {
+        Map<Long, Map<String, Metric>> metricsByTimestamp = new TreeMap<>();
+        for (Series series : seriesByKey.values()) {
+            List<TimeSeriesBlock> blocks = new ArrayList<>();
+            series.sealedBlocks.forEach(sealedBlock -> blocks.add(sealedBlock.block));
+            blocks.add(series.openBlock);
+            for (TimeSeriesBlock block : blocks) {
+                if (block.getPoints() == 0 || block.getLastTimestamp() < fromMillis || block.getFirstTimestamp() > toMillis) {
+                    continue;
+                }
+                block.forEach((timestamp, value) -> {
+                    if (timestamp >= fromMillis && timestamp <= toMillis) {
+                        Metric metric = metricsByTimestamp.computeIfAbsent(timestamp, key -> new LinkedHashMap<>())
+                                .computeIfAbsent(series.dimensionsKey, key -> new Metric(new LinkedHashMap<>(),
+                                        Instant.ofEpochMilli(timestamp), series.dimensions));
+                        metric.getMetricMap().put(series.metricKey, toNumber(value));
+                    }
+                });
+            }
+        }
+        List<Metric> metrics = new ArrayList<>();
+        metricsByTimestamp.values().forEach(metricsByDimensions -> metrics.addAll(metricsByDimensions.values()));
+        return metrics;
+    }
+
+    /**
+     * Values are stored as doubles, whole values are rebuilt as longs so they're written as they were polled
+     */
+    private static Number toNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < (1L << 53)) {
+            return (long) value;
+        }
+        return value;
+    }
+
+    private static String getSeriesKey(String dimensionsKey, String metricKey) {
+        return dimensionsKey + metricKey;
+    }
+
+    private static String getDimensionsKey(List<Dimension> dimensions) {
+        StringBuilder key = new StringBuilder();
+        for (Dimension dimension : dimensions) {
+            key.append(dimension.getKey()).append('=').append(dimension.getValue()).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the number of series, the stored points, the estimated heap they take and their compressed bytes, the
+     * evictions so far, and the time span stored
+     */
+    public synchronized Map<String, Number> getCounters() {
+        long oldestTimestamp = Long.MAX_VALUE;
+        long newestTimestamp = Long.MIN_VALUE;
+        for (Series series : seriesByKey.values()) {
+            TimeSeriesBlock oldestBlock = series.sealedBlocks.isEmpty() ? series.openBlock : series.sealedBlocks.get(0).block;
+            if (oldestBlock.getPoints() > 0) {
+                oldestTimestamp = Math.min(oldestTimestamp, oldestBlock.getFirstTimestamp());
+            }
+            TimeSeriesBlock newestBlock = series.openBlock.getPoints() > 0 || series.sealedBlocks.isEmpty() ? series.openBlock :
+                    series.sealedBlocks.get(series.sealedBlocks.size() - 1).block;
+            if (newestBlock.getPoints() > 0) {
+                newestTimestamp = Math.max(newestTimestamp, newestBlock.getLastTimestamp());
+            }
+        }
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("series", seriesByKey.size());
+        counters.put("storedPoints", storedPoints);
+        counters.put("storedBytes", storedBytes);
+        counters.put("payloadBytes", payloadBytes);
+        counters.put("bytesPerPoint", storedPoints == 0 ? 0 : (double) payloadBytes / storedPoints);
+        counters.put("storedSeconds", newestTimestamp < oldestTimestamp ? 0 : (newestTimestamp - oldestTimestamp) / 1000);
+        counters.put("evictedBlocksTotal", evictedBlocksTotal);
+        counters.put("evictedPointsTotal", evictedPointsTotal);
+        return counters;
+    }
+
+    private static class Series {
+        private final List<Dimension> dimensions;
+        private final String dimensionsKey;
+        private final String metricKey;
+        private final List<SealedBlock> sealedBlocks = new ArrayList<>();
+        private final long overheadBytes;
+        private TimeSeriesBlock openBlock = new TimeSeriesBlock();
+
+        private Series(List<Dimension> dimensions, String dimensionsKey, String metricKey) {
+            this.dimensions = new ArrayList<>(dimensions);
+            this.dimensionsKey = dimensionsKey;
+            this.metricKey = metricKey;
+            // The map key, the dimensions key and the metric key are each kept, two bytes per character
+            long overhead = SERIES_OVERHEAD_BYTES + 2L * (2 * (dimensionsKey.length() + metricKey.length()));
+            for (Dimension dimension : dimensions) {
+                overhead += DIMENSION_OVERHEAD_BYTES + 2L * (length(dimension.getKey()) + length(dimension.getValue()));
+            }
+            this.overheadBytes = overhead;
+        }
+
+        private static int length(String value) {
+            return value == null ? 0 : value.length();
+        }
+    }
+
+    private static class SealedBlock {
+        private final Series series;
+        private final TimeSeriesBlock block;
+
+        private SealedBlock(Series series, TimeSeriesBlock block) {
+            this.series = series;
+            this.block = block;
+        }
+    }
+}
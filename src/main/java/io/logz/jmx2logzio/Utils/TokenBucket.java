@@ -0,0 +1,51 @@
+package io.logz.jmx2logzio.Utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A byte rate limiter. Tokens refill continuously up to a burst size, and a block is allowed as long as any tokens
+ * are left, going into debt for its full size. That way a block larger than the burst is still sent eventually, and
+ * the average rate stays at the limit.
+ */
+public class TokenBucket {
+    private final long bytesPerSecond;
+    private final double burstBytes;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSecond refill rate, or 0 for no limit
+     * @param burstSeconds seconds of refill the bucket holds, at least the interval between sends
+     */
+    public TokenBucket(long bytesPerSecond, int burstSeconds) {
+        this(bytesPerSecond, burstSeconds, System::nanoTime);
+    }
+
+    TokenBucket(long bytesPerSecond, int burstSeconds, LongSupplier nanoClock) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = (double) bytesPerSecond * burstSeconds;
+        this.nanoClock = nanoClock;
+        this.tokens = burstBytes;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * @param bytes size of the block about to be sent
+     * @return false if the block should wait for the bucket to refill
+     */
+    public synchronized boolean tryAcquire(int bytes) {
+        if (bytesPerSecond <= 0) {
+            return true;
+        }
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burstBytes, tokens + (now - lastRefillNanos) * bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        if (tokens <= 0) {
+            return false;
+        }
+        tokens -= bytes;
+        return true;
+    }
+}
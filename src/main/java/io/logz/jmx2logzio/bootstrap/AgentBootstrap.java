@@ -0,0 +1,110 @@
+package io.logz.jmx2logzio.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Entry point of the javaagent jar. The jar only holds this package, and jmx2logzio with its dependencies as a nested
+ * jar, so none of them is on the application's class path: the nested jar is extracted to a temporary file and loaded
+ * by an {@link IsolatedClassLoader}, which loads each class only once it's first used. The time premain takes and the
+ * metaspace it adds are recorded in {@link AgentFootprint}.
+ * This package must only depend on the JDK.
+ */
+public class AgentBootstrap {
+    public static final String NESTED_JAR = "jmx2logzio-all.jar";
+    private static final String AGENT_CLASS = "io.logz.jmx2logzio.Jmx2LogzioJavaAgent";
+    private static final String MAIN_CLASS = "io.logz.jmx2logzio.Jmx2LogzioJolokia";
+    private static IsolatedClassLoader loader;
+
+    /**
+     * Entry point when the agent is loaded on JVM startup (-javaagent)
+     * @param agentArgument Argument String in the form of key=value,key=value...
+     * @param instrument JVM instrumentation instance
+     */
+    public static void premain(String agentArgument, Instrumentation instrument) throws Exception {
+        startAgent("premain", agentArgument, instrument);
+    }
+
+    /**
+     * Entry point when the agent is attached to an already running JVM (Attach API)
+     * @param agentArgument Argument String in the form of key=value,key=value...
+     * @param instrument JVM instrumentation instance
+     */
+    public static void agentmain(String agentArgument, Instrumentation instrument) throws Exception {
+        startAgent("agentmain", agentArgument, instrument);
+    }
+
+    /**
+     * Entry point when the jar is run as a standalone Jolokia poller
+     * @param args the configuration file's path, optional
+     */
+    public static void main(String[] args) throws Exception {
+        invoke(MAIN_CLASS, "main", new Class<?>[]{String[].class}, new Object[]{args});
+    }
+
+    private static void startAgent(String entryPoint, String agentArgument, Instrumentation instrument) throws Exception {
+        AgentFootprint.Sample beforeStartup = AgentFootprint.sample();
+        invoke(AGENT_CLASS, entryPoint, new Class<?>[]{String.class, Instrumentation.class}, new Object[]{agentArgument, instrument});
+        AgentFootprint.recordStartup(beforeStartup, getLoader());
+    }
+
+    private static void invoke(String className, String methodName, Class<?>[] parameterTypes, Object[] args) throws Exception {
+        IsolatedClassLoader isolatedLoader = getLoader();
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        // Typesafe Config reads its resources through the context class loader, and the agent's threads inherit it
+        thread.setContextClassLoader(isolatedLoader);
+        try {
+            Class.forName(className, true, isolatedLoader).getMethod(methodName, parameterTypes).invoke(null, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+    }
+
+    private static synchronized IsolatedClassLoader getLoader() throws IOException {
+        if (loader == null) {
+            loader = new IsolatedClassLoader(extractNestedJar(), AgentBootstrap.class.getClassLoader());
+        }
+        return loader;
+    }
+
+    /**
+     * A jar nested in a jar can't be read by a class loader, so it's copied out once per JVM
+     * @return the URL of the extracted copy, deleted when the JVM exits
+     * @throws IOException if the agent's jar or its nested jar can't be read
+     */
+    private static URL extractNestedJar() throws IOException {
+        URL agentJar = AgentBootstrap.class.getProtectionDomain().getCodeSource().getLocation();
+        try (JarFile jar = new JarFile(new File(agentJar.toURI()))) {
+            JarEntry nestedJar = jar.getJarEntry(NESTED_JAR);
+            if (nestedJar == null) {
+                throw new IOException(NESTED_JAR + " is missing from " + agentJar);
+            }
+            File extracted = File.createTempFile("jmx2logzio-", ".jar");
+            extracted.deleteOnExit();
+            try (InputStream in = jar.getInputStream(nestedJar)) {
+                Files.copy(in, extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return extracted.toURI().toURL();
+        } catch (URISyntaxException e) {
+            throw new IOException("Failed locating the agent's jar " + agentJar, e);
+        }
+    }
+}
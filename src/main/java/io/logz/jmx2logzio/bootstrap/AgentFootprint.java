@@ -0,0 +1,71 @@
+package io.logz.jmx2logzio.bootstrap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The agent's footprint in the application's JVM: the time premain took on the application's startup path, and the
+ * metaspace and classes added meanwhile, as recorded by {@link AgentBootstrap}, and the classes loaded from the agent's
+ * jar so far. Nothing is recorded when the agent wasn't started through {@link AgentBootstrap}.
+ */
+public final class AgentFootprint {
+    private static final String METASPACE_POOL = "Metaspace";
+
+    private static volatile boolean recorded = false;
+    private static long startupTimeMs;
+    private static long startupMetaspaceBytes;
+    private static long startupLoadedClasses;
+    private static IsolatedClassLoader loader;
+
+    private AgentFootprint() {
+    }
+
+    /**
+     * @return the startup footprint and the number of classes loaded from the agent's jar so far,
+     * or an empty map when the agent wasn't started through {@link AgentBootstrap}
+     */
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        if (recorded) {
+            counters.put("startupTimeMs", startupTimeMs);
+            counters.put("startupMetaspaceBytes", startupMetaspaceBytes);
+            counters.put("startupLoadedClasses", startupLoadedClasses);
+            counters.put("agentLoadedClasses", loader.getDefinedClasses());
+        }
+        return counters;
+    }
+
+    static Sample sample() {
+        long metaspaceBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals(METASPACE_POOL)) {
+                metaspaceBytes = pool.getUsage().getUsed();
+            }
+        }
+        return new Sample(System.nanoTime(), metaspaceBytes, ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+    }
+
+    static void recordStartup(Sample beforeStartup, IsolatedClassLoader agentLoader) {
+        Sample afterStartup = sample();
+        startupTimeMs = TimeUnit.NANOSECONDS.toMillis(afterStartup.nanoTime - beforeStartup.nanoTime);
+        startupMetaspaceBytes = afterStartup.metaspaceBytes - beforeStartup.metaspaceBytes;
+        startupLoadedClasses = afterStartup.loadedClasses - beforeStartup.loadedClasses;
+        loader = agentLoader;
+        recorded = true;
+    }
+
+    static class Sample {
+        private final long nanoTime;
+        private final long metaspaceBytes;
+        private final long loadedClasses;
+
+        private Sample(long nanoTime, long metaspaceBytes, long loadedClasses) {
+            this.nanoTime = nanoTime;
+            this.metaspaceBytes = metaspaceBytes;
+            this.loadedClasses = loadedClasses;
+        }
+    }
+}
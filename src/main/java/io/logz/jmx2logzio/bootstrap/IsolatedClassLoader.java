@@ -0,0 +1,87 @@
+package io.logz.jmx2logzio.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads classes and resources from the agent's own jar before its parent, so the application neither supplies the
+ * agent's dependencies nor sees them. The JDK's classes and this package's come from the parent, the latter so the
+ * implementation reports the footprint recorded by {@link AgentBootstrap}. SLF4J also comes from the parent when the
+ * application has an SLF4J binding, so the agent logs through the application's logging.
+ */
+class IsolatedClassLoader extends URLClassLoader {
+    private static final String BOOTSTRAP_PACKAGE = AgentBootstrap.class.getPackage().getName() + ".";
+    private static final String SLF4J_PACKAGE = "org.slf4j.";
+    private static final String SLF4J_API = "org/slf4j/LoggerFactory.class";
+    private static final String SLF4J_BINDING = "org/slf4j/impl/StaticLoggerBinder.class";
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final boolean sharedLogging;
+    private final AtomicLong definedClasses = new AtomicLong();
+
+    IsolatedClassLoader(URL jar, ClassLoader parent) {
+        super(new URL[]{jar}, parent);
+        this.sharedLogging = parent.getResource(SLF4J_API) != null && parent.getResource(SLF4J_BINDING) != null;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null && !isParentFirst(name)) {
+                try {
+                    loaded = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    // Not one of the agent's classes
+                }
+            }
+            if (loaded == null) {
+                loaded = getParent().loadClass(name);
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> defined = super.findClass(name);
+        definedClasses.incrementAndGet();
+        return defined;
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL resource = findResource(name);
+        return resource != null ? resource : getParent().getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        List<URL> resources = new ArrayList<>(Collections.list(findResources(name)));
+        resources.addAll(Collections.list(getParent().getResources(name)));
+        return Collections.enumeration(resources);
+    }
+
+    /**
+     * @return the number of classes loaded from the agent's jar so far
+     */
+    long getDefinedClasses() {
+        return definedClasses.get();
+    }
+
+    private boolean isParentFirst(String name) {
+        return name.startsWith("java.") || name.startsWith(BOOTSTRAP_PACKAGE) || (sharedLogging && name.startsWith(SLF4J_PACKAGE));
+    }
+}
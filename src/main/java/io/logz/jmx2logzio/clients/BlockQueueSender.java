@@ -0,0 +1,117 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.BlockQueue;
+import io.logz.jmx2logzio.Utils.SerialTask;
+import io.logz.jmx2logzio.Utils.TokenBucket;
+import io.logz.jmx2logzio.objects.PriorityLaneParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically ships the blocks of one or more {@link BlockQueue} lanes to the listener, acknowledging each block only
+ * after the listener accepted (or permanently rejected) it. When the listener fails, the remaining blocks wait for the
+ * next drain. Lanes are drained in weighted rounds, in order of priority: each round sends up to a lane's weight of
+ * blocks from it, unless the lane reached its rate limit.
+ */
+public class BlockQueueSender {
+    private final Logger logger = LoggerFactory.getLogger(BlockQueueSender.class);
+
+    private final List<PriorityLane> lanes;
+    private final ListenerHttpClient httpClient;
+    private ScheduledFuture<?> drainTask;
+
+    public BlockQueueSender(BlockQueue blockQueue, ListenerHttpClient httpClient) {
+        this(Collections.singletonList(new PriorityLane(new PriorityLaneParams("default", Collections.emptyList(), 1, 0),
+                blockQueue, new TokenBucket(0, 0))), httpClient);
+    }
+
+    /**
+     * @param lanes the lanes, in order of priority
+     * @param httpClient client of the listener
+     */
+    public BlockQueueSender(List<PriorityLane> lanes, ListenerHttpClient httpClient) {
+        this.lanes = lanes;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * @param scheduler scheduler of the drain task
+     * @param blockingExecutor executor the drain, which blocks on HTTP, runs on. A drain which is still running when
+     *                         the next one is due is followed by a single one.
+     * @param drainIntervalInSeconds seconds between the drains
+     */
+    public void start(ScheduledExecutorService scheduler, Executor blockingExecutor, int drainIntervalInSeconds) {
+        SerialTask task = new SerialTask("drain", blockingExecutor, this::drainSafely);
+        drainTask = scheduler.scheduleWithFixedDelay(task::request, drainIntervalInSeconds, drainIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop scheduling drains, the owner drains one last time
+     */
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel(false);
+        }
+    }
+
+    /**
+     * Send queued blocks until the lanes are empty or rate limited, or the listener fails
+     * @return number of blocks sent
+     */
+    public int drain() {
+        return drain(Long.MAX_VALUE);
+    }
+
+    /**
+     * Send queued blocks until the lanes are empty or rate limited, the listener fails, or the time is up
+     * @param timeoutNanos time after which no more blocks are sent
+     * @return number of blocks sent
+     */
+    public synchronized int drain(long timeoutNanos) {
+        long start = System.nanoTime();
+        int sent = 0;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (PriorityLane lane : lanes) {
+                for (int i = 0; i < lane.getWeight(); i++) {
+                    long remainingNanos = timeoutNanos - (System.nanoTime() - start);
+                    if (remainingNanos <= 0) {
+                        return sent;
+                    }
+                    byte[] block = lane.getQueue().peek();
+                    if (block == null || !lane.tryAcquire(block)) {
+                        break;
+                    }
+                    // A send to an unreachable listener mustn't outlast the time that's left
+                    ListenerHttpClient.SendResult result = httpClient.send(block, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+                    if (result == ListenerHttpClient.SendResult.FAILED) {
+                        return sent;
+                    }
+                    lane.getQueue().ack();
+                    if (result == ListenerHttpClient.SendResult.SENT) {
+                        sent++;
+                    }
+                    progress = true;
+                }
+            }
+        }
+        return sent;
+    }
+
+    private void drainSafely() {
+        try {
+            int sent = drain();
+            logger.debug("sent {} queued blocks", sent);
+        } catch (RuntimeException e) {
+            logger.error("Failed draining the queue: {}", e.getMessage(), e);
+        }
+    }
+}
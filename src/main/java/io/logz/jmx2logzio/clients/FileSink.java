@@ -0,0 +1,136 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Appends metrics as newline delimited JSON to a local file, rolling it over to file.1, file.2... when it reaches
+ * its maximum size. Documents are written through a buffer which is flushed once per polling cycle.
+ */
+public class FileSink implements MetricSink {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final byte DOCUMENTS_SEPARATOR = '\n';
+    private final Logger logger = LoggerFactory.getLogger(FileSink.class);
+
+    private final File file;
+    private final long maxFileSizeInBytes;
+    private final int maxFiles;
+    private final MetricsBatcher metricsBatcher;
+    private OutputStream outputStream;
+    private long fileSize;
+
+    /**
+     * @param file the file to write to
+     * @param maxFileSizeInBytes size at which the file is rolled over
+     * @param maxFiles number of files to keep, including the one being written
+     */
+    public FileSink(File file, long maxFileSizeInBytes, int maxFiles) {
+        this(file, maxFileSizeInBytes, maxFiles, MetricsBatcher.DimensionEncoding.INLINE);
+    }
+
+    /**
+     * @param file the file to write to
+     * @param maxFileSizeInBytes size at which the file is rolled over
+     * @param maxFiles number of files to keep, including the one being written
+     * @param dimensionEncoding whether each document carries its dimensions or refers to its block's dictionary
+     */
+    public FileSink(File file, long maxFileSizeInBytes, int maxFiles, MetricsBatcher.DimensionEncoding dimensionEncoding) {
+        this.metricsBatcher = new MetricsBatcher(WRITE_BUFFER_SIZE, dimensionEncoding);
+        this.file = file;
+        this.maxFileSizeInBytes = maxFileSizeInBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public synchronized void writeMetrics(List<Metric> metrics) {
+        try {
+            metricsBatcher.write(metrics, this::writeBlock);
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Failed writing metrics to {}: {}", file, e.getMessage(), e);
+            close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        close();
+    }
+
+    private void writeBlock(byte[] block) {
+        try {
+            if (outputStream == null) {
+                open();
+            }
+            if (fileSize > 0 && fileSize + block.length + 1 > maxFileSizeInBytes) {
+                roll();
+            }
+            outputStream.write(block);
+            outputStream.write(DOCUMENTS_SEPARATOR);
+            fileSize += block.length + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed creating directory " + parent);
+        }
+        outputStream = new BufferedOutputStream(new FileOutputStream(file, true), WRITE_BUFFER_SIZE);
+        fileSize = file.length();
+    }
+
+    private void roll() throws IOException {
+        close();
+        File oldest = rolledFile(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Failed deleting " + oldest);
+        }
+        for (int index = maxFiles - 2; index >= 1; index--) {
+            File rolled = rolledFile(index);
+            if (rolled.exists() && !rolled.renameTo(rolledFile(index + 1))) {
+                throw new IOException("Failed renaming " + rolled);
+            }
+        }
+        if (maxFiles > 1 ? !file.renameTo(rolledFile(1)) : !file.delete()) {
+            throw new IOException("Failed rolling over " + file);
+        }
+        open();
+    }
+
+    private File rolledFile(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+    private void close() {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            logger.warn("Failed closing {}: {}", file, e.getMessage());
+        }
+        outputStream = null;
+    }
+}
@@ -0,0 +1,254 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.MBeanClient;
+import io.logz.jmx2logzio.objects.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.logz.jmx2logzio.Utils.MetricsUtils.sanitizeMetricName;
+
+/**
+ * Reads the performance counters a HotSpot JVM publishes in its memory mapped hsperfdata file (the ones jstat reads),
+ * without running any code in the monitored JVM. Counters are grouped into beans named after their first two name
+ * segments, e.g. sun.gc:type=PerfData with the metric key collector.0.invocations. String counters are skipped,
+ * and tick counters are converted to milliseconds.
+ */
+public class HsperfdataClient extends MBeanClient {
+
+    public static final String POLLER_HSPERFDATA = "service.poller.hsperfdata";
+    public static final String HSPERFDATA_PID = "service.poller.hsperfdata.pid";
+    public static final String HSPERFDATA_DIRECTORY = "service.poller.hsperfdata.directory";
+
+    private static final String BEAN_PROPERTIES = "type=PerfData";
+    private static final int MAGIC = 0xcafec0c0;
+    private static final int SUPPORTED_MAJOR_VERSION = 2;
+    // PerfDataPrologue offsets
+    private static final int BYTE_ORDER_OFFSET = 4;
+    private static final int MAJOR_VERSION_OFFSET = 5;
+    private static final int ACCESSIBLE_OFFSET = 7;
+    private static final int ENTRY_OFFSET_OFFSET = 24;
+    private static final int NUM_ENTRIES_OFFSET = 28;
+    // PerfDataEntry offsets
+    private static final int ENTRY_LENGTH_OFFSET = 0;
+    private static final int NAME_OFFSET_OFFSET = 4;
+    private static final int VECTOR_LENGTH_OFFSET = 8;
+    private static final int DATA_TYPE_OFFSET = 12;
+    private static final int DATA_UNITS_OFFSET = 14;
+    private static final int DATA_OFFSET_OFFSET = 16;
+    private static final byte DATA_TYPE_LONG = 'J';
+    private static final byte UNITS_TICKS = 3;
+    private static final String TICKS_FREQUENCY_COUNTER = "sun.os.hrt.frequency";
+
+    private final Logger logger = LoggerFactory.getLogger(HsperfdataClient.class);
+
+    private final File perfDataFile;
+    private MappedByteBuffer buffer;
+    private int indexedEntries = -1;
+    private long ticksPerSecond = 0;
+    private final Map<String, List<Counter>> countersByBean = new LinkedHashMap<>();
+    private List<Dimension> extraDimensions = new ArrayList<>();
+
+    /**
+     * @param perfDataFile the monitored JVM's hsperfdata file, usually /tmp/hsperfdata_&lt;user&gt;/&lt;pid&gt;
+     */
+    public HsperfdataClient(File perfDataFile) {
+        this.perfDataFile = perfDataFile;
+    }
+
+    /**
+     * @param directory the hsperfdata directory of the monitored JVM's user, or null for the current user's directory
+     * @param pid the monitored JVM's process id
+     * @return the JVM's hsperfdata file
+     */
+    public static File getPerfDataFile(String directory, int pid) {
+        File parent = directory != null ? new File(directory) : new File("/tmp", "hsperfdata_" + System.getProperty("user.name"));
+        return new File(parent, String.valueOf(pid));
+    }
+
+    @Override
+    public synchronized List<MetricBean> getBeans() {
+        index();
+        List<MetricBean> beans = new ArrayList<>();
+        countersByBean.forEach((beanName, counters) -> {
+            List<String> keys = new ArrayList<>(counters.size());
+            counters.forEach(counter -> keys.add(counter.key));
+            beans.add(new MetricBean(beanName, keys));
+        });
+        return beans;
+    }
+
+    @Override
+    public synchronized List<MetricBean> retainRegistered(List<MetricBean> beans) {
+        index();
+        List<MetricBean> registered = new ArrayList<>();
+        for (MetricBean bean : beans) {
+            if (countersByBean.containsKey(bean.getName())) {
+                registered.add(bean);
+            }
+        }
+        return registered;
+    }
+
+    @Override
+    public synchronized List<Metric> getMetrics(List<MetricBean> beans) {
+        index();
+        List<Metric> metrics = new ArrayList<>();
+        Instant metricTime = Instant.now();
+        for (MetricBean bean : beans) {
+            List<Counter> counters = countersByBean.get(bean.getName());
+            if (counters == null) {
+                reportBeanFailure(bean.getName(), "counters are no longer published");
+                continue;
+            }
+            long start = System.nanoTime();
+            Map<String, Number> metricToValue = new LinkedHashMap<>();
+            for (Counter counter : counters) {
+                long value = buffer.getLong(counter.dataOffset);
+                metricToValue.put(counter.key, counter.ticks && ticksPerSecond > 0 ? ticksToMillis(value, ticksPerSecond) : value);
+            }
+            filterMetricKeys(bean.getName(), metricToValue);
+            reportBeanSuccess(bean.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (!metricToValue.isEmpty()) {
+                metrics.add(new Metric(metricToValue, metricTime, getDimensions(bean.getName())));
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Convert a tick counter to milliseconds without overflowing, as ticks * 1000 would after about 106 days with
+     * the nanosecond ticks of Linux
+     * @param ticks the counter's value
+     * @param ticksPerSecond the ticks' frequency
+     * @return the counter in milliseconds
+     */
+    public static long ticksToMillis(long ticks, long ticksPerSecond) {
+        return ticks / ticksPerSecond * 1000 + ticks % ticksPerSecond * 1000 / ticksPerSecond;
+    }
+
+    @Override
+    public void setExtraDimensions(List<Dimension> extraDimensions) {
+        this.extraDimensions = extraDimensions;
+    }
+
+    private List<Dimension> getDimensions(String beanName) {
+        List<Dimension> dimensions = new ArrayList<>();
+        int separator = beanName.indexOf(':');
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, beanName.substring(0, separator)));
+        String[] property = beanName.substring(separator + 1).split("=", 2);
+        dimensions.add(new Dimension(property[0], property[1]));
+        dimensions.addAll(extraDimensions);
+        return dimensions;
+    }
+
+    /**
+     * Map the file on first use, and again after a failed read or once the monitored JVM removed it, and index the
+     * counters whenever the JVM published new ones. The JVM only appends entries, so the values of indexed counters are read in place.
+     * @throws MBeanClientPollingFailure if the file can't be read
+     */
+    private void index() {
+        try {
+            if (buffer == null || !perfDataFile.exists()) {
+                map();
+            }
+            if (buffer.get(ACCESSIBLE_OFFSET) == 0) {
+                // The JVM hasn't finished creating its counters yet
+                return;
+            }
+            int numEntries = buffer.getInt(NUM_ENTRIES_OFFSET);
+            if (numEntries == indexedEntries) {
+                return;
+            }
+            countersByBean.clear();
+            int entryStart = buffer.getInt(ENTRY_OFFSET_OFFSET);
+            for (int i = 0; i < numEntries; i++) {
+                indexEntry(entryStart);
+                entryStart += buffer.getInt(entryStart + ENTRY_LENGTH_OFFSET);
+            }
+            indexedEntries = numEntries;
+            logger.debug("Indexed {} counters of {} in {} beans", numEntries, perfDataFile, countersByBean.size());
+        } catch (IOException | IndexOutOfBoundsException e) {
+            buffer = null;
+            throw new MBeanClientPollingFailure("Failed reading hsperfdata file " + perfDataFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void map() throws IOException {
+        buffer = null;
+        indexedEntries = -1;
+        countersByBean.clear();
+        try (RandomAccessFile file = new RandomAccessFile(perfDataFile, "r"); FileChannel channel = file.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.order(ByteOrder.BIG_ENDIAN).getInt(0) != MAGIC) {
+                throw new IOException("not an hsperfdata file");
+            }
+            if (mapped.get(MAJOR_VERSION_OFFSET) != SUPPORTED_MAJOR_VERSION) {
+                throw new IOException("unsupported hsperfdata version " + mapped.get(MAJOR_VERSION_OFFSET));
+            }
+            mapped.order(mapped.get(BYTE_ORDER_OFFSET) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            buffer = mapped;
+        }
+    }
+
+    private void indexEntry(int entryStart) {
+        if (buffer.get(entryStart + DATA_TYPE_OFFSET) != DATA_TYPE_LONG || buffer.getInt(entryStart + VECTOR_LENGTH_OFFSET) != 0) {
+            return;
+        }
+        String name = readName(entryStart + buffer.getInt(entryStart + NAME_OFFSET_OFFSET));
+        int dataOffset = entryStart + buffer.getInt(entryStart + DATA_OFFSET_OFFSET);
+        if (name.equals(TICKS_FREQUENCY_COUNTER)) {
+            ticksPerSecond = buffer.getLong(dataOffset);
+        }
+        String[] segments = name.split("\\.");
+        if (segments.length < 2) {
+            return;
+        }
+        int domainSegments = segments.length > 2 ? 2 : 1;
+        String domain = String.join(".", Arrays.copyOfRange(segments, 0, domainSegments));
+        String key = sanitizeMetricName(String.join(".", Arrays.copyOfRange(segments, domainSegments, segments.length)), true);
+        boolean ticks = buffer.get(entryStart + DATA_UNITS_OFFSET) == UNITS_TICKS;
+        countersByBean.computeIfAbsent(domain + ":" + BEAN_PROPERTIES, bean -> new ArrayList<>()).add(new Counter(key, dataOffset, ticks));
+    }
+
+    private String readName(int offset) {
+        int end = offset;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] name = new byte[end - offset];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(offset + i);
+        }
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    private static class Counter {
+        private final String key;
+        private final int dataOffset;
+        private final boolean ticks;
+
+        private Counter(String key, int dataOffset, boolean ticks) {
+            this.key = key;
+            this.dataOffset = dataOffset;
+            this.ticks = ticks;
+        }
+    }
+}
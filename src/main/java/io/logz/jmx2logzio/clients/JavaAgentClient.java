@@ -19,9 +19,11 @@ import org.slf4j.LoggerFactory;
 import javax.management.*;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static io.logz.jmx2logzio.Utils.MetricsUtils.sanitizeMetricName;
@@ -35,12 +37,19 @@ public class JavaAgentClient extends MBeanClient {
     private static final int ARGUMENT_KEY_INDEX = 0;
     private static final int ARGUMENT_VALUE_INDEX = 1;
 
-    private final MBeanServer server;
+    private final MBeanServerConnection server;
     private final ObjectMapper objectMapper;
     private List<Dimension> extraDimensions;
 
     public JavaAgentClient() {
-        server = ManagementFactory.getPlatformMBeanServer();
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param server the MBean server to poll, the platform MBean server or a connection to another JVM's
+     */
+    public JavaAgentClient(MBeanServerConnection server) {
+        this.server = server;
         // The visibility section here is to tell Jackson that we want it to get over all the object properties and not only the getters
         // If we wont set it, then it will fetch only partial info from the MBean objects
         objectMapper = new ObjectMapper();
@@ -59,7 +68,12 @@ public class JavaAgentClient extends MBeanClient {
         int instancesCount = 0;
         int instanceNotFoundCount = 0;
         List<MetricBean> metricBeans = Lists.newArrayList();
-        Set<ObjectInstance> instances = server.queryMBeans(null, null);
+        Set<ObjectInstance> instances;
+        try {
+            instances = server.queryMBeans(null, null);
+        } catch (IOException e) {
+            throw new MBeanClientPollingFailure("Failed querying MBeans: " + e.getMessage(), e);
+        }
 
         for (ObjectInstance instance : instances) {
             instancesCount++;
@@ -80,6 +94,8 @@ public class JavaAgentClient extends MBeanClient {
                 logger.warn("Error inspecting MBean: {}", e.getMessage(), e);
             } catch (ReflectionException e) {
                 logger.warn("An error occurred at MBean server while trying to invoke methods on MBeans :{}", e.getMessage(), e);
+            } catch (IOException e) {
+                throw new MBeanClientPollingFailure("Failed inspecting MBean " + instance.getObjectName() + ": " + e.getMessage(), e);
             }
         }
         if (((double) instanceNotFoundCount / instancesCount) * 100 > INSTANCES_NOT_FOUND_PERCENTAGE_WARNING_THRESHOLD) {
@@ -89,6 +105,17 @@ public class JavaAgentClient extends MBeanClient {
         return metricBeans;
     }
 
+    @Override
+    public List<MetricBean> retainRegistered(List<MetricBean> beans) {
+        return beans.stream().filter(bean -> {
+            try {
+                return server.isRegistered(new ObjectName(bean.getName()));
+            } catch (MalformedObjectNameException | IOException e) {
+                return false;
+            }
+        }).collect(Collectors.toList());
+    }
+
     /**
      * Converts Metric Beans to Metrics (logz.io)
      * @param beans a list of MetricBeans
@@ -101,7 +128,17 @@ public class JavaAgentClient extends MBeanClient {
         for (MetricBean metricBean : beans) {
             List<Dimension> dimensions = getDimensions(metricBean);
             if (dimensions != null) {
-                Metric metric = getMetricsDocForBean(metricBean, dimensions);
+                long start = System.nanoTime();
+                Metric metric;
+                try {
+                    metric = getMetricsDocForBean(metricBean, dimensions);
+                } catch (RuntimeException e) {
+                    // A single broken bean shouldn't fail the whole poll
+                    logger.debug("Failed reading MBean {}: {}", metricBean.getName(), e.getMessage(), e);
+                    reportBeanFailure(metricBean.getName(), e.getMessage());
+                    continue;
+                }
+                reportBeanSuccess(metricBean.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                 if (metric.getMetricMap() != null) {
                     metrics.add(metric);
                 }
@@ -128,6 +165,7 @@ public class JavaAgentClient extends MBeanClient {
                     attrValues.put(attr.getName(), attr.getValue()));
 
             Map<String, Number> metricToValue = flatten(attrValues);
+            filterMetricKeys(metricBean.getName(), metricToValue);
             if (!metricToValue.isEmpty()) {
                 try {
                     metricsDoc = new Metric(metricToValue, metricTime, dimensions);
@@ -135,7 +173,7 @@ public class JavaAgentClient extends MBeanClient {
                     logger.warn("Failed converting metric name to Logz.io-friendly name: metricsBean.getName = {}", metricBean.getName(), e);
                 }
             }
-        } catch (MalformedObjectNameException | ReflectionException | InstanceNotFoundException | IllegalArgumentException e) {
+        } catch (MalformedObjectNameException | ReflectionException | InstanceNotFoundException | IllegalArgumentException | IOException e) {
             throw new MBeanClientPollingFailure("Failed to poll Mbean " + e.getMessage(), e);
         }
         return metricsDoc;
@@ -7,6 +7,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.Utils.AttributeFilter;
 import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.JolokiaReadRequest;
 import io.logz.jmx2logzio.objects.MBeanClient;
@@ -23,6 +24,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -36,10 +39,14 @@ public class JolokiaClient extends MBeanClient {
 
     public static final String POLLER_JOLOKIA = "service.poller.jolokia";
     public static final String JOLOKIA_FULL_URL = "service.poller.jolokia.jolokiaFullUrl";
+    public static final String JOLOKIA_PATTERN_READS = "service.poller.jolokia.pattern-reads";
 
     private final Logger logger = LoggerFactory.getLogger(JolokiaClient.class);
 
     private static final String REQUEST_MBEAN_KEY = "mbean";
+    private static final String REQUEST_ATTRIBUTE_KEY = "attribute";
+    private static final String REQUEST_PATH_KEY = "path";
+    private static final String JOLOKIA_PATH_SEPARATOR = "/";
     private static final String RESPONSE_REQUEST_KEY = "request";
     private static final String RESPONSE_STATUS_KEY = "status";
     private static final String RESPONSE_ERROR_KEY = "error";
@@ -53,6 +60,7 @@ public class JolokiaClient extends MBeanClient {
     private static final int ARGUMENT_VALUE_INDEX = 1;
 
     private String jolokiaFullURL;
+    private final List<String> patternReads;
     private final int connectTimeout = (int) TimeUnit.SECONDS.toMillis(30);
     private final int socketTimeout = (int) TimeUnit.SECONDS.toMillis(30);
 
@@ -62,7 +70,17 @@ public class JolokiaClient extends MBeanClient {
     private List<Dimension> extraDimensions;
 
     public JolokiaClient(String jolokiaFullURL) {
+        this(jolokiaFullURL, Collections.emptyList());
+    }
+
+    /**
+     * @param jolokiaFullURL the Jolokia agent's URL
+     * @param patternReads object name patterns read in a single request, which Jolokia expands to the matching beans,
+     *                     instead of listing all of the beans first. If empty, beans are discovered with /list
+     */
+    public JolokiaClient(String jolokiaFullURL, List<String> patternReads) {
         this.jolokiaFullURL = jolokiaFullURL;
+        this.patternReads = patternReads;
         if (!jolokiaFullURL.endsWith("/")) {
             this.jolokiaFullURL = jolokiaFullURL + "/";
         }
@@ -77,6 +95,10 @@ public class JolokiaClient extends MBeanClient {
      * @throws MBeanClientPollingFailure when failed to poll metrics
      */
     public List<MetricBean> getBeans() throws MBeanClientPollingFailure {
+        if (readsBeanPatterns()) {
+            // Each pattern is polled as a bean, its attributes are taken from the attribute rules on read
+            return patternReads.stream().map(pattern -> new MetricBean(pattern, Collections.emptyList())).collect(Collectors.toList());
+        }
         try {
             stopwatch.reset().start();
             logger.debug("Retrieving /list of bean from Jolokia ({})...", jolokiaFullURL);
@@ -100,6 +122,11 @@ public class JolokiaClient extends MBeanClient {
         }
     }
 
+    @Override
+    public boolean readsBeanPatterns() {
+        return !patternReads.isEmpty();
+    }
+
     /**
      * Converts Metric Beans to Metrics (logz.io)
      * @param beans a list of MetricBeans
@@ -109,7 +136,19 @@ public class JolokiaClient extends MBeanClient {
     public List<Metric> getMetrics(List<MetricBean> beans) throws MBeanClientPollingFailure {
         List<JolokiaReadRequest> readRequests = Lists.newArrayList();
         for (MetricBean bean : beans) {
-            readRequests.add(new JolokiaReadRequest(bean.getName(), bean.getAttributes()));
+            AttributeFilter.BeanAttributes beanAttributes = getBeanAttributes(bean.getName());
+            if (readsBeanPatterns()) {
+                // Inner paths of a pattern read apply to the map of beans, so only the attribute names are requested
+                readRequests.add(new JolokiaReadRequest(bean.getName(), beanAttributes == null ? null : beanAttributes.getAttributeNames()));
+                continue;
+            }
+            List<String[]> paths = beanAttributes == null ? null : beanAttributes.getJolokiaPaths(bean.getAttributes());
+            if (paths == null) {
+                readRequests.add(new JolokiaReadRequest(bean.getName(), bean.getAttributes()));
+            } else {
+                // Let Jolokia extract only the included values
+                paths.forEach(path -> readRequests.add(new JolokiaReadRequest(bean.getName(), path[0], path[1])));
+            }
         }
 
         try {
@@ -123,14 +162,41 @@ public class JolokiaClient extends MBeanClient {
             }
             ArrayList<Map<String, Object>> responses = objectMapper.readValue(responseBody, ArrayList.class);
 
-            List<Metric> metrics = Lists.newArrayList();
+            // A bean read by several paths has several responses, which are merged into a single doc, and count as a
+            // single read for the quarantine, failed if any of them failed
+            Map<String, Metric> metricsByBean = new LinkedHashMap<>();
+            Map<String, String> failureByBean = new LinkedHashMap<>();
             for (Map<String, Object> response : responses) {
+                String mBeanName = (String) ((Map<String, Object>) response.get(RESPONSE_REQUEST_KEY)).get(REQUEST_MBEAN_KEY);
+                String failure = getResponseFailure(mBeanName, response);
+                if (failure != null) {
+                    failureByBean.putIfAbsent(mBeanName, failure);
+                    continue;
+                }
+                failureByBean.putIfAbsent(mBeanName, null);
+                if (readsBeanPatterns()) {
+                    addMetricsDocsForPatternResponse(response, metricsByBean);
+                    continue;
+                }
                 Metric metric = getMetricsDocForResponse(response);
-                if (!metric.getMetricMap().isEmpty()) {
-                    metrics.add(metric);
+                if (metric == null) {
+                    continue;
+                }
+                Metric beanMetric = metricsByBean.putIfAbsent(mBeanName, metric);
+                if (beanMetric != null) {
+                    beanMetric.getMetricMap().putAll(metric.getMetricMap());
                 }
             }
-            return metrics;
+            failureByBean.forEach((mBeanName, failure) -> {
+                if (failure == null) {
+                    reportBeanSuccess(mBeanName, -1);
+                } else {
+                    reportBeanFailure(mBeanName, failure);
+                }
+            });
+            return metricsByBean.values().stream()
+                    .filter(metric -> !metric.getMetricMap().isEmpty())
+                    .collect(Collectors.toList());
         } catch (IOException e) {
             throw new MBeanClientPollingFailure("Failed reading beans from Jolokia. Error = " + e.getMessage(), e);
         }
@@ -142,20 +208,74 @@ public class JolokiaClient extends MBeanClient {
     }
 
     /**
-     * Parse metrics from the Jolokia server response
+     * Parse metrics from a successful Jolokia server response
      * @param response A response map from the Jolokia server
      * @return a list of logz.io metrics
      */
     private Metric getMetricsDocForResponse(Map<String, Object> response) {
         Map<String, Object> request = (Map<String, Object>) response.get(RESPONSE_REQUEST_KEY);
         String mBeanName = (String) request.get(REQUEST_MBEAN_KEY);
+        Instant metricTime = Instant.ofEpochMilli((int) response.get(RESPONSE_TIMESTAMP_KEY));
+        Map<String, Object> attrValues = getAttributeValues(request, response.get(RESPONSE_VALUE_KEY));
+        return getMetricsDoc(mBeanName, metricTime, attrValues);
+    }
+
+    /**
+     * Parse the metrics of each bean a successful pattern read expanded to, the value of its response is a map of the
+     * beans' object names to their attribute values. Beans excluded by the white or black list are skipped.
+     * @param response A response map of a pattern read from the Jolokia server
+     * @param metricsByBean the metrics of each bean read so far, which the pattern's beans are merged into
+     */
+    private void addMetricsDocsForPatternResponse(Map<String, Object> response, Map<String, Metric> metricsByBean) {
+        Object value = response.get(RESPONSE_VALUE_KEY);
+        if (!(value instanceof Map)) {
+            return;
+        }
+        Instant metricTime = Instant.ofEpochMilli((int) response.get(RESPONSE_TIMESTAMP_KEY));
+        for (Map.Entry<String, Object> bean : ((Map<String, Object>) value).entrySet()) {
+            if (!isBeanIncluded(bean.getKey()) || !(bean.getValue() instanceof Map)) {
+                continue;
+            }
+            Metric metric = getMetricsDoc(bean.getKey(), metricTime, (Map<String, Object>) bean.getValue());
+            if (metric == null) {
+                continue;
+            }
+            Metric beanMetric = metricsByBean.putIfAbsent(bean.getKey(), metric);
+            if (beanMetric != null) {
+                beanMetric.getMetricMap().putAll(metric.getMetricMap());
+            }
+        }
+    }
+
+    /**
+     * A pattern which matches no bean yet, such as a broker's beans before they're registered, is answered with a 404,
+     * which is an empty read rather than a failure
+     * @param mBeanName the bean or pattern the response is for
+     * @param response A response map from the Jolokia server
+     * @return the failure of the read, or null if it succeeded
+     */
+    private String getResponseFailure(String mBeanName, Map<String, Object> response) {
         int status = (int) response.get(RESPONSE_STATUS_KEY);
+        if (status == HttpURLConnection.HTTP_NOT_FOUND && readsBeanPatterns()) {
+            logger.debug("No mbean matches '{}' yet", mBeanName);
+            return null;
+        }
         if (status != HttpURLConnection.HTTP_OK) {
             logger.warn("Failed reading mbean '" + mBeanName + "': " + status + " - " + response.get(RESPONSE_ERROR_KEY) +
                     ". Stacktrace = {}", response.get(RESPONSE_STACKTRACE_KEY));
-            return null;
+            return status + " - " + response.get(RESPONSE_ERROR_KEY);
         }
-        Instant metricTime = Instant.ofEpochMilli((int) response.get(RESPONSE_TIMESTAMP_KEY));
+        return null;
+    }
+
+    /**
+     * Build the metrics doc of a bean from its attribute values
+     * @param mBeanName the bean's object name
+     * @param metricTime the time the bean was read
+     * @param attrValues a map of attribute name to its value
+     * @return the metrics doc, or null if the bean's name isn't valid
+     */
+    private Metric getMetricsDoc(String mBeanName, Instant metricTime, Map<String, Object> attrValues) {
         String[] serviceNameAndArgs = mBeanName.split(":");
         if (serviceNameAndArgs.length != 2) {
             logger.debug("metric name {} not valid", mBeanName);
@@ -167,12 +287,36 @@ public class JolokiaClient extends MBeanClient {
         List<Dimension> dimensions = Splitter.on(',').splitToList(argsString).stream().map(this::stringArgToDimension).collect(Collectors.toList());
         dimensions.addAll(extraDimensions);
 
-        Map<String, Object> attrValues = (Map<String, Object>) response.get(RESPONSE_VALUE_KEY);
         Map<String, Number> metricToValue = flatten(attrValues);
+        filterMetricKeys(mBeanName, metricToValue);
         Metric metricsDoc = new Metric(metricToValue, metricTime, dimensions);
         return metricsDoc;
     }
 
+    /**
+     * Jolokia returns a map of attribute to value when the attributes are requested as a list, and the bare value
+     * (or only the part under the inner path) when a single attribute is requested by name
+     * @param request the request part of the response
+     * @param value the value part of the response
+     * @return a map of attribute name to its value
+     */
+    private Map<String, Object> getAttributeValues(Map<String, Object> request, Object value) {
+        Object attribute = request.get(REQUEST_ATTRIBUTE_KEY);
+        if (!(attribute instanceof String)) {
+            return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+        }
+
+        Object attributeValue = value;
+        String path = (String) request.get(REQUEST_PATH_KEY);
+        if (path != null) {
+            String[] pathParts = path.split(JOLOKIA_PATH_SEPARATOR);
+            for (int i = pathParts.length - 1; i >= 0; i--) {
+                attributeValue = Collections.singletonMap(pathParts[i], attributeValue);
+            }
+        }
+        return Collections.singletonMap((String) attribute, attributeValue);
+    }
+
     private HttpResponse sendToJolokia(String jolokiaFullURL, String requestBody) {
         HttpResponse httpResponse;
         try {
@@ -0,0 +1,125 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.PayloadCompressor;
+import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts newline delimited blocks to the Logz.io listener, the same way the logz.io java sender does,
+ * for queues which are not managed by the sender
+ */
+public class ListenerHttpClient {
+    private final Logger logger = LoggerFactory.getLogger(ListenerHttpClient.class);
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+
+    private final URL listenerUrl;
+    private final PayloadCompressor compressor;
+
+    public enum SendResult {
+        SENT,
+        // The listener won't accept this block, retrying is pointless
+        REJECTED,
+        // The listener is unreachable or failed, the block should be retried
+        FAILED
+    }
+
+    public ListenerHttpClient(LogzioJavaSenderParams senderParams) throws IOException {
+        String url = senderParams.getUrl();
+        this.listenerUrl = new URL(url + (url.endsWith("/") ? "" : "/") + "?token=" + senderParams.getToken() + "&type=" + senderParams.getType());
+        this.compressor = new PayloadCompressor(senderParams.getCompressionCodec(), senderParams.getCompressionLevel(),
+                senderParams.isAdaptiveCompression(), senderParams.getCompressionMaxCpuMsPerCycle());
+    }
+
+    /**
+     * @return the compressor of the requests' bodies
+     */
+    public PayloadCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Send a single block to the listener
+     * @param block newline delimited JSON documents
+     * @return whether the block was sent, rejected or should be retried
+     */
+    public SendResult send(byte[] block) {
+        return send(block, CONNECT_TIMEOUT + SOCKET_TIMEOUT);
+    }
+
+    /**
+     * Send a single block to the listener within a time limit, which is split between connecting and reading the
+     * response, each up to its usual timeout
+     * @param block newline delimited JSON documents
+     * @param timeoutMs time the request may take
+     * @return whether the block was sent, rejected or should be retried
+     */
+    public SendResult send(byte[] block, long timeoutMs) {
+        // A timeout of 0 is infinite, so each is at least a millisecond
+        int connectTimeout = (int) Math.max(1, Math.min(CONNECT_TIMEOUT, timeoutMs / 2));
+        int readTimeout = (int) Math.max(1, Math.min(SOCKET_TIMEOUT, timeoutMs - connectTimeout));
+        HttpURLConnection connection = null;
+        try {
+            byte[] payload = compressor.compress(block);
+            connection = (HttpURLConnection) listenerUrl.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", "text/plain");
+            String contentEncoding = compressor.getCodec().getContentEncoding();
+            if (contentEncoding != null) {
+                connection.setRequestProperty("Content-Encoding", contentEncoding);
+            }
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setDoOutput(true);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(payload);
+            }
+            int responseCode = connection.getResponseCode();
+            drain(connection);
+            if (responseCode / 100 == 2) {
+                return SendResult.SENT;
+            }
+            if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST) {
+                logger.error("Logz.io listener rejected a block of {} bytes with HTTP {}, dropping it", block.length, responseCode);
+                return SendResult.REJECTED;
+            }
+            // A bad or expired token isn't the block's fault, so the queue is kept until the token is fixed
+            if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED || responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                logger.error("Logz.io listener refused the token with HTTP {}, keeping the queued metrics and retrying", responseCode);
+                return SendResult.FAILED;
+            }
+            logger.warn("Logz.io listener responded with HTTP {}, will retry", responseCode);
+            return SendResult.FAILED;
+        } catch (IOException e) {
+            logger.warn("Failed sending to Logz.io listener, will retry: {}", e.getMessage());
+            return SendResult.FAILED;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private void drain(HttpURLConnection connection) {
+        try (InputStream inputStream = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ?
+                connection.getInputStream() : connection.getErrorStream()) {
+            if (inputStream != null) {
+                byte[] buffer = new byte[1024];
+                while (inputStream.read(buffer) != -1) {
+                    // discard, so the connection can be reused
+                }
+            }
+        } catch (IOException e) {
+            logger.trace("Failed reading listener response: {}", e.getMessage());
+        }
+    }
+}
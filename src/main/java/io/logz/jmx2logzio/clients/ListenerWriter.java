@@ -1,12 +1,19 @@
 package io.logz.jmx2logzio.clients;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.logz.jmx2logzio.Utils.HangupInterceptor;
-import io.logz.jmx2logzio.Utils.Shutdownable;
+import io.logz.jmx2logzio.Utils.AgentExecutors;
+import io.logz.jmx2logzio.Utils.BlockQueue;
+import io.logz.jmx2logzio.Utils.MappedSegmentSpool;
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.Utils.OffHeapRingBuffer;
+import io.logz.jmx2logzio.Utils.PayloadCompressor;
+import io.logz.jmx2logzio.Utils.ShutdownReport;
+import io.logz.jmx2logzio.Utils.TokenBucket;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
 import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import io.logz.jmx2logzio.objects.PriorityLaneParams;
 import io.logz.jmx2logzio.objects.StatusReporterFactory;
 import io.logz.sender.HttpsRequestConfiguration;
 import io.logz.sender.LogzioSender;
@@ -15,26 +22,122 @@ import io.logz.sender.exceptions.LogzioParameterErrorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
-public class ListenerWriter implements Shutdownable {
+public class ListenerWriter implements MetricSink {
     private final Logger logger = LoggerFactory.getLogger(ListenerWriter.class);
+    private static final int QUEUE_DRAIN_INTERVAL_IN_SECONDS = 5;
+    public static final String QUEUE_METRIC_TYPE = "Queue";
+    private static final String SELF_METRICS_DOMAIN = "jmx2logzio";
+    public static final String DEFAULT_LANE = "default";
+    private static final String LANE_DIRECTORY_PREFIX = "lane-";
 
-    private final static ObjectMapper mapper = new ObjectMapper();
     private HttpsRequestConfiguration requestConf;
     private final LogzioJavaSenderParams logzioSenderParams;
     private final LogzioSender logzioSender;
-    private ScheduledExecutorService senderExecutors;
+    private final MetricsBatcher metricsBatcher;
+    // The agent's shared scheduler, which the sender's and the block queues' tasks run on
+    private final ScheduledExecutorService senderExecutors;
+    // The block queue lanes in order of priority, the last one is the default lane
+    private List<PriorityLane> lanes;
+    private BlockQueueSender blockQueueSender;
+    private PayloadCompressor compressor;
 
     public ListenerWriter(LogzioJavaSenderParams senderParams) {
         this.logzioSenderParams = senderParams;
-        this.logzioSender = getLogzioSender();
-        this.logzioSender.start();
+        this.metricsBatcher = new MetricsBatcher(senderParams.getMaxBatchSizeInBytes(), senderParams.getDimensionEncoding());
+        senderExecutors = AgentExecutors.getScheduler();
+        if (senderParams.getQueueType() != LogzioJavaSenderParams.QueueType.SENDER && startBlockQueue()) {
+            this.logzioSender = null;
+        } else {
+            this.logzioSender = getLogzioSender();
+            this.logzioSender.start();
+        }
+    }
+
+    /**
+     * Open a block queue of the configured type per priority lane and start shipping them, instead of using the sender's queue
+     * @return false if a queue couldn't be opened
+     */
+    private boolean startBlockQueue() {
+        List<PriorityLaneParams> laneParams = new ArrayList<>(logzioSenderParams.getPriorityLanes());
+        laneParams.add(new PriorityLaneParams(DEFAULT_LANE, Collections.emptyList(),
+                logzioSenderParams.getDefaultLaneWeight(), logzioSenderParams.getDefaultLaneMaxBytesPerSecond()));
+        List<PriorityLane> openedLanes = new ArrayList<>();
+        try {
+            ListenerHttpClient httpClient = new ListenerHttpClient(logzioSenderParams);
+            for (PriorityLaneParams params : laneParams) {
+                BlockQueue queue = openBlockQueue(params, laneParams.size());
+                openedLanes.add(new PriorityLane(params, queue, new TokenBucket(params.getMaxBytesPerSecond(), QUEUE_DRAIN_INTERVAL_IN_SECONDS)));
+            }
+            lanes = openedLanes;
+            compressor = httpClient.getCompressor();
+            blockQueueSender = new BlockQueueSender(lanes, httpClient);
+            blockQueueSender.start(senderExecutors, AgentExecutors.getBlockingExecutor(), QUEUE_DRAIN_INTERVAL_IN_SECONDS);
+            return true;
+        } catch (IOException | IllegalArgumentException | OutOfMemoryError e) {
+            logger.error("Failed opening the {} queue, using the sender's queue instead: {}", logzioSenderParams.getQueueType().getConfigValue(), e.getMessage(), e);
+            openedLanes.forEach(lane -> lane.getQueue().close());
+            return false;
+        }
+    }
+
+    /**
+     * The off-heap capacity is split evenly between the lanes. An off-heap lane first queues again the blocks it spooled
+     * to disk on the last shutdown.
+     */
+    private BlockQueue openBlockQueue(PriorityLaneParams params, int laneCount) throws IOException {
+        if (logzioSenderParams.getQueueType() == LogzioJavaSenderParams.QueueType.MAPPED_SPOOL) {
+            return openSpool(params.getName());
+        }
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(logzioSenderParams.getOffHeapCapacityInBytes() / laneCount,
+                logzioSenderParams.getOffHeapOverflowPolicy(), logzioSenderParams.getOffHeapBlockTimeoutInMs());
+        if (MappedSegmentSpool.exists(getSpoolDir(params.getName()))) {
+            MappedSegmentSpool spool = openSpool(params.getName());
+            int restored = moveBlocks(spool, queue);
+            spool.close();
+            logger.info("Queued {} blocks of the {} lane which were spooled to disk on the last shutdown", restored, params.getName());
+        }
+        return queue;
+    }
+
+    private MappedSegmentSpool openSpool(String laneName) throws IOException {
+        return new MappedSegmentSpool(getSpoolDir(laneName), logzioSenderParams.getSpoolSegmentSizeInBytes(), logzioSenderParams.getSpoolMaxSegments());
+    }
+
+    /**
+     * The default lane keeps the spool directory itself, so a spool written before lanes were configured is still sent
+     */
+    private File getSpoolDir(String laneName) {
+        return laneName.equals(DEFAULT_LANE) ? logzioSenderParams.getSpoolDir() :
+                new File(logzioSenderParams.getSpoolDir(), LANE_DIRECTORY_PREFIX + laneName);
+    }
+
+    /**
+     * Move all blocks from one queue to another, in order
+     * @return number of blocks the target queue accepted
+     */
+    private static int moveBlocks(BlockQueue source, BlockQueue target) {
+        int moved = 0;
+        byte[] block;
+        while ((block = source.peek()) != null) {
+            if (target.enqueue(block)) {
+                moved++;
+            }
+            source.ack();
+        }
+        target.flush();
+        return moved;
     }
 
     /**
@@ -42,8 +145,6 @@ public class ListenerWriter implements Shutdownable {
      * @return LogzioSender object
      */
     private LogzioSender getLogzioSender() {
-
-        senderExecutors = Executors.newScheduledThreadPool(logzioSenderParams.getThreadPoolSize());
         try {
             requestConf = HttpsRequestConfiguration
                     .builder()
@@ -85,59 +186,158 @@ public class ListenerWriter implements Shutdownable {
     }
 
     /**
-     * Add metrics the sender to be sent
+     * Add metrics the sender to be sent, as newline delimited blocks of up to the max batch size
      * @param metrics a list of metrics to be sent
      */
-    public void writeMetrics(List<Metric> metrics) {
-        logger.debug("sending {} metrics", metrics.size());
-        metrics.stream().forEach(metric -> {
-            String jsonStringMetric = convertToJson(metric);
-            byte[] metricAsBytes = java.nio.charset.StandardCharsets.UTF_8.encode(jsonStringMetric).array();
-            logzioSender.send(metricAsBytes);
-        });
+    @Override
+    public synchronized void writeMetrics(List<Metric> metrics) {
+        if (lanes != null) {
+            Map<PriorityLane, List<Metric>> metricsByLane = splitByLane(metrics);
+            for (Map.Entry<PriorityLane, List<Metric>> laneMetrics : metricsByLane.entrySet()) {
+                PriorityLane lane = laneMetrics.getKey();
+                AtomicInteger rejectedBlocks = new AtomicInteger();
+                int blocks = metricsBatcher.write(laneMetrics.getValue(), block -> {
+                    if (!lane.enqueue(block)) {
+                        rejectedBlocks.incrementAndGet();
+                    }
+                });
+                lane.getQueue().flush();
+                if (rejectedBlocks.get() > 0) {
+                    logger.warn("The {} lane's queue rejected {} of {} blocks, dropping them", lane.getName(), rejectedBlocks.get(), blocks);
+                }
+                logger.debug("queueing {} metrics in {} blocks to the {} lane", laneMetrics.getValue().size(), blocks, lane.getName());
+            }
+            compressor.onCycle();
+            return;
+        }
+        int blocks = metricsBatcher.write(metrics, logzioSender::send);
+        logger.debug("sending {} metrics in {} blocks", metrics.size(), blocks);
     }
 
 
+    /**
+     * @return the metrics of each lane, in order of priority, where each metric goes to the first lane matching its domain
+     */
+    private Map<PriorityLane, List<Metric>> splitByLane(List<Metric> metrics) {
+        PriorityLane defaultLane = lanes.get(lanes.size() - 1);
+        if (lanes.size() == 1) {
+            return Collections.singletonMap(defaultLane, metrics);
+        }
+        Map<PriorityLane, List<Metric>> metricsByLane = new LinkedHashMap<>();
+        lanes.forEach(lane -> metricsByLane.put(lane, new ArrayList<>()));
+        for (Metric metric : metrics) {
+            String domain = getDomain(metric);
+            PriorityLane metricLane = defaultLane;
+            for (int i = 0; i < lanes.size() - 1 && domain != null; i++) {
+                if (lanes.get(i).matches(domain)) {
+                    metricLane = lanes.get(i);
+                    break;
+                }
+            }
+            metricsByLane.get(metricLane).add(metric);
+        }
+        return metricsByLane;
+    }
+
+    private static String getDomain(Metric metric) {
+        for (Dimension dimension : metric.getDimensions()) {
+            if (dimension.getKey().equals(Metric.DOMAIN_NAME)) {
+                return dimension.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "logzio";
+    }
+
+    /**
+     * @return the logz.io java sender, or null when a block queue is used instead of the sender's queue
+     */
     public LogzioSender getSender() {
         return logzioSender;
     }
 
-    private String convertToJson(Metric metric) {
-        try {
-            return mapper.writeValueAsString(metric);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+    /**
+     * Build a counters document of the block queues' fill, drops and rate limiting. The default lane's counters are
+     * named as they are, the other lanes' counters are prefixed with the lane's name. The compression level and ratio
+     * of the requests are added as well.
+     * @param timestamp the metric time
+     * @param extraDimensions dimensions added to all collected metrics
+     * @return the queue metric, or null when the sender's own queue is used
+     */
+    @Override
+    public Metric getCountersMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        if (lanes == null) {
+            return null;
+        }
+        Map<String, Number> counters = new LinkedHashMap<>();
+        for (PriorityLane lane : lanes) {
+            String prefix = lane.getName().equals(DEFAULT_LANE) ? "" : lane.getName() + ".";
+            lane.getCounters().forEach((key, value) -> counters.put(prefix + key, value));
         }
+        counters.putAll(compressor.getCounters());
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, SELF_METRICS_DOMAIN));
+        dimensions.add(new Dimension("type", QUEUE_METRIC_TYPE));
+        dimensions.add(new Dimension("queueType", logzioSenderParams.getQueueType().getConfigValue()));
+        dimensions.addAll(extraDimensions);
+        return new Metric(counters, timestamp, dimensions);
     }
 
     /**
-     * Start a scheduled task to poll the metrics from the metrics queue and send them
+     * Send all queued metrics now, instead of waiting for the next scheduled drain
      */
-    @PostConstruct
-    public void start() {
-        enableHangupSupport();
+    public void drainQueueAndSend() {
+        if (blockQueueSender != null) {
+            blockQueueSender.drain();
+        } else {
+            logzioSender.drainQueueAndSend();
+        }
     }
 
     @Override
     public void shutdown() {
-        logzioSender.stop();
-        senderExecutors.shutdown();
-        try {
-            senderExecutors.awaitTermination(20, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            logger.error("Shutdown was interrupted {}", e.getMessage(), e);
+        shutdown(new ShutdownReport(ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS));
+    }
+
+    /**
+     * Send what's queued until the deadline. Whatever isn't sent in time stays in the mapped spool, or is spooled to
+     * disk from the off-heap queue, and is sent on the next run. The sender's own queue is drained by the sender, and
+     * only its disk queue outlives the deadline.
+     */
+    @Override
+    public void shutdown(ShutdownReport report) {
+        if (logzioSender != null) {
+            report.runWithin("sender-drain", logzioSender::stop);
         }
-        if (!senderExecutors.isTerminated()) {
-            senderExecutors.shutdownNow();
+        if (blockQueueSender != null) {
+            blockQueueSender.stop();
+            report.addSentBlocks(blockQueueSender.drain(report.getRemainingNanos()));
+            if (logzioSenderParams.getQueueType() == LogzioJavaSenderParams.QueueType.OFF_HEAP) {
+                lanes.forEach(lane -> spoolToDisk(lane, report));
+            }
+            lanes.forEach(lane -> lane.getQueue().close());
         }
         logger.info("Closing Listener Writer...");
     }
 
-    /**
-     * Enable graceful shutdown
-     */
-    private void enableHangupSupport() {
-        HangupInterceptor interceptor = new HangupInterceptor(this);
-        Runtime.getRuntime().addShutdownHook(interceptor);
+    private void spoolToDisk(PriorityLane lane, ShutdownReport report) {
+        int queuedBlocks = lane.getQueue().getCounters().get("queuedBlocks").intValue();
+        if (queuedBlocks == 0) {
+            return;
+        }
+        try {
+            MappedSegmentSpool spool = openSpool(lane.getName());
+            int spooled = moveBlocks(lane.getQueue(), spool);
+            spool.close();
+            report.addSpooledBlocks(spooled);
+            report.addDroppedBlocks(queuedBlocks - spooled);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Failed spooling the {} lane's {} unsent blocks to disk: {}", lane.getName(), queuedBlocks, e.getMessage(), e);
+            report.addDroppedBlocks(queuedBlocks);
+        }
     }
 }
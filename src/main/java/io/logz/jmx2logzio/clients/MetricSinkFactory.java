@@ -0,0 +1,87 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.OtlpEncoder;
+import io.logz.jmx2logzio.Utils.TimeSeriesStore;
+import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MetricSinkFactory {
+    private static final Logger logger = LoggerFactory.getLogger(MetricSinkFactory.class);
+
+    /**
+     * Create the configured sinks, each writing on its own task of the agent's executors
+     * @param conf the jmx2logzio configuration
+     * @return the sinks' runners
+     */
+    public static List<SinkRunner> createSinks(Jmx2LogzioConfiguration conf) {
+        List<SinkRunner> sinks = new ArrayList<>();
+        List<TimeSeriesSink> timeSeriesSinks = new ArrayList<>();
+        for (Jmx2LogzioConfiguration.MetricSinkType sinkType : conf.getSinkTypes()) {
+            MetricSink sink;
+            try {
+                sink = createSink(conf, sinkType);
+            } catch (IOException e) {
+                logger.error("Failed creating the {} sink, metrics won't be written to it: {}", sinkType.getConfigValue(), e.getMessage(), e);
+                continue;
+            }
+            if (sink instanceof TimeSeriesSink) {
+                timeSeriesSinks.add((TimeSeriesSink) sink);
+            }
+            sinks.add(new SinkRunner(sink));
+        }
+        timeSeriesSinks.forEach(timeSeriesSink -> timeSeriesSink.setBackfillSinks(getBackfillSinks(sinks)));
+        return sinks;
+    }
+
+    private static MetricSink createSink(Jmx2LogzioConfiguration conf, Jmx2LogzioConfiguration.MetricSinkType sinkType) throws IOException {
+        switch (sinkType) {
+            case FILE:
+                return new FileSink(new File(conf.getFileSinkPath()), conf.getFileSinkMaxFileSizeInBytes(), conf.getFileSinkMaxFiles(), conf.getFileSinkDimensionEncoding());
+            case STDOUT:
+                return new StdoutSink();
+            case PROMETHEUS:
+                return new PrometheusSink(conf.getPrometheusSinkHost(), conf.getPrometheusSinkPort());
+            case OTLP:
+                return new OtlpSink(conf.getOtlpSinkUrl(), conf.getOtlpSinkToken(), createOtlpEncoder(conf));
+            case TSDB:
+                return new TimeSeriesSink(new TimeSeriesStore(conf.getTsdbSinkMaxBytes(), conf.getTsdbSinkBlockPoints()));
+            case LOGZIO:
+            default:
+                return new ListenerWriter(conf.getSenderParams());
+        }
+    }
+
+    /**
+     * The time series store backfills through the runners of the listener and OTLP sinks, so a backfill doesn't block
+     * the JMX caller on the network
+     */
+    private static List<SinkRunner> getBackfillSinks(List<SinkRunner> sinks) {
+        Set<String> backfillSinkNames = new HashSet<>(Arrays.asList(Jmx2LogzioConfiguration.MetricSinkType.LOGZIO.getConfigValue(),
+                Jmx2LogzioConfiguration.MetricSinkType.OTLP.getConfigValue()));
+        List<SinkRunner> backfillSinks = new ArrayList<>();
+        sinks.stream().filter(sink -> backfillSinkNames.contains(sink.getName())).forEach(backfillSinks::add);
+        return backfillSinks;
+    }
+
+    private static OtlpEncoder createOtlpEncoder(Jmx2LogzioConfiguration conf) {
+        Set<String> resourceKeys = new HashSet<>(Arrays.asList(Metric.SERVICE_NAME, Metric.SERVICE_HOST));
+        conf.getExtraDimensions().forEach(dimension -> resourceKeys.add(dimension.getKey()));
+        // The cumulative sums of the agent's own JVM started counting with the JVM, a remote JVM's start is unknown
+        Instant startTime = conf.getMetricClientType() == Jmx2LogzioConfiguration.MetricClientType.MBEAN_PLATFORM ?
+                Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()) : Instant.now();
+        return new OtlpEncoder(resourceKeys, conf.getOtlpSinkSumMetrics(), startTime);
+    }
+}
@@ -0,0 +1,115 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.OtlpEncoder;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports each polling cycle to an OTLP/HTTP receiver as a single gzipped protobuf ExportMetricsServiceRequest.
+ * A failed export is not retried, the next cycle carries fresh values of the same series.
+ */
+public class OtlpSink implements MetricSink {
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final String CONTENT_TYPE = "application/x-protobuf";
+    private final Logger logger = LoggerFactory.getLogger(OtlpSink.class);
+
+    private final URL url;
+    private final String token;
+    private final OtlpEncoder encoder;
+    private long failedExports = 0;
+
+    /**
+     * @param url the receiver's metrics endpoint, usually ending with /v1/metrics
+     * @param token sent as a bearer token if not empty
+     * @param encoder encoder of the polling cycles
+     */
+    public OtlpSink(String url, String token, OtlpEncoder encoder) throws IOException {
+        this.url = new URL(url);
+        this.token = token;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public void writeMetrics(List<Metric> metrics) {
+        if (metrics.isEmpty()) {
+            return;
+        }
+        HttpURLConnection connection = null;
+        try {
+            byte[] payload = gzip(encoder.encode(metrics));
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            if (token != null && !token.isEmpty()) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(SOCKET_TIMEOUT);
+            connection.setDoOutput(true);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(payload);
+            }
+            int responseCode = connection.getResponseCode();
+            drain(connection);
+            if (responseCode / 100 == 2) {
+                logger.debug("exported {} metrics in {} bytes", metrics.size(), payload.length);
+            } else if (failedExports++ % 100 == 0) {
+                logger.warn("OTLP receiver responded with HTTP {}, dropped {} polling cycles so far", responseCode, failedExports);
+            }
+        } catch (IOException e) {
+            if (failedExports++ % 100 == 0) {
+                logger.warn("Failed exporting to the OTLP receiver, dropped {} polling cycles so far: {}", failedExports, e.getMessage());
+            }
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "otlp";
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private void drain(HttpURLConnection connection) {
+        try (InputStream inputStream = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ?
+                connection.getInputStream() : connection.getErrorStream()) {
+            if (inputStream != null) {
+                byte[] buffer = new byte[1024];
+                while (inputStream.read(buffer) != -1) {
+                    // discard, so the connection can be reused
+                }
+            }
+        } catch (IOException e) {
+            logger.trace("Failed reading OTLP receiver response: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] request) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(request.length / 4 + 64);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(request);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+}
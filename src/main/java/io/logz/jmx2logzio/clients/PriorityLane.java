@@ -0,0 +1,96 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.BlockQueue;
+import io.logz.jmx2logzio.Utils.MetricsUtils;
+import io.logz.jmx2logzio.Utils.TokenBucket;
+import io.logz.jmx2logzio.objects.PriorityLaneParams;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The queue and rate limiter of a priority class of metrics
+ */
+public class PriorityLane {
+    private final PriorityLaneParams params;
+    private final List<Pattern> domainPatterns;
+    private final BlockQueue queue;
+    private final TokenBucket tokenBucket;
+    private long rateLimitedTotal = 0;
+    private long rejectedBlocksTotal = 0;
+
+    public PriorityLane(PriorityLaneParams params, BlockQueue queue, TokenBucket tokenBucket) {
+        this.params = params;
+        this.domainPatterns = params.getDomains().stream().map(MetricsUtils::globToPattern).collect(Collectors.toList());
+        this.queue = queue;
+        this.tokenBucket = tokenBucket;
+    }
+
+    /**
+     * @param domain a metric's bean domain
+     * @return whether the metric belongs to this lane
+     */
+    public boolean matches(String domain) {
+        for (Pattern pattern : domainPatterns) {
+            if (pattern.matcher(domain).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return params.getName();
+    }
+
+    public int getWeight() {
+        return params.getWeight();
+    }
+
+    public BlockQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * @param block a block to queue in the lane
+     * @return false if the lane's queue rejected the block, which is then dropped
+     */
+    public boolean enqueue(byte[] block) {
+        if (queue.enqueue(block)) {
+            return true;
+        }
+        synchronized (this) {
+            rejectedBlocksTotal++;
+        }
+        return false;
+    }
+
+    /**
+     * @param block the block about to be sent
+     * @return false if the lane reached its rate limit, and the block should wait for a later drain
+     */
+    public boolean tryAcquire(byte[] block) {
+        if (tokenBucket.tryAcquire(block.length)) {
+            return true;
+        }
+        synchronized (this) {
+            rateLimitedTotal++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the lane queue's counters along with the number of times the lane was held back by its rate limit, and
+     * the number of blocks its queue rejected
+     */
+    public Map<String, Number> getCounters() {
+        Map<String, Number> counters = queue.getCounters();
+        synchronized (this) {
+            counters.put("rateLimitedTotal", rateLimitedTotal);
+            counters.put("rejectedBlocksTotal", rejectedBlocksTotal);
+        }
+        return counters;
+    }
+}
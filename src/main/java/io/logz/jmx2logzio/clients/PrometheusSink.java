@@ -0,0 +1,76 @@
+package io.logz.jmx2logzio.clients;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.logz.jmx2logzio.Utils.PrometheusFormatter;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Serves the latest polling cycle in the Prometheus text format for scraping. The exposition is rendered once per
+ * cycle and cached, so a scrape only writes the cached bytes.
+ */
+public class PrometheusSink implements MetricSink {
+    private static final String METRICS_PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final Logger logger = LoggerFactory.getLogger(PrometheusSink.class);
+
+    private final HttpServer server;
+    private volatile byte[] exposition = new byte[0];
+
+    /**
+     * Start serving on the given address. The server's dispatcher thread inherits the daemon status of the
+     * calling thread, so in agent mode it doesn't keep the application's JVM alive.
+     * @param host address to bind to
+     * @param port port to listen on, or 0 for any free port
+     */
+    public PrometheusSink(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext(METRICS_PATH, this::handleScrape);
+        server.start();
+        logger.info("Serving metrics for scraping on {}:{}{}", host, getPort(), METRICS_PATH);
+    }
+
+    @Override
+    public void writeMetrics(List<Metric> metrics) {
+        exposition = PrometheusFormatter.render(metrics);
+    }
+
+    @Override
+    public String getName() {
+        return "prometheus";
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void shutdown() {
+        server.stop(0);
+    }
+
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        try {
+            byte[] response = exposition;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.AgentExecutors;
+import io.logz.jmx2logzio.Utils.SerialTask;
+import io.logz.jmx2logzio.Utils.ShutdownReport;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a sink as a task on the agent's blocking I/O executor, one write at a time, with its own bounded buffer of
+ * polling cycles, so a slow sink neither delays the polling nor the other sinks. When the buffer is full, the oldest
+ * buffered cycle is dropped.
+ */
+public class SinkRunner implements MetricSink {
+    private static final int BUFFERED_CYCLES = 4;
+    private static final String TASK_NAME_PREFIX = "sink-";
+    private final Logger logger = LoggerFactory.getLogger(SinkRunner.class);
+
+    private final MetricSink sink;
+    private final BlockingQueue<List<Metric>> buffer = new ArrayBlockingQueue<>(BUFFERED_CYCLES);
+    private final SerialTask writeTask;
+    private final Object writeLock = new Object();
+    private long droppedCycles = 0;
+    private volatile long lastWriteTimeMs = 0;
+
+    public SinkRunner(MetricSink sink) {
+        this.sink = sink;
+        this.writeTask = new SerialTask(TASK_NAME_PREFIX + sink.getName(), AgentExecutors.getBlockingExecutor(), this::writeBuffered);
+    }
+
+    @Override
+    public synchronized void writeMetrics(List<Metric> metrics) {
+        while (!buffer.offer(metrics)) {
+            if (buffer.poll() != null && droppedCycles++ % 100 == 0) {
+                logger.warn("Sink {} is falling behind, dropped {} polling cycles so far", sink.getName(), droppedCycles);
+            }
+        }
+        writeTask.request();
+    }
+
+    @Override
+    public String getName() {
+        return sink.getName();
+    }
+
+    /**
+     * @return the sink's buffer fill and drops, and how long writing the last cycle took
+     */
+    public synchronized Map<String, Number> getStageCounters() {
+        Map<String, Number> counters = new LinkedHashMap<>();
+        counters.put("bufferedCycles", buffer.size());
+        counters.put("droppedCyclesTotal", droppedCycles);
+        counters.put("writeTimeMs", lastWriteTimeMs);
+        return counters;
+    }
+
+    @Override
+    public Metric getCountersMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        return sink.getCountersMetric(timestamp, extraDimensions);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown(new ShutdownReport(ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS));
+    }
+
+    /**
+     * Write what's left in the buffer until the deadline, then shut the sink down. Cycles which weren't written in
+     * time are reported as dropped.
+     */
+    @Override
+    public void shutdown(ShutdownReport report) {
+        synchronized (writeLock) {
+            List<Metric> metrics;
+            while (!report.isExpired() && (metrics = buffer.poll()) != null) {
+                writeSafely(metrics);
+                report.addWrittenCycles(1);
+            }
+            report.addDroppedCycles(buffer.size());
+            buffer.clear();
+        }
+        sink.shutdown(report);
+    }
+
+    /**
+     * Write the buffered cycles, oldest first
+     */
+    private void writeBuffered() {
+        synchronized (writeLock) {
+            List<Metric> metrics;
+            while ((metrics = buffer.poll()) != null) {
+                writeSafely(metrics);
+            }
+        }
+    }
+
+    private void writeSafely(List<Metric> metrics) {
+        try {
+            long start = System.nanoTime();
+            sink.writeMetrics(metrics);
+            lastWriteTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            logger.error("Sink {} failed writing {} metrics: {}", sink.getName(), metrics.size(), e.getMessage(), e);
+        }
+    }
+}
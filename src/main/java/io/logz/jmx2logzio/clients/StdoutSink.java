@@ -0,0 +1,42 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Prints metrics as newline delimited JSON to the standard output, flushed once per polling cycle
+ */
+public class StdoutSink implements MetricSink {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final byte DOCUMENTS_SEPARATOR = '\n';
+
+    private final PrintStream out;
+    private final MetricsBatcher metricsBatcher = new MetricsBatcher(BLOCK_SIZE);
+
+    public StdoutSink() {
+        this.out = System.out;
+    }
+
+    @Override
+    public synchronized void writeMetrics(List<Metric> metrics) {
+        metricsBatcher.write(metrics, block -> {
+            out.write(block, 0, block.length);
+            out.write(DOCUMENTS_SEPARATOR);
+        });
+        out.flush();
+    }
+
+    @Override
+    public String getName() {
+        return "stdout";
+    }
+
+    @Override
+    public void shutdown() {
+        out.flush();
+    }
+}
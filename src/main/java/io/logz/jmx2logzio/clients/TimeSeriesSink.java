@@ -0,0 +1,132 @@
+package io.logz.jmx2logzio.clients;
+
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.Utils.TimeSeriesStore;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import io.logz.jmx2logzio.objects.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the recent polling cycles in a compressed {@link TimeSeriesStore}, so they can be queried over JMX and written
+ * again to the listener or the OTLP receiver after an outage. The sink is managed through the {@link #OBJECT_NAME} MBean.
+ */
+public class TimeSeriesSink implements MetricSink, TimeSeriesSinkMBean {
+    public static final String OBJECT_NAME = "io.logz.jmx2logzio:type=TimeSeriesStore";
+    public static final String STORE_METRIC_TYPE = "TimeSeriesStore";
+    private static final String SELF_METRICS_DOMAIN = "jmx2logzio";
+    private static final int QUERY_BLOCK_SIZE = 64 * 1024;
+    private final Logger logger = LoggerFactory.getLogger(TimeSeriesSink.class);
+
+    private final TimeSeriesStore store;
+    private List<? extends MetricSink> backfillSinks = Collections.emptyList();
+    private ObjectName objectName;
+
+    /**
+     * @param store the store the polling cycles are kept in
+     */
+    public TimeSeriesSink(TimeSeriesStore store) {
+        this.store = store;
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warn("Failed registering the time series store MBean {}: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    /**
+     * @param backfillSinks the sinks which backfilled metrics are written to
+     */
+    public void setBackfillSinks(List<? extends MetricSink> backfillSinks) {
+        this.backfillSinks = backfillSinks;
+    }
+
+    @Override
+    public void writeMetrics(List<Metric> metrics) {
+        store.append(metrics);
+    }
+
+    @Override
+    public String getName() {
+        return "tsdb";
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return store.getCounters().get("series").intValue();
+    }
+
+    @Override
+    public long getStoredPoints() {
+        return store.getCounters().get("storedPoints").longValue();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return store.getCounters().get("storedBytes").longValue();
+    }
+
+    @Override
+    public String queryLastMinutes(int minutes) {
+        StringJoiner documents = new StringJoiner("\n");
+        new MetricsBatcher(QUERY_BLOCK_SIZE).write(queryLast(minutes), block -> documents.add(new String(block, StandardCharsets.UTF_8)));
+        return documents.toString();
+    }
+
+    @Override
+    public int backfillLastMinutes(int minutes) {
+        if (backfillSinks.isEmpty()) {
+            throw new IllegalStateException("no logzio or otlp sink is configured to backfill");
+        }
+        List<Metric> metrics = queryLast(minutes);
+        backfillSinks.forEach(sink -> sink.writeMetrics(metrics));
+        logger.info("Backfilling {} metrics of the last {} minutes to {}", metrics.size(), minutes,
+                backfillSinks.stream().map(MetricSink::getName).collect(Collectors.joining(", ")));
+        return metrics.size();
+    }
+
+    private List<Metric> queryLast(int minutes) {
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("minutes must be positive");
+        }
+        long now = System.currentTimeMillis();
+        return store.query(now - TimeUnit.MINUTES.toMillis(minutes), now);
+    }
+
+    @Override
+    public Metric getCountersMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, SELF_METRICS_DOMAIN));
+        dimensions.add(new Dimension("type", STORE_METRIC_TYPE));
+        dimensions.addAll(extraDimensions);
+        return new Metric(new LinkedHashMap<>(store.getCounters()), timestamp, dimensions);
+    }
+
+    @Override
+    public void shutdown() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.debug("Failed unregistering the time series store MBean: {}", e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+}
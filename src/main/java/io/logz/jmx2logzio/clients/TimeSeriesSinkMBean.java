@@ -0,0 +1,27 @@
+package io.logz.jmx2logzio.clients;
+
+/**
+ * Management interface of the time series sink, registered as {@link TimeSeriesSink#OBJECT_NAME}
+ */
+public interface TimeSeriesSinkMBean {
+
+    int getSeriesCount();
+
+    long getStoredPoints();
+
+    long getStoredBytes();
+
+    /**
+     * @param minutes how far back to read
+     * @return the stored metrics of the last minutes, as newline delimited JSON documents
+     */
+    String queryLastMinutes(int minutes);
+
+    /**
+     * Write the stored metrics of the last minutes again to the logzio and otlp sinks, with their original timestamps,
+     * for example after a listener outage
+     * @param minutes how far back to backfill
+     * @return number of metrics written
+     */
+    int backfillLastMinutes(int minutes);
+}
@@ -0,0 +1,141 @@
+package io.logz.jmx2logzio.configuration;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigValueFactory;
+import io.logz.jmx2logzio.exceptions.IllegalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Holds the running configuration and replaces it when its source changes or a single setting is updated at runtime.
+ * A new configuration is handed to the listener only if it parsed successfully, otherwise the running one is kept.
+ * Only the white/black lists, extra dimensions, attribute rules and polling interval are applied by the listener,
+ * other settings take effect on the next restart. Settings updated at runtime are kept over a reload, unless the
+ * reloaded source changed the same setting since.
+ */
+public class ConfigReloader {
+    private final Logger logger = LoggerFactory.getLogger(ConfigReloader.class);
+
+    private final Supplier<Config> configSource;
+    private final File watchedFile;
+    // Settings updated at runtime, applied again on top of the configuration read on a reload
+    private final Map<String, Object> overrides = new LinkedHashMap<>();
+    private Config sourceConfig;
+    private Config config;
+    private Jmx2LogzioConfiguration configuration;
+    private long watchedFileLastModified;
+    private Consumer<Jmx2LogzioConfiguration> listener = configuration -> { };
+
+    /**
+     * @param config the configuration the agent was started with
+     * @param configSource reads the configuration again from where it was originally read
+     * @param watchedFile the file the configuration is read from, or null if it isn't read from a file
+     */
+    public ConfigReloader(Config config, Supplier<Config> configSource, File watchedFile) {
+        this.sourceConfig = config;
+        this.config = config;
+        this.configuration = new Jmx2LogzioConfiguration(config);
+        this.configSource = configSource;
+        this.watchedFile = watchedFile;
+        this.watchedFileLastModified = watchedFile == null ? 0 : watchedFile.lastModified();
+    }
+
+    public synchronized void setListener(Consumer<Jmx2LogzioConfiguration> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Read the configuration again from its source and apply it, along with the settings updated at runtime. A setting
+     * which the source changed since it was updated is taken from the source.
+     * @throws IllegalArgumentException if the configuration can't be read or is invalid, the running one is kept
+     */
+    public synchronized void reload() {
+        Config reloaded;
+        try {
+            reloaded = configSource.get();
+        } catch (IllegalConfiguration | ConfigException e) {
+            throw new IllegalArgumentException("failed reading the configuration: " + e.getMessage(), e);
+        }
+        Map<String, Object> keptOverrides = new LinkedHashMap<>();
+        Config newConfig = reloaded;
+        for (Map.Entry<String, Object> override : overrides.entrySet()) {
+            if (Objects.equals(getUnwrapped(reloaded, override.getKey()), getUnwrapped(sourceConfig, override.getKey()))) {
+                keptOverrides.put(override.getKey(), override.getValue());
+                newConfig = newConfig.withValue(override.getKey(), ConfigValueFactory.fromAnyRef(override.getValue()));
+            } else {
+                logger.info("Setting {} was changed in the configuration source, its runtime value is dropped", override.getKey());
+            }
+        }
+        apply(newConfig);
+        sourceConfig = reloaded;
+        overrides.clear();
+        overrides.putAll(keptOverrides);
+    }
+
+    /**
+     * Change a single setting of the running configuration and apply it
+     * @param path the setting's configuration path, e.g. {@link io.logz.jmx2logzio.Jmx2LogzioJolokia#WHITE_LIST_REGEX}
+     * @param value the new value, a String, a Number, or a Map for an object setting
+     * @throws IllegalArgumentException if the resulting configuration is invalid, the running one is kept
+     */
+    public synchronized void update(String path, Object value) {
+        apply(config.withValue(path, ConfigValueFactory.fromAnyRef(value)));
+        overrides.put(path, value);
+    }
+
+    /**
+     * Reload the watched file if it was modified since it was last read. Called periodically, a failed reload is
+     * logged and retried only after the file is modified again
+     */
+    public synchronized void checkWatchedFile() {
+        if (watchedFile == null || watchedFile.lastModified() == watchedFileLastModified) {
+            return;
+        }
+        watchedFileLastModified = watchedFile.lastModified();
+        logger.info("Config file {} was modified, reloading it", watchedFile);
+        try {
+            reload();
+        } catch (IllegalArgumentException e) {
+            logger.error("Keeping the running configuration, {}", e.getMessage());
+        }
+    }
+
+    public synchronized Config getConfig() {
+        return config;
+    }
+
+    public synchronized Jmx2LogzioConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public File getWatchedFile() {
+        return watchedFile;
+    }
+
+    private static Object getUnwrapped(Config config, String path) {
+        return config.hasPath(path) ? config.getValue(path).unwrapped() : null;
+    }
+
+    private void apply(Config newConfig) {
+        Jmx2LogzioConfiguration newConfiguration;
+        try {
+            newConfiguration = new Jmx2LogzioConfiguration(newConfig);
+        } catch (IllegalConfiguration | ConfigException e) {
+            throw new IllegalArgumentException("invalid configuration: " + e.getMessage(), e);
+        }
+        if (newConfiguration.getMetricClientType() != configuration.getMetricClientType()) {
+            throw new IllegalArgumentException("the client type can't be changed without a restart");
+        }
+        config = newConfig;
+        configuration = newConfiguration;
+        listener.accept(newConfiguration);
+    }
+}
@@ -3,33 +3,58 @@ package io.logz.jmx2logzio.configuration;
 import com.google.common.base.Splitter;
 import com.typesafe.config.Config;
 import io.logz.jmx2logzio.Jmx2LogzioJolokia;
+import io.logz.jmx2logzio.Utils.AgentExecutors;
+import io.logz.jmx2logzio.Utils.LocalJvmDiscovery;
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.Utils.PayloadCompressor;
+import io.logz.jmx2logzio.Utils.ShutdownReport;
+import io.logz.jmx2logzio.clients.HsperfdataClient;
 import io.logz.jmx2logzio.clients.JolokiaClient;
+import io.logz.jmx2logzio.clients.ListenerWriter;
 import io.logz.jmx2logzio.exceptions.IllegalConfiguration;
+import io.logz.jmx2logzio.objects.AttributeRule;
 import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
+import io.logz.jmx2logzio.objects.OverflowPolicy;
+import io.logz.jmx2logzio.objects.PriorityLaneParams;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Objects;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 
 public class Jmx2LogzioConfiguration {
-    private static final String JMX2LOGZIO_AGENT_VERSION_DIMENSION = "jmx2logzio.agent.version";
+    public static final String JMX2LOGZIO_AGENT_VERSION_DIMENSION = "jmx2logzio.agent.version";
     private static final int KEY_INDEX = 0;
     private static final int VALUE_INDEX = 1;
+    private static final String ATTRIBUTE_RULE_BEAN = "bean";
+    private static final String ATTRIBUTE_RULE_INCLUDE = "include";
+    private static final String ATTRIBUTE_RULE_EXCLUDE = "exclude";
+    private static final String ATTRIBUTE_RULE_BEAN_SEPARATOR = "=>";
+    private static final String ATTRIBUTE_RULE_EXCLUDE_PREFIX = "!";
+    private static final String PRIORITY_LANE_NAME = "name";
+    private static final String PRIORITY_LANE_DOMAINS = "domains";
+    private static final String PRIORITY_LANE_WEIGHT = "weight";
+    private static final String PRIORITY_LANE_MAX_BYTES_PER_SECOND = "max-bytes-per-second";
+    private static final Pattern PRIORITY_LANE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
     private final Logger logger = LoggerFactory.getLogger(Jmx2LogzioConfiguration.class);
 
     private static final String POLLER_MBEAN_DIRECT = "service.poller.mbean-direct";
@@ -37,6 +62,15 @@ public class Jmx2LogzioConfiguration {
     private Pattern whiteListPattern;
     private Pattern blackListPattern;
     private String jolokiaFullUrl;
+    private List<String> jolokiaPatternReads = Collections.emptyList();
+
+    /* Process id and hsperfdata directory of the JVM polled by the hsperfdata client */
+    private int hsperfdataPid;
+    private String hsperfdataDirectory = null;
+
+    /* Local JVMs polled by the attach discovery, and how often new and exited JVMs are discovered */
+    private Pattern attachDisplayNamePattern = Pattern.compile(".*");
+    private int attachDiscoveryIntervalInSeconds = 30;
 
     private LogzioJavaSenderParams logzioJavaSenderParams;
 
@@ -49,13 +83,117 @@ public class Jmx2LogzioConfiguration {
     /* Metrics polling interval in seconds */
     private int metricsPollingIntervalInSeconds = 30;
 
+    /* Percentage of the polling interval the polls of a fleet are spread over, by a hash of service and host */
+    private int phaseJitterPercent = 50;
+
+    /* Persist discovered beans to speed up the first poll after a restart */
+    private boolean discoverySnapshotEnabled = true;
+
+    /* Consecutive failed or slow reads before a bean is quarantined */
+    private int quarantineFailureThreshold = 3;
+
+    /* A bean read slower than this counts as a failure */
+    private int quarantineLatencyThresholdInMs = 5000;
+
+    /* Upper bound for a quarantined bean's exponential backoff */
+    private int quarantineMaxBackoffInSeconds = 3600;
+
+    /* Number of the agent's shared threads, and whether its blocking I/O runs on virtual threads */
+    private int agentThreads = AgentExecutors.DEFAULT_THREADS;
+    private boolean virtualThreadsEnabled = false;
+
+    /* Deadline of the whole shutdown, and whether the last, partial polling window is collected on shutdown */
+    private int shutdownTimeoutInSeconds = ShutdownReport.DEFAULT_TIMEOUT_IN_SECONDS;
+    private boolean shutdownFinalPoll = true;
+
+    /* The agent's CPU and allocation budget in the host JVM, and the heap usage after GC above which polls are skipped */
+    private boolean governorEnabled = true;
+    private double governorMaxCpuPercent = 0.5;
+    private int governorMaxAllocatedBytesPerCycle = 64 * 1024 * 1024;
+    private int governorMaxHeapUsedPercent = 90;
+
+    /* Distinct series of a key pattern / a domain above which only the top-K series of a pattern are sent */
+    private int cardinalityMaxSeriesPerPattern = 2000;
+    private int cardinalityMaxSeriesPerDomain = 20000;
+    private int cardinalityTopK = 500;
+
+    /* Metric used to rank series when limiting cardinality */
+    private String cardinalityRankMetric = "Count";
+
+    /* Delay in seconds before the agent builds its clients and sender */
+    private int startupDelayInSeconds = 0;
+
+    /* Register the agent control MBean, used to change the reloadable settings at runtime */
+    private boolean controlMBeanEnabled = true;
+
+    /* Interval of checking the config file for changes, 0 disables watching it */
+    private int configReloadIntervalInSeconds = 10;
+
+    /* Destinations the metrics are written to */
+    private List<MetricSinkType> sinkTypes;
+
+    /* Local newline delimited JSON file sink, rolled over at the max size */
+    private String fileSinkPath = "jmx2logzio-metrics.ndjson";
+    private int fileSinkMaxFileSizeInBytes = 100 * 1024 * 1024;
+    private int fileSinkMaxFiles = 5;
+    private MetricsBatcher.DimensionEncoding fileSinkDimensionEncoding = MetricsBatcher.DimensionEncoding.INLINE;
+
+    /* Address the Prometheus scrape endpoint is served on */
+    private String prometheusSinkHost = "127.0.0.1";
+    private int prometheusSinkPort = 9404;
+
+    /* OTLP/HTTP receiver the metrics are exported to, and the metric keys exported as cumulative sums rather than gauges */
+    private String otlpSinkUrl = "http://localhost:4318/v1/metrics";
+    private String otlpSinkToken = "";
+    private List<String> otlpSinkSumMetrics = Arrays.asList("CollectionCount", "CollectionTime", "TotalStartedThreadCount",
+            "TotalLoadedClassCount", "UnloadedClassCount", "TotalCompilationTime", "ProcessCpuTime", "Count");
+
+    /* Budget of the in-agent compressed time series store, and the points after which a series' block is sealed */
+    private int tsdbSinkMaxBytes = 8 * 1024 * 1024;
+    private int tsdbSinkBlockPoints = 120;
+
     // Which client should we use
     private MetricClientType metricClientType;
     private List<Dimension> extraDimensions;
+    private List<AttributeRule> attributeRules;
 
     public enum MetricClientType {
         JOLOKIA,
-        MBEAN_PLATFORM
+        MBEAN_PLATFORM,
+        HSPERFDATA,
+        ATTACH
+    }
+
+    public enum MetricSinkType {
+        LOGZIO("logzio"),
+        FILE("file"),
+        STDOUT("stdout"),
+        PROMETHEUS("prometheus"),
+        OTLP("otlp"),
+        TSDB("tsdb");
+
+        private final String configValue;
+
+        MetricSinkType(String configValue) {
+            this.configValue = configValue;
+        }
+
+        public String getConfigValue() {
+            return configValue;
+        }
+
+        /**
+         * @param configValue the sink type as written in the configuration
+         * @return the matching sink type, or null if there is none
+         */
+        public static MetricSinkType fromConfigValue(String configValue) {
+            for (MetricSinkType sinkType : values()) {
+                if (sinkType.configValue.equalsIgnoreCase(configValue)) {
+                    return sinkType;
+                }
+            }
+            return null;
+        }
     }
 
     public Jmx2LogzioConfiguration(Config config) throws IllegalConfiguration {
@@ -64,7 +202,10 @@ public class Jmx2LogzioConfiguration {
         }
         setClient(config);
         setFilterPatterns(config);
-        serviceName = config.getString(Jmx2LogzioJolokia.SERVICE_NAME);
+        // Discovered JVMs are named after their main class or jar
+        if (metricClientType != MetricClientType.ATTACH || config.hasPath(Jmx2LogzioJolokia.SERVICE_NAME)) {
+            serviceName = config.getString(Jmx2LogzioJolokia.SERVICE_NAME);
+        }
         logzioJavaSenderParams = new LogzioJavaSenderParams();
         setListenerURL(config);
 
@@ -76,6 +217,17 @@ public class Jmx2LogzioConfiguration {
                 extraDimensions = parseExtraDimensions(config.getConfig(Jmx2LogzioJolokia.EXTRA_DIMENSIONS));
             }
         }
+        attributeRules = new ArrayList<>();
+        if (config.hasPath(Jmx2LogzioJolokia.ATTRIBUTE_RULES)) {
+            if (metricClientType == MetricClientType.MBEAN_PLATFORM) {
+                attributeRules = parseAttributeRules(config.getString(Jmx2LogzioJolokia.ATTRIBUTE_RULES));
+            } else {
+                attributeRules = parseAttributeRules(config.getConfigList(Jmx2LogzioJolokia.ATTRIBUTE_RULES));
+            }
+        }
+
+        setSinks(config);
+
         final Properties properties = new Properties();
         try {
             properties.load(this.getClass().getClassLoader().getResourceAsStream(".properties"));
@@ -84,16 +236,53 @@ public class Jmx2LogzioConfiguration {
             logger.warn("couldn't add jmx2logzio agent version as a dimension", e);
         }
 
-        if (config.getString(Jmx2LogzioJolokia.LOGZIO_TOKEN).equals("<ACCOUNT-TOKEN>")) {
-            throw new IllegalConfiguration("please enter a valid logz.io token (can be located at https://app.logz.io/#/dashboard/settings/manage-accounts)");
+        if (sinkTypes.contains(MetricSinkType.LOGZIO)) {
+            if (config.getString(Jmx2LogzioJolokia.LOGZIO_TOKEN).equals("<ACCOUNT-TOKEN>")) {
+                throw new IllegalConfiguration("please enter a valid logz.io token (can be located at https://app.logz.io/#/dashboard/settings/manage-accounts)");
+            }
+            logzioJavaSenderParams.setToken(config.getString(Jmx2LogzioJolokia.LOGZIO_TOKEN));
+        } else if (config.hasPath(Jmx2LogzioJolokia.LOGZIO_TOKEN)) {
+            logzioJavaSenderParams.setToken(config.getString(Jmx2LogzioJolokia.LOGZIO_TOKEN));
+        } else {
+            // Local sinks only, the queue directory is still used for the discovery snapshot
+            logzioJavaSenderParams.setQueueDir();
         }
-        logzioJavaSenderParams.setToken(config.getString(Jmx2LogzioJolokia.LOGZIO_TOKEN));
 
         ConfigSetter configSetter = (fromDisk) -> logzioJavaSenderParams.setFromDisk((boolean) fromDisk);
         setSingleConfig(config, Jmx2LogzioJolokia.FROM_DISK, null, configSetter, new ConfigValidator() {
         }, Boolean.class);
 
 
+        configSetter = (size) -> logzioJavaSenderParams.setMaxBatchSizeInBytes((int) size);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.MAX_BATCH_SIZE, logzioJavaSenderParams.getMaxBatchSizeInBytes(), configSetter);
+
+        configSetter = (encoding) -> logzioJavaSenderParams.setDimensionEncoding(MetricsBatcher.DimensionEncoding.fromConfigValue((String) encoding));
+        setSingleConfig(config, Jmx2LogzioJolokia.DIMENSION_ENCODING, "unknown dimension encoding {}, sending dimensions inline instead", configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return MetricsBatcher.DimensionEncoding.fromConfigValue((String) result) != null;
+            }
+        }, String.class);
+
+        setCompressionParams(config);
+
+        configSetter = (queueType) -> logzioJavaSenderParams.setQueueType(LogzioJavaSenderParams.QueueType.fromConfigValue((String) queueType));
+        setSingleConfig(config, Jmx2LogzioJolokia.QUEUE_TYPE, "unknown queue type {}, using the sender's queue instead", configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return LogzioJavaSenderParams.QueueType.fromConfigValue((String) result) != null;
+            }
+        }, String.class);
+
+        if (logzioJavaSenderParams.getQueueType() != LogzioJavaSenderParams.QueueType.SENDER) {
+            setPriorityLaneParams(config);
+        }
+        if (logzioJavaSenderParams.getQueueType() == LogzioJavaSenderParams.QueueType.MAPPED_SPOOL) {
+            setSpoolParams(config);
+        } else if (logzioJavaSenderParams.getQueueType() == LogzioJavaSenderParams.QueueType.OFF_HEAP) {
+            setOffHeapParams(config);
+        }
+        // The sender's queue is also the fallback when the spool or the off-heap queue can't be opened
         if (logzioJavaSenderParams.isFromDisk()) {
             setDiskStorageParams(config);
         } else {
@@ -103,6 +292,203 @@ public class Jmx2LogzioConfiguration {
         configSetter = (interval) -> metricsPollingIntervalInSeconds = (int) interval;
         validateAndSetNatural(config, Jmx2LogzioJolokia.METRICS_POLLING_INTERVAL, metricsPollingIntervalInSeconds, configSetter);
 
+        configSetter = (percent) -> phaseJitterPercent = (int) percent;
+        setSingleConfig(config, Jmx2LogzioJolokia.PHASE_JITTER_PERCENT, "argument " + Jmx2LogzioJolokia.PHASE_JITTER_PERCENT +
+                " has to be between 0 and 100, using default instead: " + phaseJitterPercent, configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return (int) result >= 0 && (int) result <= 100;
+            }
+        }, Integer.class);
+
+        configSetter = (enabled) -> discoverySnapshotEnabled = (boolean) enabled;
+        setSingleConfig(config, Jmx2LogzioJolokia.DISCOVERY_SNAPSHOT, null, configSetter, new ConfigValidator() {
+        }, Boolean.class);
+
+        configSetter = (threshold) -> quarantineFailureThreshold = (int) threshold;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.QUARANTINE_FAILURE_THRESHOLD, quarantineFailureThreshold, configSetter);
+
+        configSetter = (threshold) -> quarantineLatencyThresholdInMs = (int) threshold;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.QUARANTINE_LATENCY_THRESHOLD, quarantineLatencyThresholdInMs, configSetter);
+
+        configSetter = (backoff) -> quarantineMaxBackoffInSeconds = (int) backoff;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.QUARANTINE_MAX_BACKOFF, quarantineMaxBackoffInSeconds, configSetter);
+
+        configSetter = (threads) -> agentThreads = (int) threads;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.AGENT_THREADS, agentThreads, configSetter);
+
+        configSetter = (enabled) -> virtualThreadsEnabled = (boolean) enabled;
+        setSingleConfig(config, Jmx2LogzioJolokia.VIRTUAL_THREADS, null, configSetter, new ConfigValidator() {
+        }, Boolean.class);
+
+        configSetter = (timeout) -> shutdownTimeoutInSeconds = (int) timeout;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.SHUTDOWN_TIMEOUT, shutdownTimeoutInSeconds, configSetter);
+
+        configSetter = (enabled) -> shutdownFinalPoll = (boolean) enabled;
+        setSingleConfig(config, Jmx2LogzioJolokia.SHUTDOWN_FINAL_POLL, null, configSetter, new ConfigValidator() {
+        }, Boolean.class);
+
+        setGovernorParams(config);
+
+        configSetter = (limit) -> cardinalityMaxSeriesPerPattern = (int) limit;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.CARDINALITY_MAX_SERIES_PER_PATTERN, cardinalityMaxSeriesPerPattern, configSetter);
+
+        configSetter = (limit) -> cardinalityMaxSeriesPerDomain = (int) limit;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.CARDINALITY_MAX_SERIES_PER_DOMAIN, cardinalityMaxSeriesPerDomain, configSetter);
+
+        configSetter = (topK) -> cardinalityTopK = (int) topK;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.CARDINALITY_TOP_K, cardinalityTopK, configSetter);
+
+        configSetter = (rankMetric) -> cardinalityRankMetric = (String) rankMetric;
+        setSingleConfig(config, Jmx2LogzioJolokia.CARDINALITY_RANK_METRIC, null, configSetter, new ConfigValidator() {}, String.class);
+
+        configSetter = (delay) -> startupDelayInSeconds = (int) delay;
+        validateAndSetNonNegative(config, Jmx2LogzioJolokia.STARTUP_DELAY, startupDelayInSeconds, configSetter);
+
+        configSetter = (enabled) -> controlMBeanEnabled = (boolean) enabled;
+        setSingleConfig(config, Jmx2LogzioJolokia.CONTROL_MBEAN, null, configSetter, new ConfigValidator() {
+        }, Boolean.class);
+
+        configSetter = (interval) -> configReloadIntervalInSeconds = (int) interval;
+        validateAndSetNonNegative(config, Jmx2LogzioJolokia.CONFIG_RELOAD_INTERVAL, configReloadIntervalInSeconds, configSetter);
+    }
+
+    private void setGovernorParams(Config config) {
+        ConfigSetter configSetter = (enabled) -> governorEnabled = (boolean) enabled;
+        setSingleConfig(config, Jmx2LogzioJolokia.GOVERNOR_ENABLED, null, configSetter, new ConfigValidator() {
+        }, Boolean.class);
+
+        configSetter = (percent) -> governorMaxCpuPercent = Double.parseDouble((String) percent);
+        setSingleConfig(config, Jmx2LogzioJolokia.GOVERNOR_MAX_CPU_PERCENT, "argument " + Jmx2LogzioJolokia.GOVERNOR_MAX_CPU_PERCENT +
+                " {} has to be a positive percentage, using default instead: " + governorMaxCpuPercent, configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                try {
+                    double percent = Double.parseDouble((String) result);
+                    return percent > 0 && percent <= 100;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }, String.class);
+
+        configSetter = (bytes) -> governorMaxAllocatedBytesPerCycle = (int) bytes;
+        validateAndSetNatural(config, Jmx2LogzioJolokia.GOVERNOR_MAX_ALLOCATED_BYTES_PER_CYCLE, governorMaxAllocatedBytesPerCycle, configSetter);
+
+        configSetter = (percent) -> governorMaxHeapUsedPercent = (int) percent;
+        setSingleConfig(config, Jmx2LogzioJolokia.GOVERNOR_MAX_HEAP_USED_PERCENT, "argument " + Jmx2LogzioJolokia.GOVERNOR_MAX_HEAP_USED_PERCENT +
+                " has to be between 1 and 100, using default instead: " + governorMaxHeapUsedPercent, configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return (int) result > 0 && (int) result <= 100;
+            }
+        }, Integer.class);
+    }
+
+    private void setCompressionParams(Config config) {
+        ConfigSetter configSetter = (codec) -> logzioJavaSenderParams.setCompressionCodec(PayloadCompressor.Codec.fromConfigValue((String) codec));
+        setSingleConfig(config, Jmx2LogzioJolokia.COMPRESSION_CODEC, "unknown compression codec {}, using gzip instead", configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return PayloadCompressor.Codec.fromConfigValue((String) result) != null;
+            }
+        }, String.class);
+
+        configSetter = (level) -> {
+            if (PayloadCompressor.ADAPTIVE_LEVEL.equalsIgnoreCase((String) level)) {
+                logzioJavaSenderParams.setAdaptiveCompression(true);
+            } else {
+                logzioJavaSenderParams.setCompressionLevel(Integer.parseInt((String) level));
+            }
+        };
+        setSingleConfig(config, Jmx2LogzioJolokia.COMPRESSION_LEVEL, "compression level {} has to be adaptive or between " + PayloadCompressor.MIN_LEVEL +
+                " and " + PayloadCompressor.MAX_LEVEL + ", using " + PayloadCompressor.DEFAULT_LEVEL + " instead", configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                String level = (String) result;
+                if (PayloadCompressor.ADAPTIVE_LEVEL.equalsIgnoreCase(level)) {
+                    return true;
+                }
+                try {
+                    int value = Integer.parseInt(level);
+                    return value >= PayloadCompressor.MIN_LEVEL && value <= PayloadCompressor.MAX_LEVEL;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }, String.class);
+
+        configSetter = (cpuMs) -> logzioJavaSenderParams.setCompressionMaxCpuMsPerCycle((int) cpuMs);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.COMPRESSION_MAX_CPU_MS_PER_CYCLE, logzioJavaSenderParams.getCompressionMaxCpuMsPerCycle(), configSetter);
+    }
+
+    private void setSinks(Config config) {
+        sinkTypes = new ArrayList<>();
+        if (config.hasPath(Jmx2LogzioJolokia.SINKS)) {
+            List<String> sinkNames = metricClientType == MetricClientType.MBEAN_PLATFORM ?
+                    Splitter.on(';').omitEmptyStrings().trimResults().splitToList(config.getString(Jmx2LogzioJolokia.SINKS)) :
+                    config.getStringList(Jmx2LogzioJolokia.SINKS);
+            for (String sinkName : sinkNames) {
+                MetricSinkType sinkType = MetricSinkType.fromConfigValue(sinkName);
+                if (sinkType == null) {
+                    logger.error("unknown sink {}, ignoring it", sinkName);
+                } else if (!sinkTypes.contains(sinkType)) {
+                    sinkTypes.add(sinkType);
+                }
+            }
+        }
+        if (sinkTypes.isEmpty()) {
+            sinkTypes.add(MetricSinkType.LOGZIO);
+        }
+
+        if (sinkTypes.contains(MetricSinkType.FILE)) {
+            ConfigSetter configSetter = (path) -> fileSinkPath = (String) path;
+            setSingleConfig(config, Jmx2LogzioJolokia.FILE_SINK_PATH, null, configSetter, new ConfigValidator() {}, String.class);
+
+            configSetter = (size) -> fileSinkMaxFileSizeInBytes = (int) size;
+            validateAndSetNatural(config, Jmx2LogzioJolokia.FILE_SINK_MAX_FILE_SIZE, fileSinkMaxFileSizeInBytes, configSetter);
+
+            configSetter = (files) -> fileSinkMaxFiles = (int) files;
+            validateAndSetNatural(config, Jmx2LogzioJolokia.FILE_SINK_MAX_FILES, fileSinkMaxFiles, configSetter);
+
+            configSetter = (encoding) -> fileSinkDimensionEncoding = MetricsBatcher.DimensionEncoding.fromConfigValue((String) encoding);
+            setSingleConfig(config, Jmx2LogzioJolokia.FILE_SINK_DIMENSION_ENCODING, "unknown dimension encoding {}, writing dimensions inline instead", configSetter, new ConfigValidator() {
+                @Override
+                public boolean validatePredicate(Object result) {
+                    return MetricsBatcher.DimensionEncoding.fromConfigValue((String) result) != null;
+                }
+            }, String.class);
+        }
+
+        if (sinkTypes.contains(MetricSinkType.PROMETHEUS)) {
+            ConfigSetter configSetter = (host) -> prometheusSinkHost = (String) host;
+            setSingleConfig(config, Jmx2LogzioJolokia.PROMETHEUS_SINK_HOST, null, configSetter, new ConfigValidator() {}, String.class);
+
+            configSetter = (port) -> prometheusSinkPort = (int) port;
+            validateAndSetNatural(config, Jmx2LogzioJolokia.PROMETHEUS_SINK_PORT, prometheusSinkPort, configSetter);
+        }
+
+        if (sinkTypes.contains(MetricSinkType.OTLP)) {
+            ConfigSetter configSetter = (url) -> otlpSinkUrl = (String) url;
+            setSingleConfig(config, Jmx2LogzioJolokia.OTLP_SINK_URL, null, configSetter, new ConfigValidator() {}, String.class);
+
+            configSetter = (token) -> otlpSinkToken = (String) token;
+            setSingleConfig(config, Jmx2LogzioJolokia.OTLP_SINK_TOKEN, null, configSetter, new ConfigValidator() {}, String.class);
+
+            if (config.hasPath(Jmx2LogzioJolokia.OTLP_SINK_SUM_METRICS)) {
+                otlpSinkSumMetrics = metricClientType == MetricClientType.MBEAN_PLATFORM ?
+                        Splitter.on(';').omitEmptyStrings().trimResults().splitToList(config.getString(Jmx2LogzioJolokia.OTLP_SINK_SUM_METRICS)) :
+                        config.getStringList(Jmx2LogzioJolokia.OTLP_SINK_SUM_METRICS);
+            }
+        }
+
+        if (sinkTypes.contains(MetricSinkType.TSDB)) {
+            ConfigSetter configSetter = (bytes) -> tsdbSinkMaxBytes = (int) bytes;
+            validateAndSetNatural(config, Jmx2LogzioJolokia.TSDB_SINK_MAX_BYTES, tsdbSinkMaxBytes, configSetter);
+
+            configSetter = (points) -> tsdbSinkBlockPoints = (int) points;
+            validateAndSetNatural(config, Jmx2LogzioJolokia.TSDB_SINK_BLOCK_POINTS, tsdbSinkBlockPoints, configSetter);
+        }
     }
 
     private List<Dimension> parseExtraDimensions(Config config) {
@@ -135,6 +521,47 @@ public class Jmx2LogzioConfiguration {
                 .collect(Collectors.toList());
     }
 
+    private List<AttributeRule> parseAttributeRules(List<? extends Config> rulesConfig) {
+        List<AttributeRule> result = new ArrayList<>();
+        for (Config ruleConfig : rulesConfig) {
+            if (!ruleConfig.hasPath(ATTRIBUTE_RULE_BEAN)) {
+                logger.error("attribute rule {} has no bean, ignoring it", ruleConfig.root().render());
+                continue;
+            }
+            List<String> includes = ruleConfig.hasPath(ATTRIBUTE_RULE_INCLUDE) ? ruleConfig.getStringList(ATTRIBUTE_RULE_INCLUDE) : new ArrayList<>();
+            List<String> excludes = ruleConfig.hasPath(ATTRIBUTE_RULE_EXCLUDE) ? ruleConfig.getStringList(ATTRIBUTE_RULE_EXCLUDE) : new ArrayList<>();
+            result.add(new AttributeRule(ruleConfig.getString(ATTRIBUTE_RULE_BEAN), includes, excludes));
+        }
+        return result;
+    }
+
+    private List<AttributeRule> parseAttributeRules(String rules) {
+        if (rules.charAt(0) != '{' || rules.charAt(rules.length() - 1) != '}') {
+            logger.error("malformed attribute rules, missing encapsulating chars '{' or '}' - expected pattern is {bean=>attribute;attribute;!attribute|bean=>...} , ignoring attribute rules..");
+            return new ArrayList<>();
+        }
+        rules = rules.substring(1, rules.length() - 1);
+        List<AttributeRule> result = new ArrayList<>();
+        for (String rule : Splitter.on('|').omitEmptyStrings().splitToList(rules)) {
+            String[] beanAndAttributes = rule.split(ATTRIBUTE_RULE_BEAN_SEPARATOR, 2);
+            if (beanAndAttributes.length < 2 || beanAndAttributes[KEY_INDEX].isEmpty()) {
+                logger.error("malformed attribute rule - expected pattern is bean=>attribute;attribute;!attribute , ignoring attribute rule: {}", rule);
+                continue;
+            }
+            List<String> includes = new ArrayList<>();
+            List<String> excludes = new ArrayList<>();
+            for (String attribute : Splitter.on(';').omitEmptyStrings().trimResults().splitToList(beanAndAttributes[VALUE_INDEX])) {
+                if (attribute.startsWith(ATTRIBUTE_RULE_EXCLUDE_PREFIX)) {
+                    excludes.add(attribute.substring(ATTRIBUTE_RULE_EXCLUDE_PREFIX.length()));
+                } else {
+                    includes.add(attribute);
+                }
+            }
+            result.add(new AttributeRule(beanAndAttributes[KEY_INDEX], includes, excludes));
+        }
+        return result;
+    }
+
     private void setDiskStorageParams(Config config) {
         ConfigSetter configSetter = (interval) -> logzioJavaSenderParams.setDiskSpaceCheckInterval((int) interval);
         validateAndSetNatural(config, Jmx2LogzioJolokia.DISK_SPACE_CHECK_INTERVAL, logzioJavaSenderParams.getDiskSpaceCheckInterval(), configSetter);
@@ -147,6 +574,96 @@ public class Jmx2LogzioConfiguration {
     }
 
 
+    private void setPriorityLaneParams(Config config) {
+        if (config.hasPath(Jmx2LogzioJolokia.PRIORITY_LANES)) {
+            List<PriorityLaneParams> lanes = metricClientType == MetricClientType.MBEAN_PLATFORM ?
+                    parsePriorityLanes(config.getString(Jmx2LogzioJolokia.PRIORITY_LANES)) :
+                    parsePriorityLanes(config.getConfigList(Jmx2LogzioJolokia.PRIORITY_LANES));
+            logzioJavaSenderParams.setPriorityLanes(lanes);
+        }
+
+        ConfigSetter configSetter = (weight) -> logzioJavaSenderParams.setDefaultLaneWeight((int) weight);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.DEFAULT_LANE_WEIGHT, logzioJavaSenderParams.getDefaultLaneWeight(), configSetter);
+
+        configSetter = (rate) -> logzioJavaSenderParams.setDefaultLaneMaxBytesPerSecond((int) rate);
+        validateAndSetNonNegative(config, Jmx2LogzioJolokia.DEFAULT_LANE_MAX_BYTES_PER_SECOND, (int) logzioJavaSenderParams.getDefaultLaneMaxBytesPerSecond(), configSetter);
+    }
+
+    private List<PriorityLaneParams> parsePriorityLanes(List<? extends Config> lanesConfig) {
+        List<PriorityLaneParams> result = new ArrayList<>();
+        for (Config laneConfig : lanesConfig) {
+            if (!laneConfig.hasPath(PRIORITY_LANE_NAME) || !laneConfig.hasPath(PRIORITY_LANE_DOMAINS)) {
+                logger.error("priority lane {} needs a name and domains, ignoring it", laneConfig.root().render());
+                continue;
+            }
+            int weight = laneConfig.hasPath(PRIORITY_LANE_WEIGHT) ? laneConfig.getInt(PRIORITY_LANE_WEIGHT) : 1;
+            long maxBytesPerSecond = laneConfig.hasPath(PRIORITY_LANE_MAX_BYTES_PER_SECOND) ? laneConfig.getLong(PRIORITY_LANE_MAX_BYTES_PER_SECOND) : 0;
+            addPriorityLane(result, laneConfig.getString(PRIORITY_LANE_NAME), laneConfig.getStringList(PRIORITY_LANE_DOMAINS), weight, maxBytesPerSecond);
+        }
+        return result;
+    }
+
+    private List<PriorityLaneParams> parsePriorityLanes(String lanes) {
+        if (lanes.charAt(0) != '{' || lanes.charAt(lanes.length() - 1) != '}') {
+            logger.error("malformed priority lanes, missing encapsulating chars '{' or '}' - expected pattern is {name:weight:maxBytesPerSecond=>domain;domain|name...} , using the default lanes..");
+            return logzioJavaSenderParams.getPriorityLanes();
+        }
+        lanes = lanes.substring(1, lanes.length() - 1);
+        List<PriorityLaneParams> result = new ArrayList<>();
+        for (String lane : Splitter.on('|').omitEmptyStrings().splitToList(lanes)) {
+            String[] laneAndDomains = lane.split(ATTRIBUTE_RULE_BEAN_SEPARATOR, 2);
+            String[] nameWeightAndRate = laneAndDomains[KEY_INDEX].split(":");
+            if (laneAndDomains.length < 2 || nameWeightAndRate.length != 3) {
+                logger.error("malformed priority lane - expected pattern is name:weight:maxBytesPerSecond=>domain;domain , ignoring priority lane: {}", lane);
+                continue;
+            }
+            try {
+                addPriorityLane(result, nameWeightAndRate[0], Splitter.on(';').omitEmptyStrings().trimResults().splitToList(laneAndDomains[VALUE_INDEX]),
+                        Integer.parseInt(nameWeightAndRate[1]), Long.parseLong(nameWeightAndRate[2]));
+            } catch (NumberFormatException e) {
+                logger.error("priority lane weight and max bytes per second must be numbers, ignoring priority lane: {}", lane);
+            }
+        }
+        return result;
+    }
+
+    private void addPriorityLane(List<PriorityLaneParams> lanes, String name, List<String> domains, int weight, long maxBytesPerSecond) {
+        if (!PRIORITY_LANE_NAME_PATTERN.matcher(name).matches() || name.equals(ListenerWriter.DEFAULT_LANE)
+                || lanes.stream().anyMatch(lane -> lane.getName().equals(name))) {
+            logger.error("priority lane name {} must be unique, other than {} and made of letters, digits, '-' and '_', ignoring it", name, ListenerWriter.DEFAULT_LANE);
+        } else if (weight <= 0 || maxBytesPerSecond < 0) {
+            logger.error("priority lane {} weight must be a natural number and its max bytes per second can't be negative, ignoring it", name);
+        } else if (domains.isEmpty()) {
+            logger.error("priority lane {} has no domains, ignoring it", name);
+        } else {
+            lanes.add(new PriorityLaneParams(name, domains, weight, maxBytesPerSecond));
+        }
+    }
+
+    private void setSpoolParams(Config config) {
+        ConfigSetter configSetter = (size) -> logzioJavaSenderParams.setSpoolSegmentSizeInBytes((int) size);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.SPOOL_SEGMENT_SIZE, logzioJavaSenderParams.getSpoolSegmentSizeInBytes(), configSetter);
+
+        configSetter = (segments) -> logzioJavaSenderParams.setSpoolMaxSegments((int) segments);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.SPOOL_MAX_SEGMENTS, logzioJavaSenderParams.getSpoolMaxSegments(), configSetter);
+    }
+
+    private void setOffHeapParams(Config config) {
+        ConfigSetter configSetter = (capacity) -> logzioJavaSenderParams.setOffHeapCapacityInBytes((int) capacity);
+        validateAndSetNatural(config, Jmx2LogzioJolokia.OFF_HEAP_CAPACITY, logzioJavaSenderParams.getOffHeapCapacityInBytes(), configSetter);
+
+        configSetter = (policy) -> logzioJavaSenderParams.setOffHeapOverflowPolicy(OverflowPolicy.fromConfigValue((String) policy));
+        setSingleConfig(config, Jmx2LogzioJolokia.OFF_HEAP_OVERFLOW_POLICY, "unknown overflow policy {}, using " + logzioJavaSenderParams.getOffHeapOverflowPolicy().getConfigValue() + " instead", configSetter, new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return OverflowPolicy.fromConfigValue((String) result) != null;
+            }
+        }, String.class);
+
+        configSetter = (timeout) -> logzioJavaSenderParams.setOffHeapBlockTimeoutInMs((int) timeout);
+        validateAndSetNonNegative(config, Jmx2LogzioJolokia.OFF_HEAP_BLOCK_TIMEOUT, logzioJavaSenderParams.getOffHeapBlockTimeoutInMs(), configSetter);
+    }
+
     private void setInMemoryParams(Config config) {
         ConfigSetter configSetter = (capacity) -> logzioJavaSenderParams.setInMemoryQueueCapacityInBytes((int) capacity);
         validateAndSetNatural(config, Jmx2LogzioJolokia.IN_MEMORY_QUEUE_CAPACITY, logzioJavaSenderParams.getInMemoryQueueCapacityInBytes(), configSetter);
@@ -198,6 +715,51 @@ public class Jmx2LogzioConfiguration {
             if (serviceHost == null) {
                 serviceHost = jolokiaHost;
             }
+
+            if (config.hasPath(JolokiaClient.JOLOKIA_PATTERN_READS)) {
+                jolokiaPatternReads = config.getStringList(JolokiaClient.JOLOKIA_PATTERN_READS);
+                for (String pattern : jolokiaPatternReads) {
+                    try {
+                        new ObjectName(pattern);
+                    } catch (MalformedObjectNameException e) {
+                        throw new IllegalConfiguration(JolokiaClient.JOLOKIA_PATTERN_READS + " must be a list of object name patterns. Error = " + e.getMessage());
+                    }
+                }
+            }
+        } else if (config.hasPath(HsperfdataClient.POLLER_HSPERFDATA)) {
+            metricClientType = MetricClientType.HSPERFDATA;
+            if (!config.hasPath(HsperfdataClient.HSPERFDATA_PID)) {
+                throw new IllegalConfiguration("service.poller.hsperfdata.pid has to be in the configuration file (application.conf)");
+            }
+            hsperfdataPid = config.getInt(HsperfdataClient.HSPERFDATA_PID);
+            if (config.hasPath(HsperfdataClient.HSPERFDATA_DIRECTORY)) {
+                hsperfdataDirectory = config.getString(HsperfdataClient.HSPERFDATA_DIRECTORY);
+            }
+            if (serviceHost == null) {
+                try {
+                    serviceHost = InetAddress.getLocalHost().getHostName();
+                } catch (UnknownHostException e) {
+                    throw new IllegalConfiguration("service.host was not defined, and could not determine it from the servers hostname");
+                }
+            }
+        } else if (config.hasPath(LocalJvmDiscovery.POLLER_ATTACH)) {
+            metricClientType = MetricClientType.ATTACH;
+            if (config.hasPath(LocalJvmDiscovery.ATTACH_DISPLAY_NAME_REGEX)) {
+                try {
+                    attachDisplayNamePattern = Pattern.compile(config.getString(LocalJvmDiscovery.ATTACH_DISPLAY_NAME_REGEX));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalConfiguration("service.poller.attach.display-name-regex must be a valid regex. Error = " + e.getMessage());
+                }
+            }
+            ConfigSetter configSetter = (interval) -> attachDiscoveryIntervalInSeconds = (int) interval;
+            validateAndSetNatural(config, LocalJvmDiscovery.ATTACH_DISCOVERY_INTERVAL, attachDiscoveryIntervalInSeconds, configSetter);
+            if (serviceHost == null) {
+                try {
+                    serviceHost = InetAddress.getLocalHost().getHostName();
+                } catch (UnknownHostException e) {
+                    throw new IllegalConfiguration("service.host was not defined, and could not determine it from the servers hostname");
+                }
+            }
         } else if (config.hasPath(POLLER_MBEAN_DIRECT)) {
             metricClientType = MetricClientType.MBEAN_PLATFORM;
             // Try to find hostname as default to serviceHost in case it was not provided
@@ -209,7 +771,7 @@ public class Jmx2LogzioConfiguration {
                 }
             }
         } else {
-            throw new IllegalConfiguration("Client TYPE has to be either Jolokia or MBean");
+            throw new IllegalConfiguration("Client TYPE has to be either Jolokia, hsperfdata, attach or MBean");
         }
     }
 
@@ -239,10 +801,88 @@ public class Jmx2LogzioConfiguration {
         setSingleConfig(config, arg, "argument " + arg + " has to be a natural number, using default instead: " + defaultValue, setter, validator, Integer.class);
     }
 
+    private void validateAndSetNonNegative(Config config, String arg, int defaultValue, ConfigSetter setter) {
+        ConfigValidator validator = new ConfigValidator() {
+            @Override
+            public boolean validatePredicate(Object result) {
+                return (int) result >= 0;
+            }
+        };
+        setSingleConfig(config, arg, "argument " + arg + " can't be negative, using default instead: " + defaultValue, setter, validator, Integer.class);
+    }
+
     public String getJolokiaFullUrl() {
         return jolokiaFullUrl;
     }
 
+    public List<String> getJolokiaPatternReads() {
+        return jolokiaPatternReads;
+    }
+
+    public int getHsperfdataPid() {
+        return hsperfdataPid;
+    }
+
+    public String getHsperfdataDirectory() {
+        return hsperfdataDirectory;
+    }
+
+    public Pattern getAttachDisplayNamePattern() {
+        return attachDisplayNamePattern;
+    }
+
+    public int getAttachDiscoveryIntervalInSeconds() {
+        return attachDiscoveryIntervalInSeconds;
+    }
+
+    public List<MetricSinkType> getSinkTypes() {
+        return sinkTypes;
+    }
+
+    public String getFileSinkPath() {
+        return fileSinkPath;
+    }
+
+    public int getFileSinkMaxFileSizeInBytes() {
+        return fileSinkMaxFileSizeInBytes;
+    }
+
+    public int getFileSinkMaxFiles() {
+        return fileSinkMaxFiles;
+    }
+
+    public MetricsBatcher.DimensionEncoding getFileSinkDimensionEncoding() {
+        return fileSinkDimensionEncoding;
+    }
+
+    public String getPrometheusSinkHost() {
+        return prometheusSinkHost;
+    }
+
+    public int getPrometheusSinkPort() {
+        return prometheusSinkPort;
+    }
+
+    public String getOtlpSinkUrl() {
+        return otlpSinkUrl;
+    }
+
+    public String getOtlpSinkToken() {
+        return otlpSinkToken;
+    }
+
+    public List<String> getOtlpSinkSumMetrics() {
+        return otlpSinkSumMetrics;
+    }
+
+    public int getTsdbSinkMaxBytes() {
+        return tsdbSinkMaxBytes;
+    }
+
+    public int getTsdbSinkBlockPoints() {
+        return tsdbSinkBlockPoints;
+    }
+
     public LogzioJavaSenderParams getSenderParams() {
         return this.logzioJavaSenderParams;
     }
@@ -259,6 +899,86 @@ public class Jmx2LogzioConfiguration {
         return metricsPollingIntervalInSeconds;
     }
 
+    public int getPhaseJitterPercent() {
+        return phaseJitterPercent;
+    }
+
+    public boolean isDiscoverySnapshotEnabled() {
+        return discoverySnapshotEnabled;
+    }
+
+    public int getAgentThreads() {
+        return agentThreads;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public int getShutdownTimeoutInSeconds() {
+        return shutdownTimeoutInSeconds;
+    }
+
+    public boolean isShutdownFinalPoll() {
+        return shutdownFinalPoll;
+    }
+
+    public boolean isGovernorEnabled() {
+        return governorEnabled;
+    }
+
+    public double getGovernorMaxCpuPercent() {
+        return governorMaxCpuPercent;
+    }
+
+    public int getGovernorMaxAllocatedBytesPerCycle() {
+        return governorMaxAllocatedBytesPerCycle;
+    }
+
+    public int getGovernorMaxHeapUsedPercent() {
+        return governorMaxHeapUsedPercent;
+    }
+
+    public int getQuarantineFailureThreshold() {
+        return quarantineFailureThreshold;
+    }
+
+    public int getQuarantineLatencyThresholdInMs() {
+        return quarantineLatencyThresholdInMs;
+    }
+
+    public int getQuarantineMaxBackoffInSeconds() {
+        return quarantineMaxBackoffInSeconds;
+    }
+
+    public int getCardinalityMaxSeriesPerPattern() {
+        return cardinalityMaxSeriesPerPattern;
+    }
+
+    public int getCardinalityMaxSeriesPerDomain() {
+        return cardinalityMaxSeriesPerDomain;
+    }
+
+    public int getCardinalityTopK() {
+        return cardinalityTopK;
+    }
+
+    public String getCardinalityRankMetric() {
+        return cardinalityRankMetric;
+    }
+
+    public int getStartupDelayInSeconds() {
+        return startupDelayInSeconds;
+    }
+
+    public boolean isControlMBeanEnabled() {
+        return controlMBeanEnabled;
+    }
+
+    public int getConfigReloadIntervalInSeconds() {
+        return configReloadIntervalInSeconds;
+    }
+
     public Pattern getWhiteListPattern() {
         return whiteListPattern;
     }
@@ -275,4 +995,8 @@ public class Jmx2LogzioConfiguration {
         return extraDimensions;
     }
 
+    public List<AttributeRule> getAttributeRules() {
+        return attributeRules;
+    }
+
 }
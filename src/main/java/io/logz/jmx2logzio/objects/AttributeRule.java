@@ -0,0 +1,32 @@
+package io.logz.jmx2logzio.objects;
+
+import java.util.List;
+
+/**
+ * Attribute include/exclude globs for the beans matching a bean name glob.
+ * Globs are matched against flattened metric keys, e.g. HeapMemoryUsage.used
+ */
+public class AttributeRule {
+
+    private final String beanGlob;
+    private final List<String> includes;
+    private final List<String> excludes;
+
+    public AttributeRule(String beanGlob, List<String> includes, List<String> excludes) {
+        this.beanGlob = beanGlob;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    public String getBeanGlob() {
+        return beanGlob;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+}
@@ -1,5 +1,6 @@
 package io.logz.jmx2logzio.objects;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
@@ -12,16 +13,41 @@ public class JolokiaReadRequest {
     @JsonProperty("mbean")
     private String mbeanName;
 
+    // A list of names, which Jolokia answers with a map of attribute to value, or a single name, answered with the bare value
     @JsonProperty("attribute")
-    private String[] attributes;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Object attribute;
 
+    @JsonProperty("path")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String path;
+
+    /**
+     * @param mbeanName the bean's object name, or an object name pattern which Jolokia expands to the matching beans
+     * @param attributes the attribute names, or null to read all of the attributes
+     */
     public JolokiaReadRequest(String mbeanName, List<String> attributes) {
         this.mbeanName = mbeanName;
-        this.attributes = attributes.toArray(new String[]{});
+        this.attribute = attributes == null ? null : attributes.toArray(new String[]{});
+    }
+
+    /**
+     * Read a single attribute, or only a part of it when an inner path is given
+     * @param mbeanName the bean's object name
+     * @param attribute the attribute name
+     * @param path Jolokia inner path, e.g. used or a/b, or null to read the whole attribute
+     */
+    public JolokiaReadRequest(String mbeanName, String attribute, String path) {
+        this.mbeanName = mbeanName;
+        this.attribute = attribute;
+        this.path = path;
     }
 
     public String[] getAttributes() {
-        return attributes;
+        if (attribute instanceof String) {
+            return new String[]{(String) attribute};
+        }
+        return (String[]) attribute;
     }
 
     public String getMbeanName() {
@@ -31,4 +57,8 @@ public class JolokiaReadRequest {
     public String getType() {
         return type;
     }
+
+    public String getPath() {
+        return path;
+    }
 }
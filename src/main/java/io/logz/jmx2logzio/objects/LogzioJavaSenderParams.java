@@ -1,9 +1,13 @@
 package io.logz.jmx2logzio.objects;
 
 import com.google.common.hash.Hashing;
+import io.logz.jmx2logzio.Utils.MetricsBatcher;
+import io.logz.jmx2logzio.Utils.PayloadCompressor;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 
 public class LogzioJavaSenderParams {
 
@@ -13,9 +17,34 @@ public class LogzioJavaSenderParams {
     private String token;
     private int threadPoolSize = 3;
     private boolean debug = true;
-    private boolean compressRequests = true;
     private boolean fromDisk = true;
     private String loggerName = "jmx2LogzioLogger";
+    // Same as the sender's bulk size, so each request carries a single block
+    private int maxBatchSizeInBytes = 3 * 1024 * 1024;
+    private MetricsBatcher.DimensionEncoding dimensionEncoding = MetricsBatcher.DimensionEncoding.INLINE;
+    private QueueType queueType = QueueType.SENDER;
+
+    // Compression of the requests to the listener, the sender's queue only supports its own gzip or none
+    private PayloadCompressor.Codec compressionCodec = PayloadCompressor.Codec.GZIP;
+    private int compressionLevel = PayloadCompressor.DEFAULT_LEVEL;
+    private boolean adaptiveCompression = false;
+    private int compressionMaxCpuMsPerCycle = 50;
+
+    // Mapped spool parameters
+    private File spoolDir;
+    private int spoolSegmentSizeInBytes = 16 * 1024 * 1024;
+    private int spoolMaxSegments = 64;
+
+    // Off-heap queue parameters
+    private int offHeapCapacityInBytes = 32 * 1024 * 1024;
+    private OverflowPolicy offHeapOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private int offHeapBlockTimeoutInMs = 1000;
+
+    // Priority lanes of the block queues, the default lane takes the metrics no other lane matches
+    private List<PriorityLaneParams> priorityLanes = Collections.singletonList(
+            new PriorityLaneParams("jvm", Collections.singletonList("java.lang"), 4, 0));
+    private int defaultLaneWeight = 1;
+    private long defaultLaneMaxBytesPerSecond = 0;
 
     // In-memory queue parameters
     private int inMemoryQueueCapacityInBytes = 1024 * 1024 * 100;
@@ -23,6 +52,7 @@ public class LogzioJavaSenderParams {
 
     // Disk queue parameters
     private File queueDir;
+    private File discoverySnapshotFile;
     private int fileSystemFullPercentThreshold = 98;
     private int gcPersistedQueueFilesIntervalSeconds = 30;
     private int diskSpaceCheckInterval = 1000;
@@ -40,6 +70,38 @@ public class LogzioJavaSenderParams {
         queuePath += queuePath.endsWith("/") ? "" : "/";
         queuePath += "metrics" + tokenTypeSha;
         this.queueDir = new File(queuePath);
+        this.discoverySnapshotFile = new File(queuePath + "-discovery.json");
+        this.spoolDir = new File(queuePath + "-spool");
+    }
+
+    public enum QueueType {
+        // The logz.io java sender's own disk or in-memory queue, see fromDisk
+        SENDER("sender"),
+        MAPPED_SPOOL("mapped-spool"),
+        OFF_HEAP("off-heap");
+
+        private final String configValue;
+
+        QueueType(String configValue) {
+            this.configValue = configValue;
+        }
+
+        public String getConfigValue() {
+            return configValue;
+        }
+
+        /**
+         * @param configValue the queue type as written in the configuration
+         * @return the matching queue type, or null if there is none
+         */
+        public static QueueType fromConfigValue(String configValue) {
+            for (QueueType queueType : values()) {
+                if (queueType.configValue.equalsIgnoreCase(configValue)) {
+                    return queueType;
+                }
+            }
+            return null;
+        }
     }
 
     public String getUrl() {
@@ -75,7 +137,39 @@ public class LogzioJavaSenderParams {
     }
 
     public boolean isCompressRequests() {
-        return compressRequests;
+        return compressionCodec != PayloadCompressor.Codec.NONE;
+    }
+
+    public PayloadCompressor.Codec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public void setCompressionCodec(PayloadCompressor.Codec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    public int getCompressionMaxCpuMsPerCycle() {
+        return compressionMaxCpuMsPerCycle;
+    }
+
+    public void setCompressionMaxCpuMsPerCycle(int compressionMaxCpuMsPerCycle) {
+        this.compressionMaxCpuMsPerCycle = compressionMaxCpuMsPerCycle;
     }
 
     public int getInMemoryQueueCapacityInBytes() {
@@ -106,6 +200,10 @@ public class LogzioJavaSenderParams {
         return queueDir;
     }
 
+    public File getDiscoverySnapshotFile() {
+        return discoverySnapshotFile;
+    }
+
     public int getFileSystemFullPercentThreshold() {
         return fileSystemFullPercentThreshold;
     }
@@ -130,6 +228,98 @@ public class LogzioJavaSenderParams {
         this.fromDisk = fromDisk;
     }
 
+    public int getMaxBatchSizeInBytes() {
+        return maxBatchSizeInBytes;
+    }
+
+    public void setMaxBatchSizeInBytes(int maxBatchSizeInBytes) {
+        this.maxBatchSizeInBytes = maxBatchSizeInBytes;
+    }
+
+    public List<PriorityLaneParams> getPriorityLanes() {
+        return priorityLanes;
+    }
+
+    public void setPriorityLanes(List<PriorityLaneParams> priorityLanes) {
+        this.priorityLanes = priorityLanes;
+    }
+
+    public int getDefaultLaneWeight() {
+        return defaultLaneWeight;
+    }
+
+    public void setDefaultLaneWeight(int defaultLaneWeight) {
+        this.defaultLaneWeight = defaultLaneWeight;
+    }
+
+    public long getDefaultLaneMaxBytesPerSecond() {
+        return defaultLaneMaxBytesPerSecond;
+    }
+
+    public void setDefaultLaneMaxBytesPerSecond(long defaultLaneMaxBytesPerSecond) {
+        this.defaultLaneMaxBytesPerSecond = defaultLaneMaxBytesPerSecond;
+    }
+
+    public MetricsBatcher.DimensionEncoding getDimensionEncoding() {
+        return dimensionEncoding;
+    }
+
+    public void setDimensionEncoding(MetricsBatcher.DimensionEncoding dimensionEncoding) {
+        this.dimensionEncoding = dimensionEncoding;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    public void setQueueType(QueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    public File getSpoolDir() {
+        return spoolDir;
+    }
+
+    public int getSpoolSegmentSizeInBytes() {
+        return spoolSegmentSizeInBytes;
+    }
+
+    public void setSpoolSegmentSizeInBytes(int spoolSegmentSizeInBytes) {
+        this.spoolSegmentSizeInBytes = spoolSegmentSizeInBytes;
+    }
+
+    public int getSpoolMaxSegments() {
+        return spoolMaxSegments;
+    }
+
+    public void setSpoolMaxSegments(int spoolMaxSegments) {
+        this.spoolMaxSegments = spoolMaxSegments;
+    }
+
+    public int getOffHeapCapacityInBytes() {
+        return offHeapCapacityInBytes;
+    }
+
+    public void setOffHeapCapacityInBytes(int offHeapCapacityInBytes) {
+        this.offHeapCapacityInBytes = offHeapCapacityInBytes;
+    }
+
+    public OverflowPolicy getOffHeapOverflowPolicy() {
+        return offHeapOverflowPolicy;
+    }
+
+    public void setOffHeapOverflowPolicy(OverflowPolicy offHeapOverflowPolicy) {
+        this.offHeapOverflowPolicy = offHeapOverflowPolicy;
+    }
+
+    public int getOffHeapBlockTimeoutInMs() {
+        return offHeapBlockTimeoutInMs;
+    }
+
+    public void setOffHeapBlockTimeoutInMs(int offHeapBlockTimeoutInMs) {
+        this.offHeapBlockTimeoutInMs = offHeapBlockTimeoutInMs;
+    }
+
     public void setLoggerName(String loggerName) { this.loggerName = loggerName; }
 
     public String getLoggerName() {return loggerName; }
@@ -1,18 +1,112 @@
 package io.logz.jmx2logzio.objects;
 
 import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.Utils.AttributeFilter;
+import io.logz.jmx2logzio.Utils.BeanQuarantine;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Created by Yogev Mets on 3/1/18.
         */
 public abstract class MBeanClient {
 
+    private BeanQuarantine beanQuarantine;
+    private AttributeFilter attributeFilter;
+    private Predicate<String> beanFilter;
+
     public abstract  List<MetricBean> getBeans();
     public abstract List<Metric> getMetrics(List<MetricBean> beans);
     public abstract void setExtraDimensions(List<Dimension> extraDimensions);
 
+    /**
+     * Drop beans that are known to be no longer registered, used for beans which were not discovered by this client
+     * @param beans a list of MetricBeans, e.g. loaded from a discovery snapshot
+     * @return the beans which are still expected to exist
+     */
+    public List<MetricBean> retainRegistered(List<MetricBean> beans) {
+        return beans;
+    }
+
+    public void setBeanQuarantine(BeanQuarantine beanQuarantine) {
+        this.beanQuarantine = beanQuarantine;
+    }
+
+    public void setAttributeFilter(AttributeFilter attributeFilter) {
+        this.attributeFilter = attributeFilter;
+    }
+
+    /**
+     * @return true if the beans returned by getBeans are object name patterns, which the client expands on read and
+     * filters itself (see setBeanFilter), rather than concrete beans to be filtered before they're read
+     */
+    public boolean readsBeanPatterns() {
+        return false;
+    }
+
+    /**
+     * @param beanFilter the white and black lists, applied by a client which reads bean patterns to the beans they expand to
+     */
+    public void setBeanFilter(Predicate<String> beanFilter) {
+        this.beanFilter = beanFilter;
+    }
+
+    /**
+     * @param beanName a concrete bean's object name
+     * @return false if the bean is excluded by the white or black list
+     */
+    protected boolean isBeanIncluded(String beanName) {
+        return beanFilter == null || beanFilter.test(beanName);
+    }
+
+    /**
+     * @param beanName the bean's object name
+     * @return the attribute rules of the bean, or null if all of its attributes should be sent
+     */
+    protected AttributeFilter.BeanAttributes getBeanAttributes(String beanName) {
+        if (attributeFilter == null || attributeFilter.isEmpty()) {
+            return null;
+        }
+        AttributeFilter.BeanAttributes beanAttributes = attributeFilter.forBean(beanName);
+        return beanAttributes.isAll() ? null : beanAttributes;
+    }
+
+    /**
+     * Remove the flattened metric keys excluded by the attribute rules of the bean
+     * @param beanName the bean's object name
+     * @param metricToValue flattened metric keys to values
+     */
+    protected void filterMetricKeys(String beanName, Map<String, Number> metricToValue) {
+        AttributeFilter.BeanAttributes beanAttributes = getBeanAttributes(beanName);
+        if (beanAttributes != null) {
+            metricToValue.keySet().removeIf(key -> !beanAttributes.isKeyIncluded(key));
+        }
+    }
+
+    /**
+     * Report a successful bean read to the quarantine tracker, if there is one
+     * @param beanName the bean's object name
+     * @param latencyMs time it took to read the bean, or -1 if unknown
+     */
+    protected void reportBeanSuccess(String beanName, long latencyMs) {
+        if (beanQuarantine != null) {
+            beanQuarantine.recordSuccess(beanName, latencyMs);
+        }
+    }
+
+    /**
+     * Report a failed bean read to the quarantine tracker, if there is one
+     * @param beanName the bean's object name
+     * @param reason failure description
+     */
+    protected void reportBeanFailure(String beanName, String reason) {
+        if (beanQuarantine != null) {
+            beanQuarantine.recordFailure(beanName, reason);
+        }
+    }
+
     public static class MBeanClientPollingFailure extends RuntimeException {
 
         public MBeanClientPollingFailure(String message, Throwable cause) {
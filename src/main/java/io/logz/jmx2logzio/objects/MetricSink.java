@@ -0,0 +1,31 @@
+package io.logz.jmx2logzio.objects;
+
+import io.logz.jmx2logzio.Utils.Shutdownable;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A destination for the metrics of each polling cycle, such as the Logz.io listener or a local file
+ */
+public interface MetricSink extends Shutdownable {
+
+    /**
+     * @param metrics the metrics of one polling cycle, shared with the other sinks so they must not be modified
+     */
+    void writeMetrics(List<Metric> metrics);
+
+    /**
+     * @return a short name used in logs and thread names
+     */
+    String getName();
+
+    /**
+     * @param timestamp the metric time
+     * @param extraDimensions dimensions added to all collected metrics
+     * @return a self metric with the sink's counters, or null if it has none
+     */
+    default Metric getCountersMetric(Instant timestamp, List<Dimension> extraDimensions) {
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package io.logz.jmx2logzio.objects;
+
+/**
+ * What the off-heap queue does with a new block when it's full
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST("drop-oldest"),
+    DROP_NEWEST("drop-newest"),
+    BLOCK("block");
+
+    private final String configValue;
+
+    OverflowPolicy(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    /**
+     * @param configValue the overflow policy as written in the configuration
+     * @return the matching overflow policy, or null if there is none
+     */
+    public static OverflowPolicy fromConfigValue(String configValue) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.configValue.equalsIgnoreCase(configValue)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
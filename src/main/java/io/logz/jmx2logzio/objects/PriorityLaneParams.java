@@ -0,0 +1,43 @@
+package io.logz.jmx2logzio.objects;
+
+import java.util.List;
+
+/**
+ * A priority class of metrics, selected by bean domain globs, with its own queue, drain weight and send rate limit
+ */
+public class PriorityLaneParams {
+
+    private final String name;
+    private final List<String> domains;
+    private final int weight;
+    private final long maxBytesPerSecond;
+
+    /**
+     * @param name the lane's name, used for its counters and spool directory
+     * @param domains globs of the bean domains whose metrics go to this lane
+     * @param weight blocks sent from this lane per drain round
+     * @param maxBytesPerSecond send rate limit of this lane, or 0 for no limit
+     */
+    public PriorityLaneParams(String name, List<String> domains, int weight, long maxBytesPerSecond) {
+        this.name = name;
+        this.domains = domains;
+        this.weight = weight;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDomains() {
+        return domains;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+}
@@ -0,0 +1,98 @@
+package io.logz.jmx2logzio;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.logz.jmx2logzio.configuration.ConfigReloader;
+import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AgentControlTest {
+
+    private static final String ARGUMENTS = "LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=controlTest,SINKS=stdout,EXTRA_DIMENSIONS={env=test}";
+
+    @Test
+    public void setAttributesTest() {
+        List<Jmx2LogzioConfiguration> applied = new ArrayList<>();
+        ConfigReloader reloader = new ConfigReloader(getAgentConfig(), this::getAgentConfig, null);
+        reloader.setListener(applied::add);
+        AgentControl control = new AgentControl(reloader);
+        Assert.assertEquals(control.getExtraDimensions(), "{env=test}");
+
+        control.setWhiteListRegex("java.lang.*");
+        control.setPollingIntervalInSeconds(10);
+        control.setExtraDimensions("{env=staging:region=eu}");
+        Assert.assertEquals(applied.size(), 3);
+        Assert.assertEquals(control.getWhiteListRegex(), "java.lang.*");
+        Assert.assertEquals(control.getPollingIntervalInSeconds(), 10);
+        Assert.assertEquals(control.getExtraDimensions(), "{env=staging:region=eu}");
+        Assert.assertEquals(applied.get(2).getWhiteListPattern().pattern(), "java.lang.*");
+
+        // Invalid values are rejected, and the running configuration is kept
+        Assert.assertThrows(IllegalArgumentException.class, () -> control.setWhiteListRegex("java.lang("));
+        Assert.assertThrows(IllegalArgumentException.class, () -> control.setPollingIntervalInSeconds(0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> control.setExtraDimensions("env=staging"));
+        Assert.assertEquals(applied.size(), 3);
+
+        // The arguments are read again, and the values set over JMX are kept
+        control.reload();
+        Assert.assertEquals(applied.size(), 4);
+        Assert.assertEquals(control.getWhiteListRegex(), "java.lang.*");
+        Assert.assertEquals(control.getPollingIntervalInSeconds(), 10);
+        Assert.assertEquals(control.getExtraDimensions(), "{env=staging:region=eu}");
+    }
+
+    @Test
+    public void watchedFileTest() throws Exception {
+        File configFile = Files.createTempFile("jmx2logzio", ".conf").toFile();
+        configFile.deleteOnExit();
+        writeConfig(configFile, "java.lang.*");
+        List<Jmx2LogzioConfiguration> applied = new ArrayList<>();
+        ConfigReloader reloader = new ConfigReloader(ConfigFactory.parseFile(configFile), () -> ConfigFactory.parseFile(configFile), configFile);
+        reloader.setListener(applied::add);
+
+        reloader.checkWatchedFile();
+        Assert.assertTrue(applied.isEmpty());
+
+        writeConfig(configFile, "kafka.*");
+        Assert.assertTrue(configFile.setLastModified(configFile.lastModified() + 2000));
+        reloader.checkWatchedFile();
+        Assert.assertEquals(applied.size(), 1);
+        Assert.assertEquals(applied.get(0).getWhiteListPattern().pattern(), "kafka.*");
+
+        // A broken file is logged and the running configuration is kept
+        Files.write(configFile.toPath(), "service {".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(configFile.setLastModified(configFile.lastModified() + 4000));
+        reloader.checkWatchedFile();
+        Assert.assertEquals(applied.size(), 1);
+        Assert.assertEquals(reloader.getConfiguration().getWhiteListPattern().pattern(), "kafka.*");
+
+        // A value set over JMX is kept until the file changes the same setting
+        new AgentControl(reloader).setWhiteListRegex("java.nio.*");
+        writeConfig(configFile, "kafka.*");
+        Assert.assertTrue(configFile.setLastModified(configFile.lastModified() + 6000));
+        reloader.checkWatchedFile();
+        Assert.assertEquals(reloader.getConfiguration().getWhiteListPattern().pattern(), "java.nio.*");
+        writeConfig(configFile, "kafka.server.*");
+        Assert.assertTrue(configFile.setLastModified(configFile.lastModified() + 8000));
+        reloader.checkWatchedFile();
+        Assert.assertEquals(reloader.getConfiguration().getWhiteListPattern().pattern(), "kafka.server.*");
+    }
+
+    private Config getAgentConfig() {
+        return ConfigFactory.parseMap(Jmx2LogzioJavaAgent.parseArgumentsString(ARGUMENTS)).withFallback(ConfigFactory.load("javaagent.conf"));
+    }
+
+    private void writeConfig(File configFile, String whiteListRegex) throws Exception {
+        String config = "service {\n  name = \"fileTest\"\n  poller {\n    white-list-regex = \"" + whiteListRegex + "\"\n" +
+                "    jolokia {\n      jolokiaFullUrl = \"http://127.0.0.1:8778/jolokia/\"\n    }\n  }\n}\n" +
+                "sinks = [\"stdout\"]\n";
+        Files.write(configFile.toPath(), config.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,131 @@
+package io.logz.jmx2logzio;
+
+import com.sun.net.httpserver.HttpServer;
+import io.logz.jmx2logzio.Utils.OffHeapRingBuffer;
+import io.logz.jmx2logzio.Utils.TokenBucket;
+import io.logz.jmx2logzio.clients.BlockQueueSender;
+import io.logz.jmx2logzio.clients.ListenerHttpClient;
+import io.logz.jmx2logzio.clients.PriorityLane;
+import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
+import io.logz.jmx2logzio.objects.OverflowPolicy;
+import io.logz.jmx2logzio.objects.PriorityLaneParams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BlockQueueSenderTest {
+
+    @Test
+    public void weightedLanesTest() throws IOException {
+        PriorityLane jvmLane = newLane("jvm", 2, 0);
+        PriorityLane defaultLane = newLane("default", 1, 0);
+        for (int i = 0; i < 4; i++) {
+            defaultLane.getQueue().enqueue(("default" + i).getBytes(StandardCharsets.UTF_8));
+            jvmLane.getQueue().enqueue(("jvm" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+
+        int sent = new BlockQueueSender(Arrays.asList(jvmLane, defaultLane), httpClient).drain();
+
+        Assert.assertEquals(sent, 8);
+        Assert.assertEquals(httpClient.sentBlocks,
+                Arrays.asList("jvm0", "jvm1", "default0", "jvm2", "jvm3", "default1", "default2", "default3"));
+    }
+
+    @Test
+    public void rateLimitedLaneWaitsTest() throws IOException {
+        PriorityLane jvmLane = newLane("jvm", 1, 0);
+        // Allows a single block per drain
+        PriorityLane defaultLane = newLane("default", 1, 1);
+        for (int i = 0; i < 3; i++) {
+            defaultLane.getQueue().enqueue(("default" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        jvmLane.getQueue().enqueue("jvm0".getBytes(StandardCharsets.UTF_8));
+        RecordingHttpClient httpClient = new RecordingHttpClient();
+
+        int sent = new BlockQueueSender(Arrays.asList(jvmLane, defaultLane), httpClient).drain();
+
+        Assert.assertEquals(sent, 2);
+        Assert.assertEquals(httpClient.sentBlocks, Arrays.asList("jvm0", "default0"));
+        Assert.assertEquals(defaultLane.getCounters().get("queuedBlocks"), 2);
+        Assert.assertEquals(defaultLane.getCounters().get("rateLimitedTotal"), 1L);
+    }
+
+    @Test
+    public void drainToASilentListenerEndsWithinTheTimeoutTest() throws IOException {
+        PriorityLane defaultLane = newLane("default", 1, 0);
+        defaultLane.getQueue().enqueue("default0".getBytes(StandardCharsets.UTF_8));
+        // Accepts connections, but never responds
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            LogzioJavaSenderParams senderParams = RecordingHttpClient.newSenderParams();
+            senderParams.setUrl("http://127.0.0.1:" + listener.getLocalPort());
+            BlockQueueSender sender = new BlockQueueSender(Collections.singletonList(defaultLane), new ListenerHttpClient(senderParams));
+
+            long start = System.nanoTime();
+            int sent = sender.drain(TimeUnit.MILLISECONDS.toNanos(500));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assert.assertEquals(sent, 0);
+            Assert.assertTrue(elapsedMs < 2000, "drain took " + elapsedMs + "ms");
+            Assert.assertEquals(defaultLane.getCounters().get("queuedBlocks"), 1);
+        }
+    }
+
+    @Test
+    public void refusedTokenKeepsTheBlocksTest() throws IOException {
+        PriorityLane defaultLane = newLane("default", 1, 0);
+        defaultLane.getQueue().enqueue("default0".getBytes(StandardCharsets.UTF_8));
+        HttpServer listener = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        listener.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAUTHORIZED, -1);
+            exchange.close();
+        });
+        listener.start();
+        try {
+            LogzioJavaSenderParams senderParams = RecordingHttpClient.newSenderParams();
+            senderParams.setUrl("http://127.0.0.1:" + listener.getAddress().getPort());
+            BlockQueueSender sender = new BlockQueueSender(Collections.singletonList(defaultLane), new ListenerHttpClient(senderParams));
+
+            Assert.assertEquals(sender.drain(), 0);
+            Assert.assertEquals(defaultLane.getCounters().get("queuedBlocks"), 1);
+        } finally {
+            listener.stop(0);
+        }
+    }
+
+    private PriorityLane newLane(String name, int weight, long maxBytesPerSecond) {
+        return new PriorityLane(new PriorityLaneParams(name, Collections.singletonList("*"), weight, maxBytesPerSecond),
+                new OffHeapRingBuffer(1024, OverflowPolicy.DROP_NEWEST, 0), new TokenBucket(maxBytesPerSecond, 1));
+    }
+
+    private static class RecordingHttpClient extends ListenerHttpClient {
+        private final List<String> sentBlocks = new ArrayList<>();
+
+        private RecordingHttpClient() throws IOException {
+            super(newSenderParams());
+        }
+
+        private static LogzioJavaSenderParams newSenderParams() {
+            LogzioJavaSenderParams senderParams = new LogzioJavaSenderParams();
+            senderParams.setToken("token");
+            return senderParams;
+        }
+
+        @Override
+        public SendResult send(byte[] block, long timeoutMs) {
+            sentBlocks.add(new String(block, StandardCharsets.UTF_8));
+            return SendResult.SENT;
+        }
+    }
+}
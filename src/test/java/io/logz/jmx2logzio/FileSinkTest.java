@@ -0,0 +1,58 @@
+package io.logz.jmx2logzio;
+
+import io.logz.jmx2logzio.clients.FileSink;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class FileSinkTest {
+
+    @Test
+    public void writeNewlineDelimitedMetricsTest() throws IOException {
+        File file = new File(Files.createTempDirectory("jmx2logzio-sink").toFile(), "metrics.ndjson");
+        FileSink sink = new FileSink(file, 1024 * 1024, 3);
+        sink.writeMetrics(getTestMetrics(0, 3));
+        sink.writeMetrics(getTestMetrics(3, 2));
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(lines.size(), 5);
+        Assert.assertTrue(lines.get(4).contains("\"metric4\":4"));
+        sink.shutdown();
+    }
+
+    @Test
+    public void rollOverTest() throws IOException {
+        File directory = Files.createTempDirectory("jmx2logzio-sink").toFile();
+        File file = new File(directory, "metrics.ndjson");
+        FileSink sink = new FileSink(file, 200, 3);
+        for (int cycle = 0; cycle < 20; cycle++) {
+            sink.writeMetrics(getTestMetrics(cycle, 1));
+        }
+        sink.shutdown();
+
+        Assert.assertEquals(directory.list().length, 3);
+        Assert.assertTrue(file.length() <= 200);
+        List<String> lastLines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertTrue(lastLines.get(lastLines.size() - 1).contains("\"metric19\":19"));
+    }
+
+    private List<Metric> getTestMetrics(int first, int count) {
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            List<Dimension> dimensions = new ArrayList<>();
+            dimensions.add(new Dimension("type", "myType"));
+            metrics.add(new Metric(Collections.singletonMap("metric" + i, i), Instant.now(), dimensions));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,97 @@
+package io.logz.jmx2logzio;
+
+import io.logz.jmx2logzio.clients.HsperfdataClient;
+import io.logz.jmx2logzio.objects.MBeanClient;
+import io.logz.jmx2logzio.objects.Metric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class HsperfdataClientTest {
+
+    @Test
+    public void largeTicksAreConvertedWithoutOverflowTest() {
+        long ticksPerSecond = 1_000_000_000L;
+        // 200 days of nanosecond ticks, ticks * 1000 would overflow
+        long ticks = TimeUnit.DAYS.toNanos(200) + 123_456_789L;
+        Assert.assertEquals(HsperfdataClient.ticksToMillis(ticks, ticksPerSecond), TimeUnit.DAYS.toMillis(200) + 123);
+        Assert.assertEquals(HsperfdataClient.ticksToMillis(Long.MAX_VALUE, ticksPerSecond), Long.MAX_VALUE / 1_000_000);
+        Assert.assertEquals(HsperfdataClient.ticksToMillis(1_500, 1_000), 1_500);
+        Assert.assertEquals(HsperfdataClient.ticksToMillis(7, 3), 2_333);
+    }
+
+    @Test
+    public void readChildJvmCountersTest() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), MonitoredJvm.class.getName())
+                .redirectErrorStream(true).start();
+        try {
+            int pid;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                pid = Integer.parseInt(reader.readLine().trim());
+            }
+            File perfDataFile = HsperfdataClient.getPerfDataFile(null, pid);
+            for (int i = 0; i < 50 && !perfDataFile.exists(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(perfDataFile.exists(), perfDataFile + " wasn't created");
+
+            HsperfdataClient client = new HsperfdataClient(perfDataFile);
+            List<MetricBean> beans = client.getBeans();
+            for (int i = 0; i < 50 && beans.isEmpty(); i++) {
+                // Counters are published once the JVM finished initializing
+                Thread.sleep(100);
+                beans = client.getBeans();
+            }
+            List<String> beanNames = beans.stream().map(MetricBean::getName).collect(Collectors.toList());
+            Assert.assertTrue(beanNames.contains("sun.gc:type=PerfData"), beanNames.toString());
+            Assert.assertTrue(beanNames.contains("java.threads:type=PerfData"), beanNames.toString());
+
+            List<Metric> metrics = client.getMetrics(beans);
+            Map<String, Number> threads = getMetricMap(metrics, "java.threads");
+            Assert.assertTrue(threads.get("live").longValue() > 0, threads.toString());
+            Assert.assertTrue(getMetricMap(metrics, "java.cls").get("loadedClasses").longValue() > 0);
+            Assert.assertTrue(getMetricMap(metrics, "sun.gc").containsKey("collector.0.invocations"));
+            // The JVM's uptime, converted from high resolution ticks to milliseconds
+            long uptimeMs = getMetricMap(metrics, "sun.os").get("hrt.ticks").longValue();
+            Assert.assertTrue(uptimeMs > 0 && uptimeMs < TimeUnit.MINUTES.toMillis(1), String.valueOf(uptimeMs));
+
+            child.destroy();
+            child.waitFor(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 50 && perfDataFile.exists(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertThrows(MBeanClient.MBeanClientPollingFailure.class, client::getBeans);
+        } finally {
+            child.destroyForcibly();
+        }
+    }
+
+    private Map<String, Number> getMetricMap(List<Metric> metrics, String domain) {
+        return metrics.stream()
+                .filter(metric -> metric.getDimensions().get(0).getValue().equals(domain))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no metrics of " + domain))
+                .getMetricMap();
+    }
+
+    /**
+     * The JVM polled by the test, prints its process id and waits to be destroyed
+     */
+    public static class MonitoredJvm {
+        public static void main(String[] args) throws InterruptedException {
+            System.out.println(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+            System.out.flush();
+            TimeUnit.MINUTES.sleep(2);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
 import io.logz.jmx2logzio.exceptions.IllegalConfiguration;
+import io.logz.jmx2logzio.objects.AttributeRule;
 import io.logz.jmx2logzio.objects.Dimension;
 import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
 import org.apache.commons.io.FileUtils;
@@ -18,6 +19,8 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -25,7 +28,7 @@ public class Jmx2LogzioConfigurationTest {
 
     private static final String IN_MEMORY_TEST_ARGUMENTS = "LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=CustomServiceName,SERVICE_HOST=CustomServiceHost,FROM_DISK=false,LISTENER_URL=http://listener.com:2222," +
             "WHITE_LIST_REGEX=anything.with(a|b),BLACK_LIST_REGEX=except.you$,POLLING_INTERVAL_IN_SEC=12,IN_MEMORY_QUEUE_CAPACITY=128000000,LOGS_COUNT_LIMIT=150," +
-            "DISK_SPACE_CHECKS_INTERVAL=13,FILE_SYSTEM_SPACE_LIMIT=80,CLEAN_SENT_METRICS_INTERVAL=14";
+            "DISK_SPACE_CHECKS_INTERVAL=13,FILE_SYSTEM_SPACE_LIMIT=80,CLEAN_SENT_METRICS_INTERVAL=14,STARTUP_DELAY_IN_SEC=5";
     private static final String FROM_DISK_TEST_ARGUMENTS = "LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=CustomServiceName,FROM_DISK=true," +
             "DISK_SPACE_CHECKS_INTERVAL=13,FILE_SYSTEM_SPACE_LIMIT=80,CLEAN_SENT_METRICS_INTERVAL=14";
     private static final String MINIMAL_TEST_CONFIGURATION_ARGUMENTS = "LISTENER_URL=http://127.0.0.1:8070,LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp";
@@ -33,6 +36,10 @@ public class Jmx2LogzioConfigurationTest {
     private static final String BLACK_LIST_ARGUMENT_CONFIGURATION = "LISTENER_URL=http://127.0.0.1:8070,LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp,BLACK_LIST_REGEX=.*Max.*";
     private static final String EXTRA_DIMENSIONS_ARGUMENT_CONFIGURATION = "LISTENER_URL=http://127.0.0.1:8070,LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp,EXTRA_DIMENSIONS={origin=local:framework=spring}";
     private static final String MALFORMED_EXTRA_DIMENSIONS_ARGUMENT_CONFIGURATION = "LISTENER_URL=http://127.0.0.1:8070,LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp,EXTRA_DIMENSIONS={origin=:framework=spring:=ip}";
+    private static final String ATTRIBUTE_RULES_ARGUMENT_CONFIGURATION = "LISTENER_URL=http://127.0.0.1:8070,LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp," +
+            "ATTRIBUTE_RULES={java.lang:type=Memory=>HeapMemoryUsage.used;NonHeapMemoryUsage.used|java.lang:type=GarbageCollector*=>!LastGcInfo|malformed}";
+    private static final String SINKS_ARGUMENT_CONFIGURATION = "LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=com.yog.examplerunningapp," +
+            "SINKS=file;stdout;unknown;file,FILE_SINK_PATH=/tmp/metrics.ndjson,FILE_SINK_MAX_FILES=3";
     private static Logger logger;
 
     private static Config getIntegratedConfiguration(String agentArgument) {
@@ -110,6 +117,7 @@ public class Jmx2LogzioConfigurationTest {
         Assert.assertEquals(configuration.getMetricsPollingIntervalInSeconds(),12);
         Assert.assertEquals(senderParams.getInMemoryQueueCapacityInBytes(),128000000);
         Assert.assertEquals(senderParams.getLogsCountLimit(),150);
+        Assert.assertEquals(configuration.getStartupDelayInSeconds(),5);
 
     }
 
@@ -148,4 +156,26 @@ public class Jmx2LogzioConfigurationTest {
 
     }
 
+    @Test
+    public void attributeRulesArgumentParsingTest() {
+        String testArguments = ATTRIBUTE_RULES_ARGUMENT_CONFIGURATION;
+        Jmx2LogzioConfiguration configuration = new Jmx2LogzioConfiguration(getIntegratedConfiguration(testArguments));
+        List<AttributeRule> attributeRules = configuration.getAttributeRules();
+
+        Assert.assertEquals(attributeRules.size(), 2);
+        Assert.assertEquals(attributeRules.get(0).getBeanGlob(), "java.lang:type=Memory");
+        Assert.assertEquals(attributeRules.get(0).getIncludes().size(), 2);
+        Assert.assertEquals(attributeRules.get(1).getExcludes().get(0), "LastGcInfo");
+    }
+
+    @Test
+    public void sinksArgumentParsingTest() {
+        Jmx2LogzioConfiguration configuration = new Jmx2LogzioConfiguration(getIntegratedConfiguration(SINKS_ARGUMENT_CONFIGURATION));
+
+        Assert.assertEquals(configuration.getSinkTypes(), Arrays.asList(Jmx2LogzioConfiguration.MetricSinkType.FILE, Jmx2LogzioConfiguration.MetricSinkType.STDOUT));
+        Assert.assertEquals(configuration.getFileSinkPath(), "/tmp/metrics.ndjson");
+        Assert.assertEquals(configuration.getFileSinkMaxFiles(), 3);
+        Assert.assertEquals(getMinimalTestConfiguration().getSinkTypes(), Collections.singletonList(Jmx2LogzioConfiguration.MetricSinkType.LOGZIO));
+    }
+
 }
@@ -0,0 +1,156 @@
+package io.logz.jmx2logzio;
+
+import com.sun.net.httpserver.HttpServer;
+import io.logz.jmx2logzio.Utils.AttributeFilter;
+import io.logz.jmx2logzio.Utils.BeanQuarantine;
+import io.logz.jmx2logzio.clients.JolokiaClient;
+import io.logz.jmx2logzio.objects.AttributeRule;
+import io.logz.jmx2logzio.objects.Metric;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JolokiaClientTest {
+    private static final String GC_PATTERN = "java.lang:type=GarbageCollector,*";
+    private static final String PATTERN_READ_RESPONSE = "[{\"request\":{\"mbean\":\"" + GC_PATTERN + "\",\"attribute\":[\"CollectionCount\",\"CollectionTime\"],\"type\":\"read\"}," +
+            "\"value\":{\"java.lang:type=GarbageCollector,name=G1 Young Generation\":{\"CollectionCount\":5,\"CollectionTime\":40}," +
+            "\"java.lang:type=GarbageCollector,name=G1 Old Generation\":{\"CollectionCount\":1,\"CollectionTime\":90}}," +
+            "\"timestamp\":1700000000,\"status\":200}]";
+
+    private static final String BROKER_PATTERN = "kafka.server:*";
+    private static final String UNMATCHED_PATTERN_READ_RESPONSE = "[{\"request\":{\"mbean\":\"" + BROKER_PATTERN + "\",\"type\":\"read\"}," +
+            "\"error_type\":\"javax.management.InstanceNotFoundException\",\"error\":\"javax.management.InstanceNotFoundException : " +
+            BROKER_PATTERN + "\",\"status\":404}]";
+
+    private static final String MEMORY_BEAN = "java.lang:type=Memory";
+    private static final String PATH_READ_RESPONSE = "[{\"request\":{\"mbean\":\"" + MEMORY_BEAN + "\",\"attribute\":\"NonHeapMemoryUsage\",\"path\":\"used\",\"type\":\"read\"}," +
+            "\"error\":\"java.lang.IllegalStateException : failed\",\"status\":500}," +
+            "{\"request\":{\"mbean\":\"" + MEMORY_BEAN + "\",\"attribute\":\"HeapMemoryUsage\",\"path\":\"used\",\"type\":\"read\"}," +
+            "\"value\":100,\"timestamp\":1700000000,\"status\":200}]";
+
+    @Test
+    public void pathReadsTest() throws Exception {
+        AtomicInteger listRequests = new AtomicInteger();
+        BlockingQueue<String> readRequests = new ArrayBlockingQueue<>(2);
+        HttpServer jolokia = startJolokia(PATH_READ_RESPONSE, readRequests, listRequests);
+        try {
+            JolokiaClient client = new JolokiaClient("http://127.0.0.1:" + jolokia.getAddress().getPort() + "/jolokia");
+            client.setAttributeFilter(new AttributeFilter(Collections.singletonList(
+                    new AttributeRule(MEMORY_BEAN, Arrays.asList("HeapMemoryUsage.used", "NonHeapMemoryUsage.used"), Collections.emptyList()))));
+            BeanQuarantine quarantine = new BeanQuarantine(2, 5000, 30_000, 60_000);
+            client.setBeanQuarantine(quarantine);
+            List<MetricBean> beans = Collections.singletonList(new MetricBean(MEMORY_BEAN, Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage")));
+
+            List<Metric> metrics = client.getMetrics(beans);
+            String readRequest = readRequests.poll();
+            Assert.assertNotNull(readRequest);
+            Assert.assertTrue(readRequest.contains("\"attribute\" : \"HeapMemoryUsage\""), readRequest);
+            Assert.assertEquals(metrics.size(), 1);
+            Assert.assertEquals(metrics.get(0).getMetricMap().keySet(), Collections.singleton("HeapMemoryUsage.used"));
+            Assert.assertEquals(metrics.get(0).getMetricMap().get("HeapMemoryUsage.used"), 100);
+
+            // The failed path is a strike for the bean, which the successful path that follows it doesn't clear
+            client.getMetrics(beans);
+            Assert.assertEquals(quarantine.getQuarantinedCount(), 1);
+            Assert.assertTrue(quarantine.filterAvailable(beans).isEmpty());
+        } finally {
+            jolokia.stop(0);
+        }
+    }
+
+    @Test
+    public void patternReadTest() throws Exception {
+        AtomicInteger listRequests = new AtomicInteger();
+        BlockingQueue<String> readRequests = new ArrayBlockingQueue<>(1);
+        HttpServer jolokia = startJolokia(PATTERN_READ_RESPONSE, readRequests, listRequests);
+        try {
+            JolokiaClient client = new JolokiaClient("http://127.0.0.1:" + jolokia.getAddress().getPort() + "/jolokia",
+                    Collections.singletonList(GC_PATTERN));
+            client.setAttributeFilter(new AttributeFilter(Collections.singletonList(
+                    new AttributeRule(GC_PATTERN, Arrays.asList("CollectionCount", "CollectionTime"), Collections.emptyList()))));
+            client.setBeanFilter(beanName -> !beanName.contains("Old Generation"));
+            Assert.assertTrue(client.readsBeanPatterns());
+
+            List<Metric> metrics = client.getMetrics(client.getBeans());
+
+            Assert.assertEquals(listRequests.get(), 0);
+            String readRequest = readRequests.poll();
+            Assert.assertNotNull(readRequest);
+            Assert.assertTrue(readRequest.contains("\"mbean\" : \"" + GC_PATTERN + "\""), readRequest);
+            Assert.assertTrue(readRequest.contains("\"CollectionCount\", \"CollectionTime\""), readRequest);
+
+            // The pattern is expanded to its beans, the one excluded by the bean filter is left out
+            Assert.assertEquals(metrics.size(), 1);
+            Metric metric = metrics.get(0);
+            Assert.assertEquals(metric.getMetricMap().get("CollectionCount"), 5);
+            Assert.assertEquals(metric.getMetricMap().get("CollectionTime"), 40);
+            Assert.assertTrue(metric.getDimensions().stream().anyMatch(dimension -> dimension.getKey().equals("name") &&
+                    dimension.getValue().equals("G1 Young Generation")), metric.getDimensions().toString());
+            Assert.assertEquals(metric.getDimensions().get(0).getKey(), Metric.DOMAIN_NAME);
+            Assert.assertEquals(metric.getDimensions().get(0).getValue(), "java.lang");
+        } finally {
+            jolokia.stop(0);
+        }
+    }
+
+    @Test
+    public void patternMatchingNoBeanIsNotAFailureTest() throws Exception {
+        HttpServer jolokia = startJolokia(UNMATCHED_PATTERN_READ_RESPONSE, new ArrayBlockingQueue<>(2), new AtomicInteger());
+        try {
+            JolokiaClient client = new JolokiaClient("http://127.0.0.1:" + jolokia.getAddress().getPort() + "/jolokia",
+                    Collections.singletonList(BROKER_PATTERN));
+            BeanQuarantine quarantine = new BeanQuarantine(1, 5000, 30_000, 60_000);
+            client.setBeanQuarantine(quarantine);
+            List<MetricBean> beans = client.getBeans();
+
+            // The broker didn't register its beans yet, which is an empty read rather than a strike
+            Assert.assertTrue(client.getMetrics(beans).isEmpty());
+            Assert.assertTrue(client.getMetrics(beans).isEmpty());
+            Assert.assertEquals(quarantine.getQuarantinedCount(), 0);
+            Assert.assertEquals(quarantine.filterAvailable(beans), beans);
+        } finally {
+            jolokia.stop(0);
+        }
+    }
+
+    private static HttpServer startJolokia(String readResponse, BlockingQueue<String> readRequests, AtomicInteger listRequests) throws IOException {
+        HttpServer jolokia = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jolokia.createContext("/jolokia/list", exchange -> {
+            listRequests.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        jolokia.createContext("/jolokia/read", exchange -> {
+            readRequests.offer(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            byte[] response = readResponse.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+        jolokia.start();
+        return jolokia;
+    }
+
+    @Test
+    public void allAttributesOfAPatternAreReadWithoutExactIncludesTest() {
+        AttributeFilter filter = new AttributeFilter(Collections.singletonList(
+                new AttributeRule(GC_PATTERN, Collections.singletonList("Collection*"), Collections.emptyList())));
+        Assert.assertNull(filter.forBean(GC_PATTERN).getAttributeNames());
+
+        filter = new AttributeFilter(Collections.singletonList(
+                new AttributeRule(GC_PATTERN, Arrays.asList("LastGcInfo.duration", "LastGcInfo.id", "CollectionCount"), Collections.emptyList())));
+        Assert.assertEquals(filter.forBean(GC_PATTERN).getAttributeNames(), Arrays.asList("LastGcInfo", "CollectionCount"));
+    }
+}
@@ -1,8 +1,10 @@
 package io.logz.jmx2logzio;
 
+import io.logz.jmx2logzio.Utils.ShutdownReport;
 import io.logz.jmx2logzio.clients.ListenerWriter;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
 import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.LogzioJavaSenderParams;
 import io.logz.jmx2logzio.objects.Metric;
 import org.apache.commons.io.FileUtils;
 import org.mockserver.client.MockServerClient;
@@ -34,6 +36,8 @@ public class LogzioSenderTest {
     private ClientAndServer mockServer;
     private HttpRequest[] recordedRequests;
     private MockServerClient mockServerClient = null;
+    private static final int SPOOL_LISTENER_PORT = 8074;
+    private static final int OFF_HEAP_LISTENER_PORT = 8075;
 
     @BeforeTest
     private void startMockServer() {
@@ -84,4 +88,83 @@ public class LogzioSenderTest {
         writer.shutdown();
     }
 
+    @Test
+    public void sendMetricThroughSpoolTest() throws IOException {
+        String key = "Spooled-Metric";
+        Number value = 7;
+        Map<String, Number> metricsNamesToValues = new HashMap<>();
+        metricsNamesToValues.put(key, value);
+        List<Metric> metrics = new ArrayList<>();
+        metrics.add(new Metric(metricsNamesToValues, Instant.now(), new ArrayList<>()));
+
+        LogzioJavaSenderParams senderParams = new LogzioJavaSenderParams();
+        senderParams.setUrl("http://127.0.0.1:" + SPOOL_LISTENER_PORT);
+        senderParams.setToken("SpoolToken");
+        senderParams.setQueueType(LogzioJavaSenderParams.QueueType.MAPPED_SPOOL);
+        senderParams.setSpoolSegmentSizeInBytes(64 * 1024);
+
+        ClientAndServer spoolListener = startClientAndServer(SPOOL_LISTENER_PORT);
+        try {
+            // The listener fails first, so the block must stay in the spool until it's back
+            spoolListener.when(request().withMethod("POST")).respond(response().withStatusCode(503));
+            ListenerWriter writer = new ListenerWriter(senderParams);
+            Assert.assertNull(writer.getSender());
+            writer.writeMetrics(metrics);
+            writer.drainQueueAndSend();
+
+            spoolListener.reset();
+            spoolListener.when(request().withMethod("POST")).respond(response().withStatusCode(200));
+            writer.drainQueueAndSend();
+            writer.drainQueueAndSend();
+            HttpRequest[] spooledRequests = spoolListener.retrieveRecordedRequests(request().withMethod("POST"));
+            Assert.assertEquals(spooledRequests.length, 1);
+            Assert.assertTrue(spooledRequests[0].getBodyAsString().contains("\"" + key + "\":" + value));
+            writer.shutdown();
+        } finally {
+            spoolListener.stop();
+            FileUtils.deleteDirectory(senderParams.getSpoolDir());
+        }
+    }
+
+    @Test
+    public void offHeapQueueIsSpooledOnShutdownTest() throws IOException {
+        Map<String, Number> metricsNamesToValues = new HashMap<>();
+        metricsNamesToValues.put("Unsent-Metric", 3);
+        List<Metric> metrics = new ArrayList<>();
+        metrics.add(new Metric(metricsNamesToValues, Instant.now(), new ArrayList<>()));
+
+        LogzioJavaSenderParams senderParams = new LogzioJavaSenderParams();
+        senderParams.setUrl("http://127.0.0.1:" + OFF_HEAP_LISTENER_PORT);
+        senderParams.setToken("OffHeapToken");
+        senderParams.setQueueType(LogzioJavaSenderParams.QueueType.OFF_HEAP);
+        senderParams.setSpoolSegmentSizeInBytes(64 * 1024);
+
+        ClientAndServer listener = startClientAndServer(OFF_HEAP_LISTENER_PORT);
+        try {
+            // The listener is down during the shutdown, so the queued block is spooled instead of lost
+            listener.when(request().withMethod("POST")).respond(response().withStatusCode(503));
+            ListenerWriter writer = new ListenerWriter(senderParams);
+            writer.writeMetrics(metrics);
+            ShutdownReport report = new ShutdownReport(5);
+            writer.shutdown(report);
+            Assert.assertEquals(report.getCounters().get("sentBlocks"), 0L);
+            Assert.assertEquals(report.getCounters().get("spooledBlocks"), 1L);
+            Assert.assertEquals(report.getCounters().get("droppedBlocks"), 0L);
+
+            // The next run queues the spooled block again and sends it
+            listener.reset();
+            listener.when(request().withMethod("POST")).respond(response().withStatusCode(200));
+            ListenerWriter restartedWriter = new ListenerWriter(senderParams);
+            restartedWriter.drainQueueAndSend();
+            HttpRequest[] requests = listener.retrieveRecordedRequests(request().withMethod("POST"));
+            Assert.assertEquals(requests.length, 1);
+            Assert.assertTrue(requests[0].getBodyAsString().contains("\"Unsent-Metric\":3"));
+            ShutdownReport restartReport = new ShutdownReport(5);
+            restartedWriter.shutdown(restartReport);
+            Assert.assertEquals(restartReport.getCounters().get("spooledBlocks"), 0L);
+        } finally {
+            listener.stop();
+            FileUtils.deleteDirectory(senderParams.getSpoolDir());
+        }
+    }
 }
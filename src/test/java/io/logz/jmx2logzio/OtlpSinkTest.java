@@ -0,0 +1,168 @@
+package io.logz.jmx2logzio;
+
+import com.sun.net.httpserver.HttpServer;
+import io.logz.jmx2logzio.Utils.OtlpEncoder;
+import io.logz.jmx2logzio.clients.OtlpSink;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+public class OtlpSinkTest {
+
+    @Test
+    public void exportCycleTest() throws Exception {
+        BlockingQueue<byte[]> requests = new ArrayBlockingQueue<>(1);
+        BlockingQueue<String> contentTypes = new ArrayBlockingQueue<>(1);
+        HttpServer receiver = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        receiver.createContext("/v1/metrics", exchange -> {
+            Assert.assertEquals(exchange.getRequestHeaders().getFirst("Content-Encoding"), "gzip");
+            contentTypes.offer(exchange.getRequestHeaders().getFirst("Content-Type"));
+            try (InputStream inputStream = new GZIPInputStream(exchange.getRequestBody())) {
+                requests.offer(IOUtils.toByteArray(inputStream));
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        receiver.start();
+        try {
+            OtlpEncoder encoder = new OtlpEncoder(new HashSet<>(Arrays.asList(Metric.SERVICE_NAME, "env")),
+                    Collections.singletonList("Collection*"), Instant.ofEpochSecond(1000));
+            OtlpSink sink = new OtlpSink("http://127.0.0.1:" + receiver.getAddress().getPort() + "/v1/metrics", "", encoder);
+            sink.writeMetrics(getTestMetrics(Instant.ofEpochSecond(2000)));
+
+            Assert.assertEquals(contentTypes.poll(5, TimeUnit.SECONDS), "application/x-protobuf");
+            byte[] request = requests.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(request);
+
+            // ExportMetricsServiceRequest with a single ResourceMetrics, as all metrics share the same resource
+            List<Object> resourceMetrics = decode(request).get(1);
+            Assert.assertEquals(resourceMetrics.size(), 1);
+            Map<Integer, List<Object>> resource = decode((byte[]) decode((byte[]) resourceMetrics.get(0)).get(1).get(0));
+            Assert.assertEquals(getAttributes(resource.get(1)), Arrays.asList("service.name=myService", "env=test"));
+
+            Map<Integer, List<Object>> scopeMetrics = decode((byte[]) decode((byte[]) resourceMetrics.get(0)).get(2).get(0));
+            Assert.assertEquals(new String((byte[]) decode((byte[]) scopeMetrics.get(1).get(0)).get(1).get(0), StandardCharsets.UTF_8), "jmx2logzio");
+            List<Object> metrics = scopeMetrics.get(2);
+            Assert.assertEquals(metrics.size(), 2);
+
+            Map<Integer, List<Object>> gauge = decode((byte[]) metrics.get(0));
+            Assert.assertEquals(new String((byte[]) gauge.get(1).get(0), StandardCharsets.UTF_8), "java.lang.GarbageCollector.LastGcDuration");
+            List<Object> gaugePoints = decode((byte[]) gauge.get(5).get(0)).get(1);
+            Assert.assertEquals(gaugePoints.size(), 2);
+            Map<Integer, List<Object>> gaugePoint = decode((byte[]) gaugePoints.get(0));
+            Assert.assertEquals(gaugePoint.get(3).get(0), TimeUnit.SECONDS.toNanos(2000));
+            Assert.assertFalse(gaugePoint.containsKey(2));
+            Assert.assertEquals(Double.longBitsToDouble((Long) gaugePoint.get(4).get(0)), 1.5);
+            Assert.assertEquals(getAttributes(gaugePoint.get(7)), Collections.singletonList("name=G1 Young"));
+
+            Map<Integer, List<Object>> sum = decode((byte[]) metrics.get(1));
+            Assert.assertEquals(new String((byte[]) sum.get(1).get(0), StandardCharsets.UTF_8), "java.lang.GarbageCollector.CollectionCount");
+            Map<Integer, List<Object>> sumMessage = decode((byte[]) sum.get(7).get(0));
+            Assert.assertEquals(sumMessage.get(1).size(), 2);
+            Assert.assertEquals(sumMessage.get(2).get(0), 2L);
+            Assert.assertEquals(sumMessage.get(3).get(0), 1L);
+            Map<Integer, List<Object>> sumPoint = decode((byte[]) sumMessage.get(1).get(1));
+            Assert.assertEquals(sumPoint.get(2).get(0), TimeUnit.SECONDS.toNanos(1000));
+            Assert.assertEquals(sumPoint.get(6).get(0), 7L);
+            Assert.assertEquals(getAttributes(sumPoint.get(7)), Collections.singletonList("name=G1 Old"));
+        } finally {
+            receiver.stop(0);
+        }
+    }
+
+    private List<Metric> getTestMetrics(Instant timestamp) {
+        List<Metric> metrics = new ArrayList<>();
+        for (String collector : new String[]{"G1 Young", "G1 Old"}) {
+            List<Dimension> dimensions = new ArrayList<>();
+            dimensions.add(new Dimension(Metric.SERVICE_NAME, "myService"));
+            dimensions.add(new Dimension("env", "test"));
+            dimensions.add(new Dimension(Metric.DOMAIN_NAME, "java.lang"));
+            dimensions.add(new Dimension("type", "GarbageCollector"));
+            dimensions.add(new Dimension("name", collector));
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("LastGcDuration", 1.5);
+            values.put("CollectionCount", 7L);
+            metrics.add(new Metric(values, timestamp, dimensions));
+        }
+        return metrics;
+    }
+
+    private List<String> getAttributes(List<Object> keyValues) {
+        List<String> attributes = new ArrayList<>();
+        for (Object keyValue : keyValues) {
+            Map<Integer, List<Object>> fields = decode((byte[]) keyValue);
+            byte[] value = (byte[]) decode((byte[]) fields.get(2).get(0)).get(1).get(0);
+            attributes.add(new String((byte[]) fields.get(1).get(0), StandardCharsets.UTF_8) + "=" + new String(value, StandardCharsets.UTF_8));
+        }
+        return attributes;
+    }
+
+    /**
+     * Decode the fields of a protobuf message: varints and fixed64 as Long, length delimited fields as byte[]
+     */
+    private Map<Integer, List<Object>> decode(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        Map<Integer, List<Object>> fields = new LinkedHashMap<>();
+        while (buffer.hasRemaining()) {
+            long tag = readVarint(buffer);
+            Object value;
+            switch ((int) (tag & 7)) {
+                case 0:
+                    value = readVarint(buffer);
+                    break;
+                case 1:
+                    value = buffer.getLong();
+                    break;
+                case 2:
+                    byte[] bytes = new byte[(int) readVarint(buffer)];
+                    buffer.get(bytes);
+                    value = bytes;
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected wire type in tag " + tag);
+            }
+            fields.computeIfAbsent((int) (tag >>> 3), field -> new ArrayList<>()).add(value);
+        }
+        return fields;
+    }
+
+    private long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    @Test
+    public void failedExportTest() throws IOException {
+        OtlpEncoder encoder = new OtlpEncoder(Collections.emptySet(), Collections.emptyList(), Instant.now());
+        // Nothing listens on port 1, the cycle is dropped without throwing
+        OtlpSink sink = new OtlpSink("http://127.0.0.1:1/v1/metrics", "token", encoder);
+        sink.writeMetrics(getTestMetrics(Instant.now()));
+    }
+}
@@ -0,0 +1,66 @@
+package io.logz.jmx2logzio;
+
+import io.logz.jmx2logzio.clients.PrometheusSink;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PrometheusSinkTest {
+
+    @Test
+    public void scrapeLatestCycleTest() throws IOException {
+        PrometheusSink sink = new PrometheusSink("127.0.0.1", 0);
+        try {
+            sink.writeMetrics(getTestMetrics(1));
+            sink.writeMetrics(getTestMetrics(2));
+
+            String exposition = scrape(sink.getPort());
+            Assert.assertEquals(exposition,
+                    "# TYPE java_lang_Memory_HeapMemoryUsage_used untyped\n" +
+                    "java_lang_Memory_HeapMemoryUsage_used{serviceName=\"my\\\"Service\",pool=\"G1 Eden\"} 2\n" +
+                    "java_lang_Memory_HeapMemoryUsage_used{serviceName=\"my\\\"Service\",pool=\"G1 Old\"} 2\n" +
+                    "# TYPE java_lang_Memory_MemoryUsagePercent untyped\n" +
+                    "java_lang_Memory_MemoryUsagePercent{serviceName=\"my\\\"Service\",pool=\"G1 Eden\"} 0.5\n" +
+                    "java_lang_Memory_MemoryUsagePercent{serviceName=\"my\\\"Service\",pool=\"G1 Old\"} 0.5\n");
+        } finally {
+            sink.shutdown();
+        }
+    }
+
+    private String scrape(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+        Assert.assertEquals(connection.getResponseCode(), 200);
+        try (InputStream inputStream = connection.getInputStream()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    private List<Metric> getTestMetrics(long value) {
+        List<Metric> metrics = new ArrayList<>();
+        for (String pool : new String[]{"G1 Eden", "G1 Old"}) {
+            List<Dimension> dimensions = new ArrayList<>();
+            dimensions.add(new Dimension("serviceName", "my\"Service"));
+            dimensions.add(new Dimension(Metric.DOMAIN_NAME, "java.lang"));
+            dimensions.add(new Dimension("type", "Memory"));
+            dimensions.add(new Dimension("pool", pool));
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("HeapMemoryUsage.used", value);
+            values.put("MemoryUsagePercent", 0.5);
+            metrics.add(new Metric(values, Instant.now(), dimensions));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,61 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import io.logz.jmx2logzio.objects.AttributeRule;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AttributeFilterTest {
+
+    private static final String MEMORY_BEAN = "java.lang:type=Memory";
+    private static final String GC_BEAN = "java.lang:type=GarbageCollector,name=G1 Young Generation";
+
+    @Test
+    public void includedAttributesAndKeysTest() {
+        AttributeFilter filter = new AttributeFilter(Collections.singletonList(
+                new AttributeRule(MEMORY_BEAN, Arrays.asList("HeapMemoryUsage.used", "NonHeapMemoryUsage.used"), Collections.emptyList())));
+        List<MetricBean> beans = filter.apply(getTestBeans());
+
+        Assert.assertEquals(beans.size(), 2);
+        Assert.assertEquals(beans.get(0).getAttributes(), Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage"));
+        Assert.assertEquals(beans.get(1).getAttributes().size(), 3); // no rule for the GC bean
+
+        AttributeFilter.BeanAttributes memory = filter.forBean(MEMORY_BEAN);
+        Assert.assertTrue(memory.isKeyIncluded("HeapMemoryUsage.used"));
+        Assert.assertFalse(memory.isKeyIncluded("HeapMemoryUsage.max"));
+    }
+
+    @Test
+    public void excludedAttributesTest() {
+        AttributeFilter filter = new AttributeFilter(Collections.singletonList(
+                new AttributeRule("java.lang:type=GarbageCollector,*", Collections.emptyList(), Collections.singletonList("LastGcInfo"))));
+        List<MetricBean> beans = filter.apply(getTestBeans());
+
+        Assert.assertEquals(beans.get(1).getAttributes(), Arrays.asList("CollectionCount", "CollectionTime"));
+        Assert.assertFalse(filter.forBean(GC_BEAN).isKeyIncluded("LastGcInfo.duration"));
+        Assert.assertNull(filter.forBean(GC_BEAN).getJolokiaPaths(beans.get(1).getAttributes()));
+    }
+
+    @Test
+    public void jolokiaPathsTest() {
+        AttributeFilter filter = new AttributeFilter(Collections.singletonList(
+                new AttributeRule(MEMORY_BEAN, Arrays.asList("HeapMemoryUsage.used", "ObjectPendingFinalizationCount"), Collections.emptyList())));
+        List<String[]> paths = filter.forBean(MEMORY_BEAN).getJolokiaPaths(getTestBeans().get(0).getAttributes());
+
+        Assert.assertEquals(paths.size(), 2);
+        Assert.assertEquals(paths.get(0), new String[]{"HeapMemoryUsage", "used"});
+        Assert.assertEquals(paths.get(1), new String[]{"ObjectPendingFinalizationCount", null});
+    }
+
+    private List<MetricBean> getTestBeans() {
+        List<MetricBean> beans = new ArrayList<>();
+        beans.add(new MetricBean(MEMORY_BEAN, Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage", "ObjectPendingFinalizationCount")));
+        beans.add(new MetricBean(GC_BEAN, Arrays.asList("CollectionCount", "CollectionTime", "LastGcInfo")));
+        return beans;
+    }
+}
@@ -0,0 +1,91 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BeanQuarantineTest {
+
+    private static final String BROKEN_BEAN = "app:type=Broken";
+    private static final String HEALTHY_BEAN = "java.lang:type=Memory";
+    private static final long BASE_BACKOFF_MS = 1000;
+
+    @Test
+    public void failingBeanBacksOffExponentiallyTest() {
+        AtomicLong now = new AtomicLong(0);
+        BeanQuarantine quarantine = new BeanQuarantine(2, 5000, BASE_BACKOFF_MS, 10 * BASE_BACKOFF_MS, now::get);
+        List<MetricBean> beans = getTestBeans();
+
+        quarantine.recordFailure(BROKEN_BEAN, "boom");
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 2);
+        quarantine.recordFailure(BROKEN_BEAN, "boom");
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 1);
+        Assert.assertEquals(quarantine.getQuarantinedCount(), 1);
+
+        now.set(BASE_BACKOFF_MS);
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 2);
+        quarantine.recordFailure(BROKEN_BEAN, "still broken");
+
+        now.set(2 * BASE_BACKOFF_MS);
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 1); // backoff doubled
+        now.set(3 * BASE_BACKOFF_MS);
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 2);
+        quarantine.recordSuccess(BROKEN_BEAN, 10);
+        Assert.assertEquals(quarantine.getQuarantinedCount(), 0);
+    }
+
+    @Test
+    public void backoffFollowsThePollingIntervalTest() {
+        AtomicLong now = new AtomicLong(0);
+        BeanQuarantine quarantine = new BeanQuarantine(1, 5000, BASE_BACKOFF_MS, 10 * BASE_BACKOFF_MS, now::get);
+        quarantine.setBaseBackoffMs(4 * BASE_BACKOFF_MS);
+        quarantine.recordFailure(BROKEN_BEAN, "boom");
+
+        now.set(3 * BASE_BACKOFF_MS);
+        Assert.assertEquals(quarantine.filterAvailable(getTestBeans()).size(), 1);
+        now.set(4 * BASE_BACKOFF_MS);
+        Assert.assertEquals(quarantine.filterAvailable(getTestBeans()).size(), 2);
+    }
+
+    @Test
+    public void slowBeanIsQuarantinedTest() {
+        AtomicLong now = new AtomicLong(0);
+        BeanQuarantine quarantine = new BeanQuarantine(1, 100, BASE_BACKOFF_MS, BASE_BACKOFF_MS, now::get);
+        quarantine.recordSuccess(HEALTHY_BEAN, 50);
+        quarantine.recordSuccess(BROKEN_BEAN, 500);
+        List<MetricBean> available = quarantine.filterAvailable(getTestBeans());
+        Assert.assertEquals(available.size(), 1);
+        Assert.assertEquals(available.get(0).getName(), HEALTHY_BEAN);
+    }
+
+    @Test
+    public void unregisteredBeanStateIsDroppedTest() {
+        AtomicLong now = new AtomicLong(0);
+        BeanQuarantine quarantine = new BeanQuarantine(1, 5000, BASE_BACKOFF_MS, BASE_BACKOFF_MS, now::get);
+        quarantine.recordFailure(BROKEN_BEAN, "boom");
+        quarantine.recordFailure("kafka.server:type=Partition,topic=deleted", "boom");
+        Assert.assertEquals(quarantine.getTrackedCount(), 2);
+
+        // The partition's bean was unregistered, the broken bean is still polled
+        List<MetricBean> beans = getTestBeans();
+        for (int i = 0; i < BeanQuarantine.STALE_STATE_POLLS - 1; i++) {
+            quarantine.filterAvailable(beans);
+        }
+        Assert.assertEquals(quarantine.getTrackedCount(), 2);
+        quarantine.filterAvailable(beans);
+        Assert.assertEquals(quarantine.getTrackedCount(), 1);
+        Assert.assertEquals(quarantine.filterAvailable(beans).size(), 1, "the broken bean is still quarantined");
+    }
+
+    private List<MetricBean> getTestBeans() {
+        List<MetricBean> beans = new ArrayList<>();
+        beans.add(new MetricBean(HEALTHY_BEAN, Arrays.asList("HeapMemoryUsage")));
+        beans.add(new MetricBean(BROKEN_BEAN, Arrays.asList("Value")));
+        return beans;
+    }
+}
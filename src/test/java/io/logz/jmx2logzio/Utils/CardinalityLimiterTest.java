@@ -0,0 +1,66 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.google.common.hash.Hashing;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CardinalityLimiterTest {
+
+    @Test
+    public void hyperLogLogEstimateTest() {
+        HyperLogLog hyperLogLog = new HyperLogLog(8);
+        for (int i = 0; i < 10000; i++) {
+            hyperLogLog.offer(Hashing.murmur3_128().hashInt(i).asLong());
+        }
+        Assert.assertEquals(hyperLogLog.estimate(), 10000, 10000 * 0.2);
+    }
+
+    @Test
+    public void overLimitPatternKeepsTopKTest() {
+        CardinalityLimiter limiter = new CardinalityLimiter(50, 1000, 10, "Count");
+        List<Metric> metrics = new ArrayList<>();
+        for (int partition = 0; partition < 100; partition++) {
+            metrics.add(createMetric("kafka.log", "Log", "partition", String.valueOf(partition), partition));
+        }
+        metrics.add(createMetric("java.lang", "Memory", "name", "heap", 1));
+
+        List<Metric> limited = limiter.limit(metrics);
+        Assert.assertEquals(limited.size(), 11);
+        Assert.assertTrue(limited.stream().anyMatch(metric -> metric.getMetricMap().get("Count").intValue() == 99));
+        Assert.assertFalse(limited.stream().anyMatch(metric -> metric.getMetricMap().get("Count").intValue() == 50));
+
+        Metric overflow = limiter.getOverflowMetric(Instant.now(), Collections.emptyList());
+        Assert.assertNotNull(overflow);
+        Assert.assertEquals(overflow.getMetricMap().get("droppedSeries").intValue(), 90);
+    }
+
+    @Test
+    public void underLimitPassesThroughTest() {
+        CardinalityLimiter limiter = new CardinalityLimiter(50, 1000, 10, "Count");
+        List<Metric> metrics = new ArrayList<>();
+        for (int partition = 0; partition < 20; partition++) {
+            metrics.add(createMetric("kafka.log", "Log", "partition", String.valueOf(partition), partition));
+        }
+        Assert.assertEquals(limiter.limit(metrics).size(), 20);
+        Assert.assertNull(limiter.getOverflowMetric(Instant.now(), Collections.emptyList()));
+    }
+
+    private Metric createMetric(String domain, String type, String key, String value, long count) {
+        List<Dimension> dimensions = new ArrayList<>();
+        dimensions.add(new Dimension(Metric.DOMAIN_NAME, domain));
+        dimensions.add(new Dimension("type", type));
+        dimensions.add(new Dimension(key, value));
+        Map<String, Number> metricMap = new HashMap<>();
+        metricMap.put("Count", count);
+        return new Metric(metricMap, Instant.now(), dimensions);
+    }
+}
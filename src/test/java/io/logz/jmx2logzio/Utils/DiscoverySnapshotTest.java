@@ -0,0 +1,50 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DiscoverySnapshotTest {
+
+    private static final String FILTERS_KEY = "MBEAN_PLATFORM|null|.*|$a";
+
+    @Test
+    public void snapshotRoundTripTest() throws IOException {
+        File snapshotFile = createSnapshotFile();
+        List<MetricBean> beans = getTestBeans();
+        new DiscoverySnapshot(snapshotFile, FILTERS_KEY).update(beans);
+
+        DiscoverySnapshot restarted = new DiscoverySnapshot(snapshotFile, FILTERS_KEY);
+        Assert.assertEquals(restarted.takeWarmBeans(), beans);
+        Assert.assertNull(restarted.takeWarmBeans()); // only the first poll uses the snapshot
+    }
+
+    @Test
+    public void changedFiltersInvalidateSnapshotTest() throws IOException {
+        File snapshotFile = createSnapshotFile();
+        new DiscoverySnapshot(snapshotFile, FILTERS_KEY).update(getTestBeans());
+
+        DiscoverySnapshot restarted = new DiscoverySnapshot(snapshotFile, "MBEAN_PLATFORM|null|java.lang.*|$a");
+        Assert.assertNull(restarted.takeWarmBeans());
+    }
+
+    private File createSnapshotFile() throws IOException {
+        File snapshotFile = new File(Files.createTempDirectory("jmx2logzio").toFile(), "metrics-discovery.json");
+        snapshotFile.deleteOnExit();
+        return snapshotFile;
+    }
+
+    private List<MetricBean> getTestBeans() {
+        List<MetricBean> beans = new ArrayList<>();
+        beans.add(new MetricBean("java.lang:type=Memory", Arrays.asList("HeapMemoryUsage", "NonHeapMemoryUsage")));
+        beans.add(new MetricBean("java.lang:type=Threading", Arrays.asList("ThreadCount", "PeakThreadCount")));
+        return beans;
+    }
+}
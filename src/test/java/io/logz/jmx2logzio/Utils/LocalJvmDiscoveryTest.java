@@ -0,0 +1,83 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.typesafe.config.ConfigFactory;
+import io.logz.jmx2logzio.HsperfdataClientTest;
+import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LocalJvmDiscoveryTest {
+
+    @Test
+    public void pollDiscoveredJvmTest() throws Exception {
+        File file = new File(Files.createTempDirectory("jmx2logzio-attach").toFile(), "metrics.ndjson");
+        Jmx2LogzioConfiguration conf = new Jmx2LogzioConfiguration(ConfigFactory.parseString(
+                "service.poller.attach.display-name-regex = \"MonitoredJvm\"\n" +
+                "service.poller.metrics-polling-interval-in-seconds = 1\n" +
+                "service.poller.white-list-regex = \"java.lang:type=Threading\"\n" +
+                "sinks = [\"file\"]\n" +
+                "file-sink.path = \"" + file.getAbsolutePath() + "\"\n"));
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), HsperfdataClientTest.MonitoredJvm.class.getName())
+                .redirectErrorStream(true).start();
+        LocalJvmDiscovery discovery = new LocalJvmDiscovery(conf);
+        try {
+            String pid;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                pid = reader.readLine().trim();
+            }
+            for (int i = 0; i < 50 && !discovery.getAttachedPids().contains(pid); i++) {
+                // The JVM is listed once it created its hsperfdata file
+                discovery.discover();
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(discovery.getAttachedPids(), Collections.singleton(pid));
+
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 100 && lines.stream().noneMatch(line -> line.contains("ThreadCount")); i++) {
+                Thread.sleep(100);
+                lines = file.exists() ? Files.readAllLines(file.toPath(), StandardCharsets.UTF_8) : lines;
+            }
+            String threadingLine = lines.stream().filter(line -> line.contains("ThreadCount")).findFirst().orElse("");
+            Assert.assertTrue(threadingLine.contains("\"serviceName\":\"HsperfdataClientTest$MonitoredJvm\""), threadingLine);
+            Assert.assertTrue(threadingLine.contains("\"pid\":\"" + pid + "\""), threadingLine);
+
+            child.destroy();
+            child.waitFor(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 50 && !discovery.getAttachedPids().isEmpty(); i++) {
+                Thread.sleep(100);
+                discovery.discover();
+            }
+            Assert.assertTrue(discovery.getAttachedPids().isEmpty());
+        } finally {
+            discovery.shutdown();
+            child.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void failedAttachBacksOffTest() {
+        Assert.assertEquals(LocalJvmDiscovery.getAttachBackoffMs(1, 30), 30_000);
+        Assert.assertEquals(LocalJvmDiscovery.getAttachBackoffMs(2, 30), 60_000);
+        Assert.assertEquals(LocalJvmDiscovery.getAttachBackoffMs(4, 30), 240_000);
+        Assert.assertEquals(LocalJvmDiscovery.getAttachBackoffMs(100, 30), TimeUnit.HOURS.toMillis(1));
+        Assert.assertEquals(LocalJvmDiscovery.getAttachBackoffMs(100, 7200), TimeUnit.HOURS.toMillis(2), "never faster than the discovery");
+    }
+
+    @Test
+    public void serviceNameTest() {
+        Assert.assertEquals(LocalJvmDiscovery.getServiceName("42", "org.example.OrderService --port 8080"), "OrderService");
+        Assert.assertEquals(LocalJvmDiscovery.getServiceName("42", "/opt/app/billing.jar"), "billing");
+        Assert.assertEquals(LocalJvmDiscovery.getServiceName("42", ""), "pid-42");
+    }
+}
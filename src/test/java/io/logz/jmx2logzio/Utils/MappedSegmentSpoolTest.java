@@ -0,0 +1,87 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class MappedSegmentSpoolTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    @Test
+    public void enqueueAndAckTest() throws IOException {
+        MappedSegmentSpool spool = new MappedSegmentSpool(createSpoolDir(), SEGMENT_SIZE, 4);
+        Assert.assertNull(spool.peek());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(spool.enqueue(block(i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(spool.peek(), block(i));
+            Assert.assertEquals(spool.peek(), block(i)); // not removed until acknowledged
+            spool.ack();
+        }
+        Assert.assertNull(spool.peek());
+    }
+
+    @Test
+    public void recoverAfterCrashTest() throws IOException {
+        File spoolDir = createSpoolDir();
+        MappedSegmentSpool spool = new MappedSegmentSpool(spoolDir, SEGMENT_SIZE, 4);
+        for (int i = 0; i < 5; i++) {
+            spool.enqueue(block(i));
+        }
+        spool.peek();
+        spool.ack();
+        spool.peek(); // sent but not acknowledged before the crash
+
+        MappedSegmentSpool recovered = new MappedSegmentSpool(spoolDir, SEGMENT_SIZE, 4);
+        for (int i = 1; i < 5; i++) {
+            Assert.assertEquals(recovered.peek(), block(i));
+            recovered.ack();
+        }
+        Assert.assertNull(recovered.peek());
+        Assert.assertTrue(recovered.enqueue(block(5)));
+        Assert.assertEquals(recovered.peek(), block(5));
+    }
+
+    @Test
+    public void recycleSegmentsTest() throws IOException {
+        File spoolDir = createSpoolDir();
+        // Each segment holds 2 test blocks
+        MappedSegmentSpool spool = new MappedSegmentSpool(spoolDir, SEGMENT_SIZE, 2);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(spool.enqueue(block(i)));
+        }
+        Assert.assertFalse(spool.enqueue(block(99)));
+        Assert.assertEquals(spool.getDroppedBlocks(), 1);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(spool.peek(), block(i));
+            spool.ack();
+        }
+        // Moving on to the second segment frees the first one for new blocks
+        Assert.assertEquals(spool.peek(), block(2));
+        Assert.assertTrue(spool.enqueue(block(4)));
+
+        for (int i = 2; i < 5; i++) {
+            Assert.assertEquals(spool.peek(), block(i));
+            spool.ack();
+        }
+        Assert.assertNull(spool.peek());
+        Assert.assertEquals(spoolDir.listFiles((dir, name) -> name.startsWith("segment-")).length, 2);
+    }
+
+    private static byte[] block(int index) {
+        return ("{\"metric\":" + index + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static File createSpoolDir() throws IOException {
+        File spoolDir = Files.createTempDirectory("jmx2logzio-spool").toFile();
+        spoolDir.deleteOnExit();
+        return spoolDir;
+    }
+}
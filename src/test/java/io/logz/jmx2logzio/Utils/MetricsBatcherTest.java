@@ -0,0 +1,109 @@
+package io.logz.jmx2logzio.Utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MetricsBatcherTest {
+
+    @Test
+    public void blocksAreSizeBoundedTest() {
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            metrics.add(new Metric(Collections.singletonMap("Count", i), Instant.now(),
+                    Collections.singletonList(new Dimension("name", "metric" + i))));
+        }
+        List<byte[]> blocks = new ArrayList<>();
+        int maxBatchSize = 1024;
+        int written = new MetricsBatcher(maxBatchSize).write(metrics, blocks::add);
+
+        Assert.assertEquals(written, blocks.size());
+        Assert.assertTrue(blocks.size() > 1);
+        int documents = 0;
+        for (byte[] block : blocks) {
+            Assert.assertTrue(block.length <= maxBatchSize);
+            String blockString = new String(block, StandardCharsets.UTF_8);
+            Assert.assertFalse(blockString.endsWith("\n"));
+            documents += blockString.split("\n").length;
+        }
+        Assert.assertEquals(documents, metrics.size());
+    }
+
+    @Test
+    public void dictionaryRoundTripTest() throws IOException {
+        List<Metric> metrics = getWideDimensionMetrics();
+        List<byte[]> inlineBlocks = new ArrayList<>();
+        List<byte[]> dictionaryBlocks = new ArrayList<>();
+        int maxBatchSize = 4096;
+        new MetricsBatcher(maxBatchSize).write(metrics, inlineBlocks::add);
+        new MetricsBatcher(maxBatchSize, MetricsBatcher.DimensionEncoding.DICTIONARY).write(metrics, dictionaryBlocks::add);
+
+        Assert.assertTrue(dictionaryBlocks.size() > 1);
+        ObjectMapper mapper = new ObjectMapper();
+        List<JsonNode> inlineDocuments = new ArrayList<>();
+        for (byte[] block : inlineBlocks) {
+            for (String document : new String(block, StandardCharsets.UTF_8).split("\n")) {
+                inlineDocuments.add(mapper.readTree(document));
+            }
+        }
+        // Each block decodes on its own
+        List<JsonNode> decodedDocuments = new ArrayList<>();
+        int inlineSize = 0;
+        int dictionarySize = 0;
+        for (byte[] block : dictionaryBlocks) {
+            Assert.assertTrue(block.length <= maxBatchSize);
+            dictionarySize += block.length;
+            for (String document : new String(DimensionDictionaryDecoder.decode(block), StandardCharsets.UTF_8).split("\n")) {
+                decodedDocuments.add(mapper.readTree(document));
+            }
+        }
+        for (byte[] block : inlineBlocks) {
+            inlineSize += block.length;
+        }
+        Assert.assertEquals(decodedDocuments, inlineDocuments);
+        Assert.assertTrue(dictionarySize < inlineSize / 2, "dictionary " + dictionarySize + " bytes, inline " + inlineSize + " bytes");
+
+        // So do concatenated blocks, as in the file sink's files
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (byte[] block : dictionaryBlocks) {
+            concatenated.write(block);
+            concatenated.write('\n');
+        }
+        Assert.assertEquals(new String(DimensionDictionaryDecoder.decode(concatenated.toByteArray()), StandardCharsets.UTF_8).split("\n").length, metrics.size());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void undefinedReferenceTest() throws IOException {
+        DimensionDictionaryDecoder.decode("{\"@timestamp\":\"2020-01-01T00:00:00.000+0000\",\"dimRef\":3,\"metrics\":{\"Count\":1}}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<Metric> getWideDimensionMetrics() {
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            List<Dimension> dimensions = new ArrayList<>();
+            dimensions.add(new Dimension(Metric.SERVICE_NAME, "order-service"));
+            dimensions.add(new Dimension(Metric.SERVICE_HOST, "ip-10-0-12-34.eu-west-1.compute.internal"));
+            dimensions.add(new Dimension("jmx2logzio.agent.version", "1.0.5"));
+            dimensions.add(new Dimension(Metric.DOMAIN_NAME, "kafka.consumer"));
+            dimensions.add(new Dimension("type", "consumer-fetch-manager-metrics"));
+            dimensions.add(new Dimension("client-id", "consumer-" + (i % 4)));
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("records-lag", i);
+            metrics.add(new Metric(values, Instant.now(), dimensions));
+        }
+        return metrics;
+    }
+}
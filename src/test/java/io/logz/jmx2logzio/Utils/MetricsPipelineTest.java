@@ -1,9 +1,14 @@
 package io.logz.jmx2logzio.Utils;
 
+import com.typesafe.config.ConfigFactory;
 import io.logz.jmx2logzio.Jmx2LogzioConfigurationTest;
+import io.logz.jmx2logzio.Jmx2LogzioJavaAgent;
 import io.logz.jmx2logzio.MetricBean;
 import io.logz.jmx2logzio.clients.JavaAgentClient;
 import io.logz.jmx2logzio.configuration.Jmx2LogzioConfiguration;
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.MBeanClient;
+import io.logz.jmx2logzio.objects.Metric;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +18,15 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class MetricsPipelineTest {
 
@@ -58,4 +70,102 @@ public class MetricsPipelineTest {
         beans.add(new MetricBean("MaxMemoryUsagePercent", attr));
         return metricsPipeline.getFilteredBeans(beans);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void stagesWriteCollectedCyclesTest() throws Exception {
+        File file = new File(Files.createTempDirectory("jmx2logzio-pipeline").toFile(), "metrics.ndjson");
+        Map<String, String> arguments = Jmx2LogzioJavaAgent.parseArgumentsString("LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=pipelineTest," +
+                "SINKS=file,FILE_SINK_PATH=" + file.getAbsolutePath() + ",DISCOVERY_SNAPSHOT=false");
+        Jmx2LogzioConfiguration conf = new Jmx2LogzioConfiguration(ConfigFactory.parseMap(arguments).withFallback(ConfigFactory.load("javaagent.conf")));
+        MetricsPipeline metricsPipeline = new MetricsPipeline(conf, new StaticClient());
+        metricsPipeline.pollAndSend();
+        metricsPipeline.pollAndSend();
+        metricsPipeline.shutdown();
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50 && lines.stream().filter(line -> line.contains("\"type\":\"Pipeline\"")).count() < 2; i++) {
+            Thread.sleep(100);
+            lines = file.exists() ? Files.readAllLines(file.toPath(), StandardCharsets.UTF_8) : lines;
+        }
+        Assert.assertEquals(lines.stream().filter(line -> line.contains("\"HeapMemoryUsage.used\":100")).count(), 2);
+        String pipelineLine = lines.stream().filter(line -> line.contains("\"type\":\"Pipeline\"")).findFirst().orElse("");
+        Assert.assertTrue(pipelineLine.contains("\"file.droppedCyclesTotal\":0"), pipelineLine);
+        Assert.assertTrue(pipelineLine.contains("\"droppedCyclesTotal\":0"), pipelineLine);
+    }
+
+    @Test
+    public void finalPollIsWrittenOnShutdownTest() throws Exception {
+        File file = new File(Files.createTempDirectory("jmx2logzio-pipeline").toFile(), "metrics.ndjson");
+        MetricsPipeline metricsPipeline = new MetricsPipeline(getAgentConfiguration("LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=shutdownTest," +
+                "SINKS=file,FILE_SINK_PATH=" + file.getAbsolutePath() + ",DISCOVERY_SNAPSHOT=false"), new StaticClient());
+        ShutdownReport report = new ShutdownReport(10);
+        // As on the agent's shutdown, the executors are stopped first, so the sinks' write tasks don't race the flush
+        AgentExecutors.shutdown(5, TimeUnit.SECONDS);
+        Assert.assertTrue(report.runWithin("poll", () -> metricsPipeline.pollFinal(report)));
+        metricsPipeline.shutdown(report);
+
+        // Written synchronously by the shutdown, with no polling task running
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(lines.stream().filter(line -> line.contains("\"HeapMemoryUsage.used\":100")).count(), 1);
+        Map<String, Number> counters = report.getCounters();
+        Assert.assertEquals(counters.get("finalPollMetrics"), 1L);
+        Assert.assertEquals(counters.get("writtenCycles"), 1L);
+        Assert.assertEquals(counters.get("droppedCycles"), 0L);
+        Assert.assertTrue(report.getTimedOutSteps().isEmpty());
+    }
+
+    @Test
+    public void reconfigureAtCycleBoundaryTest() throws Exception {
+        File file = new File(Files.createTempDirectory("jmx2logzio-pipeline").toFile(), "metrics.ndjson");
+        String arguments = "LOGZIO_TOKEN=LogzioToken,SERVICE_NAME=reloadTest,SINKS=file,FILE_SINK_PATH=" + file.getAbsolutePath() + ",DISCOVERY_SNAPSHOT=false";
+        MetricsPipeline metricsPipeline = new MetricsPipeline(getAgentConfiguration(arguments + ",WHITE_LIST_REGEX=java.lang"), new StaticClient());
+        metricsPipeline.pollAndSend();
+        // Not applied until the next cycle starts
+        metricsPipeline.reconfigure(getAgentConfiguration(arguments + ",WHITE_LIST_REGEX=java.lang|kafka,EXTRA_DIMENSIONS={env=staging}"));
+        metricsPipeline.pollAndSend();
+        metricsPipeline.reconfigure(getAgentConfiguration(arguments + ",WHITE_LIST_REGEX=kafka"));
+        metricsPipeline.pollAndSend();
+        metricsPipeline.shutdown();
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50 && lines.stream().filter(line -> line.contains("\"type\":\"Pipeline\"")).count() < 2; i++) {
+            Thread.sleep(100);
+            lines = file.exists() ? Files.readAllLines(file.toPath(), StandardCharsets.UTF_8) : lines;
+        }
+        // The third cycle's bean is filtered out by the last white list, so nothing is written for it
+        Assert.assertEquals(lines.stream().filter(line -> line.contains("\"HeapMemoryUsage.used\":100")).count(), 2);
+        List<String> pipelineLines = lines.stream().filter(line -> line.contains("\"type\":\"Pipeline\"")).collect(Collectors.toList());
+        Assert.assertEquals(pipelineLines.size(), 2);
+        Assert.assertFalse(pipelineLines.get(0).contains("staging"), pipelineLines.get(0));
+        Assert.assertTrue(pipelineLines.get(1).contains("staging"), pipelineLines.get(1));
+    }
+
+    private Jmx2LogzioConfiguration getAgentConfiguration(String arguments) {
+        return new Jmx2LogzioConfiguration(ConfigFactory.parseMap(Jmx2LogzioJavaAgent.parseArgumentsString(arguments))
+                .withFallback(ConfigFactory.load("javaagent.conf")));
+    }
+
+    private static class StaticClient extends MBeanClient {
+        @Override
+        public List<MetricBean> getBeans() {
+            return Collections.singletonList(new MetricBean("java.lang:type=Memory", Collections.singletonList("HeapMemoryUsage")));
+        }
+
+        @Override
+        public List<Metric> getMetrics(List<MetricBean> beans) {
+            List<Metric> metrics = new ArrayList<>();
+            if (beans.isEmpty()) {
+                return metrics;
+            }
+            List<Dimension> dimensions = new ArrayList<>();
+            dimensions.add(new Dimension(Metric.DOMAIN_NAME, "java.lang"));
+            dimensions.add(new Dimension("type", "Memory"));
+            metrics.add(new Metric(Collections.singletonMap("HeapMemoryUsage.used", 100), Instant.now(), dimensions));
+            return metrics;
+        }
+
+        @Override
+        public void setExtraDimensions(List<Dimension> extraDimensions) {
+        }
+    }
+}
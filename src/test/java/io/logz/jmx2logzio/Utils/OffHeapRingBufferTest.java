@@ -0,0 +1,80 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.OverflowPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class OffHeapRingBufferTest {
+
+    // Each test block takes exactly 16 bytes with its header
+    private static final int RECORD_SIZE = 16;
+
+    @Test
+    public void wrapAroundTest() {
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(RECORD_SIZE * 3 + 5, OverflowPolicy.DROP_NEWEST, 0);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(queue.enqueue(block(i)));
+            Assert.assertTrue(queue.enqueue(block(i + 100)));
+            Assert.assertEquals(queue.peek(), block(i));
+            queue.ack();
+            Assert.assertEquals(queue.peek(), block(i + 100));
+            queue.ack();
+        }
+        Assert.assertNull(queue.peek());
+        Assert.assertEquals(queue.getCounters().get("usedBytes"), 0);
+    }
+
+    @Test
+    public void dropNewestTest() {
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(RECORD_SIZE * 2, OverflowPolicy.DROP_NEWEST, 0);
+        Assert.assertTrue(queue.enqueue(block(1)));
+        Assert.assertTrue(queue.enqueue(block(2)));
+        Assert.assertFalse(queue.enqueue(block(3)));
+        Assert.assertEquals(queue.getCounters().get("usedBytes"), RECORD_SIZE * 2);
+        Assert.assertEquals(queue.getCounters().get("droppedNewestTotal"), 1L);
+        Assert.assertEquals(queue.peek(), block(1));
+    }
+
+    @Test
+    public void dropOldestTest() {
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(RECORD_SIZE * 2, OverflowPolicy.DROP_OLDEST, 0);
+        queue.enqueue(block(1));
+        queue.enqueue(block(2));
+        Assert.assertEquals(queue.peek(), block(1));
+        Assert.assertTrue(queue.enqueue(block(3)));
+        queue.ack(); // the peeked block was already dropped, so nothing else is removed
+        Assert.assertEquals(queue.peek(), block(2));
+        queue.ack();
+        Assert.assertEquals(queue.peek(), block(3));
+        Assert.assertEquals(queue.getCounters().get("droppedOldestTotal"), 1L);
+    }
+
+    @Test
+    public void blockUntilAckTest() throws Exception {
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(RECORD_SIZE, OverflowPolicy.BLOCK, TimeUnit.SECONDS.toMillis(10));
+        queue.enqueue(block(1));
+        CompletableFuture<Boolean> blockedWrite = CompletableFuture.supplyAsync(() -> queue.enqueue(block(2)));
+        Thread.sleep(100);
+        Assert.assertFalse(blockedWrite.isDone());
+        queue.peek();
+        queue.ack();
+        Assert.assertTrue(blockedWrite.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(queue.peek(), block(2));
+    }
+
+    @Test
+    public void blockTimeoutTest() {
+        OffHeapRingBuffer queue = new OffHeapRingBuffer(RECORD_SIZE, OverflowPolicy.BLOCK, 50);
+        queue.enqueue(block(1));
+        Assert.assertFalse(queue.enqueue(block(2)));
+        Assert.assertEquals(queue.getCounters().get("droppedNewestTotal"), 1L);
+    }
+
+    private static byte[] block(int index) {
+        return String.format("{\"m\":%06d}", index).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,190 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.MetricBean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OverheadGovernorTest {
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final List<MetricBean> BEANS = Arrays.asList(
+            new MetricBean("java.lang:type=Memory", Collections.singletonList("HeapMemoryUsage")),
+            new MetricBean("kafka.server:type=BrokerTopicMetrics,name=MessagesInPerSec", Collections.singletonList("Count")),
+            new MetricBean("kafka.network:type=RequestMetrics,name=RequestsPerSec", Collections.singletonList("Count")));
+
+    @Test
+    public void degradesStepByStepOverBudgetTest() {
+        FakeSampler sampler = new FakeSampler();
+        AtomicLong clock = new AtomicLong();
+        // 1% of 2 processors over a 10 second cycle is 200ms of CPU
+        OverheadGovernor governor = new OverheadGovernor(1, 1_000_000, 90, Collections.singletonList("java.lang"),
+                sampler, clock::get, 2);
+        Assert.assertTrue(governor.startCycle());
+        Assert.assertEquals(governor.filterBeans(BEANS), BEANS);
+
+        // 300ms of CPU per cycle
+        int polledCycles = 0;
+        for (int cycle = 0; cycle < 3; cycle++) {
+            clock.addAndGet(INTERVAL_NANOS);
+            sampler.cpuNanos += TimeUnit.MILLISECONDS.toNanos(300);
+            if (governor.startCycle()) {
+                polledCycles++;
+            }
+            Assert.assertEquals(governor.getLevel(), cycle + 1);
+        }
+        Assert.assertEquals(polledCycles, 3);
+
+        // At the top level, every other cycle is skipped, and low priority beans are polled every 4th cycle
+        int lowPriorityPolls = 0;
+        polledCycles = 0;
+        for (int cycle = 0; cycle < 8; cycle++) {
+            clock.addAndGet(INTERVAL_NANOS);
+            sampler.cpuNanos += TimeUnit.MILLISECONDS.toNanos(300);
+            if (governor.startCycle()) {
+                polledCycles++;
+                List<MetricBean> polledBeans = governor.filterBeans(BEANS);
+                Assert.assertTrue(polledBeans.contains(BEANS.get(0)));
+                if (polledBeans.size() == BEANS.size()) {
+                    lowPriorityPolls++;
+                }
+            }
+        }
+        Assert.assertEquals(governor.getLevel(), OverheadGovernor.MAX_LEVEL);
+        Assert.assertEquals(polledCycles, 4);
+        Assert.assertEquals(lowPriorityPolls, 2);
+
+        // Within the budget, but not under half of it, the level is kept
+        clock.addAndGet(INTERVAL_NANOS);
+        sampler.cpuNanos += TimeUnit.MILLISECONDS.toNanos(150);
+        governor.startCycle();
+        Assert.assertEquals(governor.getLevel(), OverheadGovernor.MAX_LEVEL);
+
+        // Under half of the budget, a level is recovered per cycle
+        for (int cycle = 0; cycle < OverheadGovernor.MAX_LEVEL; cycle++) {
+            clock.addAndGet(INTERVAL_NANOS);
+            sampler.cpuNanos += TimeUnit.MILLISECONDS.toNanos(50);
+            Assert.assertTrue(governor.startCycle());
+        }
+        Assert.assertEquals(governor.getLevel(), 0);
+        Assert.assertEquals(governor.filterBeans(BEANS), BEANS);
+        Assert.assertEquals(governor.getCounters().get("deferredBeansTotal"), 4L);
+    }
+
+    @Test
+    public void allocationsOverBudgetDegradeTest() {
+        FakeSampler sampler = new FakeSampler();
+        AtomicLong clock = new AtomicLong();
+        OverheadGovernor governor = new OverheadGovernor(1, 1_000_000, 90, Collections.singletonList("java.lang"),
+                sampler, clock::get, 2);
+        governor.startCycle();
+        clock.addAndGet(INTERVAL_NANOS);
+        sampler.allocatedBytes += 2_000_000;
+        governor.startCycle();
+        Assert.assertEquals(governor.getLevel(), 1);
+        Assert.assertEquals(governor.getCounters().get("allocatedBytesPerCycle"), 2_000_000L);
+    }
+
+    @Test
+    public void backsOffUnderHeapPressureTest() {
+        FakeSampler sampler = new FakeSampler();
+        AtomicLong clock = new AtomicLong();
+        OverheadGovernor governor = new OverheadGovernor(1, 1_000_000, 90, Collections.singletonList("java.lang"),
+                sampler, clock::get, 2);
+        sampler.heapUsedPercent = 95;
+        for (int cycle = 0; cycle < 3; cycle++) {
+            clock.addAndGet(INTERVAL_NANOS);
+            // The GC and memory metrics are still polled during the incident
+            Assert.assertTrue(governor.startCycle());
+            Assert.assertEquals(governor.filterBeans(BEANS), BEANS.subList(0, 1));
+        }
+        sampler.heapUsedPercent = 60;
+        clock.addAndGet(INTERVAL_NANOS);
+        Assert.assertTrue(governor.startCycle());
+        Assert.assertEquals(governor.filterBeans(BEANS), BEANS);
+        Assert.assertEquals(governor.getLevel(), 0);
+        Assert.assertEquals(governor.getCounters().get("heapBackoffCyclesTotal"), 3L);
+        Assert.assertEquals(governor.getCounters().get("skippedCyclesTotal"), 0L);
+        Assert.assertEquals(governor.getCounters().get("deferredBeansTotal"), 6L);
+    }
+
+    @Test
+    public void agentThreadsAreSampledTest() throws InterruptedException {
+        OverheadGovernor.AgentThreadsSampler sampler = new OverheadGovernor.AgentThreadsSampler();
+        long before = sampler.getAgentCpuNanos();
+        Thread agentThread = new Thread(() -> {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            StringBuilder garbage = new StringBuilder();
+            while (System.nanoTime() < end) {
+                garbage.setLength(0);
+                garbage.append(System.nanoTime());
+            }
+            synchronized (OverheadGovernorTest.this) {
+                try {
+                    OverheadGovernorTest.this.wait(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, OverheadGovernor.AGENT_THREAD_PREFIX + "test");
+        agentThread.start();
+        Thread.sleep(300);
+        long after = sampler.getAgentCpuNanos();
+        agentThread.interrupt();
+        agentThread.join();
+
+        Assert.assertTrue(after - before >= TimeUnit.MILLISECONDS.toNanos(10), String.valueOf(after - before));
+        Assert.assertNotEquals(sampler.getAgentAllocatedBytes(), 0L);
+        int heapUsedPercent = sampler.getHeapUsedPercent();
+        Assert.assertTrue(heapUsedPercent >= 0 && heapUsedPercent <= 100, String.valueOf(heapUsedPercent));
+    }
+
+    @Test
+    public void fullSurvivorSpaceIsNotHeapPressureTest() {
+        // Serial GC right after a young collection: eden is empty, the survivor space is full, the old gen mostly free
+        Map<String, MemoryUsage> usages = new LinkedHashMap<>();
+        usages.put("Eden Space", new MemoryUsage(0, 0, 6_291_456, 6_291_456));
+        usages.put("Survivor Space", new MemoryUsage(0, 786_432, 786_432, 786_432));
+        usages.put("Tenured Gen", new MemoryUsage(0, 4_194_304, 16_777_216, 16_777_216));
+        Assert.assertEquals(OverheadGovernor.AgentThreadsSampler.getHeapUsedPercent(usages, 23_855_104), 25);
+
+        usages.put("Tenured Gen", new MemoryUsage(0, 16_000_000, 16_777_216, 16_777_216));
+        Assert.assertEquals(OverheadGovernor.AgentThreadsSampler.getHeapUsedPercent(usages, 23_855_104), 95);
+    }
+
+    @Test
+    public void singlePoolHeapIsMeasuredAsAWholeTest() {
+        Map<String, MemoryUsage> usages = new LinkedHashMap<>();
+        usages.put("ZHeap", new MemoryUsage(0, 50_000_000, 100_000_000, 100_000_000));
+        Assert.assertEquals(OverheadGovernor.AgentThreadsSampler.getHeapUsedPercent(usages, 100_000_000), 50);
+        Assert.assertEquals(OverheadGovernor.AgentThreadsSampler.getHeapUsedPercent(Collections.emptyMap(), 100_000_000), -1);
+    }
+
+    private static class FakeSampler implements OverheadGovernor.UsageSampler {
+        private long cpuNanos = 0;
+        private long allocatedBytes = 0;
+        private int heapUsedPercent = 50;
+
+        @Override
+        public long getAgentCpuNanos() {
+            return cpuNanos;
+        }
+
+        @Override
+        public long getAgentAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public int getHeapUsedPercent() {
+            return heapUsedPercent;
+        }
+    }
+}
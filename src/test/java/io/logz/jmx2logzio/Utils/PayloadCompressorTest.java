@@ -0,0 +1,138 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.clients.JavaAgentClient;
+import io.logz.jmx2logzio.objects.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class PayloadCompressorTest {
+    private static final Logger logger = LoggerFactory.getLogger(PayloadCompressorTest.class);
+
+    @Test
+    public void codecsRoundTripTest() throws IOException {
+        byte[] payload = getRepetitivePayload();
+        Assert.assertSame(new PayloadCompressor(PayloadCompressor.Codec.NONE, 6, false, 50).compress(payload), payload);
+
+        byte[] gzipped = new PayloadCompressor(PayloadCompressor.Codec.GZIP, 6, false, 50).compress(payload);
+        Assert.assertEquals(readAll(new GZIPInputStream(new ByteArrayInputStream(gzipped))), payload);
+        byte[] deflated = new PayloadCompressor(PayloadCompressor.Codec.DEFLATE, 6, false, 50).compress(payload);
+        Assert.assertEquals(readAll(new InflaterInputStream(new ByteArrayInputStream(deflated))), payload);
+        Assert.assertTrue(deflated.length < payload.length / 4);
+    }
+
+    @Test
+    public void adaptiveLevelKeepsToCpuBudgetTest() throws IOException {
+        // Compressing costs 2ms per level, so with a budget of 10ms per cycle the level settles at 5
+        AtomicReference<PayloadCompressor> compressorHolder = new AtomicReference<>();
+        AtomicLong clock = new AtomicLong();
+        PayloadCompressor compressor = new PayloadCompressor(PayloadCompressor.Codec.GZIP, 6, true, 10,
+                () -> clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(2) * compressorHolder.get().getLevel()));
+        compressorHolder.set(compressor);
+
+        byte[] payload = getRepetitivePayload();
+        for (int cycle = 0; cycle < 100; cycle++) {
+            compressor.compress(payload);
+            compressor.onCycle();
+        }
+        Assert.assertEquals(compressor.getLevel(), 5);
+        Map<String, Number> counters = compressor.getCounters();
+        Assert.assertEquals(counters.get("compression.level"), 5);
+        Assert.assertTrue(counters.get("compression.ratio").doubleValue() < 0.25, counters.toString());
+    }
+
+    @Test
+    public void adaptiveLevelStopsWhereItIsNotWorthItTest() throws IOException {
+        // With CPU to spare, the level goes up, but back down as random bytes don't compress better at a higher level
+        PayloadCompressor compressor = new PayloadCompressor(PayloadCompressor.Codec.DEFLATE, 6, true, 10, () -> 0L);
+        byte[] payload = new byte[16384];
+        new Random(7).nextBytes(payload);
+        for (int cycle = 0; cycle < 100; cycle++) {
+            compressor.compress(payload);
+            compressor.onCycle();
+        }
+        Assert.assertEquals(compressor.getLevel(), 6);
+    }
+
+    @Test
+    public void fixedLevelIsKeptTest() throws IOException {
+        PayloadCompressor compressor = new PayloadCompressor(PayloadCompressor.Codec.GZIP, 9, false, 1);
+        byte[] payload = getRepetitivePayload();
+        for (int cycle = 0; cycle < 20; cycle++) {
+            compressor.compress(payload);
+            compressor.onCycle();
+        }
+        Assert.assertEquals(compressor.getLevel(), 9);
+    }
+
+    /**
+     * Compress the blocks of this JVM's platform MBeans with each codec and level, and log the ratio, throughput and
+     * CPU time per block
+     */
+    @Test
+    public void codecBenchmarkTest() throws IOException {
+        JavaAgentClient client = new JavaAgentClient();
+        List<Metric> metrics = client.getMetrics(client.getBeans());
+        List<byte[]> blocks = new ArrayList<>();
+        new MetricsBatcher(65536).write(metrics, blocks::add);
+        long inputBytes = blocks.stream().mapToLong(block -> block.length).sum();
+        Assert.assertTrue(inputBytes > 0);
+        int rounds = 20;
+
+        for (PayloadCompressor.Codec codec : new PayloadCompressor.Codec[]{PayloadCompressor.Codec.GZIP, PayloadCompressor.Codec.DEFLATE}) {
+            double[] ratios = new double[PayloadCompressor.MAX_LEVEL + 1];
+            for (int level = PayloadCompressor.MIN_LEVEL; level <= PayloadCompressor.MAX_LEVEL; level++) {
+                PayloadCompressor compressor = new PayloadCompressor(codec, level, false, 50);
+                long start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    for (byte[] block : blocks) {
+                        compressor.compress(block);
+                    }
+                }
+                long elapsedNanos = Math.max(1, System.nanoTime() - start);
+                Map<String, Number> counters = compressor.getCounters();
+                ratios[level] = counters.get("compression.ratio").doubleValue();
+                logger.info("{} level {}: ratio {}, {}MB/s, {}us CPU per block", codec.getConfigValue(), level,
+                        String.format("%.3f", ratios[level]),
+                        String.format("%.1f", inputBytes * rounds * 1000.0 / elapsedNanos),
+                        counters.get("compression.cpuTimeMs").longValue() * 1000 / (rounds * blocks.size()));
+            }
+            Assert.assertTrue(ratios[PayloadCompressor.MAX_LEVEL] <= ratios[PayloadCompressor.MIN_LEVEL],
+                    codec.getConfigValue() + " level 9 compressed worse than level 1");
+        }
+    }
+
+    private byte[] getRepetitivePayload() {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            payload.append("{\"metrics\":{\"HeapMemoryUsage.used\":").append(i * 1024)
+                    .append("},\"dimensions\":{\"domainName\":\"java.lang\",\"type\":\"Memory\"}}\n");
+        }
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] readAll(InflaterInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,42 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class PollingPhaseTest {
+
+    @Test
+    public void phasesAreSpreadAndStableTest() {
+        Set<Long> seconds = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long offset = PollingPhase.getPhaseOffsetMs("service" + i + "@host" + i, 30, 50);
+            Assert.assertTrue(offset >= 1000 && offset < 16000, String.valueOf(offset));
+            Assert.assertEquals(PollingPhase.getPhaseOffsetMs("service" + i + "@host" + i, 30, 50), offset);
+            seconds.add(offset / 1000);
+        }
+        // 1000 instances cover every second of the jitter range
+        Assert.assertEquals(seconds.size(), 15);
+
+        Assert.assertEquals(PollingPhase.getPhaseOffsetMs("service@host", 30, 0), 1000);
+        // The phase never reaches the next interval
+        Assert.assertTrue(PollingPhase.getPhaseOffsetMs("service@host", 30, 100) < 29000);
+        Assert.assertTrue(PollingPhase.getPhaseOffsetMs("service@host", 1, 100) < 1000);
+    }
+
+    @Test
+    public void pollsStayInTheirWindowTest() {
+        long windowStart = 1_700_000_010_000L;
+        long offset = PollingPhase.getPhaseOffsetMs("service@host", 10, 80);
+
+        // Before the instance's phase in the current window, it polls in that window
+        Assert.assertEquals(PollingPhase.getInitialDelayMs("service@host", 10, 80, windowStart), offset);
+        // After it, in the next window
+        long now = windowStart + offset + 1;
+        long nextPoll = now + PollingPhase.getInitialDelayMs("service@host", 10, 80, now);
+        Assert.assertEquals(nextPoll, windowStart + 10_000 + offset);
+        Assert.assertEquals(nextPoll - nextPoll % 10_000, windowStart + 10_000);
+    }
+}
@@ -0,0 +1,84 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SerialTaskTest {
+
+    @Test
+    public void requestsDuringARunAreCoalescedTest() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch firstRunStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger concurrentRuns = new AtomicInteger();
+        AtomicInteger maxConcurrentRuns = new AtomicInteger();
+        SerialTask task = new SerialTask("test", executor, () -> {
+            maxConcurrentRuns.accumulateAndGet(concurrentRuns.incrementAndGet(), Math::max);
+            if (runs.incrementAndGet() == 1) {
+                firstRunStarted.countDown();
+                try {
+                    releaseFirstRun.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            concurrentRuns.decrementAndGet();
+        });
+
+        task.request();
+        Assert.assertTrue(firstRunStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            task.request();
+        }
+        releaseFirstRun.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(runs.get(), 2);
+        Assert.assertEquals(maxConcurrentRuns.get(), 1);
+    }
+
+    @Test
+    public void requestAfterShutdownIsIgnoredTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AtomicInteger runs = new AtomicInteger();
+        SerialTask task = new SerialTask("test", executor, runs::incrementAndGet);
+        task.request();
+        task.request();
+        Assert.assertEquals(runs.get(), 0);
+    }
+
+    @Test
+    public void sharedThreadsAreFixedNamedDaemonThreadsTest() throws InterruptedException {
+        AgentExecutors.configure(AgentExecutors.DEFAULT_THREADS, false);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        int tasks = 20;
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            AgentExecutors.getScheduler().execute(() -> {
+                threads.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(AgentExecutors.getBlockingExecutor(), AgentExecutors.getScheduler());
+
+        Assert.assertTrue(threads.size() <= AgentExecutors.DEFAULT_THREADS, threads.toString());
+        for (Thread thread : threads) {
+            Assert.assertTrue(thread.isDaemon());
+            Assert.assertEquals(thread.getPriority(), Thread.MIN_PRIORITY);
+            Assert.assertTrue(thread.getName().startsWith(OverheadGovernor.AGENT_THREAD_PREFIX), thread.getName());
+        }
+        Assert.assertEquals(AgentExecutors.getCounters().get("virtualThreads"), 0);
+    }
+}
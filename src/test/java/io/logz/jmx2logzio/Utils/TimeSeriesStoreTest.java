@@ -0,0 +1,135 @@
+package io.logz.jmx2logzio.Utils;
+
+import io.logz.jmx2logzio.objects.Dimension;
+import io.logz.jmx2logzio.objects.Metric;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TimeSeriesStoreTest {
+    private static final long START_MILLIS = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+    private static final List<Dimension> DIMENSIONS = Arrays.asList(new Dimension(Metric.DOMAIN_NAME, "java.lang"),
+            new Dimension("type", "Memory"));
+
+    @Test
+    public void blockRoundTripsIrregularPointsExactlyTest() {
+        Random random = new Random(42);
+        TimeSeriesBlock block = new TimeSeriesBlock();
+        List<long[]> expected = new ArrayList<>();
+        long timestamp = START_MILLIS;
+        double value = 0;
+        for (int i = 0; i < 1000; i++) {
+            // Jittered intervals with an occasional long gap, values mixing whole, fractional and negative numbers
+            timestamp += i % 100 == 99 ? 3_600_000 : 30_000 + random.nextInt(2000) - 1000;
+            value = i % 3 == 0 ? value : i % 3 == 1 ? -random.nextInt(1_000_000) : random.nextDouble() * 1e9;
+            Assert.assertTrue(block.append(timestamp, value));
+            expected.add(new long[]{timestamp, Double.doubleToRawLongBits(value)});
+        }
+
+        List<long[]> decoded = new ArrayList<>();
+        block.forEach((pointTimestamp, pointValue) -> decoded.add(new long[]{pointTimestamp, Double.doubleToRawLongBits(pointValue)}));
+        Assert.assertEquals(decoded.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(decoded.get(i), expected.get(i), "point " + i);
+        }
+        Assert.assertFalse(block.append(timestamp - 1, value), "a point before the last one can't be appended");
+    }
+
+    @Test
+    public void regularPointsTakeAFewBitsTest() {
+        TimeSeriesStore store = new TimeSeriesStore(Long.MAX_VALUE, 120);
+        long heapUsed = 100_000_000;
+        for (int i = 0; i < 1000; i++) {
+            heapUsed += i % 10 == 0 ? 4096 : 0;
+            store.append(Collections.singletonList(metric(i, "HeapMemoryUsage.used", heapUsed)));
+        }
+
+        Map<String, Number> counters = store.getCounters();
+        Assert.assertEquals(counters.get("series"), 1);
+        Assert.assertEquals(counters.get("storedPoints"), 1000L);
+        Assert.assertTrue(counters.get("bytesPerPoint").doubleValue() < 1.0, counters.toString());
+        Assert.assertEquals(counters.get("storedSeconds"), 999L * 30);
+    }
+
+    @Test
+    public void queryRebuildsTheMetricsOfTheRangeTest() {
+        TimeSeriesStore store = new TimeSeriesStore(Long.MAX_VALUE, 16);
+        for (int i = 0; i < 100; i++) {
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put("HeapMemoryUsage.used", 1000L + i);
+            values.put("Ratio", i / 4.0);
+            store.append(Collections.singletonList(new Metric(values, Instant.ofEpochMilli(START_MILLIS + i * 30_000L), DIMENSIONS)));
+        }
+
+        List<Metric> metrics = store.query(START_MILLIS + 10 * 30_000L, START_MILLIS + 19 * 30_000L);
+        Assert.assertEquals(metrics.size(), 10);
+        for (int i = 0; i < metrics.size(); i++) {
+            Metric metric = metrics.get(i);
+            Assert.assertEquals(metric.getTimestamp(), Metric.timestampFormatter.format(Instant.ofEpochMilli(START_MILLIS + (10 + i) * 30_000L)));
+            Assert.assertEquals(metric.getDimensions(), DIMENSIONS);
+            Assert.assertEquals(metric.getMetricMap().get("HeapMemoryUsage.used"), 1010L + i);
+            Assert.assertEquals(metric.getMetricMap().get("Ratio").doubleValue(), (10 + i) / 4.0);
+        }
+    }
+
+    @Test
+    public void oldestBlocksAreEvictedOverBudgetTest() {
+        int maxBytes = 2048;
+        TimeSeriesStore store = new TimeSeriesStore(maxBytes, 32);
+        Random random = new Random(7);
+        int points = 2000;
+        for (int i = 0; i < points; i++) {
+            store.append(Collections.singletonList(metric(i, "CollectionTime", random.nextLong())));
+        }
+
+        Map<String, Number> counters = store.getCounters();
+        Assert.assertTrue(counters.get("storedBytes").longValue() <= maxBytes, counters.toString());
+        Assert.assertTrue(counters.get("evictedBlocksTotal").longValue() > 0, counters.toString());
+        Assert.assertEquals(counters.get("storedPoints").longValue() + counters.get("evictedPointsTotal").longValue(), points);
+
+        List<Metric> metrics = store.query(START_MILLIS, START_MILLIS + points * 30_000L);
+        Assert.assertEquals(metrics.size(), counters.get("storedPoints").intValue());
+        Assert.assertEquals(metrics.get(metrics.size() - 1).getTimestamp(),
+                Metric.timestampFormatter.format(Instant.ofEpochMilli(START_MILLIS + (points - 1) * 30_000L)),
+                "the newest points are kept");
+    }
+
+    @Test
+    public void seriesOverheadCountsAgainstTheBudgetTest() {
+        TimeSeriesStore store = new TimeSeriesStore(Long.MAX_VALUE, 120);
+        int seriesCount = 1000;
+        List<Metric> metrics = new ArrayList<>();
+        for (int i = 0; i < seriesCount; i++) {
+            List<Dimension> dimensions = Arrays.asList(new Dimension(Metric.DOMAIN_NAME, "kafka.server"),
+                    new Dimension("topic", "topic-" + i));
+            metrics.add(new Metric(Collections.singletonMap("MessagesInPerSec", 1), Instant.ofEpochMilli(START_MILLIS), dimensions));
+        }
+        store.append(metrics);
+
+        // A single point of each series takes a few bytes, while each series keeps its objects and a growing buffer
+        Map<String, Number> counters = store.getCounters();
+        Assert.assertTrue(counters.get("payloadBytes").longValue() <= seriesCount * 17L, counters.toString());
+        Assert.assertTrue(counters.get("storedBytes").longValue() >= seriesCount * (long) (TimeSeriesStore.SERIES_OVERHEAD_BYTES + 64), counters.toString());
+
+        long maxBytes = counters.get("storedBytes").longValue() / 2;
+        store = new TimeSeriesStore(maxBytes, 120);
+        store.append(metrics);
+        counters = store.getCounters();
+        Assert.assertTrue(counters.get("storedBytes").longValue() <= maxBytes, counters.toString());
+        Assert.assertTrue(counters.get("series").intValue() < seriesCount, counters.toString());
+    }
+
+    private static Metric metric(int cycle, String key, long value) {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put(key, value);
+        return new Metric(values, Instant.ofEpochMilli(START_MILLIS + cycle * 30_000L), DIMENSIONS);
+    }
+}
@@ -0,0 +1,40 @@
+package io.logz.jmx2logzio.Utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucketTest {
+
+    @Test
+    public void rateIsLimitedTest() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1000, 2, clock::get);
+
+        // Starts with a full burst, and lets one block go into debt
+        Assert.assertTrue(bucket.tryAcquire(1500));
+        Assert.assertTrue(bucket.tryAcquire(1500));
+        Assert.assertFalse(bucket.tryAcquire(1));
+
+        // Paying back the 1000 bytes of debt takes a second
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        Assert.assertFalse(bucket.tryAcquire(1));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(2));
+        Assert.assertTrue(bucket.tryAcquire(1));
+
+        // Refill stops at the burst size
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assert.assertTrue(bucket.tryAcquire(2000));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void unlimitedTest() {
+        TokenBucket bucket = new TokenBucket(0, 5);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(bucket.tryAcquire(Integer.MAX_VALUE));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.logz.jmx2logzio.bootstrap;
+
+import io.logz.jmx2logzio.HsperfdataClientTest;
+import io.logz.jmx2logzio.Jmx2LogzioJavaAgent;
+import io.logz.jmx2logzio.objects.Dimension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class AgentBootstrapTest {
+    private static final Logger logger = LoggerFactory.getLogger(AgentBootstrapTest.class);
+    private static final String BOOTSTRAP_PATH = "io/logz/jmx2logzio/bootstrap/";
+
+    @Test
+    public void isolatedClassLoaderTest() throws Exception {
+        Path directory = Files.createTempDirectory("jmx2logzio-bootstrap");
+        File nestedJar = writeJar(directory.resolve(AgentBootstrap.NESTED_JAR).toFile(), getClassesDirectory(), path -> true, null);
+        try (IsolatedClassLoader loader = new IsolatedClassLoader(nestedJar.toURI().toURL(), getClass().getClassLoader())) {
+            Class<?> isolatedDimension = loader.loadClass(Dimension.class.getName());
+            Assert.assertNotSame(isolatedDimension, Dimension.class);
+            Assert.assertSame(isolatedDimension.getClassLoader(), loader);
+            Assert.assertEquals(loader.getDefinedClasses(), 1);
+
+            // The JDK, the bootstrap package and the application's SLF4J binding are shared
+            Assert.assertSame(loader.loadClass(String.class.getName()), String.class);
+            Assert.assertSame(loader.loadClass(AgentFootprint.class.getName()), AgentFootprint.class);
+            Assert.assertSame(loader.loadClass(LoggerFactory.class.getName()), LoggerFactory.class);
+            // Classes missing from the agent's jar fall back to the parent
+            Assert.assertSame(loader.loadClass(Test.class.getName()), Test.class);
+            Assert.assertTrue(loader.getResource("javaagent.conf").toString().startsWith("jar:"));
+        }
+    }
+
+    @Test
+    public void agentFootprintTest() throws Exception {
+        File classesDirectory = getClassesDirectory();
+        Path directory = Files.createTempDirectory("jmx2logzio-bootstrap");
+        File nestedJar = writeJar(directory.resolve(AgentBootstrap.NESTED_JAR).toFile(), classesDirectory, path -> true, null);
+        File agentJar = writeJar(directory.resolve("jmx2logzio-javaagent.jar").toFile(), classesDirectory,
+                path -> path.startsWith(BOOTSTRAP_PATH), nestedJar);
+
+        // The application's class path has the agent's dependencies, but not the agent's classes
+        String classPath = Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+                .filter(entry -> !new File(entry).equals(classesDirectory))
+                .collect(Collectors.joining(File.pathSeparator));
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java,
+                "-javaagent:" + agentJar.getAbsolutePath() + "=SERVICE_NAME=footprintTest,SINKS=stdout,POLLING_INTERVAL_IN_SEC=1,DISCOVERY_SNAPSHOT=false",
+                "-cp", classPath, HsperfdataClientTest.MonitoredJvm.class.getName())
+                .redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            String footprintLine = null;
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            String line;
+            while (footprintLine == null && System.currentTimeMillis() < deadline && (line = reader.readLine()) != null) {
+                if (line.contains("AgentFootprint")) {
+                    footprintLine = line;
+                }
+            }
+            Assert.assertNotNull(footprintLine, "The agent didn't report its footprint");
+            long startupTimeMs = getCounter(footprintLine, "startupTimeMs");
+            long startupMetaspaceBytes = getCounter(footprintLine, "startupMetaspaceBytes");
+            long agentLoadedClasses = getCounter(footprintLine, "agentLoadedClasses");
+            Assert.assertTrue(startupMetaspaceBytes > 0, footprintLine);
+            Assert.assertTrue(agentLoadedClasses > 0, footprintLine);
+            logger.info("Agent footprint: premain took {}ms and added {}KB of metaspace, {} classes loaded from the agent's jar",
+                    startupTimeMs, startupMetaspaceBytes / 1024, agentLoadedClasses);
+        } finally {
+            child.destroyForcibly();
+        }
+    }
+
+    private long getCounter(String line, String counter) {
+        Matcher matcher = Pattern.compile("\"" + counter + "\":(\\d+)").matcher(line);
+        Assert.assertTrue(matcher.find(), counter + " is missing from " + line);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private File getClassesDirectory() throws Exception {
+        return new File(Jmx2LogzioJavaAgent.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    /**
+     * Write the class files of a directory to a jar, along with a nested jar and an agent manifest when one is given
+     */
+    private File writeJar(File jar, File classesDirectory, Predicate<String> include, File nestedJar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (nestedJar != null) {
+            manifest.getMainAttributes().putValue("Premain-Class", AgentBootstrap.class.getName());
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(classesDirectory.toPath())) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (Path file : files) {
+                String path = classesDirectory.toPath().relativize(file).toString().replace(File.separatorChar, '/');
+                if (include.test(path)) {
+                    out.putNextEntry(new JarEntry(path));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+            if (nestedJar != null) {
+                out.putNextEntry(new JarEntry(AgentBootstrap.NESTED_JAR));
+                Files.copy(nestedJar.toPath(), out);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}